@@ -0,0 +1,114 @@
+package com.smewise.camera2.exif;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Gathering exif writes to a file channel.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExifChannelWriterTest {
+    // SOI, APP0, APP1 (not exif), DQT, SOF0, compressed data and EOI
+    private static final byte[] JPEG = {(byte) 0xff, (byte) 0xd8,
+            (byte) 0xff, (byte) 0xe0, 0, 4, 'j', 'f',
+            (byte) 0xff, (byte) 0xe1, 0, 5, 'x', 'm', 'p',
+            (byte) 0xff, (byte) 0xdb, 0, 4, 9, 8,
+            (byte) 0xff, (byte) 0xc0, 0, 6, 1, 2, 3, 4,
+            (byte) 0xff, (byte) 0xda, 0, 2, 5, 6, 7, (byte) 0xff, 0, 8,
+            (byte) 0xff, (byte) 0xd9};
+
+    @Test
+    public void channelWrite_matchesStreamWrite() throws Exception {
+        ExifInterface exif = createExif();
+        // replaces the exif of a jpeg written before
+        byte[] source = streamWrite(exif, JPEG);
+        byte[] expected = streamWrite(exif, source);
+
+        ByteBuffer buffer = ByteBuffer.allocate(source.length + 3);
+        buffer.position(3);
+        buffer.put(source);
+        buffer.position(3);
+        File file = File.createTempFile("exif", ".jpg");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            exif.writeExif(buffer, out.getChannel());
+            out.close();
+            assertArrayEquals(expected, readFile(file));
+            assertEquals(3, buffer.position());
+
+            exif.writeExif(source, file.getPath());
+            assertArrayEquals(expected, readFile(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void template_channelWriteMatchesStreamWrite() throws Exception {
+        ExifTemplate template = new ExifTemplate(createExif(), ExifInterface.TAG_ORIENTATION);
+        byte[] block = template.newExifBlock();
+        template.setTagIntValue(block, ExifInterface.TAG_ORIENTATION, 0, 8);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        template.writeJpeg(block, JPEG, expected);
+        File file = File.createTempFile("exif", ".jpg");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            template.writeJpeg(block, ByteBuffer.wrap(JPEG), out.getChannel());
+            out.close();
+            assertArrayEquals(expected.toByteArray(), readFile(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void segments_dropApp1AndSliceSource() throws Exception {
+        List<ByteBuffer> parts = ExifChannelWriter.getSegmentsWithoutApp1(ByteBuffer.wrap(JPEG));
+        assertEquals(2, parts.size());
+        // APP0, then everything from DQT on
+        assertEquals(6, parts.get(0).remaining());
+        assertEquals(JPEG.length - 15, parts.get(1).remaining());
+        assertEquals(15, parts.get(1).arrayOffset());
+    }
+
+    private static ExifInterface createExif() {
+        ExifInterface exif = new ExifInterface();
+        exif.setTag(exif.buildTag(ExifInterface.TAG_MAKE, "smewise"));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_ORIENTATION, (short) 6));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_EXPOSURE_TIME, new Rational(1, 60)));
+        return exif;
+    }
+
+    private static byte[] streamWrite(ExifInterface exif, byte[] jpeg) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exif.writeExif(jpeg, out);
+        return out.toByteArray();
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int n = 0;
+            while (n < data.length) {
+                n += in.read(data, n, data.length - n);
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+}
@@ -0,0 +1,135 @@
+package com.smewise.camera2.exif;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Large byte values that reference the parsed source instead of a copy.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExifLazyValueTest {
+    // SOI, SOF0 and EOI
+    private static final byte[] JPEG = {(byte) 0xff, (byte) 0xd8,
+            (byte) 0xff, (byte) 0xc0, 0, 6, 1, 2, 3, 4, (byte) 0xff, (byte) 0xd9};
+
+    @Test
+    public void bufferSource_keepsReferencesAndWritesSame() throws Exception {
+        byte[] jpeg = write(createExif());
+        ExifInterface exif = new ExifInterface();
+        exif.readExif(ByteBuffer.wrap(jpeg));
+        ExifTag makerNote = exif.getTag(ExifInterface.TAG_MAKER_NOTE);
+        ExifTag userComment = exif.getTag(ExifInterface.TAG_USER_COMMENT);
+        assertTrue(makerNote.isValueLazy());
+        // below the threshold
+        assertFalse(userComment.isValueLazy());
+
+        assertArrayEquals(jpeg, write(exif));
+        assertTrue(makerNote.isValueLazy());
+
+        assertArrayEquals(makerNote(), makerNote.getValueAsBytes());
+        assertFalse(makerNote.isValueLazy());
+        assertArrayEquals(thumbnail(), exif.getThumbnail());
+    }
+
+    @Test
+    public void fileSource_mapsValues() throws Exception {
+        byte[] jpeg = write(createExif());
+        File file = File.createTempFile("exif", ".jpg");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(jpeg);
+            out.close();
+            ExifInterface exif = new ExifInterface();
+            exif.readExif(file.getPath());
+            assertTrue(exif.getTag(ExifInterface.TAG_MAKER_NOTE).isValueLazy());
+            assertArrayEquals(jpeg, write(exif));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void fileSource_rewritesSameFile() throws Exception {
+        File file = File.createTempFile("exif", ".jpg");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(write(createExif()));
+            out.close();
+            ExifInterface exif = new ExifInterface();
+            exif.readExif(file.getPath());
+            assertTrue(exif.getTag(ExifInterface.TAG_MAKER_NOTE).isValueLazy());
+            // longer than the old value, so the file is written again, not patched
+            exif.setTag(exif.buildTag(ExifInterface.TAG_MAKE, "smewise camera2 device"));
+            exif.forceRewriteExif(file.getPath());
+
+            ExifInterface reread = new ExifInterface();
+            reread.readExif(file.getPath());
+            assertEquals("smewise camera2 device",
+                    reread.getTag(ExifInterface.TAG_MAKE).getValueAsString().trim());
+            assertArrayEquals(makerNote(),
+                    reread.getTag(ExifInterface.TAG_MAKER_NOTE).getValueAsBytes());
+            assertArrayEquals(thumbnail(), reread.getThumbnail());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void streamSource_copiesValues() throws Exception {
+        byte[] jpeg = write(createExif());
+        ExifInterface exif = new ExifInterface();
+        exif.readExif(new ByteArrayInputStream(jpeg));
+        assertFalse(exif.getTag(ExifInterface.TAG_MAKER_NOTE).isValueLazy());
+        assertArrayEquals(jpeg, write(exif));
+    }
+
+    private static ExifInterface createExif() {
+        ExifInterface exif = new ExifInterface();
+        exif.setTag(exif.buildTag(ExifInterface.TAG_MAKE, "smewise"));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_MAKER_NOTE, makerNote()));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_USER_COMMENT,
+                new byte[] {'A', 'S', 'C', 'I', 'I', 0, 0, 0, 'h', 'i'}));
+        exif.setCompressedThumbnail(thumbnail());
+        return exif;
+    }
+
+    private static byte[] makerNote() {
+        byte[] note = new byte[5000];
+        for (int i = 0; i < note.length; i++) {
+            note[i] = (byte) (i * 7);
+        }
+        return note;
+    }
+
+    private static byte[] thumbnail() {
+        byte[] thumb = new byte[3000];
+        thumb[0] = (byte) 0xff;
+        thumb[1] = (byte) 0xd8;
+        for (int i = 2; i < thumb.length - 2; i++) {
+            thumb[i] = (byte) (i * 13);
+        }
+        thumb[thumb.length - 2] = (byte) 0xff;
+        thumb[thumb.length - 1] = (byte) 0xd9;
+        return thumb;
+    }
+
+    private static byte[] write(ExifInterface exif) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exif.writeExif(JPEG, out);
+        return out.toByteArray();
+    }
+}
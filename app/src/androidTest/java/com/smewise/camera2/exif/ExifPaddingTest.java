@@ -0,0 +1,118 @@
+package com.smewise.camera2.exif;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * In place rewrite of tags into the padding reserved by the exif writer.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExifPaddingTest {
+    private static final byte[] EMPTY_JPEG = {(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xd9};
+    private static final byte[] THUMBNAIL = {(byte) 0xff, (byte) 0xd8, 1, 2, 3,
+            (byte) 0xff, (byte) 0xd9};
+    private static final int PADDING = 1024;
+
+    @Test
+    public void write_reservesPadding() throws Exception {
+        ExifInterface exif = createExif();
+        byte[] plain = write(exif, 0);
+        byte[] padded = write(exif, PADDING);
+        assertEquals(plain.length + PADDING + 12, padded.length);
+        // the padding is not added to the tags of the interface
+        assertEquals(null, exif.getTag(ExifInterface.TAG_PADDING));
+        ExifView view = ExifView.wrap(ByteBuffer.wrap(padded));
+        assertEquals(PADDING, view.getComponentCount(ExifInterface.TAG_PADDING));
+    }
+
+    @Test
+    public void rewrite_growsAndAddsTagsInPadding() throws Exception {
+        ExifInterface exif = createExif();
+        byte[] jpeg = write(exif, PADDING);
+        int length = jpeg.length;
+
+        List<ExifTag> tags = new ArrayList<ExifTag>();
+        // grown string, new IFD0 tag, new GPS IFD, new and resized exif tags
+        tags.add(exif.buildTag(ExifInterface.TAG_MAKE, "a longer maker name"));
+        tags.add(exif.buildTag(ExifInterface.TAG_ARTIST, "smewise"));
+        tags.add(exif.buildTag(ExifInterface.TAG_GPS_LATITUDE_REF, "N"));
+        tags.add(exif.buildTag(ExifInterface.TAG_GPS_LATITUDE, new Rational[] {
+                new Rational(31, 1), new Rational(14, 1), new Rational(0, 1)}));
+        tags.add(exif.buildTag(ExifInterface.TAG_USER_COMMENT, new byte[64]));
+        // same size, written in place
+        tags.add(exif.buildTag(ExifInterface.TAG_ORIENTATION, (short) 3));
+        assertTrue(exif.rewriteExif(ByteBuffer.wrap(jpeg), tags));
+        assertEquals(length, jpeg.length);
+
+        ExifInterface reread = new ExifInterface();
+        reread.readExif(jpeg);
+        assertEquals("a longer maker name",
+                reread.getTagStringValue(ExifInterface.TAG_MAKE).trim());
+        assertEquals("smewise", reread.getTagStringValue(ExifInterface.TAG_ARTIST).trim());
+        assertEquals(3, (int) reread.getTagIntValue(ExifInterface.TAG_ORIENTATION));
+        assertEquals(new Rational(14, 1),
+                reread.getTagRationalValues(ExifInterface.TAG_GPS_LATITUDE)[1]);
+        assertEquals(64, reread.getTag(ExifInterface.TAG_USER_COMMENT).getComponentCount());
+        // tags that are not rewritten and the thumbnail are kept
+        assertEquals(new Rational(1, 60),
+                reread.getTagRationalValue(ExifInterface.TAG_EXPOSURE_TIME));
+        assertEquals(4000, (int) reread.getTagIntValue(ExifInterface.TAG_IMAGE_WIDTH));
+        assertArrayEquals(THUMBNAIL, reread.getThumbnailBytes());
+        int padding = reread.getTag(ExifInterface.TAG_PADDING).getComponentCount();
+        assertTrue(padding > 4 && padding < PADDING);
+    }
+
+    @Test
+    public void rewrite_failsWithoutPadding() throws Exception {
+        ExifInterface exif = createExif();
+        byte[] jpeg = write(exif, 0);
+        byte[] copy = jpeg.clone();
+        List<ExifTag> tags = new ArrayList<ExifTag>();
+        tags.add(exif.buildTag(ExifInterface.TAG_MAKE, "a longer maker name"));
+        assertFalse(exif.rewriteExif(ByteBuffer.wrap(jpeg), tags));
+        assertArrayEquals(copy, jpeg);
+    }
+
+    @Test
+    public void rewrite_failsWhenPaddingIsTooSmall() throws Exception {
+        ExifInterface exif = createExif();
+        byte[] jpeg = write(exif, 32);
+        byte[] copy = jpeg.clone();
+        List<ExifTag> tags = new ArrayList<ExifTag>();
+        tags.add(exif.buildTag(ExifInterface.TAG_USER_COMMENT, new byte[64]));
+        // same size tag is not written either
+        tags.add(exif.buildTag(ExifInterface.TAG_ORIENTATION, (short) 3));
+        assertFalse(exif.rewriteExif(ByteBuffer.wrap(jpeg), tags));
+        assertArrayEquals(copy, jpeg);
+    }
+
+    private static ExifInterface createExif() {
+        ExifInterface exif = new ExifInterface();
+        exif.setTag(exif.buildTag(ExifInterface.TAG_IMAGE_WIDTH, 4000));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_ORIENTATION, (short) 6));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_MAKE, "smewise"));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_EXPOSURE_TIME, new Rational(1, 60)));
+        exif.setCompressedThumbnail(THUMBNAIL);
+        return exif;
+    }
+
+    private static byte[] write(ExifInterface exif, int padding) throws IOException {
+        exif.setExifPadding(padding);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exif.writeExif(EMPTY_JPEG, out);
+        return out.toByteArray();
+    }
+}
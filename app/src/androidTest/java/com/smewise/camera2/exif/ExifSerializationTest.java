@@ -0,0 +1,150 @@
+package com.smewise.camera2.exif;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Serialization of the exif header with the sorted tag storage of {@link IfdData}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExifSerializationTest {
+    private static final byte[] EMPTY_JPEG = {(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xd9};
+
+    /**
+     * Written by the HashMap based IfdData for the tags of {@link #baseTags}, they happen
+     * to be in hash order there too, so the output must not change.
+     */
+    private static final String PREVIOUS_OUTPUT = "ffd8ffe100ce4578696600004d4d002a0000000800"
+            + "05010000040000000100000fa0010100040000000100000bb8011200030000000100060000"
+            + "87690004000000010000004a882500040000000100000090000000000003829a0005000000"
+            + "010000007488270003000000010064000090030002000000140000007c0000000000000001"
+            + "0000003c323031383a30363a30312031323a30303a303000000200010002000000024e0000"
+            + "000002000a00000003000000ae000000000000001f000000010000000e0000000100000000"
+            + "00000001ffd90000";
+
+    @Test
+    public void output_matchesPreviousImplementation() throws Exception {
+        ExifInterface exif = new ExifInterface();
+        exif.setTags(baseTags(exif));
+        assertArrayEquals(hex(PREVIOUS_OUTPUT), write(exif));
+    }
+
+    @Test
+    public void output_doesNotDependOnInsertionOrder() throws Exception {
+        ExifInterface forward = new ExifInterface();
+        forward.setTags(allTags(forward));
+        ExifInterface backward = new ExifInterface();
+        List<ExifTag> tags = allTags(backward);
+        Collections.reverse(tags);
+        backward.setTags(tags);
+        assertArrayEquals(write(forward), write(backward));
+    }
+
+    @Test
+    public void rewrite_isByteIdentical() throws Exception {
+        ExifInterface exif = new ExifInterface();
+        exif.setTags(allTags(exif));
+        byte[] first = write(exif);
+        ExifInterface reread = new ExifInterface();
+        reread.readExif(first);
+        assertArrayEquals(first, write(reread));
+    }
+
+    @Test
+    public void ifdEntries_areSorted() throws Exception {
+        ExifInterface exif = new ExifInterface();
+        exif.setTags(allTags(exif));
+        exif.readExif(write(exif));
+        for (int ifdId : IfdData.getIfds()) {
+            List<ExifTag> tags = exif.getTagsForIfdId(ifdId);
+            if (tags == null) {
+                continue;
+            }
+            for (int i = 1; i < tags.size(); i++) {
+                assertTrue((tags.get(i - 1).getTagId() & 0xffff)
+                        < (tags.get(i).getTagId() & 0xffff));
+            }
+        }
+    }
+
+    @Test
+    public void ifdEquals_ignoresInsertionOrder() throws Exception {
+        ExifInterface exif = new ExifInterface();
+        IfdData forward = new IfdData(IfdId.TYPE_IFD_EXIF);
+        IfdData backward = new IfdData(IfdId.TYPE_IFD_EXIF);
+        List<ExifTag> tags = exifIfdTags(exif);
+        for (ExifTag tag : tags) {
+            forward.setTag(tag);
+        }
+        for (int i = tags.size() - 1; i >= 0; i--) {
+            backward.setTag(tags.get(i));
+        }
+        assertEquals(forward, backward);
+
+        backward.removeTag(ExifInterface.getTrueTagKey(ExifInterface.TAG_F_NUMBER));
+        assertFalse(forward.equals(backward));
+        backward.setTag(exif.buildTag(ExifInterface.TAG_F_NUMBER, new Rational(20, 10)));
+        assertFalse(forward.equals(backward));
+    }
+
+    private static List<ExifTag> baseTags(ExifInterface exif) {
+        List<ExifTag> tags = new ArrayList<ExifTag>();
+        tags.add(exif.buildTag(ExifInterface.TAG_IMAGE_WIDTH, 4000));
+        tags.add(exif.buildTag(ExifInterface.TAG_IMAGE_LENGTH, 3000));
+        tags.add(exif.buildTag(ExifInterface.TAG_ORIENTATION, (short) 6));
+        tags.add(exif.buildTag(ExifInterface.TAG_DATE_TIME_ORIGINAL, "2018:06:01 12:00:00"));
+        tags.add(exif.buildTag(ExifInterface.TAG_EXPOSURE_TIME, new Rational(1, 60)));
+        tags.add(exif.buildTag(ExifInterface.TAG_ISO_SPEED_RATINGS, 100));
+        tags.add(exif.buildTag(ExifInterface.TAG_GPS_LATITUDE_REF, "N"));
+        tags.add(exif.buildTag(ExifInterface.TAG_GPS_LATITUDE, new Rational[] {
+                new Rational(31, 1), new Rational(14, 1), new Rational(0, 1)}));
+        return tags;
+    }
+
+    private static List<ExifTag> exifIfdTags(ExifInterface exif) {
+        List<ExifTag> tags = new ArrayList<ExifTag>();
+        tags.add(exif.buildTag(ExifInterface.TAG_DATE_TIME_ORIGINAL, "2018:06:01 12:00:00"));
+        tags.add(exif.buildTag(ExifInterface.TAG_EXPOSURE_TIME, new Rational(1, 60)));
+        tags.add(exif.buildTag(ExifInterface.TAG_F_NUMBER, new Rational(18, 10)));
+        tags.add(exif.buildTag(ExifInterface.TAG_ISO_SPEED_RATINGS, 100));
+        tags.add(exif.buildTag(ExifInterface.TAG_FOCAL_LENGTH, new Rational(4, 1)));
+        tags.add(exif.buildTag(ExifInterface.TAG_WHITE_BALANCE, (short) 0));
+        return tags;
+    }
+
+    private static List<ExifTag> allTags(ExifInterface exif) {
+        List<ExifTag> tags = baseTags(exif);
+        tags.addAll(exifIfdTags(exif));
+        tags.add(exif.buildTag(ExifInterface.TAG_MAKE, "smewise"));
+        tags.add(exif.buildTag(ExifInterface.TAG_MODEL, "camera2"));
+        tags.add(exif.buildTag(ExifInterface.TAG_GPS_LONGITUDE_REF, "E"));
+        return tags;
+    }
+
+    private static byte[] write(ExifInterface exif) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exif.writeExif(EMPTY_JPEG, out);
+        return out.toByteArray();
+    }
+
+    private static byte[] hex(String s) {
+        byte[] data = new byte[s.length() / 2];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) Integer.parseInt(s.substring(i * 2, i * 2 + 2), 16);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,96 @@
+package com.smewise.camera2.exif;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Reading a subset of tags with {@link ExifTagSet}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExifTagSetTest {
+    private static final byte[] EMPTY_JPEG = {(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xd9};
+    private static final int MAKER_NOTE_SIZE = 30000;
+
+    @Test
+    public void tagSet_keysIncludeIfd() {
+        ExifTagSet tags = new ExifTagSet(ExifInterface.TAG_ORIENTATION,
+                ExifInterface.TAG_ORIENTATION, ExifInterface.TAG_GPS_LATITUDE);
+        assertEquals(2, tags.size());
+        assertTrue(tags.contains(ExifInterface.TAG_ORIENTATION));
+        assertTrue(tags.contains(ExifInterface.TAG_GPS_LATITUDE));
+        // same tag id in another IFD
+        assertFalse(tags.contains(ExifInterface.defineTag(IfdId.TYPE_IFD_1,
+                ExifInterface.getTrueTagKey(ExifInterface.TAG_ORIENTATION))));
+        assertFalse(tags.contains(ExifInterface.TAG_MAKE));
+    }
+
+    @Test
+    public void readExif_onlyRequestedTags() throws Exception {
+        byte[] jpeg = createJpeg();
+        ExifInterface exif = new ExifInterface();
+        exif.readExif(ByteBuffer.wrap(jpeg), new ExifTagSet(ExifInterface.TAG_ORIENTATION,
+                ExifInterface.TAG_MAKE, ExifInterface.TAG_EXPOSURE_TIME));
+        assertEquals(3, exif.getAllTags().size());
+        assertEquals(6, (int) exif.getTagIntValue(ExifInterface.TAG_ORIENTATION));
+        // the string is read with its terminating null
+        assertEquals("smewise", exif.getTagStringValue(ExifInterface.TAG_MAKE).trim());
+        assertEquals(new Rational(1, 60),
+                exif.getTagRationalValue(ExifInterface.TAG_EXPOSURE_TIME));
+        assertNull(exif.getTag(ExifInterface.TAG_MAKER_NOTE));
+        assertNull(exif.getTag(ExifInterface.TAG_IMAGE_WIDTH));
+        assertNull(exif.getThumbnailBytes());
+    }
+
+    @Test
+    public void readExif_withoutTagSetReadsAll() throws Exception {
+        ExifInterface exif = new ExifInterface();
+        exif.readExif(ByteBuffer.wrap(createJpeg()), null);
+        assertEquals(MAKER_NOTE_SIZE, exif.getTag(ExifInterface.TAG_MAKER_NOTE)
+                .getComponentCount());
+        assertTrue(exif.getThumbnailBytes() != null);
+    }
+
+    @Test
+    public void parser_stopsWhenAllTagsFound() throws Exception {
+        byte[] jpeg = createJpeg();
+        // SOI, APP1 header, TIFF header, tag count and the first tag of IFD0
+        int firstTagEnd = 2 + 4 + 6 + 8 + 2 + 12;
+        ByteBuffer truncated = ByteBuffer.wrap(jpeg, 0, firstTagEnd);
+        ExifInterface exif = new ExifInterface();
+        // image width is the first tag, nothing after it is read
+        exif.readExif(truncated, new ExifTagSet(ExifInterface.TAG_IMAGE_WIDTH));
+        assertEquals(4000, (int) exif.getTagIntValue(ExifInterface.TAG_IMAGE_WIDTH));
+        try {
+            exif.readExif(truncated, new ExifTagSet(ExifInterface.TAG_IMAGE_WIDTH,
+                    ExifInterface.TAG_ORIENTATION));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static byte[] createJpeg() throws IOException {
+        ExifInterface exif = new ExifInterface();
+        exif.setTag(exif.buildTag(ExifInterface.TAG_IMAGE_WIDTH, 4000));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_ORIENTATION, (short) 6));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_MAKE, "smewise"));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_EXPOSURE_TIME, new Rational(1, 60)));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_MAKER_NOTE, new byte[MAKER_NOTE_SIZE]));
+        exif.setCompressedThumbnail(EMPTY_JPEG);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exif.writeExif(EMPTY_JPEG, out);
+        return out.toByteArray();
+    }
+}
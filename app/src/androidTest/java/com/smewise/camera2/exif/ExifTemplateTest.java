@@ -0,0 +1,149 @@
+package com.smewise.camera2.exif;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Patching values of a serialized {@link ExifTemplate}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExifTemplateTest {
+    // SOI, COM, SOF0 and EOI
+    private static final byte[] JPEG = {(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xfe,
+            0, 4, 'h', 'i', (byte) 0xff, (byte) 0xc0, 0, 6, 1, 2, 3, 4, (byte) 0xff, (byte) 0xd9};
+    private static final int[] VARIABLE_TAGS = {
+            ExifInterface.TAG_ORIENTATION,
+            ExifInterface.TAG_DATE_TIME_ORIGINAL,
+            ExifInterface.TAG_EXPOSURE_TIME,
+            ExifInterface.TAG_ISO_SPEED_RATINGS,
+            ExifInterface.TAG_GPS_LATITUDE
+    };
+
+    @Test
+    public void patchedBlock_matchesFullWrite() throws Exception {
+        ExifInterface exif = createExif((short) 1, "2018:06:01 12:00:00", new Rational(1, 60),
+                100, 31);
+        ExifTemplate template = new ExifTemplate(exif, VARIABLE_TAGS);
+        for (int i = 0; i < 3; i++) {
+            byte[] block = template.newExifBlock();
+            assertTrue(template.setTagIntValue(block, ExifInterface.TAG_ORIENTATION, 0, 6));
+            assertTrue(template.setTagValue(block, ExifInterface.TAG_DATE_TIME_ORIGINAL,
+                    "2018:06:01 12:00:0" + i));
+            assertTrue(template.setTagRationalValue(block, ExifInterface.TAG_EXPOSURE_TIME, 0,
+                    new Rational(1, 120 + i)));
+            assertTrue(template.setTagIntValue(block, ExifInterface.TAG_ISO_SPEED_RATINGS, 0,
+                    200 + i));
+            assertTrue(template.setTagValue(block, ExifInterface.TAG_GPS_LATITUDE,
+                    latitude(40 + i)));
+
+            ExifInterface expected = createExif((short) 6, "2018:06:01 12:00:0" + i,
+                    new Rational(1, 120 + i), 200 + i, 40 + i);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            template.writeJpeg(block, JPEG, out);
+            assertArrayEquals(write(expected, JPEG), out.toByteArray());
+        }
+    }
+
+    @Test
+    public void writeJpeg_replacesExifSegment() throws Exception {
+        ExifInterface old = new ExifInterface();
+        old.setTag(old.buildTag(ExifInterface.TAG_MAKE, "old maker"));
+        byte[] jpeg = write(old, JPEG);
+
+        ExifInterface exif = createExif((short) 3, "2018:06:01 12:00:00", new Rational(1, 60),
+                100, 31);
+        ExifTemplate template = new ExifTemplate(exif, VARIABLE_TAGS);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        template.writeJpeg(template.newExifBlock(), jpeg, out);
+        assertArrayEquals(write(exif, JPEG), out.toByteArray());
+        assertEquals(JPEG.length + template.getBlockLength(), out.size());
+    }
+
+    @Test
+    public void setValue_rejectsOtherSizeOrTag() throws Exception {
+        ExifInterface exif = createExif((short) 1, "2018:06:01 12:00:00", new Rational(1, 60),
+                100, 31);
+        ExifTemplate template = new ExifTemplate(exif, VARIABLE_TAGS);
+        byte[] block = template.newExifBlock();
+        byte[] copy = block.clone();
+        assertFalse(template.setTagValue(block, ExifInterface.TAG_GPS_LATITUDE,
+                new Rational[] {new Rational(1, 1)}));
+        assertFalse(template.setTagIntValue(block, ExifInterface.TAG_MAKE, 0, 1));
+        assertFalse(template.setTagIntValue(block, ExifInterface.TAG_EXPOSURE_TIME, 0, 1));
+        assertFalse(template.setTagRationalValue(block, ExifInterface.TAG_ORIENTATION, 0,
+                new Rational(1, 1)));
+        assertArrayEquals(copy, block);
+    }
+
+    @Test
+    public void dateTimeStamp_matchesAddDateTimeStampTag() throws Exception {
+        TimeZone timezone = TimeZone.getTimeZone("GMT+08:00");
+        ExifInterface exif = new ExifInterface();
+        exif.setTag(exif.buildTag(ExifInterface.TAG_ORIENTATION, (short) 1));
+        exif.addDateTimeStampTag(ExifInterface.TAG_DATE_TIME, 0, timezone);
+        ExifTemplate template = new ExifTemplate(exif, ExifInterface.TAG_ORIENTATION,
+                ExifInterface.TAG_DATE_TIME);
+        long time = 1528000000000L;
+        byte[] block = template.newExifBlock();
+        assertTrue(template.setDateTimeStampValue(block, ExifInterface.TAG_DATE_TIME, time,
+                timezone));
+        assertFalse(template.setDateTimeStampValue(block, ExifInterface.TAG_ORIENTATION, time,
+                timezone));
+        assertFalse(template.setDateTimeStampValue(block,
+                ExifInterface.TAG_DATE_TIME_ORIGINAL, time, timezone));
+
+        ExifInterface expected = new ExifInterface();
+        expected.setTag(expected.buildTag(ExifInterface.TAG_ORIENTATION, (short) 1));
+        expected.addDateTimeStampTag(ExifInterface.TAG_DATE_TIME, time, timezone);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        template.writeJpeg(block, JPEG, out);
+        assertArrayEquals(write(expected, JPEG), out.toByteArray());
+    }
+
+    @Test
+    public void variableTag_mustBeSet() throws Exception {
+        ExifInterface exif = new ExifInterface();
+        exif.setTag(exif.buildTag(ExifInterface.TAG_MAKE, "smewise"));
+        try {
+            new ExifTemplate(exif, ExifInterface.TAG_ORIENTATION);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static ExifInterface createExif(short orientation, String date, Rational exposure,
+            int iso, int latitude) {
+        ExifInterface exif = new ExifInterface();
+        exif.setTag(exif.buildTag(ExifInterface.TAG_MAKE, "smewise"));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_MODEL, "camera2"));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_ORIENTATION, orientation));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_DATE_TIME_ORIGINAL, date));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_EXPOSURE_TIME, exposure));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_ISO_SPEED_RATINGS, iso));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_GPS_LATITUDE, latitude(latitude)));
+        return exif;
+    }
+
+    private static Rational[] latitude(int degrees) {
+        return new Rational[] {new Rational(degrees, 1), new Rational(14, 1), new Rational(0, 1)};
+    }
+
+    private static byte[] write(ExifInterface exif, byte[] jpeg) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exif.writeExif(jpeg, out);
+        return out.toByteArray();
+    }
+}
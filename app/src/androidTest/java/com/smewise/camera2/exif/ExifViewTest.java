@@ -0,0 +1,196 @@
+package com.smewise.camera2.exif;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reading tags and the exif thumbnail with {@link ExifView}. Broken entries are
+ * written by hand, the view returns the default value for them.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExifViewTest {
+    private static final byte[] EMPTY_JPEG = {(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xd9};
+    private static final byte[] THUMBNAIL = {(byte) 0xff, (byte) 0xd8, 1, 2, 3,
+            (byte) 0xff, (byte) 0xd9};
+
+    @Test
+    public void compressedThumbnail_isSliceOfIfd1Data() throws Exception {
+        ExifInterface exif = new ExifInterface();
+        exif.setTag(exif.buildTag(ExifInterface.TAG_ORIENTATION, (short) 6));
+        exif.setCompressedThumbnail(THUMBNAIL);
+        ByteBuffer jpeg = ByteBuffer.wrap(write(exif));
+        ExifView view = ExifView.wrap(jpeg);
+        ByteBuffer thumb = view.getCompressedThumbnail();
+        byte[] data = new byte[thumb.remaining()];
+        thumb.get(data);
+        assertArrayEquals(THUMBNAIL, data);
+        assertEquals(0, jpeg.position());
+    }
+
+    @Test
+    public void compressedThumbnail_nullWithoutIfd1() throws Exception {
+        ExifInterface exif = new ExifInterface();
+        exif.setTag(exif.buildTag(ExifInterface.TAG_ORIENTATION, (short) 6));
+        ExifView view = ExifView.wrap(ByteBuffer.wrap(write(exif)));
+        assertNull(view.getCompressedThumbnail());
+    }
+
+    @Test
+    public void getters_readAllIfds() throws Exception {
+        ExifInterface exif = new ExifInterface();
+        exif.setTag(exif.buildTag(ExifInterface.TAG_ORIENTATION, (short) 6));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_IMAGE_WIDTH, 4000L));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_MAKE, "smewise"));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_X_RESOLUTION, new Rational(72, 1)));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_ISO_SPEED_RATINGS, 400));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_EXPOSURE_TIME, new Rational(1, 50)));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_SHUTTER_SPEED_VALUE,
+                new Rational(-3, 2)));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_INTEROPERABILITY_INDEX, "R98"));
+        exif.addGpsTags(31.5, -121.25);
+        ExifView view = ExifView.wrap(ByteBuffer.wrap(write(exif)));
+
+        assertEquals(ByteOrder.BIG_ENDIAN, view.getByteOrder());
+        assertEquals(6, view.getTagIntValue(ExifInterface.TAG_ORIENTATION, 1));
+        assertEquals(4000L, view.getTagLongValue(ExifInterface.TAG_IMAGE_WIDTH, -1));
+        assertEquals("smewise", view.getTagStringValue(ExifInterface.TAG_MAKE));
+        assertEquals(72.0, view.getTagRationalValue(ExifInterface.TAG_X_RESOLUTION, 0, 0), 0);
+        // exif IFD, signed rational
+        assertEquals(400, view.getTagIntValue(ExifInterface.TAG_ISO_SPEED_RATINGS, -1));
+        assertEquals(0.02, view.getTagRationalValue(ExifInterface.TAG_EXPOSURE_TIME, 0, 0),
+                1e-9);
+        assertEquals(-1.5, view.getTagRationalValue(
+                ExifInterface.TAG_SHUTTER_SPEED_VALUE, 0, 0), 1e-9);
+        // gps and interoperability IFDs
+        assertEquals("N", view.getTagStringValue(ExifInterface.TAG_GPS_LATITUDE_REF));
+        assertEquals(3, view.getComponentCount(ExifInterface.TAG_GPS_LATITUDE));
+        assertEquals(31.0, view.getTagRationalValue(ExifInterface.TAG_GPS_LATITUDE, 0, 0),
+                1e-9);
+        assertEquals(30.0, view.getTagRationalValue(ExifInterface.TAG_GPS_LATITUDE, 1, 0),
+                1e-9);
+        assertEquals("R98", view.getTagStringValue(ExifInterface.TAG_INTEROPERABILITY_INDEX));
+
+        // missing tags, out of range components and other types give the default
+        assertFalse(view.hasTag(ExifInterface.TAG_MODEL));
+        assertEquals(-1, view.getDataType(ExifInterface.TAG_MODEL));
+        assertEquals(7, view.getTagIntValue(ExifInterface.TAG_MODEL, 7));
+        assertEquals(7, view.getTagIntValue(ExifInterface.TAG_ORIENTATION, 1, 7));
+        assertEquals(7, view.getTagIntValue(ExifInterface.TAG_MAKE, 7));
+        assertNull(view.getTagStringValue(ExifInterface.TAG_ORIENTATION));
+        assertEquals(5.0, view.getTagRationalValue(ExifInterface.TAG_ORIENTATION, 0, 5), 0);
+    }
+
+    @Test
+    public void littleEndianTiff_isRead() {
+        ExifView view = ExifView.wrap(tiff(ByteOrder.LITTLE_ENDIAN,
+                entry(ExifInterface.TAG_ORIENTATION, ExifTag.TYPE_UNSIGNED_SHORT, 1, 8),
+                entry(ExifInterface.TAG_IMAGE_WIDTH, ExifTag.TYPE_UNSIGNED_LONG, 3, DATA),
+                entry(ExifInterface.TAG_MAKE, ExifTag.TYPE_ASCII, 3, 0x00006968)));
+        assertEquals(ByteOrder.LITTLE_ENDIAN, view.getByteOrder());
+        assertEquals(8, view.getTagIntValue(ExifInterface.TAG_ORIENTATION, 1));
+        assertEquals(0x04030201L, view.getTagLongValue(ExifInterface.TAG_IMAGE_WIDTH, 0, -1));
+        assertEquals(0x0c0b0a09L, view.getTagLongValue(ExifInterface.TAG_IMAGE_WIDTH, 2, -1));
+        assertEquals("hi", view.getTagStringValue(ExifInterface.TAG_MAKE));
+    }
+
+    @Test
+    public void badEntries_giveDefaults() {
+        ExifView view = ExifView.wrap(tiff(ByteOrder.BIG_ENDIAN,
+                // unknown types
+                entry(ExifInterface.TAG_ORIENTATION, (short) 17, 1, 6),
+                entry(ExifInterface.TAG_IMAGE_WIDTH, (short) 0, 1, 6),
+                entry(ExifInterface.TAG_IMAGE_LENGTH, (short) 0xffff, 1, 6),
+                // value beyond the end and before the TIFF header
+                entry(ExifInterface.TAG_X_RESOLUTION, ExifTag.TYPE_UNSIGNED_RATIONAL, 1,
+                        0x7fff0000),
+                entry(ExifInterface.TAG_Y_RESOLUTION, ExifTag.TYPE_UNSIGNED_RATIONAL, 1, -8),
+                // negative count
+                entry(ExifInterface.TAG_MAKE, ExifTag.TYPE_ASCII, -1, DATA),
+                // exif IFD out of range
+                entry(ExifInterface.TAG_EXIF_IFD, ExifTag.TYPE_UNSIGNED_LONG, 1, 0x7fffffff)));
+        assertEquals(1, view.getTagIntValue(ExifInterface.TAG_ORIENTATION, 1));
+        assertEquals(1, view.getTagIntValue(ExifInterface.TAG_IMAGE_WIDTH, 1));
+        assertEquals(1, view.getTagIntValue(ExifInterface.TAG_IMAGE_LENGTH, 1));
+        assertEquals(0, view.getTagRationalValue(ExifInterface.TAG_X_RESOLUTION, 0, 0), 0);
+        assertEquals(0, view.getTagRationalValue(ExifInterface.TAG_Y_RESOLUTION, 0, 0), 0);
+        assertNull(view.getTagStringValue(ExifInterface.TAG_MAKE));
+        assertFalse(view.hasTag(ExifInterface.TAG_ISO_SPEED_RATINGS));
+        assertNull(view.getCompressedThumbnail());
+    }
+
+    @Test
+    public void truncatedIfd_findsOnlyWholeEntries() {
+        ByteBuffer buf = tiff(ByteOrder.BIG_ENDIAN,
+                entry(ExifInterface.TAG_ORIENTATION, ExifTag.TYPE_UNSIGNED_SHORT, 1, 3),
+                entry(ExifInterface.TAG_MAKE, ExifTag.TYPE_ASCII, 3, 0x68690000));
+        // the IFD claims more entries than there are, and the second one is cut
+        buf.putShort(8, (short) 40);
+        buf.limit(8 + 2 + 12 + 6);
+        ExifView view = ExifView.wrap(buf);
+        assertTrue(view.hasTag(ExifInterface.TAG_ORIENTATION));
+        assertEquals(3, view.getTagIntValue(ExifInterface.TAG_ORIENTATION, 1));
+        assertFalse(view.hasTag(ExifInterface.TAG_MAKE));
+        assertNull(view.getTagStringValue(ExifInterface.TAG_MAKE));
+        assertNull(view.getCompressedThumbnail());
+        // shorter than a TIFF header
+        buf.limit(6);
+        assertNull(ExifView.wrap(buf));
+    }
+
+    /** Offset of the values that don't fit in an entry of {@link #tiff}. */
+    private static final int DATA = 200;
+
+    private static int[] entry(int tag, short type, int count, int value) {
+        return new int[] {ExifInterface.getTrueTagKey(tag), type, count, value};
+    }
+
+    /**
+     * TIFF header and IFD0 with the entries, bytes 1..12 are at {@link #DATA}.
+     * A short value is written to the first two bytes of the value field.
+     */
+    private static ByteBuffer tiff(ByteOrder order, int[]... entries) {
+        ByteBuffer buf = ByteBuffer.allocate(DATA + 12).order(order);
+        buf.putShort(order == ByteOrder.BIG_ENDIAN ? (short) 0x4d4d : (short) 0x4949);
+        buf.putShort((short) 0x002a);
+        buf.putInt(8);
+        buf.putShort((short) entries.length);
+        for (int[] e : entries) {
+            buf.putShort((short) e[0]);
+            buf.putShort((short) e[1]);
+            buf.putInt(e[2]);
+            if (e[1] == ExifTag.TYPE_UNSIGNED_SHORT && e[2] == 1) {
+                buf.putShort((short) e[3]);
+                buf.putShort((short) 0);
+            } else {
+                buf.putInt(e[3]);
+            }
+        }
+        // no IFD1
+        buf.putInt(0);
+        buf.position(DATA);
+        for (int i = 1; i <= 12; i++) {
+            buf.put((byte) i);
+        }
+        buf.position(0);
+        return buf;
+    }
+
+    private static byte[] write(ExifInterface exif) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exif.writeExif(EMPTY_JPEG, out);
+        return out.toByteArray();
+    }
+}
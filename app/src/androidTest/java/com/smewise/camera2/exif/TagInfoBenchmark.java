@@ -0,0 +1,75 @@
+package com.smewise.camera2.exif;
+
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.util.SparseIntArray;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Micro benchmark of the per instance cost of tag definitions, needs the real
+ * SparseIntArray so it runs on device. Timings are only printed to logcat, they depend
+ * on the device and its load too much to assert on.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TagInfoBenchmark {
+    private static final String TAG = "TagInfoBenchmark";
+    private static final int WARM_UP = 200;
+    private static final int ROUNDS = 2000;
+
+    @Test
+    public void instanceConstruction() throws Exception {
+        // old behaviour, every instance built its own table on first use
+        long rebuild = measure(new Runnable() {
+            @Override
+            public void run() {
+                ExifInterface.createTagInfo();
+            }
+        });
+        // shared table, nothing is built per instance
+        long shared = measure(new Runnable() {
+            @Override
+            public void run() {
+                new ExifInterface().getTagInfo();
+            }
+        });
+        // instance that overrides a definition pays for one copy
+        long copyOnWrite = measure(new Runnable() {
+            @Override
+            public void run() {
+                new ExifInterface().removeTagDefinition(ExifInterface.TAG_MAKER_NOTE);
+            }
+        });
+        Log.i(TAG, "per instance ns, rebuild:" + rebuild + " shared:" + shared
+                + " copy on write:" + copyOnWrite);
+    }
+
+    @Test
+    public void overlayDoesNotLeak() throws Exception {
+        ExifInterface a = new ExifInterface();
+        ExifInterface b = new ExifInterface();
+        SparseIntArray shared = b.getTagInfo();
+        a.removeTagDefinition(ExifInterface.TAG_MAKE);
+        assertTrue(a.getTagInfo().get(ExifInterface.TAG_MAKE) == 0);
+        assertTrue(b.getTagInfo().get(ExifInterface.TAG_MAKE) != 0);
+        assertSame(shared, b.getTagInfo());
+        a.resetTagDefinitions();
+        assertSame(shared, a.getTagInfo());
+    }
+
+    private static long measure(Runnable r) {
+        for (int i = 0; i < WARM_UP; i++) {
+            r.run();
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < ROUNDS; i++) {
+            r.run();
+        }
+        return (SystemClock.elapsedRealtimeNanos() - start) / ROUNDS;
+    }
+}
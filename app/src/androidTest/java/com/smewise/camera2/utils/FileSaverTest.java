@@ -0,0 +1,174 @@
+package com.smewise.camera2.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.smewise.camera2.exif.ExifInterface;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Files written by {@link FileSaver} for jpeg pictures, with and without rotating the
+ * pixels. Nothing is added to MediaStore.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FileSaverTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    private FileSaver mSaver;
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mSaver = new FileSaver(InstrumentationRegistry.getTargetContext(),
+                new Handler(Looper.getMainLooper()), new CaptureBufferPool(0), null);
+        mFile = File.createTempFile("saver", ".jpg");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void metadataOnly_keepsJpegBytes() throws Exception {
+        byte[] jpeg = createJpeg(true);
+        int rotation = mSaver.writeJpegFile(CaptureBuffer.wrap(jpeg), WIDTH, HEIGHT,
+                mFile.getPath());
+        assertEquals(90, rotation);
+        assertArrayEquals(jpeg, readFile());
+    }
+
+    @Test
+    public void metadataOnly_addsOrientationTag() throws Exception {
+        byte[] jpeg = createJpeg(false);
+        int rotation = mSaver.writeJpegFile(CaptureBuffer.wrap(jpeg), WIDTH, HEIGHT,
+                mFile.getPath());
+        assertEquals(0, rotation);
+        byte[] file = readFile();
+        ExifInterface exif = new ExifInterface();
+        exif.readExif(file);
+        assertEquals(ExifInterface.Orientation.TOP_LEFT,
+                (short) exif.getTagIntValue(ExifInterface.TAG_ORIENTATION));
+        assertEquals(WIDTH, (int) exif.getTagIntValue(ExifInterface.TAG_IMAGE_WIDTH));
+        assertEquals(HEIGHT, (int) exif.getTagIntValue(ExifInterface.TAG_IMAGE_LENGTH));
+        // only the exif segment is added, tables and compressed data are copied
+        assertArrayEquals(fromFirstTable(jpeg), fromFirstTable(file));
+    }
+
+    @Test
+    public void rotatePixels_writesUprightJpeg() throws Exception {
+        mSaver.setRotateJpegPixels(true);
+        byte[] jpeg = createJpeg(true);
+        int rotation = mSaver.writeJpegFile(CaptureBuffer.wrap(jpeg), WIDTH, HEIGHT,
+                mFile.getPath());
+        assertEquals(0, rotation);
+        byte[] file = readFile();
+        ExifInterface exif = new ExifInterface();
+        exif.readExif(file);
+        assertEquals(ExifInterface.Orientation.TOP_LEFT,
+                (short) exif.getTagIntValue(ExifInterface.TAG_ORIENTATION));
+        assertEquals(HEIGHT, (int) exif.getTagIntValue(ExifInterface.TAG_IMAGE_WIDTH));
+        assertEquals(WIDTH, (int) exif.getTagIntValue(ExifInterface.TAG_IMAGE_LENGTH));
+
+        // the red top half of the source is on the right after a rotation by 90
+        Bitmap image = BitmapFactory.decodeByteArray(file, 0, file.length);
+        assertEquals(HEIGHT, image.getWidth());
+        assertEquals(WIDTH, image.getHeight());
+        assertTrue(Color.red(image.getPixel(HEIGHT - 8, WIDTH / 2)) > 200);
+        assertTrue(Color.blue(image.getPixel(8, WIDTH / 2)) > 200);
+        image.recycle();
+
+        // the thumbnail is rotated with the picture
+        byte[] thumb = exif.getThumbnail();
+        assertNotNull(thumb);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(thumb, 0, thumb.length, options);
+        assertEquals(HEIGHT / 4, options.outWidth);
+        assertEquals(WIDTH / 4, options.outHeight);
+    }
+
+    /**
+     * Red top half and blue bottom half, the exif has orientation RIGHT_TOP, the size
+     * and a thumbnail.
+     */
+    private static byte[] createJpeg(boolean withExif) throws IOException {
+        byte[] jpeg = compress(WIDTH, HEIGHT);
+        if (!withExif) {
+            return jpeg;
+        }
+        ExifInterface exif = new ExifInterface();
+        exif.setTag(exif.buildTag(ExifInterface.TAG_ORIENTATION,
+                ExifInterface.Orientation.RIGHT_TOP));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_IMAGE_WIDTH, WIDTH));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_IMAGE_LENGTH, HEIGHT));
+        exif.setCompressedThumbnail(compress(WIDTH / 4, HEIGHT / 4));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exif.writeExif(jpeg, out);
+        return out.toByteArray();
+    }
+
+    private static byte[] compress(int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                bitmap.setPixel(x, y, y < height / 2 ? Color.RED : Color.BLUE);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 95, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+
+    /**
+     * Bytes from the first DQT segment to the end.
+     */
+    private static byte[] fromFirstTable(byte[] jpeg) {
+        for (int i = 2; i + 1 < jpeg.length; i++) {
+            if ((jpeg[i] & 0xff) == 0xff && (jpeg[i + 1] & 0xff) == 0xdb) {
+                return Arrays.copyOfRange(jpeg, i, jpeg.length);
+            }
+        }
+        throw new AssertionError("no DQT segment");
+    }
+
+    private byte[] readFile() throws IOException {
+        byte[] data = new byte[(int) mFile.length()];
+        FileInputStream in = new FileInputStream(mFile);
+        try {
+            int n = 0;
+            while (n < data.length) {
+                int read = in.read(data, n, data.length - n);
+                if (read < 0) {
+                    break;
+                }
+                n += read;
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+}
@@ -0,0 +1,176 @@
+package com.smewise.camera2.utils;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.smewise.camera2.exif.ExifInterface;
+import com.smewise.camera2.exif.Rational;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Building and incremental updates of a {@link MediaIndex}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MediaIndexTest {
+    // SOI, SOF0 (40x30, one component) and EOI
+    private static final byte[] JPEG = {(byte) 0xff, (byte) 0xd8,
+            (byte) 0xff, (byte) 0xc0, 0, 11, 8, 0, 30, 0, 40, 1, 1, 0x11, 0,
+            (byte) 0xff, (byte) 0xd9};
+
+    private File mDir;
+    private File mIndexFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("media", "");
+        mDir.delete();
+        mDir.mkdirs();
+        mIndexFile = File.createTempFile("media", ".idx");
+        mIndexFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+        mIndexFile.delete();
+    }
+
+    @Test
+    public void update_readsExifOfNewFiles() throws Exception {
+        writeJpeg("IMG_1.jpg", createExif());
+        writeJpeg("IMG_2.jpg", null);
+        new File(mDir, "VID_1.mp4").createNewFile();
+
+        MediaIndex index = new MediaIndex(mDir, mIndexFile);
+        assertEquals(2, index.update());
+        assertEquals(2, index.getCount());
+        checkRecords(index);
+
+        // a new instance reads the same records from the index file
+        MediaIndex loaded = new MediaIndex(mDir, mIndexFile);
+        loaded.load();
+        checkRecords(loaded);
+        assertEquals(0, loaded.update());
+    }
+
+    @Test
+    public void update_readsOnlyChangedFiles() throws Exception {
+        writeJpeg("IMG_1.jpg", createExif());
+        writeJpeg("IMG_2.jpg", null);
+        writeJpeg("IMG_3.jpg", null);
+        MediaIndex index = new MediaIndex(mDir, mIndexFile);
+        assertEquals(3, index.update());
+
+        writeJpeg("IMG_2.jpg", createExif());
+        assertTrue(new File(mDir, "IMG_3.jpg").delete());
+        assertEquals(1, index.update());
+        assertEquals(2, index.getCount());
+        assertEquals(-1, index.indexOf("IMG_3.jpg"));
+        assertTrue(index.hasExif(index.indexOf("IMG_2.jpg")));
+
+        MediaIndex loaded = new MediaIndex(mDir, mIndexFile);
+        loaded.load();
+        assertEquals(2, loaded.getCount());
+        assertTrue(loaded.hasExif(loaded.indexOf("IMG_2.jpg")));
+    }
+
+    @Test
+    public void getLatest_usesDateTakenOrModifiedTime() throws Exception {
+        MediaIndex index = new MediaIndex(mDir, mIndexFile);
+        index.update();
+        assertEquals(-1, index.getLatest());
+
+        // taken in 2018
+        writeJpeg("IMG_2.jpg", createExif());
+        // no date taken, modified now
+        writeJpeg("IMG_1.jpg", null);
+        index.update();
+        assertEquals(index.indexOf("IMG_1.jpg"), index.getLatest());
+        assertTrue(new File(mDir, "IMG_1.jpg").delete());
+        index.update();
+        assertEquals(index.indexOf("IMG_2.jpg"), index.getLatest());
+    }
+
+    @Test
+    public void load_ignoresInvalidFile() throws Exception {
+        FileOutputStream out = new FileOutputStream(mIndexFile);
+        out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+        out.close();
+        MediaIndex index = new MediaIndex(mDir, mIndexFile);
+        index.load();
+        assertEquals(0, index.getCount());
+    }
+
+    private void checkRecords(MediaIndex index) {
+        int exif = index.indexOf("IMG_1.jpg");
+        assertEquals(0, exif);
+        assertTrue(index.hasExif(exif));
+        assertEquals(40, index.getWidth(exif));
+        assertEquals(30, index.getHeight(exif));
+        assertEquals(90, index.getOrientation(exif));
+        assertEquals(200, index.getIsoSpeed(exif));
+        assertEquals(1.0 / 50, index.getExposureTime(exif), 1e-9);
+        Calendar date = Calendar.getInstance();
+        date.clear();
+        date.set(2018, Calendar.JUNE, 1, 12, 30, 15);
+        assertEquals(date.getTimeInMillis(), index.getDateTaken(exif));
+        assertTrue(index.hasLocation(exif));
+        assertEquals(31.5, index.getLatitude(exif), 1e-9);
+        assertEquals(-121.25, index.getLongitude(exif), 1e-9);
+        File file = new File(mDir, "IMG_1.jpg");
+        assertEquals(file.length(), index.getFileSize(exif));
+        assertEquals(file.lastModified(), index.getLastModified(exif));
+
+        int plain = index.indexOf("IMG_2.jpg");
+        assertEquals(1, plain);
+        assertFalse(index.hasExif(plain));
+        assertFalse(index.hasLocation(plain));
+        assertEquals(40, index.getWidth(plain));
+        assertEquals(0, index.getDateTaken(plain));
+    }
+
+    private static ExifInterface createExif() {
+        ExifInterface exif = new ExifInterface();
+        exif.setTag(exif.buildTag(ExifInterface.TAG_ORIENTATION,
+                ExifInterface.getOrientationValueForRotation(90)));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_DATE_TIME_ORIGINAL, "2018:06:01 12:30:15"));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_ISO_SPEED_RATINGS, 200));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_EXPOSURE_TIME, new Rational(1, 50)));
+        exif.addGpsTags(31.5, -121.25);
+        return exif;
+    }
+
+    private void writeJpeg(String name, ExifInterface exif) throws IOException {
+        File file = new File(mDir, name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            if (exif != null) {
+                exif.writeExif(JPEG, out);
+            } else {
+                out.write(JPEG);
+            }
+        } finally {
+            out.close();
+        }
+        // the modified time may not change within the file system resolution
+        file.setLastModified(file.lastModified() + 2000);
+    }
+}
@@ -16,6 +16,15 @@ public class Config {
     public static final String IMAGE_FORMAT = String.valueOf(ImageFormat.JPEG);
     public static final String NULL_VALUE = "SharedPreference No Value";
     public static final int THUMB_SIZE = 128;
+    // released capture buffers kept for the next shots, a few full size yuv frames
+    public static final long CAPTURE_POOL_BYTES = 64L * 1024 * 1024;
+    // images of the still ImageReader held at once during a burst
+    public static final int MAX_STILL_IMAGES = 4;
+    // recent full size frames kept for zero shutter lag
+    public static final int ZSL_RING_SIZE = 4;
+    // camera callbacks on their own threads, false runs them on the main looper to
+    // compare jank and callback latency with the old behaviour
+    public static final boolean USE_CAMERA_THREAD = true;
 
     public static String getTag(Class<?> cls) {
         return TAG_PREFIX + cls.getSimpleName();
@@ -1,8 +1,25 @@
 package com.smewise.camera2.callback;
 
+import com.smewise.camera2.utils.CaptureBuffer;
+import com.smewise.camera2.utils.CaptureTimeline;
 
 public abstract class RequestCallback {
-    public void onDataBack(byte[] data, int width, int height) {
+    /**
+     * @param data picture data, released by the receiver when it is no longer used
+     * @param sequence number of the picture in the session, counts up across bursts
+     * @param timeline stages of the capture so far, null if it is not traced
+     */
+    public void onDataBack(CaptureBuffer data, int width, int height, int sequence,
+            CaptureTimeline timeline) {
+        // default empty implementation
+    }
+
+    /**
+     * All pictures of a capture are back, a single shot is a burst of one.
+     * @param count pictures received
+     * @param fps pictures per second from the first to the last one, 0 for one picture
+     */
+    public void onBurstComplete(int count, float fps) {
         // default empty implementation
     }
 
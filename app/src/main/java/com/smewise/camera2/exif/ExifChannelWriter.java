@@ -0,0 +1,84 @@
+package com.smewise.camera2.exif;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a jpeg with a new exif header to a {@link FileChannel}. The marker
+ * segments of the source are scanned once, the header and slices of the source
+ * are written with one gathering write, so the compressed data is not copied.
+ * The output is the same as of {@link ExifOutputStream}: APP1 segments before
+ * the frame header are dropped, everything else is kept.
+ */
+class ExifChannelWriter {
+
+    private ExifChannelWriter() {
+    }
+
+    /**
+     * Writes SOI, header and the source without SOI and its APP1 segments.
+     *
+     * @param header the APP1 segment to write.
+     * @param jpeg the source from its position to its limit, it is not changed.
+     */
+    static void write(ByteBuffer header, ByteBuffer jpeg, FileChannel channel)
+            throws IOException {
+        List<ByteBuffer> parts = getSegmentsWithoutApp1(jpeg);
+        ByteBuffer[] buffers = new ByteBuffer[parts.size() + 2];
+        buffers[0] = slice(jpeg, jpeg.position(), 2);
+        buffers[1] = header.duplicate();
+        for (int i = 0; i < parts.size(); i++) {
+            buffers[i + 2] = parts.get(i);
+        }
+        ByteBuffer last = buffers[buffers.length - 1];
+        while (last.hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+    /**
+     * Returns the parts of a jpeg to write after SOI when its exif header is
+     * replaced, they are slices of jpeg. Adjacent segments are in one slice.
+     *
+     * @throws IOException if jpeg does not start with SOI.
+     */
+    static List<ByteBuffer> getSegmentsWithoutApp1(ByteBuffer jpeg) throws IOException {
+        return getSegmentsWithoutApp1(jpeg, JpegSegmentIndex.from(jpeg));
+    }
+
+    /**
+     * Same as {@link #getSegmentsWithoutApp1(ByteBuffer)} with the index of
+     * jpeg made before.
+     */
+    static List<ByteBuffer> getSegmentsWithoutApp1(ByteBuffer jpeg, JpegSegmentIndex index) {
+        int start = jpeg.position();
+        List<ByteBuffer> parts = new ArrayList<ByteBuffer>();
+        int keepStart = start + 2;
+        for (int i = 0; i < index.getSegmentCount(); i++) {
+            short marker = index.getMarker(i);
+            if (JpegHeader.isSofMarker(marker)
+                    || marker == JpegHeader.SOS || marker == JpegHeader.EOI) {
+                break;
+            }
+            if (marker == JpegHeader.APP1) {
+                int pos = start + (int) index.getOffset(i);
+                if (pos > keepStart) {
+                    parts.add(slice(jpeg, keepStart, pos - keepStart));
+                }
+                keepStart = (int) Math.min(start + index.getEnd(i), jpeg.limit());
+            }
+        }
+        parts.add(slice(jpeg, keepStart, jpeg.limit() - keepStart));
+        return parts;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buf, int position, int length) {
+        ByteBuffer part = buf.duplicate();
+        part.limit(position + length);
+        part.position(position);
+        return part.slice();
+    }
+}
@@ -19,6 +19,7 @@ package com.smewise.camera2.exif;
 import android.util.Log;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -44,8 +45,9 @@ class ExifData {
     };
 
     private final IfdData[] mIfdDatas = new IfdData[IfdId.TYPE_IFD_COUNT];
-    private byte[] mThumbnail;
-    private ArrayList<byte[]> mStripBytes = new ArrayList<byte[]>();
+    // parsed thumbnail and strips may reference the source until they are read
+    private ByteBuffer mThumbnail;
+    private ArrayList<ByteBuffer> mStripBytes = new ArrayList<ByteBuffer>();
     private final ByteOrder mByteOrder;
 
     ExifData(ByteOrder order) {
@@ -59,14 +61,33 @@ class ExifData {
      * @see #hasCompressedThumbnail()
      */
     protected byte[] getCompressedThumbnail() {
-        return mThumbnail;
+        if (mThumbnail == null) {
+            return null;
+        }
+        mThumbnail = load(mThumbnail);
+        return mThumbnail.array();
+    }
+
+    /**
+     * Gets the compressed thumbnail without copying it, or null.
+     */
+    protected ByteBuffer getCompressedThumbnailBuffer() {
+        return mThumbnail == null ? null : mThumbnail.duplicate();
     }
 
     /**
      * Sets the compressed thumbnail.
      */
     protected void setCompressedThumbnail(byte[] thumbnail) {
-        mThumbnail = thumbnail;
+        mThumbnail = thumbnail == null ? null : ByteBuffer.wrap(thumbnail);
+    }
+
+    /**
+     * Sets the compressed thumbnail from the position to the limit of
+     * thumbnail, it is not copied.
+     */
+    protected void setCompressedThumbnail(ByteBuffer thumbnail) {
+        mThumbnail = thumbnail.slice();
     }
 
     /**
@@ -80,6 +101,17 @@ class ExifData {
      * Adds an uncompressed strip.
      */
     protected void setStripBytes(int index, byte[] strip) {
+        setStripBytes(index, strip == null ? null : ByteBuffer.wrap(strip));
+    }
+
+    /**
+     * Adds an uncompressed strip from the position to the limit of strip, it
+     * is not copied.
+     */
+    protected void setStripBytes(int index, ByteBuffer strip) {
+        if (strip != null) {
+            strip = strip.slice();
+        }
         if (index < mStripBytes.size()) {
             mStripBytes.set(index, strip);
         } else {
@@ -103,7 +135,57 @@ class ExifData {
      * @exceptions #IndexOutOfBoundException
      */
     protected byte[] getStrip(int index) {
-        return mStripBytes.get(index);
+        ByteBuffer strip = mStripBytes.get(index);
+        if (strip == null) {
+            return null;
+        }
+        strip = load(strip);
+        mStripBytes.set(index, strip);
+        return strip.array();
+    }
+
+    /**
+     * Gets the strip at the specified index without copying it.
+     */
+    protected ByteBuffer getStripBuffer(int index) {
+        ByteBuffer strip = mStripBytes.get(index);
+        return strip == null ? null : strip.duplicate();
+    }
+
+    /**
+     * Copies the values mapped from a file, call it before a file is opened
+     * for writing, it may be the source.
+     */
+    protected void loadMappedValues() {
+        for (IfdData d : mIfdDatas) {
+            if (d != null) {
+                for (ExifTag tag : d.getAllTags()) {
+                    tag.loadMappedValue();
+                }
+            }
+        }
+        if (mThumbnail != null && mThumbnail.isDirect()) {
+            mThumbnail = load(mThumbnail);
+        }
+        for (int i = 0; i < mStripBytes.size(); i++) {
+            ByteBuffer strip = mStripBytes.get(i);
+            if (strip != null && strip.isDirect()) {
+                mStripBytes.set(i, load(strip));
+            }
+        }
+    }
+
+    /**
+     * Returns buf if it wraps a whole array, or a copy of it that does.
+     */
+    private static ByteBuffer load(ByteBuffer buf) {
+        if (buf.hasArray() && !buf.isReadOnly() && buf.arrayOffset() == 0
+                && buf.remaining() == buf.array().length) {
+            return buf;
+        }
+        byte[] copy = new byte[buf.remaining()];
+        buf.duplicate().get(copy);
+        return ByteBuffer.wrap(copy);
     }
 
     /**
@@ -325,11 +407,11 @@ class ExifData {
             ExifData data = (ExifData) obj;
             if (data.mByteOrder != mByteOrder ||
                     data.mStripBytes.size() != mStripBytes.size() ||
-                    !Arrays.equals(data.mThumbnail, mThumbnail)) {
+                    !equals(data.mThumbnail, mThumbnail)) {
                 return false;
             }
             for (int i = 0; i < mStripBytes.size(); i++) {
-                if (!Arrays.equals(data.mStripBytes.get(i), mStripBytes.get(i))) {
+                if (!equals(data.mStripBytes.get(i), mStripBytes.get(i))) {
                     return false;
                 }
             }
@@ -345,4 +427,7 @@ class ExifData {
         return false;
     }
 
+    private static boolean equals(ByteBuffer a, ByteBuffer b) {
+        return a == null ? b == null : a.equals(b);
+    }
 }
@@ -0,0 +1,391 @@
+package com.smewise.camera2.exif;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.charset.Charset;
+
+/**
+ * Positional input of {@link ExifParser}. Values are decoded from a window
+ * buffer with absolute gets in the current byte order. For a {@link ByteBuffer}
+ * the window is the buffer itself, a {@link FileChannel} is read at the seek
+ * position, so only the bytes that are parsed are touched. An
+ * {@link InputStream} can only move forward and skips the bytes in between.
+ */
+abstract class ExifInput {
+    private static final int WINDOW_SIZE = 8 * 1024;
+
+    protected ByteBuffer mWindow;
+    // source position of index 0 of mWindow
+    protected long mWindowStart;
+    private long mPosition;
+
+    protected ExifInput(ByteBuffer window) {
+        mWindow = window;
+        mWindow.order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Input over the remaining bytes of buffer, position 0 is the current
+     * position of buffer. The buffer itself is not changed.
+     */
+    static ExifInput from(ByteBuffer buffer) {
+        return new BufferInput(buffer.slice());
+    }
+
+    static ExifInput from(FileChannel channel) {
+        return new ChannelInput(channel);
+    }
+
+    static ExifInput from(InputStream stream) {
+        return new StreamInput(stream);
+    }
+
+    /**
+     * Load the window at position, at least n bytes are needed unless the end
+     * of input is reached.
+     *
+     * @return false if there are less than n bytes left.
+     */
+    protected abstract boolean fill(long position, int n) throws IOException;
+
+    /**
+     * Read bytes that are not in the window, used for large blocks.
+     *
+     * @return the number of bytes read, -1 at the end of input.
+     */
+    protected abstract int readAt(long position, byte[] b, int off, int len)
+            throws IOException;
+
+    /**
+     * Returns the next n bytes as a read-only buffer that shares the source
+     * and moves past them. A file is mapped, so the buffer stays valid after
+     * the channel is closed.
+     *
+     * @return the buffer, or null if the source can not be shared; the
+     *         position is not changed then.
+     */
+    ByteBuffer readSlice(int n) throws IOException {
+        ByteBuffer slice = sliceAt(mPosition, n);
+        if (slice != null) {
+            mPosition += n;
+        }
+        return slice;
+    }
+
+    protected ByteBuffer sliceAt(long position, int n) throws IOException {
+        return null;
+    }
+
+    long position() {
+        return mPosition;
+    }
+
+    /**
+     * Move to position, reading fails later if it is beyond the end of input.
+     */
+    void seek(long position) throws IOException {
+        if (position < 0) {
+            throw new IOException("Invalid position " + position);
+        }
+        mPosition = position;
+    }
+
+    void skip(long n) throws IOException {
+        seek(mPosition + n);
+    }
+
+    void setByteOrder(ByteOrder order) {
+        mWindow.order(order);
+    }
+
+    ByteOrder getByteOrder() {
+        return mWindow.order();
+    }
+
+    /**
+     * Reads up to len bytes.
+     *
+     * @return the number of bytes read, -1 at the end of input.
+     */
+    int read(byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            long index = mPosition - mWindowStart;
+            if (index < 0 || index >= mWindow.limit()) {
+                int remaining = len - total;
+                if (remaining >= WINDOW_SIZE) {
+                    int r = readAt(mPosition, b, off + total, remaining);
+                    if (r <= 0) {
+                        break;
+                    }
+                    mPosition += r;
+                    total += r;
+                    continue;
+                }
+                if (!fill(mPosition, 1)) {
+                    break;
+                }
+                index = mPosition - mWindowStart;
+            }
+            int n = (int) Math.min(len - total, mWindow.limit() - index);
+            ByteBuffer src = mWindow.duplicate();
+            src.position((int) index);
+            src.get(b, off + total, n);
+            mPosition += n;
+            total += n;
+        }
+        return total == 0 && len > 0 ? -1 : total;
+    }
+
+    void readOrThrow(byte[] b) throws IOException {
+        if (read(b, 0, b.length) != b.length) {
+            throw new EOFException();
+        }
+    }
+
+    short readShort() throws IOException {
+        return mWindow.getShort(require(2));
+    }
+
+    int readUnsignedShort() throws IOException {
+        return readShort() & 0xffff;
+    }
+
+    int readInt() throws IOException {
+        return mWindow.getInt(require(4));
+    }
+
+    long readUnsignedInt() throws IOException {
+        return readInt() & 0xffffffffL;
+    }
+
+    String readString(int n, Charset charset) throws IOException {
+        byte buf[] = new byte[n];
+        readOrThrow(buf);
+        return new String(buf, charset);
+    }
+
+    void readUnsignedShorts(int[] dst) throws IOException {
+        int step = Math.max(1, mWindow.capacity() / 2);
+        for (int i = 0; i < dst.length; ) {
+            int n = Math.min(dst.length - i, step);
+            int index = require(n * 2);
+            for (int end = i + n; i < end; i++, index += 2) {
+                dst[i] = mWindow.getShort(index) & 0xffff;
+            }
+        }
+    }
+
+    void readInts(int[] dst) throws IOException {
+        int step = Math.max(1, mWindow.capacity() / 4);
+        for (int i = 0; i < dst.length; ) {
+            int n = Math.min(dst.length - i, step);
+            int index = require(n * 4);
+            for (int end = i + n; i < end; i++, index += 4) {
+                dst[i] = mWindow.getInt(index);
+            }
+        }
+    }
+
+    void readInts(long[] dst) throws IOException {
+        int step = Math.max(1, mWindow.capacity() / 4);
+        for (int i = 0; i < dst.length; ) {
+            int n = Math.min(dst.length - i, step);
+            int index = require(n * 4);
+            for (int end = i + n; i < end; i++, index += 4) {
+                dst[i] = mWindow.getInt(index);
+            }
+        }
+    }
+
+    void readUnsignedInts(long[] dst) throws IOException {
+        int step = Math.max(1, mWindow.capacity() / 4);
+        for (int i = 0; i < dst.length; ) {
+            int n = Math.min(dst.length - i, step);
+            int index = require(n * 4);
+            for (int end = i + n; i < end; i++, index += 4) {
+                dst[i] = mWindow.getInt(index) & 0xffffffffL;
+            }
+        }
+    }
+
+    /**
+     * Makes n bytes at the current position available in the window and moves
+     * past them.
+     *
+     * @return the window index of the first byte.
+     */
+    private int require(int n) throws IOException {
+        long index = mPosition - mWindowStart;
+        if (index < 0 || index + n > mWindow.limit()) {
+            if (!fill(mPosition, n)) {
+                throw new EOFException();
+            }
+            index = mPosition - mWindowStart;
+        }
+        mPosition += n;
+        return (int) index;
+    }
+
+    private static class BufferInput extends ExifInput {
+
+        BufferInput(ByteBuffer buffer) {
+            super(buffer);
+        }
+
+        @Override
+        protected boolean fill(long position, int n) {
+            return false;
+        }
+
+        @Override
+        protected int readAt(long position, byte[] b, int off, int len) {
+            return -1;
+        }
+
+        @Override
+        protected ByteBuffer sliceAt(long position, int n) throws IOException {
+            if (position + n > mWindow.limit()) {
+                throw new EOFException();
+            }
+            ByteBuffer slice = mWindow.asReadOnlyBuffer();
+            slice.limit((int) position + n);
+            slice.position((int) position);
+            return slice.slice();
+        }
+    }
+
+    private static class ChannelInput extends ExifInput {
+        private final FileChannel mChannel;
+
+        ChannelInput(FileChannel channel) {
+            super(ByteBuffer.allocate(WINDOW_SIZE));
+            mChannel = channel;
+            mWindow.limit(0);
+        }
+
+        @Override
+        protected boolean fill(long position, int n) throws IOException {
+            mWindow.clear();
+            mWindowStart = position;
+            while (mWindow.position() < n) {
+                if (mChannel.read(mWindow, position + mWindow.position()) < 0) {
+                    break;
+                }
+            }
+            mWindow.flip();
+            return mWindow.limit() >= n;
+        }
+
+        @Override
+        protected int readAt(long position, byte[] b, int off, int len) throws IOException {
+            ByteBuffer dst = ByteBuffer.wrap(b, off, len);
+            while (dst.hasRemaining()) {
+                if (mChannel.read(dst, position + dst.position() - off) < 0) {
+                    break;
+                }
+            }
+            int r = dst.position() - off;
+            return r == 0 ? -1 : r;
+        }
+
+        @Override
+        protected ByteBuffer sliceAt(long position, int n) throws IOException {
+            if (position + n > mChannel.size()) {
+                throw new EOFException();
+            }
+            try {
+                return mChannel.map(FileChannel.MapMode.READ_ONLY, position, n);
+            } catch (NonReadableChannelException e) {
+                return null;
+            }
+        }
+    }
+
+    private static class StreamInput extends ExifInput {
+        private final InputStream mStream;
+        // source position of the next byte of mStream
+        private long mStreamPosition;
+
+        StreamInput(InputStream stream) {
+            super(ByteBuffer.allocate(WINDOW_SIZE));
+            mStream = stream;
+            mWindow.limit(0);
+        }
+
+        @Override
+        void seek(long position) throws IOException {
+            if (position < mWindowStart) {
+                throw new IOException("Can not seek backward to " + position);
+            }
+            super.seek(position);
+        }
+
+        @Override
+        protected boolean fill(long position, int n) throws IOException {
+            if (position < mWindowStart) {
+                throw new IOException("Can not seek backward to " + position);
+            }
+            // keep the bytes after position, skip the stream to it otherwise
+            int keep = (int) Math.max(0, mStreamPosition - position);
+            if (keep > 0) {
+                byte[] array = mWindow.array();
+                System.arraycopy(array, mWindow.limit() - keep, array, 0, keep);
+            } else {
+                skipStream(position - mStreamPosition);
+            }
+            mWindowStart = position;
+            mWindow.limit(mWindow.capacity());
+            mWindow.position(keep);
+            while (mWindow.position() < n) {
+                int r = mStream.read(mWindow.array(), mWindow.position(), mWindow.remaining());
+                if (r < 0) {
+                    break;
+                }
+                mWindow.position(mWindow.position() + r);
+                mStreamPosition += r;
+            }
+            mWindow.flip();
+            return mWindow.limit() >= n;
+        }
+
+        @Override
+        protected int readAt(long position, byte[] b, int off, int len) throws IOException {
+            if (position > mStreamPosition) {
+                skipStream(position - mStreamPosition);
+            }
+            int total = 0;
+            while (total < len) {
+                int r = mStream.read(b, off + total, len - total);
+                if (r < 0) {
+                    break;
+                }
+                total += r;
+            }
+            mStreamPosition += total;
+            // the window is behind the stream now
+            mWindowStart = mStreamPosition;
+            mWindow.limit(0);
+            return total == 0 ? -1 : total;
+        }
+
+        private void skipStream(long n) throws IOException {
+            while (n > 0) {
+                long skipped = mStream.skip(n);
+                if (skipped <= 0) {
+                    if (mStream.read() < 0) {
+                        throw new EOFException();
+                    }
+                    skipped = 1;
+                }
+                n -= skipped;
+                mStreamPosition += skipped;
+            }
+        }
+    }
+}
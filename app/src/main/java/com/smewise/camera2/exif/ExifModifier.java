@@ -18,17 +18,24 @@ package com.smewise.camera2.exif;
 
 import android.util.Log;
 
-import java.io.Closeable;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 class ExifModifier {
     public static final String TAG = "ExifModifier";
     public static final boolean DEBUG = false;
+    private static final int IFD_ENTRY_SIZE = 12;
+    // IFDs in the order they are placed into the padding
+    private static final int[] IFDS = {
+            IfdId.TYPE_IFD_0, IfdId.TYPE_IFD_EXIF, IfdId.TYPE_IFD_INTEROPERABILITY,
+            IfdId.TYPE_IFD_GPS, IfdId.TYPE_IFD_1
+    };
     private final ByteBuffer mByteBuffer;
     private final ExifData mTagToModified;
     private final List<TagOffset> mTagOffsets = new ArrayList<TagOffset>();
@@ -45,22 +52,32 @@ class ExifModifier {
         }
     }
 
+    /**
+     * An entry of a moved IFD, either copied from the old IFD or a new tag.
+     */
+    private static class IfdEntry {
+        final int mTagId;
+        // absolute position of the old entry, -1 for a new tag
+        final int mPosition;
+        final ExifTag mTag;
+
+        IfdEntry(int tagId, int position, ExifTag tag) {
+            mTagId = tagId;
+            mPosition = position;
+            mTag = tag;
+        }
+    }
+
     protected ExifModifier(ByteBuffer byteBuffer, ExifInterface iRef) throws IOException,
             ExifInvalidFormatException {
         mByteBuffer = byteBuffer;
         mOffsetBase = byteBuffer.position();
         mInterface = iRef;
-        InputStream is = null;
-        try {
-            is = new ByteBufferInputStream(byteBuffer);
-            // Do not require any IFD;
-            ExifParser parser = ExifParser.parse(is, mInterface);
-            mTagToModified = new ExifData(parser.getByteOrder());
-            mOffsetBase += parser.getTiffStartPosition();
-            mByteBuffer.position(0);
-        } finally {
-            ExifInterface.closeSilently(is);
-        }
+        // Do not require any IFD;
+        ExifParser parser = ExifParser.parse(byteBuffer, 0, mInterface);
+        mTagToModified = new ExifData(parser.getByteOrder());
+        mOffsetBase += parser.getTiffStartPosition();
+        mByteBuffer.position(0);
     }
 
     protected ByteOrder getByteOrder() {
@@ -68,76 +85,398 @@ class ExifModifier {
     }
 
     protected boolean commit() throws IOException, ExifInvalidFormatException {
-        InputStream is = null;
-        try {
-            is = new ByteBufferInputStream(mByteBuffer);
-            int flag = 0;
-            IfdData[] ifdDatas = new IfdData[] {
-                    mTagToModified.getIfdData(IfdId.TYPE_IFD_0),
-                    mTagToModified.getIfdData(IfdId.TYPE_IFD_1),
-                    mTagToModified.getIfdData(IfdId.TYPE_IFD_EXIF),
-                    mTagToModified.getIfdData(IfdId.TYPE_IFD_INTEROPERABILITY),
-                    mTagToModified.getIfdData(IfdId.TYPE_IFD_GPS)
-            };
-
-            if (ifdDatas[IfdId.TYPE_IFD_0] != null) {
-                flag |= ExifParser.OPTION_IFD_0;
-            }
-            if (ifdDatas[IfdId.TYPE_IFD_1] != null) {
-                flag |= ExifParser.OPTION_IFD_1;
-            }
-            if (ifdDatas[IfdId.TYPE_IFD_EXIF] != null) {
-                flag |= ExifParser.OPTION_IFD_EXIF;
-            }
-            if (ifdDatas[IfdId.TYPE_IFD_GPS] != null) {
-                flag |= ExifParser.OPTION_IFD_GPS;
-            }
-            if (ifdDatas[IfdId.TYPE_IFD_INTEROPERABILITY] != null) {
-                flag |= ExifParser.OPTION_IFD_INTEROPERABILITY;
-            }
-
-            ExifParser parser = ExifParser.parse(is, flag, mInterface);
-            int event = parser.next();
-            IfdData currIfd = null;
-            while (event != ExifParser.EVENT_END) {
-                switch (event) {
-                    case ExifParser.EVENT_START_OF_IFD:
-                        currIfd = ifdDatas[parser.getCurrentIfd()];
-                        if (currIfd == null) {
+        int flag = 0;
+        IfdData[] ifdDatas = new IfdData[] {
+                mTagToModified.getIfdData(IfdId.TYPE_IFD_0),
+                mTagToModified.getIfdData(IfdId.TYPE_IFD_1),
+                mTagToModified.getIfdData(IfdId.TYPE_IFD_EXIF),
+                mTagToModified.getIfdData(IfdId.TYPE_IFD_INTEROPERABILITY),
+                mTagToModified.getIfdData(IfdId.TYPE_IFD_GPS)
+        };
+
+        if (ifdDatas[IfdId.TYPE_IFD_0] != null) {
+            flag |= ExifParser.OPTION_IFD_0;
+        }
+        if (ifdDatas[IfdId.TYPE_IFD_1] != null) {
+            flag |= ExifParser.OPTION_IFD_1;
+        }
+        if (ifdDatas[IfdId.TYPE_IFD_EXIF] != null) {
+            flag |= ExifParser.OPTION_IFD_EXIF;
+        }
+        if (ifdDatas[IfdId.TYPE_IFD_GPS] != null) {
+            flag |= ExifParser.OPTION_IFD_GPS;
+        }
+        if (ifdDatas[IfdId.TYPE_IFD_INTEROPERABILITY] != null) {
+            flag |= ExifParser.OPTION_IFD_INTEROPERABILITY;
+        }
+
+        ExifParser parser = ExifParser.parse(mByteBuffer, flag, mInterface);
+        int event = parser.next();
+        IfdData currIfd = null;
+        while (event != ExifParser.EVENT_END) {
+            switch (event) {
+                case ExifParser.EVENT_START_OF_IFD:
+                    currIfd = ifdDatas[parser.getCurrentIfd()];
+                    if (currIfd == null) {
+                        parser.skipRemainingTagsInCurrentIfd();
+                    }
+                    break;
+                case ExifParser.EVENT_NEW_TAG:
+                    ExifTag oldTag = parser.getTag();
+                    ExifTag newTag = currIfd.getTag(oldTag.getTagId());
+                    // a tag of another size stays in currIfd
+                    if (newTag != null
+                            && newTag.getComponentCount() == oldTag.getComponentCount()
+                            && newTag.getDataType() == oldTag.getDataType()) {
+                        mTagOffsets.add(new TagOffset(newTag, oldTag.getOffset()));
+                        currIfd.removeTag(oldTag.getTagId());
+                        if (currIfd.getTagCount() == 0) {
                             parser.skipRemainingTagsInCurrentIfd();
                         }
-                        break;
-                    case ExifParser.EVENT_NEW_TAG:
-                        ExifTag oldTag = parser.getTag();
-                        ExifTag newTag = currIfd.getTag(oldTag.getTagId());
-                        if (newTag != null) {
-                            if (newTag.getComponentCount() != oldTag.getComponentCount()
-                                    || newTag.getDataType() != oldTag.getDataType()) {
-                                return false;
-                            } else {
-                                mTagOffsets.add(new TagOffset(newTag, oldTag.getOffset()));
-                                currIfd.removeTag(oldTag.getTagId());
-                                if (currIfd.getTagCount() == 0) {
-                                    parser.skipRemainingTagsInCurrentIfd();
-                                }
-                            }
-                        }
-                        break;
-                }
-                event = parser.next();
+                    }
+                    break;
+            }
+            event = parser.next();
+        }
+        // tags left in ifdDatas are written into the padding
+        mByteBuffer.order(getByteOrder());
+        boolean[] moved = new boolean[IfdId.TYPE_IFD_COUNT];
+        boolean needMove = false;
+        for (int i = 0; i < ifdDatas.length; i++) {
+            moved[i] = ifdDatas[i] != null && ifdDatas[i].getTagCount() > 0;
+            needMove |= moved[i];
+        }
+        if (!needMove) {
+            modify();
+            return true;
+        }
+        return moveToPadding(ifdDatas, moved);
+    }
+
+    /**
+     * Writes the IFDs with new or resized tags into the padding, the old IFDs
+     * are left unused. Entries of existing tags are copied, their values
+     * outside the IFD stay where they are. Pointers to the moved IFDs and the
+     * padding tag are updated in place.
+     *
+     * @return false if there is no padding or it is too small, nothing is
+     *         changed then.
+     */
+    private boolean moveToPadding(IfdData[] ifdDatas, boolean[] moved) throws IOException {
+        int[] oldOffsets = new int[IfdId.TYPE_IFD_COUNT];
+        oldOffsets[IfdId.TYPE_IFD_0] = mByteBuffer.getInt(mOffsetBase + 4);
+        if (!isValidIfd(oldOffsets[IfdId.TYPE_IFD_0])) {
+            return false;
+        }
+        oldOffsets[IfdId.TYPE_IFD_EXIF] = getPointer(oldOffsets[IfdId.TYPE_IFD_0],
+                ExifInterface.TAG_EXIF_IFD);
+        oldOffsets[IfdId.TYPE_IFD_GPS] = getPointer(oldOffsets[IfdId.TYPE_IFD_0],
+                ExifInterface.TAG_GPS_IFD);
+        oldOffsets[IfdId.TYPE_IFD_INTEROPERABILITY] = getPointer(
+                oldOffsets[IfdId.TYPE_IFD_EXIF], ExifInterface.TAG_INTEROPERABILITY_IFD);
+        oldOffsets[IfdId.TYPE_IFD_1] = mByteBuffer.getInt(getNextIfdPosition(
+                oldOffsets[IfdId.TYPE_IFD_0]));
+        for (int ifd : IFDS) {
+            if (oldOffsets[ifd] != 0 && !isValidIfd(oldOffsets[ifd])) {
+                return false;
             }
-            for (IfdData ifd : ifdDatas) {
-                if (ifd != null && ifd.getTagCount() > 0) {
+        }
+
+        int paddingEntry = findEntry(oldOffsets[IfdId.TYPE_IFD_0],
+                ExifInterface.getTrueTagKey(ExifInterface.TAG_PADDING));
+        if (paddingEntry < 0
+                || mByteBuffer.getShort(paddingEntry + 2) != ExifTag.TYPE_UNDEFINED) {
+            return false;
+        }
+        int paddingSize = mByteBuffer.getInt(paddingEntry + 4);
+        int paddingStart = mByteBuffer.getInt(paddingEntry + 8);
+        if (paddingSize <= 4 || paddingStart < 0
+                || (long) mOffsetBase + paddingStart + paddingSize > mByteBuffer.limit()) {
+            return false;
+        }
+
+        // a new IFD needs a new pointer in its parent
+        if (moved[IfdId.TYPE_IFD_INTEROPERABILITY]
+                && oldOffsets[IfdId.TYPE_IFD_INTEROPERABILITY] == 0) {
+            moved[IfdId.TYPE_IFD_EXIF] = true;
+        }
+        if ((moved[IfdId.TYPE_IFD_EXIF] && oldOffsets[IfdId.TYPE_IFD_EXIF] == 0)
+                || (moved[IfdId.TYPE_IFD_GPS] && oldOffsets[IfdId.TYPE_IFD_GPS] == 0)) {
+            moved[IfdId.TYPE_IFD_0] = true;
+        }
+
+        // place the IFDs and then the values that do not fit in the entries
+        List<List<IfdEntry>> entries = new ArrayList<List<IfdEntry>>();
+        int[] newOffsets = new int[IfdId.TYPE_IFD_COUNT];
+        int end = paddingStart;
+        for (int ifd : IFDS) {
+            List<IfdEntry> list = null;
+            if (moved[ifd]) {
+                list = buildEntries(ifd, oldOffsets, moved, ifdDatas[ifd]);
+                if (list == null) {
                     return false;
                 }
+                newOffsets[ifd] = end;
+                end += 2 + list.size() * IFD_ENTRY_SIZE + 4;
             }
-            modify();
-        } finally {
-            ExifInterface.closeSilently(is);
+            entries.add(list);
+        }
+        for (List<IfdEntry> list : entries) {
+            if (list == null) {
+                continue;
+            }
+            for (IfdEntry entry : list) {
+                if (entry.mTag != null && entry.mTag.getDataSize() > 4) {
+                    entry.mTag.setOffset(end);
+                    // values start at word boundaries
+                    end += (entry.mTag.getDataSize() + 1) & ~1;
+                }
+            }
+        }
+        int used = end - paddingStart;
+        // the rest of the padding must stay outside of the entry
+        if (paddingSize - used <= 4) {
+            return false;
+        }
+
+        // pointers from the moved parents
+        setPointer(entries, IfdId.TYPE_IFD_0, ExifInterface.TAG_EXIF_IFD,
+                newOffsets[IfdId.TYPE_IFD_EXIF]);
+        setPointer(entries, IfdId.TYPE_IFD_0, ExifInterface.TAG_GPS_IFD,
+                newOffsets[IfdId.TYPE_IFD_GPS]);
+        setPointer(entries, IfdId.TYPE_IFD_EXIF, ExifInterface.TAG_INTEROPERABILITY_IFD,
+                newOffsets[IfdId.TYPE_IFD_INTEROPERABILITY]);
+
+        // values of the same size first, they may be copied with the entries
+        modify();
+        for (int i = 0; i < IFDS.length; i++) {
+            int ifd = IFDS[i];
+            if (!moved[ifd]) {
+                continue;
+            }
+            int next = oldOffsets[ifd] == 0 ? 0
+                    : mByteBuffer.getInt(getNextIfdPosition(oldOffsets[ifd]));
+            if (ifd == IfdId.TYPE_IFD_0 && moved[IfdId.TYPE_IFD_1]) {
+                next = newOffsets[IfdId.TYPE_IFD_1];
+            }
+            writeIfd(entries.get(i), newOffsets[ifd], next);
+        }
+
+        // pointers from the parents that are not moved
+        if (moved[IfdId.TYPE_IFD_0]) {
+            mByteBuffer.putInt(mOffsetBase + 4, newOffsets[IfdId.TYPE_IFD_0]);
+        } else {
+            if (moved[IfdId.TYPE_IFD_EXIF]) {
+                patchPointer(oldOffsets[IfdId.TYPE_IFD_0], ExifInterface.TAG_EXIF_IFD,
+                        newOffsets[IfdId.TYPE_IFD_EXIF]);
+            }
+            if (moved[IfdId.TYPE_IFD_GPS]) {
+                patchPointer(oldOffsets[IfdId.TYPE_IFD_0], ExifInterface.TAG_GPS_IFD,
+                        newOffsets[IfdId.TYPE_IFD_GPS]);
+            }
+            if (moved[IfdId.TYPE_IFD_1]) {
+                mByteBuffer.putInt(getNextIfdPosition(oldOffsets[IfdId.TYPE_IFD_0]),
+                        newOffsets[IfdId.TYPE_IFD_1]);
+            }
+        }
+        if (moved[IfdId.TYPE_IFD_INTEROPERABILITY] && !moved[IfdId.TYPE_IFD_EXIF]) {
+            patchPointer(oldOffsets[IfdId.TYPE_IFD_EXIF],
+                    ExifInterface.TAG_INTEROPERABILITY_IFD,
+                    newOffsets[IfdId.TYPE_IFD_INTEROPERABILITY]);
+        }
+
+        // shrink the padding, its entry is in the current IFD0
+        int ifd0 = moved[IfdId.TYPE_IFD_0] ? newOffsets[IfdId.TYPE_IFD_0]
+                : oldOffsets[IfdId.TYPE_IFD_0];
+        paddingEntry = findEntry(ifd0, ExifInterface.getTrueTagKey(ExifInterface.TAG_PADDING));
+        mByteBuffer.putInt(paddingEntry + 4, paddingSize - used);
+        mByteBuffer.putInt(paddingEntry + 8, paddingStart + used);
+        if (DEBUG) {
+            Log.v(TAG, "moved tags into padding, used " + used + " of " + paddingSize);
         }
         return true;
     }
 
+    /**
+     * Merges the old entries of an IFD with the tags left in ifdData, sorted by
+     * tag ID.
+     *
+     * @return the entries or null if a new IFD pointer can not be built.
+     */
+    private List<IfdEntry> buildEntries(int ifd, int[] oldOffsets, boolean[] moved,
+            IfdData ifdData) {
+        List<IfdEntry> list = new ArrayList<IfdEntry>();
+        if (ifdData != null) {
+            for (ExifTag tag : ifdData.getAllTags()) {
+                list.add(new IfdEntry(tag.getTagId() & 0xffff, -1, tag));
+            }
+        }
+        if (ifd == IfdId.TYPE_IFD_0) {
+            if (!addPointerTag(list, ExifInterface.TAG_EXIF_IFD,
+                    moved[IfdId.TYPE_IFD_EXIF])
+                    || !addPointerTag(list, ExifInterface.TAG_GPS_IFD,
+                    moved[IfdId.TYPE_IFD_GPS])) {
+                return null;
+            }
+        } else if (ifd == IfdId.TYPE_IFD_EXIF) {
+            if (!addPointerTag(list, ExifInterface.TAG_INTEROPERABILITY_IFD,
+                    moved[IfdId.TYPE_IFD_INTEROPERABILITY])) {
+                return null;
+            }
+        }
+        int offset = oldOffsets[ifd];
+        if (offset != 0) {
+            int pos = mOffsetBase + offset;
+            int count = mByteBuffer.getShort(pos) & 0xffff;
+            for (int i = 0; i < count; i++) {
+                int entry = pos + 2 + i * IFD_ENTRY_SIZE;
+                int tagId = mByteBuffer.getShort(entry) & 0xffff;
+                if (!containsTagId(list, tagId)) {
+                    list.add(new IfdEntry(tagId, entry, null));
+                }
+            }
+        }
+        Collections.sort(list, new Comparator<IfdEntry>() {
+            @Override
+            public int compare(IfdEntry lhs, IfdEntry rhs) {
+                return lhs.mTagId - rhs.mTagId;
+            }
+        });
+        return list;
+    }
+
+    private boolean addPointerTag(List<IfdEntry> list, int pointerTag, boolean moved) {
+        if (!moved) {
+            return true;
+        }
+        ExifTag tag = mInterface.buildUninitializedTag(pointerTag);
+        if (tag == null) {
+            return false;
+        }
+        list.add(new IfdEntry(tag.getTagId() & 0xffff, -1, tag));
+        return true;
+    }
+
+    private static boolean containsTagId(List<IfdEntry> list, int tagId) {
+        for (IfdEntry entry : list) {
+            if (entry.mTagId == tagId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void setPointer(List<List<IfdEntry>> entries, int parent, int pointerTag,
+            int offset) {
+        List<IfdEntry> list = entries.get(indexOfIfd(parent));
+        if (list == null || offset == 0) {
+            return;
+        }
+        int tagId = ExifInterface.getTrueTagKey(pointerTag) & 0xffff;
+        for (IfdEntry entry : list) {
+            if (entry.mTagId == tagId && entry.mTag != null) {
+                entry.mTag.setValue(offset);
+            }
+        }
+    }
+
+    private static int indexOfIfd(int ifd) {
+        for (int i = 0; i < IFDS.length; i++) {
+            if (IFDS[i] == ifd) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void writeIfd(List<IfdEntry> entries, int offset, int next) throws IOException {
+        int pos = mOffsetBase + offset;
+        mByteBuffer.putShort(pos, (short) entries.size());
+        pos += 2;
+        for (IfdEntry entry : entries) {
+            if (entry.mTag == null) {
+                for (int i = 0; i < IFD_ENTRY_SIZE; i++) {
+                    mByteBuffer.put(pos + i, mByteBuffer.get(entry.mPosition + i));
+                }
+            } else {
+                ExifTag tag = entry.mTag;
+                mByteBuffer.putShort(pos, tag.getTagId());
+                mByteBuffer.putShort(pos + 2, tag.getDataType());
+                mByteBuffer.putInt(pos + 4, tag.getComponentCount());
+                byte[] value = getTagValueBytes(tag);
+                if (tag.getDataSize() > 4) {
+                    mByteBuffer.putInt(pos + 8, tag.getOffset());
+                    putBytes(mOffsetBase + tag.getOffset(), value);
+                } else {
+                    mByteBuffer.putInt(pos + 8, 0);
+                    putBytes(pos + 8, value);
+                }
+            }
+            pos += IFD_ENTRY_SIZE;
+        }
+        mByteBuffer.putInt(pos, next);
+    }
+
+    private byte[] getTagValueBytes(ExifTag tag) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(tag.getDataSize());
+        OrderedDataOutputStream out = new OrderedDataOutputStream(bytes);
+        out.setByteOrder(getByteOrder());
+        ExifOutputStream.writeTagValue(tag, out);
+        return bytes.toByteArray();
+    }
+
+    private void putBytes(int position, byte[] value) {
+        for (int i = 0; i < value.length; i++) {
+            mByteBuffer.put(position + i, value[i]);
+        }
+    }
+
+    private boolean isValidIfd(int offset) {
+        if (offset <= 0) {
+            return false;
+        }
+        long pos = (long) mOffsetBase + offset;
+        if (pos + 2 > mByteBuffer.limit()) {
+            return false;
+        }
+        int count = mByteBuffer.getShort((int) pos) & 0xffff;
+        return pos + 2 + (long) count * IFD_ENTRY_SIZE + 4 <= mByteBuffer.limit();
+    }
+
+    private int getNextIfdPosition(int offset) {
+        int pos = mOffsetBase + offset;
+        return pos + 2 + (mByteBuffer.getShort(pos) & 0xffff) * IFD_ENTRY_SIZE;
+    }
+
+    /**
+     * Returns the absolute position of the entry of tagId in the IFD at offset,
+     * or -1.
+     */
+    private int findEntry(int offset, short tagId) {
+        if (offset <= 0) {
+            return -1;
+        }
+        int pos = mOffsetBase + offset;
+        int count = mByteBuffer.getShort(pos) & 0xffff;
+        for (int i = 0; i < count; i++) {
+            int entry = pos + 2 + i * IFD_ENTRY_SIZE;
+            if (mByteBuffer.getShort(entry) == tagId) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private int getPointer(int ifdOffset, int pointerTag) {
+        int entry = findEntry(ifdOffset, ExifInterface.getTrueTagKey(pointerTag));
+        return entry < 0 ? 0 : mByteBuffer.getInt(entry + 8);
+    }
+
+    private void patchPointer(int ifdOffset, int pointerTag, int offset) {
+        int entry = findEntry(ifdOffset, ExifInterface.getTrueTagKey(pointerTag));
+        mByteBuffer.putInt(entry + 8, offset);
+    }
+
     private void modify() {
         mByteBuffer.order(getByteOrder());
         for (TagOffset tagOffset : mTagOffsets) {
@@ -171,16 +510,13 @@ class ExifModifier {
             case ExifTag.TYPE_RATIONAL:
             case ExifTag.TYPE_UNSIGNED_RATIONAL:
                 for (int i = 0, n = tag.getComponentCount(); i < n; i++) {
-                    Rational v = tag.getRational(i);
-                    mByteBuffer.putInt((int) v.getNumerator());
-                    mByteBuffer.putInt((int) v.getDenominator());
+                    mByteBuffer.putInt((int) tag.getRationalNumerator(i));
+                    mByteBuffer.putInt((int) tag.getRationalDenominator(i));
                 }
                 break;
             case ExifTag.TYPE_UNDEFINED:
             case ExifTag.TYPE_UNSIGNED_BYTE:
-                buf = new byte[tag.getComponentCount()];
-                tag.getBytes(buf);
-                mByteBuffer.put(buf);
+                mByteBuffer.put(tag.getBytesBuffer());
                 break;
             case ExifTag.TYPE_UNSIGNED_SHORT:
                 for (int i = 0, n = tag.getComponentCount(); i < n; i++) {
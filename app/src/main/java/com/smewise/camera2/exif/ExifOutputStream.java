@@ -76,6 +76,7 @@ class ExifOutputStream extends FilterOutputStream {
     private static final int MAX_EXIF_SIZE = 65535;
 
     private ExifData mExifData;
+    private int mPadding;
     private int mState = STATE_SOI;
     private int mByteToSkip;
     private int mByteToCopy;
@@ -96,6 +97,14 @@ class ExifOutputStream extends FilterOutputStream {
         mExifData = exifData;
     }
 
+    /**
+     * Sets the number of bytes reserved in IFD0 with a padding tag, 0 keeps
+     * the padding tag of the ExifData if there is one.
+     */
+    protected void setPadding(int padding) {
+        mPadding = padding;
+    }
+
     /**
      * Gets the Exif header to be written into the JPEF file.
      */
@@ -216,7 +225,23 @@ class ExifOutputStream extends FilterOutputStream {
         }
         ArrayList<ExifTag> nullTags = stripNullValueTags(mExifData);
         createRequiredIfdAndTag();
+        IfdData ifd0 = mExifData.getIfdData(IfdId.TYPE_IFD_0);
+        short paddingId = ExifInterface.getTrueTagKey(ExifInterface.TAG_PADDING);
+        ExifTag oldPadding = ifd0.getTag(paddingId);
+        if (mPadding > 0) {
+            setPaddingTag(ifd0, mPadding);
+        }
         int exifSize = calculateAllOffset();
+        if (exifSize + 8 > MAX_EXIF_SIZE && mPadding > 0) {
+            // the padding is optional, use the space that is left
+            int padding = mPadding - (exifSize + 8 - MAX_EXIF_SIZE);
+            if (padding > 4) {
+                setPaddingTag(ifd0, padding);
+            } else {
+                ifd0.removeTag(paddingId);
+            }
+            exifSize = calculateAllOffset();
+        }
         if (exifSize + 8 > MAX_EXIF_SIZE) {
             throw new IOException("Exif header is too large (>64Kb)");
         }
@@ -236,18 +261,35 @@ class ExifOutputStream extends FilterOutputStream {
         dataOutputStream.writeInt(8);
         writeAllTags(dataOutputStream);
         writeThumbnail(dataOutputStream);
+        if (mPadding > 0) {
+            // the padding is not part of the tags of mExifData
+            if (oldPadding != null) {
+                ifd0.setTag(oldPadding);
+            } else {
+                ifd0.removeTag(paddingId);
+            }
+        }
         if (nullTags == null) return;
         for (ExifTag t : nullTags) {
             mExifData.addTag(t);
         }
     }
 
+    private void setPaddingTag(IfdData ifd0, int size) {
+        ExifTag padding = mInterface.buildUninitializedTag(ExifInterface.TAG_PADDING);
+        if (padding == null) {
+            return;
+        }
+        padding.setValue(new byte[size]);
+        ifd0.setTag(padding);
+    }
+
     private ArrayList<ExifTag> stripNullValueTags(ExifData data) {
         ArrayList<ExifTag> nullTags = new ArrayList<ExifTag>();
         List<ExifTag> listTags = data.getAllTags();
         if (listTags == null) return null;
         for(ExifTag t : listTags) {
-            if (t.getValue() == null && !ExifInterface.isOffsetTag(t.getTagId())) {
+            if (!t.hasValue() && !ExifInterface.isOffsetTag(t.getTagId())) {
                 data.removeTag(t.getTagId(), t.getIfd());
                 nullTags.add(t);
             }
@@ -257,10 +299,10 @@ class ExifOutputStream extends FilterOutputStream {
 
     private void writeThumbnail(OrderedDataOutputStream dataOutputStream) throws IOException {
         if (mExifData.hasCompressedThumbnail()) {
-            dataOutputStream.write(mExifData.getCompressedThumbnail());
+            dataOutputStream.write(mExifData.getCompressedThumbnailBuffer());
         } else if (mExifData.hasUncompressedStrip()) {
             for (int i = 0; i < mExifData.getStripCount(); i++) {
-                dataOutputStream.write(mExifData.getStrip(i));
+                dataOutputStream.write(mExifData.getStripBuffer(i));
             }
         }
     }
@@ -391,7 +433,7 @@ class ExifOutputStream extends FilterOutputStream {
                         + ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH);
             }
 
-            lengthTag.setValue(mExifData.getCompressedThumbnail().length);
+            lengthTag.setValue(mExifData.getCompressedThumbnailBuffer().remaining());
             ifd1.setTag(lengthTag);
 
             // Get rid of tags for uncompressed if they exist.
@@ -416,7 +458,7 @@ class ExifOutputStream extends FilterOutputStream {
             }
             long[] lengths = new long[stripCount];
             for (int i = 0; i < mExifData.getStripCount(); i++) {
-                lengths[i] = mExifData.getStrip(i).length;
+                lengths[i] = mExifData.getStripBuffer(i).remaining();
             }
             lengthTag.setValue(lengths);
             ifd1.setTag(offsetTag);
@@ -467,13 +509,13 @@ class ExifOutputStream extends FilterOutputStream {
         if (mExifData.hasCompressedThumbnail()) {
             ifd1.getTag(ExifInterface.getTrueTagKey(ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT))
                     .setValue(offset);
-            offset += mExifData.getCompressedThumbnail().length;
+            offset += mExifData.getCompressedThumbnailBuffer().remaining();
         } else if (mExifData.hasUncompressedStrip()) {
             int stripCount = mExifData.getStripCount();
             long[] offsets = new long[stripCount];
             for (int i = 0; i < mExifData.getStripCount(); i++) {
                 offsets[i] = offset;
-                offset += mExifData.getStrip(i).length;
+                offset += mExifData.getStripBuffer(i).remaining();
             }
             ifd1.getTag(ExifInterface.getTrueTagKey(ExifInterface.TAG_STRIP_OFFSETS)).setValue(
                     offsets);
@@ -503,14 +545,13 @@ class ExifOutputStream extends FilterOutputStream {
             case ExifTag.TYPE_RATIONAL:
             case ExifTag.TYPE_UNSIGNED_RATIONAL:
                 for (int i = 0, n = tag.getComponentCount(); i < n; i++) {
-                    dataOutputStream.writeRational(tag.getRational(i));
+                    dataOutputStream.writeInt((int) tag.getRationalNumerator(i));
+                    dataOutputStream.writeInt((int) tag.getRationalDenominator(i));
                 }
                 break;
             case ExifTag.TYPE_UNDEFINED:
             case ExifTag.TYPE_UNSIGNED_BYTE:
-                buf = new byte[tag.getComponentCount()];
-                tag.getBytes(buf);
-                dataOutputStream.write(buf);
+                dataOutputStream.write(tag.getBytesBuffer());
                 break;
             case ExifTag.TYPE_UNSIGNED_SHORT:
                 for (int i = 0, n = tag.getComponentCount(); i < n; i++) {
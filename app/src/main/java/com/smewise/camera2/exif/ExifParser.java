@@ -18,17 +18,30 @@ package com.smewise.camera2.exif;
 
 import android.util.Log;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.util.Map.Entry;
 import java.util.TreeMap;
 
 /**
  * This class provides a low-level EXIF parsing API. Given a JPEG format
- * InputStream, the caller can request which IFD's to read via
- * {@link #parse(InputStream, int)} with given options.
+ * InputStream, ByteBuffer or FileChannel, the caller can request which IFD's
+ * to read via {@link #parse(InputStream, int)} with given options.
+ * <p>
+ * Offsets of IFDs, values and thumbnails are visited in ascending order. A
+ * ByteBuffer or FileChannel is read positionally, so the parser seeks to them
+ * directly and only reads the bytes it needs. An InputStream has to skip the
+ * bytes in between.
+ * <p>
+ * The options select whole IFDs. To read only a few tags pass an
+ * {@link ExifTagSet}, only those tags are emitted, values of other tags are
+ * not fetched and {@link #EVENT_END} is returned as soon as all of them are
+ * found, unless the thumbnail is requested too.
  * <p>
  * Below is an example of getting EXIF data from IFD 0 and EXIF IFD using the
  * parser.
@@ -127,6 +140,11 @@ class ExifParser {
      * Option bit to request to parse thumbnail.
      */
     public static final int OPTION_THUMBNAIL = 1 << 5;
+    /**
+     * Option bits to parse every IFD and the thumbnail.
+     */
+    public static final int OPTION_ALL = OPTION_IFD_0 | OPTION_IFD_1 | OPTION_IFD_EXIF
+            | OPTION_IFD_GPS | OPTION_IFD_INTEROPERABILITY | OPTION_THUMBNAIL;
 
     protected static final int EXIF_HEADER = 0x45786966; // EXIF header "Exif"
     protected static final short EXIF_HEADER_TAIL = (short) 0x0000; // EXIF header in APP1
@@ -142,8 +160,10 @@ class ExifParser {
     private static final Charset US_ASCII = Charset.forName("US-ASCII");
 
     protected static final int DEFAULT_IFD0_OFFSET = 8;
+    // byte values from this size on are kept as references to the source
+    protected static final int LAZY_VALUE_SIZE = 1024;
 
-    private final CountedDataInputStream mTiffStream;
+    private final ExifInput mInput;
     private final int mOptions;
     private int mIfdStartOffset = 0;
     private int mNumOfTagInIfd = 0;
@@ -161,6 +181,9 @@ class ExifParser {
     private int mIfd0Position;
     private int mTiffStartPosition;
     private final ExifInterface mInterface;
+    private final ExifTagSet mTagFilter;
+    private ExifTagSet mFoundTags;
+    private int mTagsToFind;
 
     private static final short TAG_EXIF_IFD = ExifInterface
             .getTrueTagKey(ExifInterface.TAG_EXIF_IFD);
@@ -198,24 +221,26 @@ class ExifParser {
         return (mOptions & OPTION_THUMBNAIL) != 0;
     }
 
-    private ExifParser(InputStream inputStream, int options, ExifInterface iRef)
+    private ExifParser(ExifInput input, int options, ExifTagSet tags, ExifInterface iRef)
             throws IOException, ExifInvalidFormatException {
-        if (inputStream == null) {
-            throw new IOException("Null argument inputStream to ExifParser");
-        }
         if (LOGV) {
             Log.v(TAG, "Reading exif...");
         }
         mInterface = iRef;
-        mContainExifData = seekTiffData(inputStream);
-        mTiffStream = new CountedDataInputStream(inputStream);
+        mInput = input;
+        mTagFilter = tags;
+        if (tags != null) {
+            mFoundTags = new ExifTagSet();
+            mTagsToFind = tags.size();
+        }
+        mContainExifData = seekTiffData();
         mOptions = options;
         if (!mContainExifData) {
             return;
         }
 
         parseTiffHeader();
-        long offset = mTiffStream.readUnsignedInt();
+        long offset = mInput.readUnsignedInt();
         if (offset > Integer.MAX_VALUE) {
             throw new ExifInvalidFormatException("Invalid offset " + offset);
         }
@@ -238,7 +263,43 @@ class ExifParser {
      */
     protected static ExifParser parse(InputStream inputStream, int options, ExifInterface iRef)
             throws IOException, ExifInvalidFormatException {
-        return new ExifParser(inputStream, options, iRef);
+        if (inputStream == null) {
+            throw new IOException("Null argument inputStream to ExifParser");
+        }
+        return new ExifParser(ExifInput.from(inputStream), options, null, iRef);
+    }
+
+    /**
+     * Parses the remaining bytes of the given ByteBuffer, e.g. a memory mapped
+     * file, with the given options. The buffer is not changed.
+     */
+    protected static ExifParser parse(ByteBuffer buffer, int options, ExifInterface iRef)
+            throws IOException, ExifInvalidFormatException {
+        return new ExifParser(ExifInput.from(buffer), options, null, iRef);
+    }
+
+    /**
+     * Parses the file from its beginning with the given options, the position
+     * of the channel is not used.
+     */
+    protected static ExifParser parse(FileChannel channel, int options, ExifInterface iRef)
+            throws IOException, ExifInvalidFormatException {
+        return new ExifParser(ExifInput.from(channel), options, null, iRef);
+    }
+
+    /**
+     * Parses only the given tags, other tags in the requested IFDs are
+     * skipped without reading their values.
+     *
+     * @param options IFDs without any tag of the set are not parsed whatever
+     *            the options, {@link #OPTION_THUMBNAIL} still applies.
+     */
+    protected static ExifParser parse(ExifInput input, int options, ExifTagSet tags,
+            ExifInterface iRef) throws IOException, ExifInvalidFormatException {
+        if (tags != null) {
+            options &= tags.getIfdOptions() | OPTION_THUMBNAIL;
+        }
+        return new ExifParser(input, options, tags, iRef);
     }
 
     /**
@@ -251,9 +312,17 @@ class ExifParser {
      */
     protected static ExifParser parse(InputStream inputStream, ExifInterface iRef)
             throws IOException, ExifInvalidFormatException {
-        return new ExifParser(inputStream, OPTION_IFD_0 | OPTION_IFD_1
-                | OPTION_IFD_EXIF | OPTION_IFD_GPS | OPTION_IFD_INTEROPERABILITY
-                | OPTION_THUMBNAIL, iRef);
+        return parse(inputStream, OPTION_ALL, iRef);
+    }
+
+    protected static ExifParser parse(ByteBuffer buffer, ExifInterface iRef)
+            throws IOException, ExifInvalidFormatException {
+        return parse(buffer, OPTION_ALL, iRef);
+    }
+
+    protected static ExifParser parse(FileChannel channel, ExifInterface iRef)
+            throws IOException, ExifInvalidFormatException {
+        return parse(channel, OPTION_ALL, iRef);
     }
 
     /**
@@ -269,21 +338,26 @@ class ExifParser {
      * @see #EVENT_END
      */
     protected int next() throws IOException, ExifInvalidFormatException {
-        if (!mContainExifData) {
+        if (!mContainExifData || allTagsFound()) {
             return EVENT_END;
         }
-        int offset = mTiffStream.getReadByteCount();
+        int offset = getReadByteCount();
         int endOfTags = mIfdStartOffset + OFFSET_SIZE + TAG_SIZE * mNumOfTagInIfd;
-        if (offset < endOfTags) {
+        while (offset < endOfTags) {
             mTag = readTag();
+            offset = getReadByteCount();
             if (mTag == null) {
-                return next();
+                continue;
             }
             if (mNeedToParseOffsetsInCurrentIfd) {
                 checkOffsetOrImageTag(mTag);
             }
-            return EVENT_NEW_TAG;
-        } else if (offset == endOfTags) {
+            // link tags are read for the offsets even when they are not wanted
+            if (isTagRequested(mTag)) {
+                return EVENT_NEW_TAG;
+            }
+        }
+        if (offset == endOfTags) {
             // There is a link to ifd1 at the end of ifd0
             if (mIfdType == IfdId.TYPE_IFD_0) {
                 long ifdOffset = readUnsignedLong();
@@ -297,7 +371,7 @@ class ExifParser {
                 // Some camera models use invalid length of the offset
                 if (mCorrespondingEvent.size() > 0) {
                     offsetSize = mCorrespondingEvent.firstEntry().getKey() -
-                            mTiffStream.getReadByteCount();
+                            getReadByteCount();
                 }
                 if (offsetSize < 4) {
                     Log.w(TAG, "Invalid size of link to next IFD: " + offsetSize);
@@ -321,7 +395,7 @@ class ExifParser {
             }
             if (event instanceof IfdEvent) {
                 mIfdType = ((IfdEvent) event).ifd;
-                mNumOfTagInIfd = mTiffStream.readUnsignedShort();
+                mNumOfTagInIfd = mInput.readUnsignedShort();
                 mIfdStartOffset = entry.getKey();
 
                 if (mNumOfTagInIfd * TAG_SIZE + mIfdStartOffset + OFFSET_SIZE > mApp1End) {
@@ -362,7 +436,7 @@ class ExifParser {
      */
     protected void skipRemainingTagsInCurrentIfd() throws IOException, ExifInvalidFormatException {
         int endOfTags = mIfdStartOffset + OFFSET_SIZE + TAG_SIZE * mNumOfTagInIfd;
-        int offset = mTiffStream.getReadByteCount();
+        int offset = getReadByteCount();
         if (offset > endOfTags) {
             return;
         }
@@ -388,6 +462,47 @@ class ExifParser {
         }
     }
 
+    /**
+     * Returns true if the tag is in the tag set, the first time it is seen
+     * it is counted as found.
+     */
+    private boolean isTagRequested(ExifTag tag) {
+        if (mTagFilter == null) {
+            return true;
+        }
+        if (!mTagFilter.contains(tag.getIfd(), tag.getTagId())) {
+            return false;
+        }
+        if (!mFoundTags.contains(tag.getIfd(), tag.getTagId())) {
+            mFoundTags.add(ExifInterface.defineTag(tag.getIfd(), tag.getTagId()));
+            mTagsToFind--;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if a tag set is given and all the tags in it have been
+     * emitted, including values registered by the caller.
+     */
+    private boolean allTagsFound() {
+        if (mTagFilter == null || mTagsToFind > 0 || isThumbnailRequested()) {
+            return false;
+        }
+        for (Object event : mCorrespondingEvent.values()) {
+            if (event instanceof ExifTagEvent && ((ExifTagEvent) event).isRequested) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isLinkTag(short tid) {
+        return tid == TAG_EXIF_IFD || tid == TAG_GPS_IFD || tid == TAG_INTEROPERABILITY_IFD
+                || tid == TAG_JPEG_INTERCHANGE_FORMAT
+                || tid == TAG_JPEG_INTERCHANGE_FORMAT_LENGTH
+                || tid == TAG_STRIP_OFFSETS || tid == TAG_STRIP_BYTE_COUNTS;
+    }
+
     private boolean needToParseOffsetsInCurrentIfd() {
         switch (mIfdType) {
             case IfdId.TYPE_IFD_0:
@@ -493,8 +608,15 @@ class ExifParser {
         return (int) mJpegSizeTag.getValueAt(0);
     }
 
+    /**
+     * Gets the current position relative to the TIFF header.
+     */
+    private int getReadByteCount() {
+        return (int) (mInput.position() - mTiffStartPosition);
+    }
+
     private void skipTo(int offset) throws IOException {
-        mTiffStream.skipTo(offset);
+        mInput.seek(mTiffStartPosition + offset);
         while (!mCorrespondingEvent.isEmpty() && mCorrespondingEvent.firstKey() < offset) {
             mCorrespondingEvent.pollFirstEntry();
         }
@@ -510,7 +632,7 @@ class ExifParser {
      * @see #EVENT_VALUE_OF_REGISTERED_TAG
      */
     protected void registerForTagValue(ExifTag tag) {
-        if (tag.getOffset() >= mTiffStream.getReadByteCount()) {
+        if (tag.getOffset() >= getReadByteCount()) {
             mCorrespondingEvent.put(tag.getOffset(), new ExifTagEvent(tag, true));
         }
     }
@@ -531,17 +653,23 @@ class ExifParser {
     }
 
     private ExifTag readTag() throws IOException, ExifInvalidFormatException {
-        short tagId = mTiffStream.readShort();
-        short dataFormat = mTiffStream.readShort();
-        long numOfComp = mTiffStream.readUnsignedInt();
+        short tagId = mInput.readShort();
+        short dataFormat = mInput.readShort();
+        long numOfComp = mInput.readUnsignedInt();
         if (numOfComp > Integer.MAX_VALUE) {
             throw new ExifInvalidFormatException(
                     "Number of component is larger then Integer.MAX_VALUE");
         }
+        // Tags out of the tag set are skipped before the value is read
+        if (mTagFilter != null && !mTagFilter.contains(mIfdType, tagId)
+                && !(mNeedToParseOffsetsInCurrentIfd && isLinkTag(tagId))) {
+            mInput.skip(4);
+            return null;
+        }
         // Some invalid image file contains invalid data type. Ignore those tags
         if (!ExifTag.isValidType(dataFormat)) {
             Log.w(TAG, String.format("Tag %04x: Invalid data type %d", tagId, dataFormat));
-            mTiffStream.skip(4);
+            mInput.skip(4);
             return null;
         }
         // TODO: handle numOfComp overflow
@@ -549,7 +677,7 @@ class ExifParser {
                 ((int) numOfComp) != ExifTag.SIZE_UNDEFINED);
         int dataSize = tag.getDataSize();
         if (dataSize > 4) {
-            long offset = mTiffStream.readUnsignedInt();
+            long offset = mInput.readUnsignedInt();
             if (offset > Integer.MAX_VALUE) {
                 throw new ExifInvalidFormatException(
                         "offset is larger then Integer.MAX_VALUE");
@@ -572,9 +700,9 @@ class ExifParser {
             // Read value
             readFullTagValue(tag);
             tag.setHasDefinedCount(defCount);
-            mTiffStream.skip(4 - dataSize);
+            mInput.skip(4 - dataSize);
             // Set the offset to the position of value.
-            tag.setOffset(mTiffStream.getReadByteCount() - 4);
+            tag.setOffset(getReadByteCount() - 4);
         }
         return tag;
     }
@@ -650,7 +778,7 @@ class ExifParser {
                 type == ExifTag.TYPE_UNSIGNED_BYTE) {
             int size = tag.getComponentCount();
             if (mCorrespondingEvent.size() > 0) {
-                if (mCorrespondingEvent.firstEntry().getKey() < mTiffStream.getReadByteCount()
+                if (mCorrespondingEvent.firstEntry().getKey() < getReadByteCount()
                         + size) {
                     Object event = mCorrespondingEvent.firstEntry().getValue();
                     if (event instanceof ImageEvent) {
@@ -669,7 +797,7 @@ class ExifParser {
                                     + " overlaps value for tag: \n" + tag.toString());
                         }
                         size = mCorrespondingEvent.firstEntry().getKey()
-                                - mTiffStream.getReadByteCount();
+                                - getReadByteCount();
                         Log.w(TAG, "Invalid size of tag: \n" + tag.toString()
                                 + " setting count to: " + size);
                         tag.forceSetComponentCount(size);
@@ -680,9 +808,14 @@ class ExifParser {
         switch (tag.getDataType()) {
             case ExifTag.TYPE_UNSIGNED_BYTE:
             case ExifTag.TYPE_UNDEFINED: {
-                byte buf[] = new byte[tag.getComponentCount()];
-                read(buf);
-                tag.setValue(buf);
+                ByteBuffer slice = readSlice(tag.getComponentCount());
+                if (slice != null) {
+                    tag.setValue(slice);
+                } else {
+                    byte buf[] = new byte[tag.getComponentCount()];
+                    read(buf);
+                    tag.setValue(buf);
+                }
             }
                 break;
             case ExifTag.TYPE_ASCII:
@@ -690,42 +823,32 @@ class ExifParser {
                 break;
             case ExifTag.TYPE_UNSIGNED_LONG: {
                 long value[] = new long[tag.getComponentCount()];
-                for (int i = 0, n = value.length; i < n; i++) {
-                    value[i] = readUnsignedLong();
-                }
+                mInput.readUnsignedInts(value);
                 tag.setValue(value);
             }
                 break;
             case ExifTag.TYPE_UNSIGNED_RATIONAL: {
-                Rational value[] = new Rational[tag.getComponentCount()];
-                for (int i = 0, n = value.length; i < n; i++) {
-                    value[i] = readUnsignedRational();
-                }
-                tag.setValue(value);
+                long value[] = new long[tag.getComponentCount() * 2];
+                mInput.readUnsignedInts(value);
+                tag.setRationalValues(value);
             }
                 break;
             case ExifTag.TYPE_UNSIGNED_SHORT: {
                 int value[] = new int[tag.getComponentCount()];
-                for (int i = 0, n = value.length; i < n; i++) {
-                    value[i] = readUnsignedShort();
-                }
+                mInput.readUnsignedShorts(value);
                 tag.setValue(value);
             }
                 break;
             case ExifTag.TYPE_LONG: {
                 int value[] = new int[tag.getComponentCount()];
-                for (int i = 0, n = value.length; i < n; i++) {
-                    value[i] = readLong();
-                }
+                mInput.readInts(value);
                 tag.setValue(value);
             }
                 break;
             case ExifTag.TYPE_RATIONAL: {
-                Rational value[] = new Rational[tag.getComponentCount()];
-                for (int i = 0, n = value.length; i < n; i++) {
-                    value[i] = readRational();
-                }
-                tag.setValue(value);
+                long value[] = new long[tag.getComponentCount() * 2];
+                mInput.readInts(value);
+                tag.setRationalValues(value);
             }
                 break;
         }
@@ -736,53 +859,58 @@ class ExifParser {
 
     private void parseTiffHeader() throws IOException,
             ExifInvalidFormatException {
-        short byteOrder = mTiffStream.readShort();
+        short byteOrder = mInput.readShort();
         if (LITTLE_ENDIAN_TAG == byteOrder) {
-            mTiffStream.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+            mInput.setByteOrder(ByteOrder.LITTLE_ENDIAN);
         } else if (BIG_ENDIAN_TAG == byteOrder) {
-            mTiffStream.setByteOrder(ByteOrder.BIG_ENDIAN);
+            mInput.setByteOrder(ByteOrder.BIG_ENDIAN);
         } else {
             throw new ExifInvalidFormatException("Invalid TIFF header");
         }
 
-        if (mTiffStream.readShort() != TIFF_HEADER_TAIL) {
+        if (mInput.readShort() != TIFF_HEADER_TAIL) {
             throw new ExifInvalidFormatException("Invalid TIFF header");
         }
     }
 
-    private boolean seekTiffData(InputStream inputStream) throws IOException,
-            ExifInvalidFormatException {
-        CountedDataInputStream dataStream = new CountedDataInputStream(inputStream);
-        if (dataStream.readShort() != JpegHeader.SOI) {
+    private boolean seekTiffData() throws IOException, ExifInvalidFormatException {
+        if (mInput.readShort() != JpegHeader.SOI) {
             throw new ExifInvalidFormatException("Invalid JPEG format");
         }
 
-        short marker = dataStream.readShort();
+        short marker = mInput.readShort();
         while (marker != JpegHeader.EOI
                 && !JpegHeader.isSofMarker(marker)) {
-            int length = dataStream.readUnsignedShort();
+            int length = mInput.readUnsignedShort();
             // Some invalid formatted image contains multiple APP1,
             // try to find the one with Exif data.
             if (marker == JpegHeader.APP1) {
                 int header = 0;
                 short headerTail = 0;
                 if (length >= 8) {
-                    header = dataStream.readInt();
-                    headerTail = dataStream.readShort();
+                    header = mInput.readInt();
+                    headerTail = mInput.readShort();
                     length -= 6;
                     if (header == EXIF_HEADER && headerTail == EXIF_HEADER_TAIL) {
-                        mTiffStartPosition = dataStream.getReadByteCount();
+                        mTiffStartPosition = (int) mInput.position();
                         mApp1End = length;
                         mOffsetToApp1EndFromSOF = mTiffStartPosition + mApp1End;
                         return true;
                     }
                 }
             }
-            if (length < 2 || (length - 2) != dataStream.skip(length - 2)) {
+            if (length < 2) {
+                Log.w(TAG, "Invalid JPEG format.");
+                return false;
+            }
+            // seek over the segment, nothing in it is read
+            mInput.skip(length - 2);
+            try {
+                marker = mInput.readShort();
+            } catch (EOFException e) {
                 Log.w(TAG, "Invalid JPEG format.");
                 return false;
             }
-            marker = dataStream.readShort();
         }
         return false;
     }
@@ -799,14 +927,33 @@ class ExifParser {
      * Reads bytes from the InputStream.
      */
     protected int read(byte[] buffer, int offset, int length) throws IOException {
-        return mTiffStream.read(buffer, offset, length);
+        return mInput.read(buffer, offset, length);
     }
 
     /**
      * Equivalent to read(buffer, 0, buffer.length).
      */
     protected int read(byte[] buffer) throws IOException {
-        return mTiffStream.read(buffer);
+        return mInput.read(buffer, 0, buffer.length);
+    }
+
+    /**
+     * Reads length bytes as a read-only reference to the source if length is
+     * at least {@link #LAZY_VALUE_SIZE} and the source is a buffer or a file.
+     *
+     * @return the bytes, or null if they must be copied with
+     *         {@link #read(byte[])}.
+     */
+    protected ByteBuffer readSlice(int length) throws IOException {
+        if (length < LAZY_VALUE_SIZE) {
+            return null;
+        }
+        try {
+            return mInput.readSlice(length);
+        } catch (EOFException e) {
+            // truncated, the copy reads what is there
+            return null;
+        }
     }
 
     /**
@@ -825,7 +972,7 @@ class ExifParser {
      */
     protected String readString(int n, Charset charset) throws IOException {
         if (n > 0) {
-            return mTiffStream.readString(n, charset);
+            return mInput.readString(n, charset);
         } else {
             return "";
         }
@@ -836,7 +983,7 @@ class ExifParser {
      * InputStream.
      */
     protected int readUnsignedShort() throws IOException {
-        return mTiffStream.readShort() & 0xffff;
+        return mInput.readUnsignedShort();
     }
 
     /**
@@ -861,7 +1008,7 @@ class ExifParser {
      * Reads value of type {@link ExifTag#TYPE_LONG} from the InputStream.
      */
     protected int readLong() throws IOException {
-        return mTiffStream.readInt();
+        return mInput.readInt();
     }
 
     /**
@@ -912,6 +1059,6 @@ class ExifParser {
      * Gets the byte order of the current InputStream.
      */
     protected ByteOrder getByteOrder() {
-        return mTiffStream.getByteOrder();
+        return mInput.getByteOrder();
     }
 }
@@ -20,6 +20,8 @@ import android.util.Log;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * This class reads the EXIF header of a JPEG file and stores it in
@@ -29,9 +31,18 @@ class ExifReader {
     private static final String TAG = "ExifReader";
 
     private final ExifInterface mInterface;
+    private final ExifTagSet mTags;
 
     ExifReader(ExifInterface iRef) {
+        this(iRef, null);
+    }
+
+    /**
+     * @param tags the tags to read, or null to read all tags and the thumbnail.
+     */
+    ExifReader(ExifInterface iRef, ExifTagSet tags) {
         mInterface = iRef;
+        mTags = tags;
     }
 
     /**
@@ -43,7 +54,33 @@ class ExifReader {
      */
     protected ExifData read(InputStream inputStream) throws ExifInvalidFormatException,
             IOException {
-        ExifParser parser = ExifParser.parse(inputStream, mInterface);
+        if (inputStream == null) {
+            throw new IOException("Null argument inputStream to ExifParser");
+        }
+        return read(ExifInput.from(inputStream));
+    }
+
+    /**
+     * Parses the remaining bytes of the buffer, only the exif header is read.
+     */
+    protected ExifData read(ByteBuffer buffer) throws ExifInvalidFormatException,
+            IOException {
+        return read(ExifInput.from(buffer));
+    }
+
+    /**
+     * Parses the file with positional reads, only the exif header is read.
+     */
+    protected ExifData read(FileChannel channel) throws ExifInvalidFormatException,
+            IOException {
+        return read(ExifInput.from(channel));
+    }
+
+    private ExifData read(ExifInput input) throws ExifInvalidFormatException, IOException {
+        // a tag set reads only the IFDs of its tags and no thumbnail
+        int options = mTags == null ? ExifParser.OPTION_ALL
+                : ExifParser.OPTION_ALL & ~ExifParser.OPTION_THUMBNAIL;
+        ExifParser parser = ExifParser.parse(input, options, mTags, mInterface);
         ExifData exifData = new ExifData(parser.getByteOrder());
         ExifTag tag = null;
 
@@ -69,16 +106,16 @@ class ExifReader {
                     exifData.getIfdData(tag.getIfd()).setTag(tag);
                     break;
                 case ExifParser.EVENT_COMPRESSED_IMAGE:
-                    byte buf[] = new byte[parser.getCompressedImageSize()];
-                    if (buf.length == parser.read(buf)) {
+                    ByteBuffer buf = readBytes(parser, parser.getCompressedImageSize());
+                    if (buf != null) {
                         exifData.setCompressedThumbnail(buf);
                     } else {
                         Log.w(TAG, "Failed to read the compressed thumbnail");
                     }
                     break;
                 case ExifParser.EVENT_UNCOMPRESSED_STRIP:
-                    buf = new byte[parser.getStripSize()];
-                    if (buf.length == parser.read(buf)) {
+                    buf = readBytes(parser, parser.getStripSize());
+                    if (buf != null) {
                         exifData.setStripBytes(parser.getStripIndex(), buf);
                     } else {
                         Log.w(TAG, "Failed to read the strip bytes");
@@ -89,4 +126,19 @@ class ExifReader {
         }
         return exifData;
     }
+
+    /**
+     * Reads size bytes as a reference to the source if possible, a copy
+     * otherwise.
+     *
+     * @return the bytes or null if there are less than size bytes.
+     */
+    private static ByteBuffer readBytes(ExifParser parser, int size) throws IOException {
+        ByteBuffer slice = parser.readSlice(size);
+        if (slice != null) {
+            return slice;
+        }
+        byte buf[] = new byte[size];
+        return buf.length == parser.read(buf) ? ByteBuffer.wrap(buf) : null;
+    }
 }
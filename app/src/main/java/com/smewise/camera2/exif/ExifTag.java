@@ -16,6 +16,7 @@
 
 package com.smewise.camera2.exif;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
@@ -97,7 +98,9 @@ public class ExifTag {
     private int mComponentCountActual;
     // The ifd that this tag should be put in
     private int mIfd;
-    // The value (array of elements of type Tag Type)
+    // The value (array of elements of type Tag Type), rationals are packed
+    // as numerator and denominator pairs in a long[], large byte values may be
+    // a read-only ByteBuffer over the parsed source until they are read
     private Object mValue;
     // Value offset in exif header.
     private int mOffset;
@@ -361,20 +364,34 @@ public class ExifTag {
      * @see Rational
      */
     public boolean setValue(Rational[] value) {
-        if (checkBadComponentCount(value.length)) {
+        long[] pairs = new long[value.length * 2];
+        for (int i = 0; i < value.length; i++) {
+            pairs[2 * i] = value[i].getNumerator();
+            pairs[2 * i + 1] = value[i].getDenominator();
+        }
+        return setRationalValues(pairs);
+    }
+
+    /**
+     * Sets Rational values as numerator and denominator pairs, the array is
+     * kept by the tag. It fails in the same cases as
+     * {@link #setValue(Rational[])} or if the array length is odd.
+     */
+    public boolean setRationalValues(long[] pairs) {
+        if ((pairs.length & 1) != 0 || checkBadComponentCount(pairs.length / 2)) {
             return false;
         }
         if (mDataType != TYPE_UNSIGNED_RATIONAL && mDataType != TYPE_RATIONAL) {
             return false;
         }
-        if (mDataType == TYPE_UNSIGNED_RATIONAL && checkOverflowForUnsignedRational(value)) {
+        if (mDataType == TYPE_UNSIGNED_RATIONAL && checkOverflowForUnsignedLong(pairs)) {
             return false;
-        } else if (mDataType == TYPE_RATIONAL && checkOverflowForRational(value)) {
+        } else if (mDataType == TYPE_RATIONAL && checkOverflowForRational(pairs)) {
             return false;
         }
 
-        mValue = value;
-        mComponentCountActual = value.length;
+        mValue = pairs;
+        mComponentCountActual = pairs.length / 2;
         return true;
     }
 
@@ -421,6 +438,26 @@ public class ExifTag {
         return true;
     }
 
+    /**
+     * Sets byte values that are kept as a reference to the bytes of value
+     * from its position to its limit, they are only copied when read with
+     * {@link #getValueAsBytes()}. It fails in the same cases as
+     * {@link #setValue(byte[], int, int)}. The bytes must not change while
+     * the tag uses them.
+     */
+    protected boolean setValue(ByteBuffer value) {
+        int length = value.remaining();
+        if (checkBadComponentCount(length)) {
+            return false;
+        }
+        if (mDataType != TYPE_UNSIGNED_BYTE && mDataType != TYPE_UNDEFINED) {
+            return false;
+        }
+        mValue = value.slice().asReadOnlyBuffer();
+        mComponentCountActual = length;
+        return true;
+    }
+
     /**
      * Equivalent to setValue(value, 0, value.length).
      */
@@ -538,6 +575,7 @@ public class ExifTag {
      *         or cannot be converted to a String.
      */
     public String getValueAsString() {
+        loadValue();
         if (mValue == null) {
             return null;
         } else if (mValue instanceof String) {
@@ -572,6 +610,7 @@ public class ExifTag {
      *         exist or cannot be converted to a byte array.
      */
     public byte[] getValueAsBytes() {
+        loadValue();
         if (mValue instanceof byte[]) {
             return (byte[]) mValue;
         }
@@ -603,10 +642,26 @@ public class ExifTag {
      *         does not exist or cannot be converted to an array of Rationals.
      */
     public Rational[] getValueAsRationals() {
-        if (mValue instanceof Rational[]) {
-            return (Rational[]) mValue;
+        if (!isRational() || mValue == null) {
+            return null;
         }
-        return null;
+        Rational[] r = new Rational[mComponentCountActual];
+        for (int i = 0; i < r.length; i++) {
+            r[i] = getRational(i);
+        }
+        return r;
+    }
+
+    /**
+     * Gets the value of a {@link #TYPE_RATIONAL} or
+     * {@link #TYPE_UNSIGNED_RATIONAL} tag as numerator and denominator pairs
+     * without creating Rationals. The array must not be modified.
+     *
+     * @return the pairs or null if the tag's value does not exist or is not
+     *         rational.
+     */
+    public long[] getValueAsRationalPairs() {
+        return isRational() ? (long[]) mValue : null;
     }
 
     /**
@@ -619,11 +674,10 @@ public class ExifTag {
      * @return the tag's value as a Rational, or the defaultValue.
      */
     public Rational getValueAsRational(Rational defaultValue) {
-        Rational[] r = getValueAsRationals();
-        if (r == null || r.length < 1) {
+        if (!isRational() || mValue == null || mComponentCountActual < 1) {
             return defaultValue;
         }
-        return r[0];
+        return getRational(0);
     }
 
     /**
@@ -649,7 +703,7 @@ public class ExifTag {
      *         not exist or cannot be converted to an array of ints.
      */
     public int[] getValueAsInts() {
-        if (mValue == null) {
+        if (mValue == null || isRational()) {
             return null;
         } else if (mValue instanceof long[]) {
             long[] val = (long[]) mValue;
@@ -687,7 +741,7 @@ public class ExifTag {
      *         does not exist or cannot be converted to an array of longs.
      */
     public long[] getValueAsLongs() {
-        if (mValue instanceof long[]) {
+        if (mValue instanceof long[] && !isRational()) {
             return (long[]) mValue;
         }
         return null;
@@ -711,9 +765,14 @@ public class ExifTag {
     }
 
     /**
-     * Gets the tag's value or null if none exists.
+     * Gets the tag's value or null if none exists. Rational values are
+     * returned as a Rational[].
      */
     public Object getValue() {
+        if (isRational()) {
+            return getValueAsRationals();
+        }
+        loadValue();
         return mValue;
     }
 
@@ -734,9 +793,9 @@ public class ExifTag {
         if (b != null && b.length >= 1) {
             return b[0];
         }
-        Rational[] r = getValueAsRationals();
-        if (r != null && r.length >= 1 && r[0].getDenominator() != 0) {
-            return (long) r[0].toDouble();
+        long[] r = getValueAsRationalPairs();
+        if (r != null && r.length >= 2 && r[1] != 0) {
+            return (long) ((double) r[0] / r[1]);
         }
         return defaultValue;
     }
@@ -745,8 +804,15 @@ public class ExifTag {
      * Gets a string representation of the value.
      */
     public String forceGetValueAsString() {
+        loadValue();
         if (mValue == null) {
             return "";
+        } else if (isRational()) {
+            if (mComponentCountActual == 1) {
+                return getRational(0).toString();
+            } else {
+                return Arrays.toString(getValueAsRationals());
+            }
         } else if (mValue instanceof byte[]) {
             if (mDataType == TYPE_ASCII) {
                 return new String((byte[]) mValue, US_ASCII);
@@ -786,7 +852,8 @@ public class ExifTag {
      *                {@link #TYPE_RATIONAL} or {@link #TYPE_UNSIGNED_RATIONAL}.
      */
     protected long getValueAt(int index) {
-        if (mValue instanceof long[]) {
+        loadValue();
+        if (mValue instanceof long[] && !isRational()) {
             return ((long[]) mValue)[index];
         } else if (mValue instanceof byte[]) {
             return ((byte[]) mValue)[index];
@@ -827,7 +894,28 @@ public class ExifTag {
             throw new IllegalArgumentException("Cannot get RATIONAL value from "
                     + convertTypeToString(mDataType));
         }
-        return ((Rational[]) mValue)[index];
+        long[] pairs = (long[]) mValue;
+        return new Rational(pairs[2 * index], pairs[2 * index + 1]);
+    }
+
+    /**
+     * Gets the numerator of a {@link #TYPE_RATIONAL} or
+     * {@link #TYPE_UNSIGNED_RATIONAL} component without creating a Rational.
+     */
+    protected long getRationalNumerator(int index) {
+        return ((long[]) mValue)[2 * index];
+    }
+
+    /**
+     * Gets the denominator of a {@link #TYPE_RATIONAL} or
+     * {@link #TYPE_UNSIGNED_RATIONAL} component.
+     */
+    protected long getRationalDenominator(int index) {
+        return ((long[]) mValue)[2 * index + 1];
+    }
+
+    private boolean isRational() {
+        return mDataType == TYPE_RATIONAL || mDataType == TYPE_UNSIGNED_RATIONAL;
     }
 
     /**
@@ -852,8 +940,64 @@ public class ExifTag {
             throw new IllegalArgumentException("Cannot get BYTE value from "
                     + convertTypeToString(mDataType));
         }
-        System.arraycopy(mValue, 0, buf, offset,
-                (length > mComponentCountActual) ? mComponentCountActual : length);
+        int n = (length > mComponentCountActual) ? mComponentCountActual : length;
+        if (mValue instanceof ByteBuffer) {
+            ((ByteBuffer) mValue).duplicate().get(buf, offset, n);
+        } else {
+            System.arraycopy(mValue, 0, buf, offset, n);
+        }
+    }
+
+    /**
+     * Gets the {@link #TYPE_UNDEFINED} or {@link #TYPE_UNSIGNED_BYTE} data as
+     * a buffer of component count bytes, without copying it. The buffer must
+     * not be modified.
+     *
+     * @exception IllegalArgumentException If the type is NOT
+     *                {@link #TYPE_UNDEFINED} or {@link #TYPE_UNSIGNED_BYTE}.
+     */
+    protected ByteBuffer getBytesBuffer() {
+        if ((mDataType != TYPE_UNDEFINED) && (mDataType != TYPE_UNSIGNED_BYTE)) {
+            throw new IllegalArgumentException("Cannot get BYTE value from "
+                    + convertTypeToString(mDataType));
+        }
+        ByteBuffer buf;
+        if (mValue instanceof ByteBuffer) {
+            buf = ((ByteBuffer) mValue).duplicate();
+        } else {
+            buf = ByteBuffer.wrap((byte[]) mValue);
+        }
+        buf.limit(mComponentCountActual);
+        return buf;
+    }
+
+    /**
+     * Returns true if the value is still a reference to the parsed source.
+     */
+    protected boolean isValueLazy() {
+        return mValue instanceof ByteBuffer;
+    }
+
+    /**
+     * Copies a value mapped from a file, reading the mapping faults once the
+     * file is truncated.
+     */
+    protected void loadMappedValue() {
+        if (mValue instanceof ByteBuffer && ((ByteBuffer) mValue).isDirect()) {
+            loadValue();
+        }
+    }
+
+    /**
+     * Copies a lazy value into a byte array, which replaces it.
+     */
+    private void loadValue() {
+        if (mValue instanceof ByteBuffer) {
+            ByteBuffer buf = ((ByteBuffer) mValue).duplicate();
+            byte[] value = new byte[buf.remaining()];
+            buf.get(value);
+            mValue = value;
+        }
     }
 
     /**
@@ -936,22 +1080,9 @@ public class ExifTag {
         return false;
     }
 
-    private boolean checkOverflowForUnsignedRational(Rational[] value) {
-        for (Rational v : value) {
-            if (v.getNumerator() < 0 || v.getDenominator() < 0
-                    || v.getNumerator() > UNSIGNED_LONG_MAX
-                    || v.getDenominator() > UNSIGNED_LONG_MAX) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private boolean checkOverflowForRational(Rational[] value) {
-        for (Rational v : value) {
-            if (v.getNumerator() < LONG_MIN || v.getDenominator() < LONG_MIN
-                    || v.getNumerator() > LONG_MAX
-                    || v.getDenominator() > LONG_MAX) {
+    private boolean checkOverflowForRational(long[] pairs) {
+        for (long v : pairs) {
+            if (v < LONG_MIN || v > LONG_MAX) {
                 return true;
             }
         }
@@ -970,6 +1101,10 @@ public class ExifTag {
                     || tag.mDataType != this.mDataType) {
                 return false;
             }
+            if (mValue instanceof ByteBuffer || tag.mValue instanceof ByteBuffer) {
+                return mValue != null && tag.mValue != null
+                        && getBytesBuffer().equals(tag.getBytesBuffer());
+            }
             if (mValue != null) {
                 if (tag.mValue == null) {
                     return false;
@@ -978,11 +1113,6 @@ public class ExifTag {
                         return false;
                     }
                     return Arrays.equals((long[]) mValue, (long[]) tag.mValue);
-                } else if (mValue instanceof Rational[]) {
-                    if (!(tag.mValue instanceof Rational[])) {
-                        return false;
-                    }
-                    return Arrays.equals((Rational[]) mValue, (Rational[]) tag.mValue);
                 } else if (mValue instanceof byte[]) {
                     if (!(tag.mValue instanceof byte[])) {
                         return false;
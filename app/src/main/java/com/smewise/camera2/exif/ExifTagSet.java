@@ -0,0 +1,103 @@
+package com.smewise.camera2.exif;
+
+/**
+ * A set of tags to read, a bitset over the keys of
+ * {@link ExifInterface#defineTag(int, short)}, e.g.
+ * {@link ExifInterface#TAG_ORIENTATION}. Pass it to
+ * {@link ExifInterface#readExif(String, ExifTagSet)} to read only these tags;
+ * other values are not fetched and parsing stops when all of them are found.
+ * <p>
+ * Bits are stored in pages of 256 tag IDs allocated on demand, so a set of a few
+ * tags uses a few hundred bytes. Not thread safe while tags are added.
+ */
+public class ExifTagSet {
+    private static final int PAGE_SHIFT = 8;
+    private static final int PAGE_COUNT = 1 << (16 - PAGE_SHIFT);
+    private static final int WORDS_PER_PAGE = (1 << PAGE_SHIFT) / 64;
+
+    // [ifd][tag id >>> PAGE_SHIFT][word]
+    private final long[][][] mPages = new long[IfdId.TYPE_IFD_COUNT][][];
+    private int mSize;
+
+    public ExifTagSet(int... tagIds) {
+        for (int tagId : tagIds) {
+            add(tagId);
+        }
+    }
+
+    /**
+     * Adds a tag constant of {@link ExifInterface}.
+     *
+     * @return this set.
+     */
+    public ExifTagSet add(int tagId) {
+        int ifd = ExifInterface.getTrueIfd(tagId);
+        if (!ExifTag.isValidIfd(ifd)) {
+            throw new IllegalArgumentException("Invalid ifd in tag " + tagId);
+        }
+        int tid = ExifInterface.getTrueTagKey(tagId) & 0xffff;
+        if (mPages[ifd] == null) {
+            mPages[ifd] = new long[PAGE_COUNT][];
+        }
+        long[] page = mPages[ifd][tid >>> PAGE_SHIFT];
+        if (page == null) {
+            page = new long[WORDS_PER_PAGE];
+            mPages[ifd][tid >>> PAGE_SHIFT] = page;
+        }
+        int word = (tid & ((1 << PAGE_SHIFT) - 1)) >>> 6;
+        long bit = 1L << tid;
+        if ((page[word] & bit) == 0) {
+            page[word] |= bit;
+            mSize++;
+        }
+        return this;
+    }
+
+    public boolean contains(int tagId) {
+        return contains(ExifInterface.getTrueIfd(tagId), ExifInterface.getTrueTagKey(tagId));
+    }
+
+    /**
+     * Returns true if the tag with the ID in the file is in this set.
+     */
+    protected boolean contains(int ifd, short tid) {
+        if (ifd < 0 || ifd >= mPages.length || mPages[ifd] == null) {
+            return false;
+        }
+        int key = tid & 0xffff;
+        long[] page = mPages[ifd][key >>> PAGE_SHIFT];
+        return page != null
+                && (page[(key & ((1 << PAGE_SHIFT) - 1)) >>> 6] & (1L << key)) != 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Gets the {@link ExifParser} options of the IFDs that hold tags of this set.
+     */
+    protected int getIfdOptions() {
+        int options = 0;
+        if (mPages[IfdId.TYPE_IFD_0] != null) {
+            options |= ExifParser.OPTION_IFD_0;
+        }
+        if (mPages[IfdId.TYPE_IFD_1] != null) {
+            options |= ExifParser.OPTION_IFD_1;
+        }
+        if (mPages[IfdId.TYPE_IFD_EXIF] != null) {
+            options |= ExifParser.OPTION_IFD_EXIF;
+        }
+        if (mPages[IfdId.TYPE_IFD_INTEROPERABILITY] != null) {
+            options |= ExifParser.OPTION_IFD_INTEROPERABILITY;
+        }
+        if (mPages[IfdId.TYPE_IFD_GPS] != null) {
+            options |= ExifParser.OPTION_IFD_GPS;
+        }
+        return options;
+    }
+}
@@ -0,0 +1,251 @@
+package com.smewise.camera2.exif;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * An exif APP1 segment serialized once, with the positions of tags whose
+ * values change between images, e.g. in a burst. Each image copies the
+ * segment with {@link #newExifBlock()}, patches the variable values with the
+ * set methods and writes it with {@link #writeJpeg(byte[], byte[], OutputStream)}.
+ * No {@link ExifData} is built and no offsets are calculated per image.
+ * <p>
+ * A variable value must keep the type and component count it has in the
+ * template, strings are padded or cut to the template length.
+ * <p>
+ * Not thread safe, like {@link ExifInterface}.
+ */
+public class ExifTemplate {
+    private static final byte[] EMPTY_JPEG = {(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xd9};
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private final ExifInterface mInterface;
+    private final byte[] mBlock;
+    private final ByteOrder mByteOrder;
+    // variable tags, their types, component counts and value positions in mBlock
+    private final int[] mTagIds;
+    private final short[] mTypes;
+    private final int[] mCounts;
+    private final int[] mPositions;
+    private final DateFormat mDateTimeStampFormat =
+            new SimpleDateFormat(ExifInterface.DATETIME_FORMAT_STR);
+
+    /**
+     * Serializes the tags of exif, the variable tags must be set in it and
+     * keep their size later.
+     *
+     * @param exif tags and padding of the template, later changes to exif do
+     *            not change the template.
+     * @param variableTags tag constants of {@link ExifInterface} that are set
+     *            for each image.
+     * @throws IllegalArgumentException if a variable tag is not set in exif.
+     */
+    public ExifTemplate(ExifInterface exif, int... variableTags) throws IOException {
+        mInterface = exif;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exif.writeExif(EMPTY_JPEG, out);
+        byte[] jpeg = out.toByteArray();
+        // keep the APP1 segment after SOI
+        int app1Length = ByteBuffer.wrap(jpeg).getShort(4) & 0xffff;
+        mBlock = new byte[2 + app1Length];
+        System.arraycopy(jpeg, 2, mBlock, 0, mBlock.length);
+
+        mTagIds = variableTags.clone();
+        mTypes = new short[mTagIds.length];
+        mCounts = new int[mTagIds.length];
+        mPositions = new int[mTagIds.length];
+        for (int i = 0; i < mPositions.length; i++) {
+            mPositions[i] = -1;
+        }
+        ExifParser parser;
+        try {
+            parser = ExifParser.parse(ExifInput.from(ByteBuffer.wrap(jpeg)),
+                    ExifParser.OPTION_ALL & ~ExifParser.OPTION_THUMBNAIL,
+                    new ExifTagSet(variableTags), exif);
+            mByteOrder = parser.getByteOrder();
+            int event = parser.next();
+            while (event != ExifParser.EVENT_END) {
+                if (event == ExifParser.EVENT_NEW_TAG) {
+                    ExifTag tag = parser.getTag();
+                    int index = indexOf(ExifInterface.defineTag(tag.getIfd(), tag.getTagId()));
+                    if (index >= 0) {
+                        mTypes[index] = tag.getDataType();
+                        mCounts[index] = tag.getComponentCount();
+                        // offsets are from the TIFF header, the block starts after SOI
+                        mPositions[index] = parser.getTiffStartPosition() - 2 + tag.getOffset();
+                    }
+                }
+                event = parser.next();
+            }
+        } catch (ExifInvalidFormatException e) {
+            throw new IOException("Invalid exif format : " + e);
+        }
+        for (int i = 0; i < mPositions.length; i++) {
+            if (mPositions[i] < 0) {
+                throw new IllegalArgumentException("Variable tag not set " + mTagIds[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the APP1 segment including its marker.
+     */
+    public int getBlockLength() {
+        return mBlock.length;
+    }
+
+    /**
+     * Returns a copy of the APP1 segment with the template values.
+     */
+    public byte[] newExifBlock() {
+        return mBlock.clone();
+    }
+
+    /**
+     * Writes an integer value of a short or long tag.
+     *
+     * @return false if tagId is not a variable tag of an integer type.
+     */
+    public boolean setTagIntValue(byte[] block, int tagId, int index, long value) {
+        int i = indexOf(tagId);
+        if (i < 0 || index < 0 || index >= mCounts[i]) {
+            return false;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(block).order(mByteOrder);
+        switch (mTypes[i]) {
+            case ExifTag.TYPE_UNSIGNED_SHORT:
+                buf.putShort(mPositions[i] + index * 2, (short) value);
+                return true;
+            case ExifTag.TYPE_UNSIGNED_LONG:
+            case ExifTag.TYPE_LONG:
+                buf.putInt(mPositions[i] + index * 4, (int) value);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Writes a component of a rational tag.
+     *
+     * @return false if tagId is not a variable tag of a rational type.
+     */
+    public boolean setTagRationalValue(byte[] block, int tagId, int index, Rational value) {
+        int i = indexOf(tagId);
+        if (i < 0 || index < 0 || index >= mCounts[i]
+                || (mTypes[i] != ExifTag.TYPE_RATIONAL
+                && mTypes[i] != ExifTag.TYPE_UNSIGNED_RATIONAL)) {
+            return false;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(block).order(mByteOrder);
+        buf.putInt(mPositions[i] + index * 8, (int) value.getNumerator());
+        buf.putInt(mPositions[i] + index * 8 + 4, (int) value.getDenominator());
+        return true;
+    }
+
+    /**
+     * Writes a value of any type, it is converted as by
+     * {@link ExifInterface#buildTag(int, Object)}. A string is padded with
+     * null or cut to the length in the template.
+     *
+     * @return false if tagId is not a variable tag or the value has another
+     *         type or size, or a string tag has count 0 in the template.
+     */
+    public boolean setTagValue(byte[] block, int tagId, Object value) {
+        int i = indexOf(tagId);
+        if (i < 0) {
+            return false;
+        }
+        if (mTypes[i] == ExifTag.TYPE_ASCII && value instanceof String) {
+            if (mCounts[i] < 1) {
+                // no room even for the terminating null
+                return false;
+            }
+            byte[] str = ((String) value).getBytes(US_ASCII);
+            int n = Math.min(str.length, mCounts[i] - 1);
+            System.arraycopy(str, 0, block, mPositions[i], n);
+            for (int j = n; j < mCounts[i]; j++) {
+                block[mPositions[i] + j] = 0;
+            }
+            return true;
+        }
+        ExifTag tag = mInterface.buildTag(tagId, value);
+        if (tag == null || tag.getDataType() != mTypes[i]
+                || tag.getComponentCount() != mCounts[i]) {
+            return false;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(tag.getDataSize());
+        try {
+            ExifOutputStream.writeTagValue(tag,
+                    new OrderedDataOutputStream(bytes).setByteOrder(mByteOrder));
+        } catch (IOException e) {
+            // not thrown by ByteArrayOutputStream
+            return false;
+        }
+        byte[] data = bytes.toByteArray();
+        System.arraycopy(data, 0, block, mPositions[i], data.length);
+        return true;
+    }
+
+    /**
+     * Writes a DateTimeStamp tag as
+     * {@link ExifInterface#addDateTimeStampTag(int, long, TimeZone)} does.
+     *
+     * @param tagId one of {@link ExifInterface#TAG_DATE_TIME},
+     *            {@link ExifInterface#TAG_DATE_TIME_DIGITIZED},
+     *            {@link ExifInterface#TAG_DATE_TIME_ORIGINAL}.
+     * @return false if tagId is not one of them or not a variable tag.
+     */
+    public boolean setDateTimeStampValue(byte[] block, int tagId, long timestamp,
+            TimeZone timezone) {
+        if (tagId != ExifInterface.TAG_DATE_TIME
+                && tagId != ExifInterface.TAG_DATE_TIME_DIGITIZED
+                && tagId != ExifInterface.TAG_DATE_TIME_ORIGINAL) {
+            return false;
+        }
+        mDateTimeStampFormat.setTimeZone(timezone);
+        return setTagValue(block, tagId, mDateTimeStampFormat.format(timestamp));
+    }
+
+    /**
+     * Writes jpeg with block as its exif header, the APP1 segments of jpeg
+     * before the frame header are dropped.
+     */
+    public void writeJpeg(byte[] block, byte[] jpeg, OutputStream out) throws IOException {
+        List<ByteBuffer> parts = ExifChannelWriter.getSegmentsWithoutApp1(ByteBuffer.wrap(jpeg));
+        out.write(jpeg, 0, 2);
+        out.write(block);
+        for (ByteBuffer part : parts) {
+            out.write(part.array(), part.arrayOffset() + part.position(), part.remaining());
+        }
+    }
+
+    /**
+     * Writes jpeg with block as its exif header with one gathering write, the
+     * compressed data of jpeg is not copied.
+     *
+     * @param jpeg the source from its position to its limit, it is not changed.
+     */
+    public void writeJpeg(byte[] block, ByteBuffer jpeg, FileChannel channel)
+            throws IOException {
+        ExifChannelWriter.write(ByteBuffer.wrap(block), jpeg, channel);
+    }
+
+    private int indexOf(int tagId) {
+        for (int i = 0; i < mTagIds.length; i++) {
+            if (mTagIds[i] == tagId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
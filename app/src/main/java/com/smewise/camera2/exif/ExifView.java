@@ -0,0 +1,332 @@
+package com.smewise.camera2.exif;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A read-only view of the exif header in a {@link ByteBuffer}. IFD entries are
+ * walked in place for every query, so no {@link ExifData}, {@link IfdData} or
+ * {@link ExifTag} objects are created. Use the tag constants of
+ * {@link ExifInterface}, e.g. {@link ExifInterface#TAG_ORIENTATION}; the IFD
+ * encoded in the constant is the one searched.
+ * <p>
+ * The buffer may hold a whole jpeg (heap, direct or memory mapped) or start
+ * directly with the TIFF header. Its position and limit are not changed. Use
+ * {@link ExifInterface} to modify tags.
+ */
+public class ExifView {
+    private static final short TIFF_BIG_ENDIAN = 0x4d4d;
+    private static final short TIFF_LITTLE_ENDIAN = 0x4949;
+    private static final short TIFF_TAG = 0x002A;
+    private static final int IFD_ENTRY_SIZE = 12;
+    private static final int OFFSET_UNKNOWN = -2;
+    private static final int OFFSET_NONE = -1;
+
+    private final ByteBuffer mBuf;
+    // absolute position of the TIFF header in mBuf
+    private final int mTiffStart;
+    // offsets of each IFD relative to the TIFF header, resolved on demand
+    private final int[] mIfdOffsets = new int[IfdId.TYPE_IFD_COUNT];
+
+    private ExifView(ByteBuffer buf, int tiffStart) {
+        mBuf = buf;
+        mTiffStart = tiffStart;
+        for (int i = 0; i < mIfdOffsets.length; i++) {
+            mIfdOffsets[i] = OFFSET_UNKNOWN;
+        }
+        mIfdOffsets[IfdId.TYPE_IFD_0] = mBuf.getInt(mTiffStart + 4);
+    }
+
+    /**
+     * Creates a view over a jpeg or TIFF header.
+     *
+     * @return the view or null if no exif header is found.
+     */
+    public static ExifView wrap(ByteBuffer buffer) {
+        ByteBuffer buf = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int start = buf.position();
+        if (buf.limit() - start < 8) {
+            return null;
+        }
+        short head = buf.getShort(start);
+        if (head == TIFF_BIG_ENDIAN || head == TIFF_LITTLE_ENDIAN) {
+            return wrap(buf, start);
+        } else if (head == JpegHeader.SOI) {
+            try {
+                return wrap(buffer, JpegSegmentIndex.from(buffer));
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates a view over a jpeg with the index of it made before.
+     *
+     * @param index the index of buffer from its current position.
+     * @return the view or null if the jpeg has no exif header.
+     */
+    public static ExifView wrap(ByteBuffer buffer, JpegSegmentIndex index) {
+        long tiffStart = index.getTiffStart();
+        if (tiffStart < 0) {
+            return null;
+        }
+        ByteBuffer buf = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        return wrap(buf, buf.position() + (int) tiffStart);
+    }
+
+    private static ExifView wrap(ByteBuffer buf, int tiffStart) {
+        if (tiffStart + 8 > buf.limit()) {
+            return null;
+        }
+        short order = buf.getShort(tiffStart);
+        if (order == TIFF_LITTLE_ENDIAN) {
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (order != TIFF_BIG_ENDIAN) {
+            return null;
+        }
+        if (buf.getShort(tiffStart + 2) != TIFF_TAG) {
+            return null;
+        }
+        return new ExifView(buf, tiffStart);
+    }
+
+    public ByteOrder getByteOrder() {
+        return mBuf.order();
+    }
+
+    /**
+     * Returns true if the tag exists in the IFD of the tag constant.
+     */
+    public boolean hasTag(int tagId) {
+        return findEntry(tagId) >= 0;
+    }
+
+    /**
+     * Returns the number of components of a tag or 0 if the tag does not exist.
+     */
+    public int getComponentCount(int tagId) {
+        int entry = findEntry(tagId);
+        return entry < 0 ? 0 : mBuf.getInt(entry + 4);
+    }
+
+    /**
+     * Returns the data type of a tag as one of the ExifTag.TYPE_* values, or
+     * -1 if the tag does not exist.
+     */
+    public short getDataType(int tagId) {
+        int entry = findEntry(tagId);
+        return entry < 0 ? -1 : mBuf.getShort(entry + 2);
+    }
+
+    /**
+     * Returns the first component of an integer tag (byte, short, long types),
+     * or defaultValue if the tag does not exist or has another type.
+     */
+    public int getTagIntValue(int tagId, int defaultValue) {
+        return (int) getTagLongValue(tagId, 0, defaultValue);
+    }
+
+    /**
+     * Returns the component at index of an integer tag, or defaultValue.
+     */
+    public int getTagIntValue(int tagId, int index, int defaultValue) {
+        return (int) getTagLongValue(tagId, index, defaultValue);
+    }
+
+    public long getTagLongValue(int tagId, long defaultValue) {
+        return getTagLongValue(tagId, 0, defaultValue);
+    }
+
+    public long getTagLongValue(int tagId, int index, long defaultValue) {
+        int entry = findEntry(tagId);
+        if (entry < 0) {
+            return defaultValue;
+        }
+        short type = mBuf.getShort(entry + 2);
+        int count = mBuf.getInt(entry + 4);
+        if (index < 0 || index >= count) {
+            return defaultValue;
+        }
+        int pos = valuePosition(entry, type, count);
+        if (pos < 0) {
+            return defaultValue;
+        }
+        switch (type) {
+            case ExifTag.TYPE_UNSIGNED_BYTE:
+            case ExifTag.TYPE_UNDEFINED:
+                return mBuf.get(pos + index) & 0xff;
+            case ExifTag.TYPE_UNSIGNED_SHORT:
+                return mBuf.getShort(pos + index * 2) & 0xffff;
+            case ExifTag.TYPE_UNSIGNED_LONG:
+                return mBuf.getInt(pos + index * 4) & 0xffffffffL;
+            case ExifTag.TYPE_LONG:
+                return mBuf.getInt(pos + index * 4);
+            default:
+                return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the component at index of a rational tag as a double, or
+     * defaultValue. A zero denominator also gives defaultValue.
+     */
+    public double getTagRationalValue(int tagId, int index, double defaultValue) {
+        int entry = findEntry(tagId);
+        if (entry < 0) {
+            return defaultValue;
+        }
+        short type = mBuf.getShort(entry + 2);
+        int count = mBuf.getInt(entry + 4);
+        if ((type != ExifTag.TYPE_UNSIGNED_RATIONAL && type != ExifTag.TYPE_RATIONAL)
+                || index < 0 || index >= count) {
+            return defaultValue;
+        }
+        int pos = valuePosition(entry, type, count);
+        if (pos < 0) {
+            return defaultValue;
+        }
+        pos += index * 8;
+        long num = mBuf.getInt(pos);
+        long den = mBuf.getInt(pos + 4);
+        if (type == ExifTag.TYPE_UNSIGNED_RATIONAL) {
+            num &= 0xffffffffL;
+            den &= 0xffffffffL;
+        }
+        return den == 0 ? defaultValue : (double) num / den;
+    }
+
+    /**
+     * Returns the value of an ascii tag up to its first null, or null if the
+     * tag does not exist or has another type.
+     */
+    public String getTagStringValue(int tagId) {
+        int entry = findEntry(tagId);
+        if (entry < 0 || mBuf.getShort(entry + 2) != ExifTag.TYPE_ASCII) {
+            return null;
+        }
+        int count = mBuf.getInt(entry + 4);
+        int pos = valuePosition(entry, ExifTag.TYPE_ASCII, count);
+        if (pos < 0) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            byte c = mBuf.get(pos + i);
+            if (c == 0) {
+                break;
+            }
+            sb.append((char) (c & 0xff));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the compressed thumbnail of IFD1 without copying it, a read-only
+     * buffer from position 0 to the end of the thumbnail data.
+     *
+     * @return the thumbnail or null if there is none or it is out of bounds.
+     */
+    public ByteBuffer getCompressedThumbnail() {
+        long offset = getTagLongValue(ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT, -1);
+        long length = getTagLongValue(ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH, -1);
+        if (offset <= 0 || length <= 0 || mTiffStart + offset + length > mBuf.limit()) {
+            return null;
+        }
+        ByteBuffer thumb = mBuf.asReadOnlyBuffer();
+        thumb.limit((int) (mTiffStart + offset + length));
+        thumb.position((int) (mTiffStart + offset));
+        return thumb.slice();
+    }
+
+    /**
+     * Returns the absolute position of the value of an entry, it is inside the
+     * entry when the value fits in 4 bytes. Returns -1 if it is out of bounds
+     * or the type or count in the file is invalid.
+     */
+    private int valuePosition(int entry, short type, int count) {
+        if (!ExifTag.isValidType(type) || count < 0) {
+            return -1;
+        }
+        int size = ExifTag.getElementSize(type);
+        long total = (long) size * count;
+        long pos;
+        if (total <= 4) {
+            pos = entry + 8;
+        } else {
+            pos = (long) mTiffStart + mBuf.getInt(entry + 8);
+        }
+        if (pos < mTiffStart || pos + total > mBuf.limit()) {
+            return -1;
+        }
+        return (int) pos;
+    }
+
+    /**
+     * Returns the absolute position of the IFD entry for tagId, or -1.
+     */
+    private int findEntry(int tagId) {
+        int ifd = ExifInterface.getTrueIfd(tagId);
+        if (!ExifTag.isValidIfd(ifd)) {
+            return -1;
+        }
+        int ifdPos = getIfdPosition(ifd);
+        if (ifdPos < 0) {
+            return -1;
+        }
+        short tid = ExifInterface.getTrueTagKey(tagId);
+        int count = mBuf.getShort(ifdPos) & 0xffff;
+        int entry = ifdPos + 2;
+        int end = Math.min(entry + count * IFD_ENTRY_SIZE, mBuf.limit() - IFD_ENTRY_SIZE + 1);
+        for (; entry < end; entry += IFD_ENTRY_SIZE) {
+            if (mBuf.getShort(entry) == tid) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private int getIfdPosition(int ifd) {
+        int offset = mIfdOffsets[ifd];
+        if (offset == OFFSET_UNKNOWN) {
+            offset = resolveIfdOffset(ifd);
+            mIfdOffsets[ifd] = offset;
+        }
+        if (offset <= 0) {
+            return -1;
+        }
+        long pos = (long) mTiffStart + offset;
+        if (pos + 2 > mBuf.limit()) {
+            return -1;
+        }
+        return (int) pos;
+    }
+
+    private int resolveIfdOffset(int ifd) {
+        switch (ifd) {
+            case IfdId.TYPE_IFD_1: {
+                int ifd0 = getIfdPosition(IfdId.TYPE_IFD_0);
+                if (ifd0 < 0) {
+                    return OFFSET_NONE;
+                }
+                int next = ifd0 + 2 + (mBuf.getShort(ifd0) & 0xffff) * IFD_ENTRY_SIZE;
+                return next + 4 <= mBuf.limit() ? mBuf.getInt(next) : OFFSET_NONE;
+            }
+            case IfdId.TYPE_IFD_EXIF:
+                return pointerValue(ExifInterface.TAG_EXIF_IFD);
+            case IfdId.TYPE_IFD_GPS:
+                return pointerValue(ExifInterface.TAG_GPS_IFD);
+            case IfdId.TYPE_IFD_INTEROPERABILITY:
+                return pointerValue(ExifInterface.TAG_INTEROPERABILITY_IFD);
+            default:
+                return OFFSET_NONE;
+        }
+    }
+
+    private int pointerValue(int pointerTag) {
+        int entry = findEntry(pointerTag);
+        return entry < 0 ? OFFSET_NONE : mBuf.getInt(entry + 8);
+    }
+}
@@ -16,11 +16,12 @@
 
 package com.smewise.camera2.exif;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
- * This class stores all the tags in an IFD.
+ * This class stores all the tags in an IFD. Tags are kept sorted by their
+ * unsigned tag ID, which is the order required for IFD entries by TIFF, so
+ * {@link #getAllTags()} can be written out as is.
  *
  * @see ExifData
  * @see ExifTag
@@ -28,7 +29,10 @@ import java.util.Map;
 class IfdData {
 
     private final int mIfdId;
-    private final Map<Short, ExifTag> mExifTags = new HashMap<Short, ExifTag>();
+    private static final int INITIAL_CAPACITY = 8;
+    private short[] mTagIds = new short[INITIAL_CAPACITY];
+    private ExifTag[] mTags = new ExifTag[INITIAL_CAPACITY];
+    private int mTagCount = 0;
     private int mOffsetToNextIfd = 0;
     private static final int[] sIfds = {
             IfdId.TYPE_IFD_0, IfdId.TYPE_IFD_1, IfdId.TYPE_IFD_EXIF,
@@ -52,10 +56,10 @@ class IfdData {
     }
 
     /**
-     * Get a array the contains all {@link ExifTag} in this IFD.
+     * Get a array the contains all {@link ExifTag} in this IFD, sorted by tag ID.
      */
     protected ExifTag[] getAllTags() {
-        return mExifTags.values().toArray(new ExifTag[mExifTags.size()]);
+        return Arrays.copyOf(mTags, mTagCount);
     }
 
     /**
@@ -76,33 +80,84 @@ class IfdData {
      * such tag.
      */
     protected ExifTag getTag(short tagId) {
-        return mExifTags.get(tagId);
+        int i = indexOf(tagId);
+        return i >= 0 ? mTags[i] : null;
     }
 
     /**
      * Adds or replaces a {@link ExifTag}.
+     *
+     * @return the replaced tag or null.
      */
     protected ExifTag setTag(ExifTag tag) {
         tag.setIfd(mIfdId);
-        return mExifTags.put(tag.getTagId(), tag);
+        short tagId = tag.getTagId();
+        int i = indexOf(tagId);
+        if (i >= 0) {
+            ExifTag old = mTags[i];
+            mTags[i] = tag;
+            return old;
+        }
+        i = -(i + 1);
+        if (mTagCount == mTagIds.length) {
+            int capacity = mTagCount * 2;
+            mTagIds = Arrays.copyOf(mTagIds, capacity);
+            mTags = Arrays.copyOf(mTags, capacity);
+        }
+        System.arraycopy(mTagIds, i, mTagIds, i + 1, mTagCount - i);
+        System.arraycopy(mTags, i, mTags, i + 1, mTagCount - i);
+        mTagIds[i] = tagId;
+        mTags[i] = tag;
+        mTagCount++;
+        return null;
     }
 
     protected boolean checkCollision(short tagId) {
-        return mExifTags.get(tagId) != null;
+        return indexOf(tagId) >= 0;
     }
 
     /**
      * Removes the tag of the given ID
      */
     protected void removeTag(short tagId) {
-        mExifTags.remove(tagId);
+        int i = indexOf(tagId);
+        if (i < 0) {
+            return;
+        }
+        mTagCount--;
+        System.arraycopy(mTagIds, i + 1, mTagIds, i, mTagCount - i);
+        System.arraycopy(mTags, i + 1, mTags, i, mTagCount - i);
+        mTags[mTagCount] = null;
     }
 
     /**
      * Gets the tags count in the IFD.
      */
     protected int getTagCount() {
-        return mExifTags.size();
+        return mTagCount;
+    }
+
+    /**
+     * Binary search of the unsigned tag ID.
+     *
+     * @return the index of the tag, or (-(insertion point) - 1) if not found.
+     */
+    private int indexOf(short tagId) {
+        int key = tagId & 0xffff;
+        int low = 0;
+        int high = mTagCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midKey = mTagIds[mid] & 0xffff;
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
     }
 
     /**
@@ -134,12 +189,12 @@ class IfdData {
         if (obj instanceof IfdData) {
             IfdData data = (IfdData) obj;
             if (data.getId() == mIfdId && data.getTagCount() == getTagCount()) {
-                ExifTag[] tags = data.getAllTags();
-                for (ExifTag tag : tags) {
+                for (int i = 0; i < data.mTagCount; i++) {
+                    ExifTag tag = data.mTags[i];
                     if (ExifInterface.isOffsetTag(tag.getTagId())) {
                         continue;
                     }
-                    ExifTag tag2 = mExifTags.get(tag.getTagId());
+                    ExifTag tag2 = getTag(tag.getTagId());
                     if (!tag.equals(tag2)) {
                         return false;
                     }
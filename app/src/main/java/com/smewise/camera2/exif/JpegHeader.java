@@ -31,9 +31,32 @@ public class JpegHeader {
     public static final short DHT = (short) 0xFFC4;
     public static final short JPG = (short) 0xFFC8;
     public static final short DAC = (short) 0xFFCC;
+    public static final short SOF1 = (short) 0xFFC1;
+    public static final short SOF2 = (short) 0xFFC2;
+
+    public static final short DQT = (short) 0xFFDB;
+    public static final short DRI = (short) 0xFFDD;
+    public static final short SOS = (short) 0xFFDA;
+    public static final short COM = (short) 0xFFFE;
+    public static final short APP15 = (short) 0xFFEF;
+
+    /**
+     *  RST (restart) markers RST0 to RST7, they carry no length and only appear in entropy
+     *  coded data.
+     */
+    public static final short RST0 = (short) 0xFFD0;
+    public static final short RST7 = (short) 0xFFD7;
 
     public static final boolean isSofMarker(short marker) {
         return marker >= SOF0 && marker <= SOF15 && marker != DHT && marker != JPG
                 && marker != DAC;
     }
+
+    public static final boolean isAppMarker(short marker) {
+        return marker >= APP0 && marker <= APP15;
+    }
+
+    public static final boolean isRstMarker(short marker) {
+        return marker >= RST0 && marker <= RST7;
+    }
 }
@@ -0,0 +1,335 @@
+package com.smewise.camera2.exif;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Marker segments of a jpeg found in one pass, from SOI to the first SOS (or
+ * EOI). For each segment the marker, the position of the marker and the
+ * length of the segment are kept, so APPn payloads, the frame header and the
+ * start of the compressed data can be reached without scanning again.
+ * <p>
+ * Positions are relative to the position of a {@link ByteBuffer} source when
+ * the index is created, or the start of a {@link FileChannel} source. Only the
+ * segment headers, the frame header and the first bytes of APP1 are read.
+ * Scanning stops at an invalid or truncated segment, the segments before it
+ * are kept.
+ */
+public class JpegSegmentIndex {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int EXIF_HEADER = 0x45786966; // "Exif"
+    // marker and length
+    private static final int SEGMENT_HEADER_SIZE = 4;
+
+    private final ByteBuffer mBuffer;
+    private final FileChannel mChannel;
+    private final long mBase;
+
+    private short[] mMarkers = new short[INITIAL_CAPACITY];
+    private long[] mOffsets = new long[INITIAL_CAPACITY];
+    private int[] mLengths = new int[INITIAL_CAPACITY];
+    private int mCount;
+    private int mExifIndex = -1;
+    private int mFrameIndex = -1;
+    private int mScanIndex = -1;
+
+    private int mPrecision;
+    private int mWidth;
+    private int mHeight;
+    private byte[] mComponentIds;
+    private byte[] mSampling;
+
+    private JpegSegmentIndex(ByteBuffer buffer, FileChannel channel) {
+        mBuffer = buffer;
+        mChannel = channel;
+        mBase = buffer != null ? buffer.position() : 0;
+    }
+
+    /**
+     * Indexes the jpeg from the position of buffer, the buffer is not changed.
+     *
+     * @throws IOException if the data does not start with SOI.
+     */
+    public static JpegSegmentIndex from(ByteBuffer buffer) throws IOException {
+        JpegSegmentIndex index = new JpegSegmentIndex(
+                buffer.duplicate().order(ByteOrder.BIG_ENDIAN), null);
+        index.scan();
+        return index;
+    }
+
+    /**
+     * Indexes the jpeg of a file with positional reads, the channel position
+     * is not changed.
+     */
+    public static JpegSegmentIndex from(FileChannel channel) throws IOException {
+        JpegSegmentIndex index = new JpegSegmentIndex(null, channel);
+        index.scan();
+        return index;
+    }
+
+    private void scan() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        long pos = 0;
+        if (read(header, pos, 2) < 2 || header.getShort(0) != JpegHeader.SOI) {
+            throw new IOException("Not a jpeg, SOI not found");
+        }
+        pos += 2;
+        while (true) {
+            int n = read(header, pos, SEGMENT_HEADER_SIZE);
+            if (n < 2) {
+                // no SOS, e.g. a header only jpeg
+                return;
+            }
+            if ((header.get(0) & 0xff) != 0xff) {
+                return;
+            }
+            if ((header.get(1) & 0xff) == 0xff) {
+                // fill byte before a marker
+                pos++;
+                continue;
+            }
+            short marker = header.getShort(0);
+            if (marker == JpegHeader.EOI) {
+                add(marker, pos, 0);
+                return;
+            }
+            int length = header.getShort(2) & 0xffff;
+            if (n < SEGMENT_HEADER_SIZE || length < 2) {
+                return;
+            }
+            int index = add(marker, pos, length);
+            if (marker == JpegHeader.SOS) {
+                mScanIndex = index;
+                return;
+            }
+            if (mFrameIndex < 0 && JpegHeader.isSofMarker(marker)
+                    && readFrameHeader(pos + SEGMENT_HEADER_SIZE, length - 2)) {
+                mFrameIndex = index;
+            } else if (mExifIndex < 0 && marker == JpegHeader.APP1 && isExif(pos, length)) {
+                mExifIndex = index;
+            }
+            pos += 2 + length;
+        }
+    }
+
+    private int add(short marker, long offset, int length) {
+        if (mCount == mMarkers.length) {
+            int capacity = mCount * 2;
+            short[] markers = new short[capacity];
+            long[] offsets = new long[capacity];
+            int[] lengths = new int[capacity];
+            System.arraycopy(mMarkers, 0, markers, 0, mCount);
+            System.arraycopy(mOffsets, 0, offsets, 0, mCount);
+            System.arraycopy(mLengths, 0, lengths, 0, mCount);
+            mMarkers = markers;
+            mOffsets = offsets;
+            mLengths = lengths;
+        }
+        mMarkers[mCount] = marker;
+        mOffsets[mCount] = offset;
+        mLengths[mCount] = length;
+        return mCount++;
+    }
+
+    private boolean isExif(long pos, int length) throws IOException {
+        if (length < 8) {
+            return false;
+        }
+        ByteBuffer id = ByteBuffer.allocate(6);
+        return read(id, pos + SEGMENT_HEADER_SIZE, 6) == 6
+                && id.getInt(0) == EXIF_HEADER && id.getShort(4) == 0;
+    }
+
+    /**
+     * @return false if the frame header is truncated.
+     */
+    private boolean readFrameHeader(long pos, int size) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(size);
+        if (size < 6 || read(frame, pos, size) < size) {
+            return false;
+        }
+        int components = frame.get(5) & 0xff;
+        if (size < 6 + components * 3) {
+            return false;
+        }
+        mPrecision = frame.get(0) & 0xff;
+        mHeight = frame.getShort(1) & 0xffff;
+        mWidth = frame.getShort(3) & 0xffff;
+        mComponentIds = new byte[components];
+        mSampling = new byte[components];
+        for (int i = 0; i < components; i++) {
+            mComponentIds[i] = frame.get(6 + i * 3);
+            mSampling[i] = frame.get(7 + i * 3);
+        }
+        return true;
+    }
+
+    /**
+     * Reads up to n bytes at pos (relative) into the start of dst.
+     *
+     * @return the number of bytes read.
+     */
+    private int read(ByteBuffer dst, long pos, int n) throws IOException {
+        dst.clear();
+        dst.limit(n);
+        if (mBuffer != null) {
+            long start = mBase + pos;
+            int available = (int) Math.max(0, Math.min(n, mBuffer.limit() - start));
+            for (int i = 0; i < available; i++) {
+                dst.put(i, mBuffer.get((int) start + i));
+            }
+            return available;
+        }
+        while (dst.hasRemaining()) {
+            if (mChannel.read(dst, pos + dst.position()) < 0) {
+                break;
+            }
+        }
+        return dst.position();
+    }
+
+    public int getSegmentCount() {
+        return mCount;
+    }
+
+    public short getMarker(int index) {
+        return mMarkers[index];
+    }
+
+    /**
+     * Returns the position of the marker of a segment.
+     */
+    public long getOffset(int index) {
+        return mOffsets[index];
+    }
+
+    /**
+     * Returns the length field of a segment, it counts itself and the payload
+     * but not the marker. It is 0 for EOI.
+     */
+    public int getLength(int index) {
+        return mLengths[index];
+    }
+
+    /**
+     * Returns the position after a segment.
+     */
+    public long getEnd(int index) {
+        return mOffsets[index] + 2 + mLengths[index];
+    }
+
+    /**
+     * Returns the index of the first segment with marker at or after from, or -1.
+     */
+    public int indexOf(short marker, int from) {
+        for (int i = Math.max(0, from); i < mCount; i++) {
+            if (mMarkers[i] == marker) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the APP1 segment with the exif header, or -1.
+     */
+    public int getExifIndex() {
+        return mExifIndex;
+    }
+
+    /**
+     * Returns the position of the TIFF header in the exif segment, or -1.
+     */
+    public long getTiffStart() {
+        return mExifIndex < 0 ? -1 : mOffsets[mExifIndex] + SEGMENT_HEADER_SIZE + 6;
+    }
+
+    /**
+     * Returns the index of the first SOF segment, or -1.
+     */
+    public int getFrameIndex() {
+        return mFrameIndex;
+    }
+
+    /**
+     * Returns the index of the first SOS segment, or -1 if there is none.
+     */
+    public int getScanIndex() {
+        return mScanIndex;
+    }
+
+    /**
+     * Returns the position of the first byte after the SOS header, where the
+     * compressed data starts, or -1.
+     */
+    public long getScanDataStart() {
+        return mScanIndex < 0 ? -1 : getEnd(mScanIndex);
+    }
+
+    /**
+     * Returns the payload of a segment without marker and length. It is a
+     * read-only slice of a buffer source and read into a new buffer for a
+     * channel source.
+     */
+    public ByteBuffer getPayload(int index) throws IOException {
+        long start = mOffsets[index] + SEGMENT_HEADER_SIZE;
+        int size = Math.max(0, mLengths[index] - 2);
+        if (mBuffer != null) {
+            if (mBase + start + size > mBuffer.limit()) {
+                throw new EOFException("Truncated segment at " + mOffsets[index]);
+            }
+            ByteBuffer payload = mBuffer.asReadOnlyBuffer();
+            payload.limit((int) (mBase + start + size));
+            payload.position((int) (mBase + start));
+            return payload.slice();
+        }
+        ByteBuffer payload = ByteBuffer.allocate(size);
+        if (read(payload, start, size) < size) {
+            throw new EOFException("Truncated segment at " + mOffsets[index]);
+        }
+        payload.clear();
+        return payload;
+    }
+
+    public boolean hasFrame() {
+        return mFrameIndex >= 0;
+    }
+
+    /**
+     * Returns the image width of the frame header, 0 if there is no frame.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Returns the image height of the frame header, 0 if there is no frame or
+     * it is defined by the DNL marker.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getPrecision() {
+        return mPrecision;
+    }
+
+    public int getComponentCount() {
+        return mComponentIds == null ? 0 : mComponentIds.length;
+    }
+
+    public int getComponentId(int component) {
+        return mComponentIds[component] & 0xff;
+    }
+
+    public int getHorizontalSampling(int component) {
+        return (mSampling[component] >> 4) & 0xf;
+    }
+
+    public int getVerticalSampling(int component) {
+        return mSampling[component] & 0xf;
+    }
+}
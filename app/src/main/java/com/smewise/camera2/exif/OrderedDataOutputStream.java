@@ -23,7 +23,9 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 class OrderedDataOutputStream extends FilterOutputStream {
+    private static final int COPY_SIZE = 4 * 1024;
     private final ByteBuffer mByteBuffer = ByteBuffer.allocate(4);
+    private byte[] mCopyBuffer;
 
     public OrderedDataOutputStream(OutputStream out) {
         super(out);
@@ -48,6 +50,27 @@ class OrderedDataOutputStream extends FilterOutputStream {
         return this;
     }
 
+    /**
+     * Writes the bytes of buf from its position to its limit, buf is not
+     * changed. Buffers without an accessible array are copied in chunks.
+     */
+    public OrderedDataOutputStream write(ByteBuffer buf) throws IOException {
+        if (buf.hasArray()) {
+            out.write(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+            return this;
+        }
+        if (mCopyBuffer == null) {
+            mCopyBuffer = new byte[COPY_SIZE];
+        }
+        ByteBuffer src = buf.duplicate();
+        while (src.hasRemaining()) {
+            int n = Math.min(src.remaining(), mCopyBuffer.length);
+            src.get(mCopyBuffer, 0, n);
+            out.write(mCopyBuffer, 0, n);
+        }
+        return this;
+    }
+
     public OrderedDataOutputStream writeRational(Rational rational) throws IOException {
         writeInt((int) rational.getNumerator());
         writeInt((int) rational.getDenominator());
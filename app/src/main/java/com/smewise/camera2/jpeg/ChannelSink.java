@@ -0,0 +1,85 @@
+package com.smewise.camera2.jpeg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Small write buffer in front of a channel, output is pushed to the channel whenever the
+ * buffer is full so memory use does not depend on the image size.
+ */
+final class ChannelSink {
+    static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private final WritableByteChannel mChannel;
+    private final ByteBuffer mBuffer;
+    private long mWritten;
+
+    ChannelSink(WritableByteChannel channel) {
+        this(channel, DEFAULT_CAPACITY);
+    }
+
+    ChannelSink(WritableByteChannel channel, int capacity) {
+        mChannel = channel;
+        mBuffer = ByteBuffer.allocateDirect(capacity);
+    }
+
+    void write(int b) throws IOException {
+        if (!mBuffer.hasRemaining()) {
+            drain();
+        }
+        mBuffer.put((byte) b);
+    }
+
+    void writeShort(int s) throws IOException {
+        write(s >> 8);
+        write(s);
+    }
+
+    void write(byte[] src, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!mBuffer.hasRemaining()) {
+                drain();
+            }
+            int n = Math.min(len, mBuffer.remaining());
+            mBuffer.put(src, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Write the remaining bytes of src, large buffers go straight to the channel.
+     */
+    void write(ByteBuffer src) throws IOException {
+        src = src.duplicate();
+        if (src.remaining() > mBuffer.remaining()) {
+            drain();
+            if (src.remaining() >= mBuffer.capacity()) {
+                mWritten += src.remaining();
+                while (src.hasRemaining()) {
+                    mChannel.write(src);
+                }
+                return;
+            }
+        }
+        mBuffer.put(src);
+    }
+
+    void flush() throws IOException {
+        drain();
+    }
+
+    long getWrittenBytes() {
+        return mWritten + mBuffer.position();
+    }
+
+    private void drain() throws IOException {
+        mBuffer.flip();
+        mWritten += mBuffer.remaining();
+        while (mBuffer.hasRemaining()) {
+            mChannel.write(mBuffer);
+        }
+        mBuffer.clear();
+    }
+}
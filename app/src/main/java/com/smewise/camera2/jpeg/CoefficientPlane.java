@@ -0,0 +1,28 @@
+package com.smewise.camera2.jpeg;
+
+/**
+ * Quantized DCT coefficients of one component, 64 shorts per block in natural order.
+ * A plane may hold only a band of block rows starting at {@link #firstBlockRow}, which lets
+ * callers work one MCU row at a time.
+ */
+final class CoefficientPlane {
+    final int blocksPerLine;
+    final int blockRows;
+    final short[] coef;
+    int firstBlockRow;
+
+    CoefficientPlane(int blocksPerLine, int blockRows) {
+        this.blocksPerLine = blocksPerLine;
+        this.blockRows = blockRows;
+        coef = new short[blocksPerLine * blockRows * 64];
+    }
+
+    boolean contains(int bx, int by) {
+        return bx >= 0 && bx < blocksPerLine
+                && by >= firstBlockRow && by < firstBlockRow + blockRows;
+    }
+
+    int offset(int bx, int by) {
+        return ((by - firstBlockRow) * blocksPerLine + bx) << 6;
+    }
+}
@@ -0,0 +1,49 @@
+package com.smewise.camera2.jpeg;
+
+import java.util.IdentityHashMap;
+
+/**
+ * Encoder that writes nothing and counts the symbols emitted for each table, the first
+ * pass of huffman table optimization. Tables only identify the statistics here, so any
+ * instance can be passed as long as the second pass maps it to the optimized table.
+ */
+final class HuffmanCounter extends HuffmanEncoder {
+    private final IdentityHashMap<HuffmanTable, int[]> mFrequencies = new IdentityHashMap<>();
+
+    HuffmanCounter() {
+        super(null);
+    }
+
+    @Override
+    void emitSymbol(HuffmanTable table, int symbol) {
+        int[] freq = mFrequencies.get(table);
+        if (freq == null) {
+            freq = new int[256];
+            mFrequencies.put(table, freq);
+        }
+        freq[symbol]++;
+    }
+
+    @Override
+    void emitBits(int bits, int size) {
+        // only symbols are counted
+    }
+
+    @Override
+    void emitRestart(int n) {
+        // no output
+    }
+
+    @Override
+    void finish() {
+        // no output
+    }
+
+    /**
+     * @return the optimal table for the symbols counted with key, null if there is none
+     */
+    HuffmanTable buildTable(HuffmanTable key) {
+        int[] freq = mFrequencies.get(key);
+        return freq != null ? HuffmanTable.optimal(freq) : null;
+    }
+}
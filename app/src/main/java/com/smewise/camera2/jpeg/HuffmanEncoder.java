@@ -0,0 +1,124 @@
+package com.smewise.camera2.jpeg;
+
+import com.smewise.camera2.exif.JpegHeader;
+
+import java.io.IOException;
+
+/**
+ * Entropy encoder for baseline huffman scans, writes quantized coefficient blocks with
+ * byte stuffing to a {@link ChannelSink}.
+ */
+class HuffmanEncoder {
+    private final ChannelSink mSink;
+    private long mBitBuf;
+    private int mBitCount;
+
+    HuffmanEncoder(ChannelSink sink) {
+        mSink = sink;
+    }
+
+    /**
+     * Encode one block given in natural order.
+     * @return the DC value of this block, the predictor for the next block
+     */
+    int encodeBlock(short[] coef, int off, int pred, HuffmanTable dc, HuffmanTable ac)
+            throws IOException {
+        int dcValue = encodeDc(coef, off, pred, dc);
+        encodeAc(coef, off, 1, 63, ac);
+        return dcValue;
+    }
+
+    /**
+     * Encode the DC difference of a block, also a DC first scan of a progressive jpeg.
+     * @return the DC value of this block
+     */
+    int encodeDc(short[] coef, int off, int pred, HuffmanTable dc) throws IOException {
+        int dcValue = coef[off];
+        int diff = dcValue - pred;
+        int s = bitLength(diff);
+        emitSymbol(dc, s);
+        if (s != 0) {
+            emitBits(diff < 0 ? diff - 1 : diff, s);
+        }
+        return dcValue;
+    }
+
+    /**
+     * Encode AC coefficients start to end in zigzag order. A band of a progressive AC
+     * first scan without successive approximation is coded the same way, EOB is EOB0.
+     */
+    void encodeAc(short[] coef, int off, int start, int end, HuffmanTable ac)
+            throws IOException {
+        int run = 0;
+        for (int k = start; k <= end; k++) {
+            int value = coef[off + JpegFrame.ZIGZAG[k]];
+            if (value == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15) {
+                emitSymbol(ac, 0xf0);
+                run -= 16;
+            }
+            int s = bitLength(value);
+            emitSymbol(ac, (run << 4) | s);
+            emitBits(value < 0 ? value - 1 : value, s);
+            run = 0;
+        }
+        if (run > 0) {
+            emitSymbol(ac, 0x00);
+        }
+    }
+
+    /**
+     * Pad the current byte with ones and write RSTn.
+     */
+    void emitRestart(int n) throws IOException {
+        flushBits();
+        mSink.writeShort(JpegHeader.RST0 + (n & 7));
+    }
+
+    /**
+     * Pad the last byte of the scan with ones.
+     */
+    void finish() throws IOException {
+        flushBits();
+    }
+
+    void emitSymbol(HuffmanTable table, int symbol) throws IOException {
+        int size = table.sizes[symbol];
+        if (size == 0) {
+            throw new JpegFormatException("no huffman code for symbol 0x"
+                    + Integer.toHexString(symbol));
+        }
+        emitBits(table.codes[symbol], size);
+    }
+
+    void emitBits(int bits, int size) throws IOException {
+        mBitBuf = (mBitBuf << size) | (bits & ((1 << size) - 1));
+        mBitCount += size;
+        while (mBitCount >= 8) {
+            int b = (int) (mBitBuf >> (mBitCount - 8)) & 0xff;
+            mSink.write(b);
+            if (b == 0xff) {
+                mSink.write(0);
+            }
+            mBitCount -= 8;
+        }
+    }
+
+    private void flushBits() throws IOException {
+        if (mBitCount > 0) {
+            emitBits(0x7f, 8 - mBitCount);
+        }
+        mBitBuf = 0;
+        mBitCount = 0;
+    }
+
+    static int bitLength(int value) {
+        if (value < 0) {
+            value = -value;
+        }
+        return 32 - Integer.numberOfLeadingZeros(value);
+    }
+}
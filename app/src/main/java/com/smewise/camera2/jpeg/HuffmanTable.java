@@ -0,0 +1,271 @@
+package com.smewise.camera2.jpeg;
+
+import java.util.Arrays;
+
+/**
+ * Huffman table as defined by a DHT segment, holds both the decoding lookup and the
+ * encoding code/size arrays so one instance serves decoder and encoder.
+ */
+final class HuffmanTable {
+    static final int CLASS_DC = 0;
+    static final int CLASS_AC = 1;
+
+    // codes not longer than this are resolved by a single table lookup
+    static final int LOOKAHEAD = 9;
+
+    /* Standard tables, ITU T.81 Annex K.3 */
+    private static final byte[] STD_DC_LUMINANCE_BITS = {
+            0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0
+    };
+    private static final byte[] STD_DC_CHROMINANCE_BITS = {
+            0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0
+    };
+    private static final byte[] STD_DC_VALUES = {
+            0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11
+    };
+    private static final byte[] STD_AC_LUMINANCE_BITS = {
+            0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d
+    };
+    private static final byte[] STD_AC_LUMINANCE_VALUES = {
+            0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12, 0x21, 0x31, 0x41, 0x06, 0x13,
+            0x51, 0x61, 0x07, 0x22, 0x71, 0x14, 0x32, (byte) 0x81, (byte) 0x91, (byte) 0xa1,
+            0x08, 0x23, 0x42, (byte) 0xb1, (byte) 0xc1, 0x15, 0x52, (byte) 0xd1, (byte) 0xf0,
+            0x24, 0x33, 0x62, 0x72, (byte) 0x82, 0x09, 0x0a, 0x16, 0x17, 0x18, 0x19, 0x1a,
+            0x25, 0x26, 0x27, 0x28, 0x29, 0x2a, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a,
+            0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49, 0x4a, 0x53, 0x54, 0x55, 0x56, 0x57,
+            0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a, 0x73, 0x74,
+            0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, (byte) 0x83, (byte) 0x84, (byte) 0x85,
+            (byte) 0x86, (byte) 0x87, (byte) 0x88, (byte) 0x89, (byte) 0x8a, (byte) 0x92,
+            (byte) 0x93, (byte) 0x94, (byte) 0x95, (byte) 0x96, (byte) 0x97, (byte) 0x98,
+            (byte) 0x99, (byte) 0x9a, (byte) 0xa2, (byte) 0xa3, (byte) 0xa4, (byte) 0xa5,
+            (byte) 0xa6, (byte) 0xa7, (byte) 0xa8, (byte) 0xa9, (byte) 0xaa, (byte) 0xb2,
+            (byte) 0xb3, (byte) 0xb4, (byte) 0xb5, (byte) 0xb6, (byte) 0xb7, (byte) 0xb8,
+            (byte) 0xb9, (byte) 0xba, (byte) 0xc2, (byte) 0xc3, (byte) 0xc4, (byte) 0xc5,
+            (byte) 0xc6, (byte) 0xc7, (byte) 0xc8, (byte) 0xc9, (byte) 0xca, (byte) 0xd2,
+            (byte) 0xd3, (byte) 0xd4, (byte) 0xd5, (byte) 0xd6, (byte) 0xd7, (byte) 0xd8,
+            (byte) 0xd9, (byte) 0xda, (byte) 0xe1, (byte) 0xe2, (byte) 0xe3, (byte) 0xe4,
+            (byte) 0xe5, (byte) 0xe6, (byte) 0xe7, (byte) 0xe8, (byte) 0xe9, (byte) 0xea,
+            (byte) 0xf1, (byte) 0xf2, (byte) 0xf3, (byte) 0xf4, (byte) 0xf5, (byte) 0xf6,
+            (byte) 0xf7, (byte) 0xf8, (byte) 0xf9, (byte) 0xfa
+    };
+    private static final byte[] STD_AC_CHROMINANCE_BITS = {
+            0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77
+    };
+    private static final byte[] STD_AC_CHROMINANCE_VALUES = {
+            0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21, 0x31, 0x06, 0x12, 0x41, 0x51,
+            0x07, 0x61, 0x71, 0x13, 0x22, 0x32, (byte) 0x81, 0x08, 0x14, 0x42, (byte) 0x91,
+            (byte) 0xa1, (byte) 0xb1, (byte) 0xc1, 0x09, 0x23, 0x33, 0x52, (byte) 0xf0, 0x15,
+            0x62, 0x72, (byte) 0xd1, 0x0a, 0x16, 0x24, 0x34, (byte) 0xe1, 0x25, (byte) 0xf1,
+            0x17, 0x18, 0x19, 0x1a, 0x26, 0x27, 0x28, 0x29, 0x2a, 0x35, 0x36, 0x37, 0x38,
+            0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49, 0x4a, 0x53, 0x54, 0x55,
+            0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a,
+            0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, (byte) 0x82, (byte) 0x83,
+            (byte) 0x84, (byte) 0x85, (byte) 0x86, (byte) 0x87, (byte) 0x88, (byte) 0x89,
+            (byte) 0x8a, (byte) 0x92, (byte) 0x93, (byte) 0x94, (byte) 0x95, (byte) 0x96,
+            (byte) 0x97, (byte) 0x98, (byte) 0x99, (byte) 0x9a, (byte) 0xa2, (byte) 0xa3,
+            (byte) 0xa4, (byte) 0xa5, (byte) 0xa6, (byte) 0xa7, (byte) 0xa8, (byte) 0xa9,
+            (byte) 0xaa, (byte) 0xb2, (byte) 0xb3, (byte) 0xb4, (byte) 0xb5, (byte) 0xb6,
+            (byte) 0xb7, (byte) 0xb8, (byte) 0xb9, (byte) 0xba, (byte) 0xc2, (byte) 0xc3,
+            (byte) 0xc4, (byte) 0xc5, (byte) 0xc6, (byte) 0xc7, (byte) 0xc8, (byte) 0xc9,
+            (byte) 0xca, (byte) 0xd2, (byte) 0xd3, (byte) 0xd4, (byte) 0xd5, (byte) 0xd6,
+            (byte) 0xd7, (byte) 0xd8, (byte) 0xd9, (byte) 0xda, (byte) 0xe2, (byte) 0xe3,
+            (byte) 0xe4, (byte) 0xe5, (byte) 0xe6, (byte) 0xe7, (byte) 0xe8, (byte) 0xe9,
+            (byte) 0xea, (byte) 0xf2, (byte) 0xf3, (byte) 0xf4, (byte) 0xf5, (byte) 0xf6,
+            (byte) 0xf7, (byte) 0xf8, (byte) 0xf9, (byte) 0xfa
+    };
+
+    static final HuffmanTable STD_DC_LUMINANCE =
+            new HuffmanTable(STD_DC_LUMINANCE_BITS, STD_DC_VALUES);
+    static final HuffmanTable STD_DC_CHROMINANCE =
+            new HuffmanTable(STD_DC_CHROMINANCE_BITS, STD_DC_VALUES);
+    static final HuffmanTable STD_AC_LUMINANCE =
+            new HuffmanTable(STD_AC_LUMINANCE_BITS, STD_AC_LUMINANCE_VALUES);
+    static final HuffmanTable STD_AC_CHROMINANCE =
+            new HuffmanTable(STD_AC_CHROMINANCE_BITS, STD_AC_CHROMINANCE_VALUES);
+
+    // number of codes of length 1..16, index 0 is length 1, as stored in DHT
+    final byte[] bits;
+    final byte[] values;
+
+    /* decoding */
+    // largest code of each length, -1 if there is no code of that length
+    private final int[] mMaxCode = new int[18];
+    // values index of a code is code + mValOffset[length]
+    private final int[] mValOffset = new int[17];
+    // (length << 8) | value for codes not longer than LOOKAHEAD, 0 otherwise
+    private final int[] mLookup = new int[1 << LOOKAHEAD];
+
+    /* encoding, indexed by symbol */
+    final int[] codes = new int[256];
+    final byte[] sizes = new byte[256];
+
+    HuffmanTable(byte[] bits, byte[] values) {
+        this.bits = bits;
+        this.values = values;
+        build();
+    }
+
+    /**
+     * Optimal table for the symbol frequencies, built as in ITU T.81 Annex K.2 with code
+     * lengths limited to 16 bits and the all ones code left unused.
+     * @param freq count of each of the 256 symbols, unused symbols get no code
+     */
+    static HuffmanTable optimal(int[] freq) {
+        long[] f = new long[257];
+        for (int i = 0; i < 256; i++) {
+            f[i] = freq[i];
+        }
+        // reserved symbol, takes the all ones code and is removed at the end
+        f[256] = 1;
+        int[] codeSize = new int[257];
+        int[] others = new int[257];
+        Arrays.fill(others, -1);
+        while (true) {
+            // least frequent symbol, the larger one on a tie
+            int c1 = -1;
+            long v = Long.MAX_VALUE;
+            for (int i = 0; i <= 256; i++) {
+                if (f[i] != 0 && f[i] <= v) {
+                    v = f[i];
+                    c1 = i;
+                }
+            }
+            int c2 = -1;
+            v = Long.MAX_VALUE;
+            for (int i = 0; i <= 256; i++) {
+                if (f[i] != 0 && f[i] <= v && i != c1) {
+                    v = f[i];
+                    c2 = i;
+                }
+            }
+            if (c2 < 0) {
+                break;
+            }
+            f[c1] += f[c2];
+            f[c2] = 0;
+            codeSize[c1]++;
+            while (others[c1] >= 0) {
+                c1 = others[c1];
+                codeSize[c1]++;
+            }
+            others[c1] = c2;
+            codeSize[c2]++;
+            while (others[c2] >= 0) {
+                c2 = others[c2];
+                codeSize[c2]++;
+            }
+        }
+        int[] counts = new int[258];
+        for (int i = 0; i <= 256; i++) {
+            if (codeSize[i] > 0) {
+                counts[codeSize[i]]++;
+            }
+        }
+        // move codes longer than 16 bits up the tree, Annex K.3
+        for (int i = counts.length - 1; i > 16; i--) {
+            while (counts[i] > 0) {
+                int j = i - 2;
+                while (counts[j] == 0) {
+                    j--;
+                }
+                counts[i] -= 2;
+                counts[i - 1]++;
+                counts[j + 1] += 2;
+                counts[j]--;
+            }
+        }
+        int longest = 16;
+        while (counts[longest] == 0) {
+            longest--;
+        }
+        counts[longest]--;
+
+        byte[] bits = new byte[16];
+        int total = 0;
+        for (int i = 1; i <= 16; i++) {
+            bits[i - 1] = (byte) counts[i];
+            total += counts[i];
+        }
+        byte[] values = new byte[total];
+        int k = 0;
+        for (int size = 1; size < codeSize.length && k < total; size++) {
+            for (int symbol = 0; symbol < 256; symbol++) {
+                if (codeSize[symbol] == size) {
+                    values[k++] = (byte) symbol;
+                }
+            }
+        }
+        return new HuffmanTable(bits, values);
+    }
+
+    /**
+     * Whether the code counts of a DHT segment fit in their lengths, a table with
+     * more codes than that can't be built.
+     */
+    static boolean isValid(byte[] bits) {
+        int code = 0;
+        for (int len = 1; len <= 16; len++) {
+            code += bits[len - 1] & 0xff;
+            if (code > 1 << len) {
+                return false;
+            }
+            code <<= 1;
+        }
+        return true;
+    }
+
+    private void build() {
+        int code = 0;
+        int k = 0;
+        for (int len = 1; len <= 16; len++) {
+            int count = bits[len - 1] & 0xff;
+            mValOffset[len] = k - code;
+            for (int i = 0; i < count; i++) {
+                int symbol = values[k] & 0xff;
+                codes[symbol] = code;
+                sizes[symbol] = (byte) len;
+                if (len <= LOOKAHEAD) {
+                    int shift = LOOKAHEAD - len;
+                    int base = code << shift;
+                    for (int j = 0; j < (1 << shift); j++) {
+                        mLookup[base + j] = (len << 8) | symbol;
+                    }
+                }
+                code++;
+                k++;
+            }
+            mMaxCode[len] = count > 0 ? code - 1 : -1;
+            code <<= 1;
+        }
+        // sentinel that ends the slow path loop
+        mMaxCode[17] = Integer.MAX_VALUE;
+    }
+
+    int lookup(int peek) {
+        return mLookup[peek];
+    }
+
+    int maxCode(int length) {
+        return mMaxCode[length];
+    }
+
+    /**
+     * Returns the symbol of a code not larger than maxCode(length), or -1 if the
+     * code is not in the table.
+     */
+    int value(int code, int length) {
+        int index = code + mValOffset[length];
+        if (index < 0 || index >= values.length) {
+            return -1;
+        }
+        return values[index] & 0xff;
+    }
+
+    boolean hasCode(int symbol) {
+        return sizes[symbol] != 0;
+    }
+
+    int getCodeCount() {
+        return values.length;
+    }
+}
@@ -0,0 +1,27 @@
+package com.smewise.camera2.jpeg;
+
+/**
+ * One color component of a frame as declared in SOF, plus the tables selected for it by
+ * the scan header.
+ */
+final class JpegComponent {
+    final int id;
+    // sampling factors
+    int h;
+    int v;
+    // quantization table selector
+    final int tq;
+    // entropy table selectors, set by SOS
+    int dcTable;
+    int acTable;
+    // number of blocks covering the component, without MCU padding
+    int blocksPerLine;
+    int blocksPerColumn;
+
+    JpegComponent(int id, int h, int v, int tq) {
+        this.id = id;
+        this.h = h;
+        this.v = v;
+        this.tq = tq;
+    }
+}
@@ -0,0 +1,15 @@
+package com.smewise.camera2.jpeg;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a jpeg stream is broken or uses a coding process that is not supported here,
+ * e.g. progressive or arithmetic coding.
+ */
+public class JpegFormatException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public JpegFormatException(String msg) {
+        super(msg);
+    }
+}
@@ -0,0 +1,236 @@
+package com.smewise.camera2.jpeg;
+
+import com.smewise.camera2.exif.JpegHeader;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Header information of a baseline jpeg, parsed from SOI up to the first SOS. Tables that
+ * appear between scans are handled by {@link ScanDecoder} with {@link #readTables}.
+ */
+final class JpegFrame {
+    static final int[] ZIGZAG = {
+            0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    final ByteBuffer data;
+    int width;
+    int height;
+    JpegComponent[] components;
+    int maxH;
+    int maxV;
+    int mcusPerLine;
+    int mcusPerColumn;
+    // natural (row major) order
+    final int[][] quantTables = new int[4][];
+    final HuffmanTable[] dcTables = new HuffmanTable[4];
+    final HuffmanTable[] acTables = new HuffmanTable[4];
+    int restartInterval;
+    // APPn and COM segments including marker and length, in file order
+    final List<ByteBuffer> appSegments = new ArrayList<>();
+    // offset of the first SOS marker
+    int scanOffset;
+
+    private JpegFrame(ByteBuffer data) {
+        this.data = data;
+    }
+
+    /**
+     * Parse jpeg headers, the buffer position and limit are not changed.
+     */
+    static JpegFrame parse(ByteBuffer jpeg) throws JpegFormatException {
+        ByteBuffer buf = jpeg.slice().order(ByteOrder.BIG_ENDIAN);
+        JpegFrame frame = new JpegFrame(buf);
+        if (buf.remaining() < 4 || buf.getShort(0) != JpegHeader.SOI) {
+            throw new JpegFormatException("not a jpeg, SOI missing");
+        }
+        int pos = 2;
+        while (true) {
+            pos = nextMarker(buf, pos);
+            short marker = buf.getShort(pos);
+            if (marker == JpegHeader.SOS) {
+                if (frame.components == null) {
+                    throw new JpegFormatException("SOS before SOF");
+                }
+                frame.scanOffset = pos;
+                return frame;
+            }
+            if (marker == JpegHeader.EOI) {
+                throw new JpegFormatException("no scan in jpeg");
+            }
+            int length = segmentLength(buf, pos);
+            if (JpegHeader.isSofMarker(marker)) {
+                if (marker != JpegHeader.SOF0 && marker != JpegHeader.SOF1) {
+                    throw new JpegFormatException("only baseline jpeg is supported, SOF:"
+                            + Integer.toHexString(marker & 0xffff));
+                }
+                frame.readSof(pos + 4);
+            } else if (JpegHeader.isAppMarker(marker) || marker == JpegHeader.COM) {
+                ByteBuffer seg = buf.duplicate();
+                seg.limit(pos + 2 + length).position(pos);
+                frame.appSegments.add(seg.slice());
+            } else {
+                frame.readTables(marker, pos + 4, length - 2);
+            }
+            pos += 2 + length;
+        }
+    }
+
+    /**
+     * Handle DQT, DHT and DRI segments, others are ignored.
+     * @param offset offset of segment payload, after the length field
+     */
+    void readTables(short marker, int offset, int length) throws JpegFormatException {
+        int end = offset + length;
+        if (end > data.limit()) {
+            throw new JpegFormatException("truncated segment");
+        }
+        if (marker == JpegHeader.DQT) {
+            while (offset < end) {
+                int pq = (data.get(offset) & 0xff) >> 4;
+                int tq = data.get(offset) & 0x0f;
+                offset++;
+                int[] table = new int[64];
+                for (int k = 0; k < 64; k++) {
+                    if (pq == 0) {
+                        table[ZIGZAG[k]] = data.get(offset++) & 0xff;
+                    } else {
+                        table[ZIGZAG[k]] = data.getShort(offset) & 0xffff;
+                        offset += 2;
+                    }
+                }
+                quantTables[tq & 3] = table;
+            }
+        } else if (marker == JpegHeader.DHT) {
+            while (offset < end) {
+                int tc = (data.get(offset) & 0xff) >> 4;
+                int th = data.get(offset) & 0x0f;
+                offset++;
+                byte[] bits = new byte[16];
+                int count = 0;
+                for (int i = 0; i < 16; i++) {
+                    bits[i] = data.get(offset++);
+                    count += bits[i] & 0xff;
+                }
+                if (count > 256 || offset + count > end || !HuffmanTable.isValid(bits)) {
+                    throw new JpegFormatException("bad DHT segment");
+                }
+                byte[] values = new byte[count];
+                for (int i = 0; i < count; i++) {
+                    values[i] = data.get(offset++);
+                }
+                HuffmanTable table = new HuffmanTable(bits, values);
+                if (tc == HuffmanTable.CLASS_DC) {
+                    dcTables[th & 3] = table;
+                } else {
+                    acTables[th & 3] = table;
+                }
+            }
+        } else if (marker == JpegHeader.DRI) {
+            restartInterval = data.getShort(offset) & 0xffff;
+        }
+    }
+
+    private void readSof(int offset) throws JpegFormatException {
+        int precision = data.get(offset) & 0xff;
+        if (precision != 8) {
+            throw new JpegFormatException("unsupported sample precision:" + precision);
+        }
+        height = data.getShort(offset + 1) & 0xffff;
+        width = data.getShort(offset + 3) & 0xffff;
+        int count = data.get(offset + 5) & 0xff;
+        if (width == 0 || height == 0 || count == 0) {
+            throw new JpegFormatException("bad SOF, " + width + "x" + height + " n:" + count);
+        }
+        components = new JpegComponent[count];
+        offset += 6;
+        for (int i = 0; i < count; i++) {
+            int id = data.get(offset) & 0xff;
+            int h = (data.get(offset + 1) & 0xff) >> 4;
+            int v = data.get(offset + 1) & 0x0f;
+            int tq = data.get(offset + 2) & 0x03;
+            if (h < 1 || h > 4 || v < 1 || v > 4) {
+                throw new JpegFormatException("bad sampling factor " + h + "x" + v);
+            }
+            components[i] = new JpegComponent(id, h, v, tq);
+            offset += 3;
+        }
+        if (count == 1) {
+            // single component scan is never interleaved, one block per MCU
+            components[0].h = 1;
+            components[0].v = 1;
+        }
+        computeLayout();
+    }
+
+    private void computeLayout() {
+        maxH = 1;
+        maxV = 1;
+        for (JpegComponent c : components) {
+            maxH = Math.max(maxH, c.h);
+            maxV = Math.max(maxV, c.v);
+        }
+        mcusPerLine = ceilDiv(width, 8 * maxH);
+        mcusPerColumn = ceilDiv(height, 8 * maxV);
+        for (JpegComponent c : components) {
+            c.blocksPerLine = ceilDiv(width * c.h, 8 * maxH);
+            c.blocksPerColumn = ceilDiv(height * c.v, 8 * maxV);
+        }
+    }
+
+    JpegComponent findComponent(int id) throws JpegFormatException {
+        for (JpegComponent c : components) {
+            if (c.id == id) {
+                return c;
+            }
+        }
+        throw new JpegFormatException("unknown component in scan:" + id);
+    }
+
+    int indexOf(JpegComponent component) {
+        for (int i = 0; i < components.length; i++) {
+            if (components[i] == component) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skip fill bytes and return the offset of the next marker at or after pos.
+     */
+    static int nextMarker(ByteBuffer buf, int pos) throws JpegFormatException {
+        int limit = buf.limit() - 1;
+        while (pos < limit) {
+            if ((buf.get(pos) & 0xff) == 0xff) {
+                int next = buf.get(pos + 1) & 0xff;
+                if (next != 0 && next != 0xff) {
+                    return pos;
+                }
+            }
+            pos++;
+        }
+        throw new JpegFormatException("unexpected end of jpeg");
+    }
+
+    static int segmentLength(ByteBuffer buf, int markerPos) throws JpegFormatException {
+        if (markerPos + 4 > buf.limit()) {
+            throw new JpegFormatException("truncated segment");
+        }
+        int length = buf.getShort(markerPos + 2) & 0xffff;
+        if (length < 2 || markerPos + 2 + length > buf.limit()) {
+            throw new JpegFormatException("bad segment length:" + length);
+        }
+        return length;
+    }
+
+    static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+}
@@ -0,0 +1,101 @@
+package com.smewise.camera2.jpeg;
+
+import com.smewise.camera2.exif.JpegHeader;
+
+import java.io.IOException;
+
+/**
+ * Writes the marker segments of a baseline jpeg.
+ */
+final class JpegHeaderWriter {
+
+    private JpegHeaderWriter() {
+    }
+
+    /**
+     * @param table 64 values in natural order, 8 bit precision is used when possible
+     */
+    static void writeDqt(ChannelSink sink, int id, int[] table) throws IOException {
+        boolean precision16 = false;
+        for (int q : table) {
+            if (q > 255) {
+                precision16 = true;
+                break;
+            }
+        }
+        sink.writeShort(JpegHeader.DQT);
+        sink.writeShort(2 + 1 + (precision16 ? 128 : 64));
+        sink.write((precision16 ? 0x10 : 0) | id);
+        for (int k = 0; k < 64; k++) {
+            int q = table[JpegFrame.ZIGZAG[k]];
+            if (precision16) {
+                sink.writeShort(q);
+            } else {
+                sink.write(q);
+            }
+        }
+    }
+
+    static void writeSof0(ChannelSink sink, int width, int height, JpegComponent[] components)
+            throws IOException {
+        writeSof(sink, JpegHeader.SOF0, width, height, components);
+    }
+
+    /**
+     * @param marker SOF0 for baseline or SOF2 for progressive
+     */
+    static void writeSof(ChannelSink sink, short marker, int width, int height,
+            JpegComponent[] components) throws IOException {
+        sink.writeShort(marker);
+        sink.writeShort(8 + 3 * components.length);
+        sink.write(8);
+        sink.writeShort(height);
+        sink.writeShort(width);
+        sink.write(components.length);
+        for (JpegComponent c : components) {
+            sink.write(c.id);
+            sink.write((c.h << 4) | c.v);
+            sink.write(c.tq);
+        }
+    }
+
+    static void writeDht(ChannelSink sink, int tableClass, int id, HuffmanTable table)
+            throws IOException {
+        sink.writeShort(JpegHeader.DHT);
+        sink.writeShort(2 + 1 + 16 + table.values.length);
+        sink.write((tableClass << 4) | id);
+        sink.write(table.bits, 0, 16);
+        sink.write(table.values, 0, table.values.length);
+    }
+
+    static void writeDri(ChannelSink sink, int interval) throws IOException {
+        sink.writeShort(JpegHeader.DRI);
+        sink.writeShort(4);
+        sink.writeShort(interval);
+    }
+
+    /**
+     * Write SOS of a sequential scan over all given components.
+     */
+    static void writeSos(ChannelSink sink, JpegComponent[] components) throws IOException {
+        writeSos(sink, components, 0, 63);
+    }
+
+    /**
+     * Write SOS of a scan over coefficients start to end, without successive
+     * approximation.
+     */
+    static void writeSos(ChannelSink sink, JpegComponent[] components, int start, int end)
+            throws IOException {
+        sink.writeShort(JpegHeader.SOS);
+        sink.writeShort(6 + 2 * components.length);
+        sink.write(components.length);
+        for (JpegComponent c : components) {
+            sink.write(c.id);
+            sink.write((c.dcTable << 4) | c.acTable);
+        }
+        sink.write(start);
+        sink.write(end);
+        sink.write(0);
+    }
+}
@@ -0,0 +1,237 @@
+package com.smewise.camera2.jpeg;
+
+import com.smewise.camera2.exif.JpegHeader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Lossless re-encoding of a baseline jpeg with huffman tables built for the image, like
+ * "jpegtran -optimize". The quantized coefficients are entropy decoded and encoded again
+ * unchanged, only the entropy coding gets shorter. A first pass counts the symbols of each
+ * table, the second pass writes them with the optimal tables.
+ * <p>
+ * The output is baseline, or progressive with spectral selection only: one DC scan of all
+ * components, then AC bands of each component with their own tables. Baseline output of a
+ * single interleaved scan decodes the source twice one MCU row at a time, other output
+ * keeps the coefficients of the whole image (2 bytes per sample).
+ * <p>
+ * APPn and COM segments are copied unchanged, restart intervals are dropped.
+ */
+public class JpegOptimizer {
+    // AC bands of the first component in progressive output, other components get 1-63
+    private static final int[][] LUMA_BANDS = {{1, 5}, {6, 63}};
+    private static final int[][] CHROMA_BANDS = {{1, 63}};
+
+    private final JpegFrame mFrame;
+
+    /**
+     * @param jpeg the whole jpeg file, must stay unchanged until write is finished
+     */
+    public JpegOptimizer(ByteBuffer jpeg) throws IOException {
+        mFrame = JpegFrame.parse(jpeg);
+    }
+
+    public int getWidth() {
+        return mFrame.width;
+    }
+
+    public int getHeight() {
+        return mFrame.height;
+    }
+
+    /**
+     * Write the optimized jpeg to out, out is not closed.
+     */
+    public void write(WritableByteChannel out, boolean progressive) throws IOException {
+        JpegFrame f = mFrame;
+        int n = f.components.length;
+        JpegComponent[] comps = new JpegComponent[n];
+        for (int i = 0; i < n; i++) {
+            JpegComponent c = f.components[i];
+            comps[i] = scanComponent(c, tableId(i), tableId(i));
+        }
+        ScanDecoder decoder = new ScanDecoder(f);
+        if (!decoder.nextScan()) {
+            throw new JpegFormatException("no scan in jpeg");
+        }
+        CoefficientPlane[] planes = null;
+        if (progressive || !decoder.isFullScan()) {
+            planes = new CoefficientPlane[n];
+            for (int i = 0; i < n; i++) {
+                JpegComponent c = f.components[i];
+                planes[i] = new CoefficientPlane(f.mcusPerLine * c.h, f.mcusPerColumn * c.v);
+            }
+            do {
+                decoder.decodeScan(planes);
+            } while (decoder.nextScan());
+        }
+
+        ChannelSink sink = new ChannelSink(out);
+        writeHeaders(sink, progressive ? JpegHeader.SOF2 : JpegHeader.SOF0, comps);
+        if (progressive) {
+            writeProgressive(sink, comps, planes);
+        } else {
+            HuffmanTable[] dcKeys = {HuffmanTable.STD_DC_LUMINANCE,
+                    HuffmanTable.STD_DC_CHROMINANCE};
+            HuffmanTable[] acKeys = {HuffmanTable.STD_AC_LUMINANCE,
+                    HuffmanTable.STD_AC_CHROMINANCE};
+            HuffmanCounter counter = new HuffmanCounter();
+            encodeInterleaved(counter, planes, decoder, dcKeys, acKeys);
+            HuffmanTable[] dc = new HuffmanTable[2];
+            HuffmanTable[] ac = new HuffmanTable[2];
+            for (int t = 0; t < 2; t++) {
+                dc[t] = writeDht(sink, counter, HuffmanTable.CLASS_DC, t, dcKeys[t]);
+                ac[t] = writeDht(sink, counter, HuffmanTable.CLASS_AC, t, acKeys[t]);
+            }
+            JpegHeaderWriter.writeSos(sink, comps);
+            if (planes == null) {
+                // second pass over the source
+                decoder = new ScanDecoder(f);
+                decoder.nextScan();
+            }
+            HuffmanEncoder encoder = new HuffmanEncoder(sink);
+            encodeInterleaved(encoder, planes, decoder, dc, ac);
+            encoder.finish();
+        }
+        sink.writeShort(JpegHeader.EOI);
+        sink.flush();
+    }
+
+    private void writeProgressive(ChannelSink sink, JpegComponent[] comps,
+            CoefficientPlane[] planes) throws IOException {
+        // DC first scan, interleaved
+        HuffmanTable[] dcKeys = {HuffmanTable.STD_DC_LUMINANCE, HuffmanTable.STD_DC_CHROMINANCE};
+        HuffmanCounter counter = new HuffmanCounter();
+        encodeInterleaved(counter, planes, null, dcKeys, null);
+        HuffmanTable[] dc = new HuffmanTable[2];
+        for (int t = 0; t < 2; t++) {
+            dc[t] = writeDht(sink, counter, HuffmanTable.CLASS_DC, t, dcKeys[t]);
+        }
+        JpegComponent[] dcScan = new JpegComponent[comps.length];
+        for (int i = 0; i < comps.length; i++) {
+            dcScan[i] = scanComponent(comps[i], tableId(i), 0);
+        }
+        JpegHeaderWriter.writeSos(sink, dcScan, 0, 0);
+        HuffmanEncoder encoder = new HuffmanEncoder(sink);
+        encodeInterleaved(encoder, planes, null, dc, null);
+        encoder.finish();
+
+        // AC first scans, one component each
+        for (int i = 0; i < comps.length; i++) {
+            for (int[] band : i == 0 ? LUMA_BANDS : CHROMA_BANDS) {
+                HuffmanTable key = HuffmanTable.STD_AC_LUMINANCE;
+                counter = new HuffmanCounter();
+                encodeBand(counter, comps[i], planes[i], band[0], band[1], key);
+                HuffmanTable ac = writeDht(sink, counter, HuffmanTable.CLASS_AC, 0, key);
+                JpegHeaderWriter.writeSos(sink,
+                        new JpegComponent[] {scanComponent(comps[i], 0, 0)}, band[0], band[1]);
+                encoder = new HuffmanEncoder(sink);
+                encodeBand(encoder, comps[i], planes[i], band[0], band[1], ac);
+                encoder.finish();
+            }
+        }
+    }
+
+    /**
+     * Encode all blocks in MCU order, from planes or decoded one MCU row at a time.
+     * @param ac null to encode DC only
+     */
+    private void encodeInterleaved(HuffmanEncoder encoder, CoefficientPlane[] planes,
+            ScanDecoder decoder, HuffmanTable[] dc, HuffmanTable[] ac) throws IOException {
+        JpegFrame f = mFrame;
+        int n = f.components.length;
+        boolean streaming = planes == null;
+        if (streaming) {
+            planes = new CoefficientPlane[n];
+            for (int i = 0; i < n; i++) {
+                JpegComponent c = f.components[i];
+                planes[i] = new CoefficientPlane(f.mcusPerLine * c.h, c.v);
+            }
+        }
+        int[] pred = new int[n];
+        for (int row = 0; row < f.mcusPerColumn; row++) {
+            if (streaming) {
+                for (int i = 0; i < n; i++) {
+                    planes[i].firstBlockRow = row * f.components[i].v;
+                }
+                decoder.decodeMcuRow(planes, row);
+            }
+            for (int mx = 0; mx < f.mcusPerLine; mx++) {
+                for (int i = 0; i < n; i++) {
+                    JpegComponent c = f.components[i];
+                    CoefficientPlane plane = planes[i];
+                    int t = tableId(i);
+                    for (int v = 0; v < c.v; v++) {
+                        for (int h = 0; h < c.h; h++) {
+                            int off = plane.offset(mx * c.h + h, row * c.v + v);
+                            if (ac == null) {
+                                pred[i] = encoder.encodeDc(plane.coef, off, pred[i], dc[t]);
+                            } else {
+                                pred[i] = encoder.encodeBlock(plane.coef, off, pred[i], dc[t],
+                                        ac[t]);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Encode a band of AC coefficients of one component, a non interleaved scan only
+     * covers the blocks inside the image.
+     */
+    private static void encodeBand(HuffmanEncoder encoder, JpegComponent c,
+            CoefficientPlane plane, int start, int end, HuffmanTable ac) throws IOException {
+        for (int by = 0; by < c.blocksPerColumn; by++) {
+            for (int bx = 0; bx < c.blocksPerLine; bx++) {
+                encoder.encodeAc(plane.coef, plane.offset(bx, by), start, end, ac);
+            }
+        }
+    }
+
+    private static HuffmanTable writeDht(ChannelSink sink, HuffmanCounter counter,
+            int tableClass, int id, HuffmanTable key) throws IOException {
+        HuffmanTable table = counter.buildTable(key);
+        if (table != null) {
+            JpegHeaderWriter.writeDht(sink, tableClass, id, table);
+        }
+        return table;
+    }
+
+    private void writeHeaders(ChannelSink sink, short sof, JpegComponent[] comps)
+            throws IOException {
+        sink.writeShort(JpegHeader.SOI);
+        for (ByteBuffer segment : mFrame.appSegments) {
+            sink.write(segment);
+        }
+        boolean[] written = new boolean[4];
+        for (JpegComponent c : comps) {
+            if (written[c.tq]) {
+                continue;
+            }
+            int[] table = mFrame.quantTables[c.tq];
+            if (table == null) {
+                throw new JpegFormatException("quantization table not defined:" + c.tq);
+            }
+            JpegHeaderWriter.writeDqt(sink, c.tq, table);
+            written[c.tq] = true;
+        }
+        JpegHeaderWriter.writeSof(sink, sof, mFrame.width, mFrame.height, comps);
+    }
+
+    private static JpegComponent scanComponent(JpegComponent c, int dcTable, int acTable) {
+        JpegComponent sc = new JpegComponent(c.id, c.h, c.v, c.tq);
+        sc.blocksPerLine = c.blocksPerLine;
+        sc.blocksPerColumn = c.blocksPerColumn;
+        sc.dcTable = dcTable;
+        sc.acTable = acTable;
+        return sc;
+    }
+
+    private static int tableId(int component) {
+        return component == 0 ? 0 : 1;
+    }
+}
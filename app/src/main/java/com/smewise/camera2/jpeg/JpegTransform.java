@@ -0,0 +1,297 @@
+package com.smewise.camera2.jpeg;
+
+import com.smewise.camera2.exif.ExifInterface;
+import com.smewise.camera2.exif.JpegHeader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Lossless rotate/flip of a baseline jpeg in the DCT domain, like jpegtran. Quantized
+ * coefficients are entropy decoded, the 8x8 blocks are moved and transposed/sign flipped,
+ * then encoded again with the standard huffman tables, so no pixel is decoded and no
+ * quality is lost.
+ * <p>
+ * Transforms that keep the row order (normal and horizontal flip) run one MCU row at a
+ * time, other transforms keep the coefficients of the whole image (2 bytes per sample).
+ * Like "jpegtran -trim", partial MCUs on an edge that would move are dropped, so the output
+ * may be a few pixels smaller.
+ * <p>
+ * APPn and COM segments are copied unchanged, caller should update the exif orientation
+ * and size of the output, or pass a new exif header to replace the one in the source.
+ */
+public class JpegTransform {
+    private static final int EXIF_HEADER = 0x45786966; // "Exif"
+
+    private final JpegFrame mFrame;
+
+    /**
+     * @param jpeg the whole jpeg file, must stay unchanged until transform is finished
+     */
+    public JpegTransform(ByteBuffer jpeg) throws IOException {
+        mFrame = JpegFrame.parse(jpeg);
+    }
+
+    public int getWidth() {
+        return mFrame.width;
+    }
+
+    public int getHeight() {
+        return mFrame.height;
+    }
+
+    /**
+     * @param orientation one of {@link ExifInterface.Orientation}, the transform applied is
+     *                    the one that makes an image with this orientation upright
+     */
+    public int getOutputWidth(int orientation) {
+        Op op = Op.of(orientation);
+        return op.transpose ? trimmedHeight(op) : trimmedWidth(op);
+    }
+
+    public int getOutputHeight(int orientation) {
+        Op op = Op.of(orientation);
+        return op.transpose ? trimmedWidth(op) : trimmedHeight(op);
+    }
+
+    /**
+     * Write the transformed jpeg to out, out is not closed.
+     */
+    public void transform(int orientation, WritableByteChannel out) throws IOException {
+        transform(orientation, null, out);
+    }
+
+    /**
+     * Write the transformed jpeg to out, out is not closed.
+     * @param exifHeader APP1 segment including its marker, written in place of the exif
+     *                   segment of the source, null to copy the source segment
+     */
+    public void transform(int orientation, ByteBuffer exifHeader, WritableByteChannel out)
+            throws IOException {
+        Op op = Op.of(orientation);
+        JpegFrame f = mFrame;
+        int n = f.components.length;
+        int srcWidth = trimmedWidth(op);
+        int srcHeight = trimmedHeight(op);
+        int outWidth = op.transpose ? srcHeight : srcWidth;
+        int outHeight = op.transpose ? srcWidth : srcHeight;
+
+        JpegComponent[] outComps = new JpegComponent[n];
+        int outMaxH = op.transpose ? f.maxV : f.maxH;
+        int outMaxV = op.transpose ? f.maxH : f.maxV;
+        // source block extent of each component after trimming
+        int[] extentW = new int[n];
+        int[] extentH = new int[n];
+        for (int i = 0; i < n; i++) {
+            JpegComponent c = f.components[i];
+            JpegComponent oc = op.transpose ? new JpegComponent(c.id, c.v, c.h, c.tq)
+                    : new JpegComponent(c.id, c.h, c.v, c.tq);
+            oc.dcTable = i == 0 ? 0 : 1;
+            oc.acTable = oc.dcTable;
+            outComps[i] = oc;
+            extentW[i] = JpegFrame.ceilDiv(srcWidth * c.h, 8 * f.maxH);
+            extentH[i] = JpegFrame.ceilDiv(srcHeight * c.v, 8 * f.maxV);
+        }
+        int outMcusPerLine = JpegFrame.ceilDiv(outWidth, 8 * outMaxH);
+        int outMcusPerColumn = JpegFrame.ceilDiv(outHeight, 8 * outMaxV);
+
+        ScanDecoder decoder = new ScanDecoder(f);
+        if (!decoder.nextScan()) {
+            throw new JpegFormatException("no scan in jpeg");
+        }
+        boolean streaming = !op.transpose && !op.flipY && decoder.isFullScan();
+        CoefficientPlane[] planes = new CoefficientPlane[n];
+        for (int i = 0; i < n; i++) {
+            JpegComponent c = f.components[i];
+            int rows = streaming ? c.v : f.mcusPerColumn * c.v;
+            planes[i] = new CoefficientPlane(f.mcusPerLine * c.h, rows);
+        }
+
+        ChannelSink sink = new ChannelSink(out);
+        writeHeaders(sink, op, outWidth, outHeight, outComps, exifHeader);
+        HuffmanEncoder encoder = new HuffmanEncoder(sink);
+        int[] pred = new int[n];
+        short[] block = new short[64];
+        if (streaming) {
+            for (int row = 0; row < f.mcusPerColumn; row++) {
+                for (int i = 0; i < n; i++) {
+                    planes[i].firstBlockRow = row * f.components[i].v;
+                }
+                decoder.decodeMcuRow(planes, row);
+                encodeMcuRow(encoder, op, planes, outComps, extentW, extentH, row,
+                        outMcusPerLine, pred, block);
+            }
+        } else {
+            do {
+                decoder.decodeScan(planes);
+            } while (decoder.nextScan());
+            for (int row = 0; row < outMcusPerColumn; row++) {
+                encodeMcuRow(encoder, op, planes, outComps, extentW, extentH, row,
+                        outMcusPerLine, pred, block);
+            }
+        }
+        encoder.finish();
+        sink.writeShort(JpegHeader.EOI);
+        sink.flush();
+    }
+
+    private void writeHeaders(ChannelSink sink, Op op, int width, int height,
+            JpegComponent[] outComps, ByteBuffer exifHeader) throws IOException {
+        sink.writeShort(JpegHeader.SOI);
+        if (exifHeader != null) {
+            sink.write(exifHeader);
+        }
+        for (ByteBuffer segment : mFrame.appSegments) {
+            if (exifHeader == null || !isExif(segment)) {
+                sink.write(segment);
+            }
+        }
+        boolean[] written = new boolean[4];
+        for (JpegComponent c : outComps) {
+            if (written[c.tq]) {
+                continue;
+            }
+            int[] table = mFrame.quantTables[c.tq];
+            if (table == null) {
+                throw new JpegFormatException("quantization table not defined:" + c.tq);
+            }
+            JpegHeaderWriter.writeDqt(sink, c.tq, op.transpose ? transpose(table) : table);
+            written[c.tq] = true;
+        }
+        JpegHeaderWriter.writeSof0(sink, width, height, outComps);
+        JpegHeaderWriter.writeDht(sink, HuffmanTable.CLASS_DC, 0, HuffmanTable.STD_DC_LUMINANCE);
+        JpegHeaderWriter.writeDht(sink, HuffmanTable.CLASS_AC, 0, HuffmanTable.STD_AC_LUMINANCE);
+        if (outComps.length > 1) {
+            JpegHeaderWriter.writeDht(sink, HuffmanTable.CLASS_DC, 1,
+                    HuffmanTable.STD_DC_CHROMINANCE);
+            JpegHeaderWriter.writeDht(sink, HuffmanTable.CLASS_AC, 1,
+                    HuffmanTable.STD_AC_CHROMINANCE);
+        }
+        JpegHeaderWriter.writeSos(sink, outComps);
+    }
+
+    private static void encodeMcuRow(HuffmanEncoder encoder, Op op, CoefficientPlane[] planes,
+            JpegComponent[] outComps, int[] extentW, int[] extentH, int row, int mcusPerLine,
+            int[] pred, short[] block) throws IOException {
+        for (int mx = 0; mx < mcusPerLine; mx++) {
+            for (int i = 0; i < outComps.length; i++) {
+                JpegComponent oc = outComps[i];
+                HuffmanTable dc = i == 0 ? HuffmanTable.STD_DC_LUMINANCE
+                        : HuffmanTable.STD_DC_CHROMINANCE;
+                HuffmanTable ac = i == 0 ? HuffmanTable.STD_AC_LUMINANCE
+                        : HuffmanTable.STD_AC_CHROMINANCE;
+                CoefficientPlane plane = planes[i];
+                for (int v = 0; v < oc.v; v++) {
+                    int by = row * oc.v + v;
+                    for (int h = 0; h < oc.h; h++) {
+                        int bx = mx * oc.h + h;
+                        int sx;
+                        int sy;
+                        if (op.transpose) {
+                            sx = op.flipY ? extentW[i] - 1 - by : by;
+                            sy = op.flipX ? extentH[i] - 1 - bx : bx;
+                        } else {
+                            sx = op.flipX ? extentW[i] - 1 - bx : bx;
+                            sy = op.flipY ? extentH[i] - 1 - by : by;
+                        }
+                        if (plane.contains(sx, sy)) {
+                            transformBlock(plane.coef, plane.offset(sx, sy), block, op);
+                        } else {
+                            // MCU padding, never visible
+                            for (int k = 0; k < 64; k++) {
+                                block[k] = 0;
+                            }
+                        }
+                        pred[i] = encoder.encodeBlock(block, 0, pred[i], dc, ac);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Flipping a block negates the odd frequencies of the flipped direction, transposing
+     * the pixels transposes the coefficients.
+     */
+    private static void transformBlock(short[] src, int off, short[] dst, Op op) {
+        for (int u = 0; u < 8; u++) {
+            for (int v = 0; v < 8; v++) {
+                int value = op.transpose ? src[off + (v << 3) + u] : src[off + (u << 3) + v];
+                if ((op.flipX && (v & 1) != 0) ^ (op.flipY && (u & 1) != 0)) {
+                    value = -value;
+                }
+                dst[(u << 3) + v] = (short) value;
+            }
+        }
+    }
+
+    private static boolean isExif(ByteBuffer segment) {
+        return segment.getShort(0) == JpegHeader.APP1 && segment.limit() >= 10
+                && segment.getInt(4) == EXIF_HEADER && segment.getShort(8) == 0;
+    }
+
+    private static int[] transpose(int[] table) {
+        int[] t = new int[64];
+        for (int u = 0; u < 8; u++) {
+            for (int v = 0; v < 8; v++) {
+                t[(u << 3) + v] = table[(v << 3) + u];
+            }
+        }
+        return t;
+    }
+
+    private int trimmedWidth(Op op) {
+        boolean trim = op.transpose ? op.flipY : op.flipX;
+        return trim ? trim(mFrame.width, 8 * mFrame.maxH) : mFrame.width;
+    }
+
+    private int trimmedHeight(Op op) {
+        boolean trim = op.transpose ? op.flipX : op.flipY;
+        return trim ? trim(mFrame.height, 8 * mFrame.maxV) : mFrame.height;
+    }
+
+    private static int trim(int size, int mcuSize) {
+        int trimmed = size / mcuSize * mcuSize;
+        // smaller than one MCU, keep it and accept a dirty edge
+        return trimmed == 0 ? size : trimmed;
+    }
+
+    /**
+     * Block operation, flips are applied in output coordinates after transpose.
+     */
+    private static final class Op {
+        final boolean transpose;
+        final boolean flipX;
+        final boolean flipY;
+
+        private Op(boolean transpose, boolean flipX, boolean flipY) {
+            this.transpose = transpose;
+            this.flipX = flipX;
+            this.flipY = flipY;
+        }
+
+        static Op of(int orientation) {
+            switch (orientation) {
+                case ExifInterface.Orientation.TOP_LEFT:
+                    return new Op(false, false, false);
+                case ExifInterface.Orientation.TOP_RIGHT:
+                    return new Op(false, true, false);
+                case ExifInterface.Orientation.BOTTOM_LEFT:
+                    return new Op(false, true, true);
+                case ExifInterface.Orientation.BOTTOM_RIGHT:
+                    return new Op(false, false, true);
+                case ExifInterface.Orientation.LEFT_TOP:
+                    return new Op(true, false, false);
+                case ExifInterface.Orientation.RIGHT_TOP:
+                    return new Op(true, true, false);
+                case ExifInterface.Orientation.LEFT_BOTTOM:
+                    return new Op(true, true, true);
+                case ExifInterface.Orientation.RIGHT_BOTTOM:
+                    return new Op(true, false, true);
+                default:
+                    throw new IllegalArgumentException("invalid orientation:" + orientation);
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.smewise.camera2.jpeg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes a baseline jpeg at 1/1, 1/2, 1/4 or 1/8 of its size in the DCT domain. A block
+ * of 8x8 samples becomes 8/scale pixels on each side: at 1/8 only the DC coefficient is
+ * used and AC codes are skipped, at 1/2 and 1/4 a reduced IDCT of the low frequency
+ * coefficients gives the block average of each output pixel. Chroma is upsampled by
+ * repeating samples, which is enough for thumbnails.
+ * <p>
+ * Entropy decoding is shared with {@link JpegTransform}. Interleaved scans are decoded
+ * one MCU row at a time, other baseline scans need the coefficients of the whole image.
+ */
+public class ScaledJpegDecoder {
+    public static final int MAX_SCALE = 8;
+
+    private final JpegFrame mFrame;
+
+    /**
+     * @param jpeg the whole jpeg file, must stay unchanged until decode is finished
+     */
+    public ScaledJpegDecoder(ByteBuffer jpeg) throws IOException {
+        mFrame = JpegFrame.parse(jpeg);
+        int n = mFrame.components.length;
+        if (n != 1 && n != 3) {
+            throw new JpegFormatException("unsupported component count:" + n);
+        }
+    }
+
+    public int getWidth() {
+        return mFrame.width;
+    }
+
+    /**
+     * Layouts the decoder is tested with: gray, and 4:2:0 color in one interleaved scan as
+     * camera hals and {@link YuvJpegEncoder} write it. Others may decode, but should go to
+     * a platform decoder until they are verified.
+     */
+    public boolean isVerifiedLayout() {
+        JpegComponent[] c = mFrame.components;
+        if (c.length == 1) {
+            return true;
+        }
+        int scanComponents = mFrame.data.get(mFrame.scanOffset + 4) & 0xff;
+        return scanComponents == c.length && c[0].h == 2 && c[0].v == 2
+                && c[1].h == 1 && c[1].v == 1 && c[2].h == 1 && c[2].v == 1;
+    }
+
+    public int getHeight() {
+        return mFrame.height;
+    }
+
+    public int getScaledWidth(int scale) {
+        return JpegFrame.ceilDiv(mFrame.width, scale);
+    }
+
+    public int getScaledHeight(int scale) {
+        return JpegFrame.ceilDiv(mFrame.height, scale);
+    }
+
+    /**
+     * @param scale 1, 2, 4 or 8
+     * @return ARGB pixels of the scaled image, row by row
+     */
+    public int[] decode(int scale) throws IOException {
+        if (scale != 1 && scale != 2 && scale != 4 && scale != 8) {
+            throw new IllegalArgumentException("invalid scale:" + scale);
+        }
+        JpegFrame f = mFrame;
+        int n = f.components.length;
+        // output pixels of one block side
+        int size = 8 / scale;
+        float[] basis = basis(size);
+        int outWidth = getScaledWidth(scale);
+        int outHeight = getScaledHeight(scale);
+        int[] pixels = new int[outWidth * outHeight];
+
+        ScanDecoder decoder = new ScanDecoder(f);
+        decoder.setDcOnly(size == 1);
+        if (!decoder.nextScan()) {
+            throw new JpegFormatException("no scan in jpeg");
+        }
+        boolean streaming = decoder.isFullScan();
+        CoefficientPlane[] planes = new CoefficientPlane[n];
+        // samples of one MCU row at output scale
+        byte[][] rows = new byte[n][];
+        int[] rowStride = new int[n];
+        for (int i = 0; i < n; i++) {
+            JpegComponent c = f.components[i];
+            int blockRows = streaming ? c.v : f.mcusPerColumn * c.v;
+            planes[i] = new CoefficientPlane(f.mcusPerLine * c.h, blockRows);
+            rowStride[i] = f.mcusPerLine * c.h * size;
+            rows[i] = new byte[rowStride[i] * c.v * size];
+        }
+        if (!streaming) {
+            do {
+                decoder.decodeScan(planes);
+            } while (decoder.nextScan());
+        }
+        float[] work = new float[64];
+        int mcuHeight = f.maxV * size;
+        for (int row = 0; row < f.mcusPerColumn; row++) {
+            if (streaming) {
+                for (int i = 0; i < n; i++) {
+                    planes[i].firstBlockRow = row * f.components[i].v;
+                }
+                decoder.decodeMcuRow(planes, row);
+            }
+            for (int i = 0; i < n; i++) {
+                renderMcuRow(f.components[i], planes[i], row, f.quantTables[f.components[i]
+                        .tq], basis, size, work, rows[i], rowStride[i]);
+            }
+            int top = row * mcuHeight;
+            int bottom = Math.min(top + mcuHeight, outHeight);
+            for (int y = top; y < bottom; y++) {
+                if (n == 1) {
+                    writeGrayLine(rows[0], (y - top) * rowStride[0], pixels, y * outWidth,
+                            outWidth);
+                } else {
+                    writeColorLine(rows, rowStride, y - top, pixels, y * outWidth, outWidth);
+                }
+            }
+        }
+        return pixels;
+    }
+
+    private static void renderMcuRow(JpegComponent c, CoefficientPlane plane, int row,
+            int[] quant, float[] basis, int size, float[] work, byte[] out, int stride)
+            throws JpegFormatException {
+        if (quant == null) {
+            throw new JpegFormatException("quantization table not defined:" + c.tq);
+        }
+        for (int v = 0; v < c.v; v++) {
+            int by = row * c.v + v;
+            for (int bx = 0; bx < plane.blocksPerLine; bx++) {
+                int dst = v * size * stride + bx * size;
+                scaledIdct(plane.coef, plane.offset(bx, by), quant, basis, size, work, out,
+                        dst, stride);
+            }
+        }
+    }
+
+    /**
+     * Dequantize the low size x size coefficients of a block and transform them to size x
+     * size pixels with the box filtered basis.
+     */
+    static void scaledIdct(short[] coef, int off, int[] quant, float[] basis, int size,
+            float[] work, byte[] out, int dst, int stride) {
+        if (size == 1) {
+            out[dst] = clamp(coef[off] * quant[0] / 8f + 128);
+            return;
+        }
+        // rows of coefficients to rows of work, work[u * size + x]
+        for (int u = 0; u < size; u++) {
+            for (int x = 0; x < size; x++) {
+                float sum = 0;
+                for (int v = 0; v < size; v++) {
+                    int k = (u << 3) + v;
+                    sum += basis[x * size + v] * coef[off + k] * quant[k];
+                }
+                work[u * size + x] = sum;
+            }
+        }
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                float sum = 128;
+                for (int u = 0; u < size; u++) {
+                    sum += basis[y * size + u] * work[u * size + x];
+                }
+                out[dst + y * stride + x] = clamp(sum);
+            }
+        }
+    }
+
+    /**
+     * basis[x * size + u] is the mean of the 8 point IDCT basis u over the 8 / size
+     * samples of output pixel x.
+     */
+    static float[] basis(int size) {
+        int span = 8 / size;
+        float[] basis = new float[size * size];
+        for (int x = 0; x < size; x++) {
+            for (int u = 0; u < size; u++) {
+                double cu = u == 0 ? Math.sqrt(0.5) : 1.0;
+                double sum = 0;
+                for (int k = 0; k < span; k++) {
+                    sum += cu / 2 * Math.cos((2 * (x * span + k) + 1) * u * Math.PI / 16);
+                }
+                basis[x * size + u] = (float) (sum / span);
+            }
+        }
+        return basis;
+    }
+
+    private static void writeGrayLine(byte[] row, int offset, int[] pixels, int dst,
+            int width) {
+        for (int x = 0; x < width; x++) {
+            int g = row[offset + x] & 0xff;
+            pixels[dst + x] = 0xff000000 | (g << 16) | (g << 8) | g;
+        }
+    }
+
+    /**
+     * JFIF YCbCr to RGB, chroma samples cover maxH / h output pixels.
+     */
+    private void writeColorLine(byte[][] rows, int[] stride, int line, int[] pixels,
+            int dst, int width) {
+        JpegComponent[] comps = mFrame.components;
+        int maxH = mFrame.maxH;
+        int maxV = mFrame.maxV;
+        int yOff = line * comps[0].v / maxV * stride[0];
+        int cbOff = line * comps[1].v / maxV * stride[1];
+        int crOff = line * comps[2].v / maxV * stride[2];
+        for (int x = 0; x < width; x++) {
+            int lum = rows[0][yOff + x * comps[0].h / maxH] & 0xff;
+            int cb = (rows[1][cbOff + x * comps[1].h / maxH] & 0xff) - 128;
+            int cr = (rows[2][crOff + x * comps[2].h / maxH] & 0xff) - 128;
+            int r = clampInt(lum + ((91881 * cr + 32768) >> 16));
+            int g = clampInt(lum - ((22554 * cb + 46802 * cr - 32768) >> 16));
+            int b = clampInt(lum + ((116130 * cb + 32768) >> 16));
+            pixels[dst + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+        }
+    }
+
+    private static byte clamp(float value) {
+        return (byte) clampInt(Math.round(value));
+    }
+
+    private static int clampInt(int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+}
@@ -0,0 +1,290 @@
+package com.smewise.camera2.jpeg;
+
+import com.smewise.camera2.exif.JpegHeader;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Entropy decoder for baseline huffman scans, produces quantized coefficients without any
+ * dequantization or IDCT, so the coefficients can be re-encoded losslessly.
+ */
+final class ScanDecoder {
+    private final JpegFrame mFrame;
+    private final ByteBuffer mData;
+    private int mPos;
+
+    // bit reservoir, valid bits are the low mBitCount bits
+    private long mBitBuf;
+    private int mBitCount;
+
+    // scan state
+    private JpegComponent[] mScanComponents;
+    private final int[] mPred = new int[4];
+    private int mRestartLeft;
+    private int mNextRst;
+    // AC coefficients are decoded but not stored
+    private boolean mDcOnly;
+
+    ScanDecoder(JpegFrame frame) {
+        mFrame = frame;
+        mData = frame.data;
+        mPos = frame.scanOffset;
+    }
+
+    /**
+     * Read markers up to the next SOS and set up its scan.
+     * @return false if EOI is reached
+     */
+    boolean nextScan() throws JpegFormatException {
+        while (true) {
+            mPos = JpegFrame.nextMarker(mData, mPos);
+            short marker = mData.getShort(mPos);
+            if (marker == JpegHeader.EOI) {
+                return false;
+            }
+            if (JpegHeader.isRstMarker(marker)) {
+                // stray restart marker at the end of a scan
+                mPos += 2;
+                continue;
+            }
+            int length = JpegFrame.segmentLength(mData, mPos);
+            if (marker == JpegHeader.SOS) {
+                readSos(mPos + 4);
+                mPos += 2 + length;
+                resetBits();
+                mRestartLeft = mFrame.restartInterval;
+                mNextRst = 0;
+                return true;
+            }
+            mFrame.readTables(marker, mPos + 4, length - 2);
+            mPos += 2 + length;
+        }
+    }
+
+    private void readSos(int offset) throws JpegFormatException {
+        int count = mData.get(offset) & 0xff;
+        if (count < 1 || count > 4) {
+            throw new JpegFormatException("bad component count in scan:" + count);
+        }
+        mScanComponents = new JpegComponent[count];
+        offset++;
+        for (int i = 0; i < count; i++) {
+            JpegComponent c = mFrame.findComponent(mData.get(offset) & 0xff);
+            int tables = mData.get(offset + 1) & 0xff;
+            c.dcTable = tables >> 4 & 3;
+            c.acTable = tables & 3;
+            if (mFrame.dcTables[c.dcTable] == null || mFrame.acTables[c.acTable] == null) {
+                throw new JpegFormatException("huffman table not defined for component "
+                        + c.id);
+            }
+            mScanComponents[i] = c;
+            mPred[i] = 0;
+            offset += 2;
+        }
+        int ss = mData.get(offset) & 0xff;
+        int se = mData.get(offset + 1) & 0xff;
+        int ahal = mData.get(offset + 2) & 0xff;
+        if (ss != 0 || se != 63 || ahal != 0) {
+            throw new JpegFormatException("not a sequential scan");
+        }
+    }
+
+    /**
+     * Only keep DC coefficients, the other coefficients of a block are left unchanged and
+     * the AC codes are skipped, for decoders that do not need them.
+     */
+    void setDcOnly(boolean dcOnly) {
+        mDcOnly = dcOnly;
+    }
+
+    /**
+     * @return true if the current scan holds every component of the frame
+     */
+    boolean isFullScan() {
+        return mScanComponents.length == mFrame.components.length;
+    }
+
+    /**
+     * Decode one MCU row of an interleaved scan (or of a single component frame).
+     * @param planes planes indexed like the frame components
+     */
+    void decodeMcuRow(CoefficientPlane[] planes, int mcuRow) throws JpegFormatException {
+        for (int mcuX = 0; mcuX < mFrame.mcusPerLine; mcuX++) {
+            checkRestart();
+            for (int i = 0; i < mScanComponents.length; i++) {
+                JpegComponent c = mScanComponents[i];
+                CoefficientPlane plane = planes[mFrame.indexOf(c)];
+                for (int v = 0; v < c.v; v++) {
+                    int by = mcuRow * c.v + v;
+                    for (int h = 0; h < c.h; h++) {
+                        decodeBlock(plane.coef, plane.offset(mcuX * c.h + h, by), i);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Decode the whole current scan into full size planes.
+     */
+    void decodeScan(CoefficientPlane[] planes) throws JpegFormatException {
+        if (mScanComponents.length > 1 || mFrame.components.length == 1) {
+            for (int row = 0; row < mFrame.mcusPerColumn; row++) {
+                decodeMcuRow(planes, row);
+            }
+            return;
+        }
+        // non interleaved scan: one block per MCU, only blocks covering the image
+        JpegComponent c = mScanComponents[0];
+        CoefficientPlane plane = planes[mFrame.indexOf(c)];
+        for (int by = 0; by < c.blocksPerColumn; by++) {
+            for (int bx = 0; bx < c.blocksPerLine; bx++) {
+                checkRestart();
+                decodeBlock(plane.coef, plane.offset(bx, by), 0);
+            }
+        }
+    }
+
+    private void decodeBlock(short[] coef, int off, int scanIndex)
+            throws JpegFormatException {
+        JpegComponent c = mScanComponents[scanIndex];
+        HuffmanTable dc = mFrame.dcTables[c.dcTable];
+        HuffmanTable ac = mFrame.acTables[c.acTable];
+        int s = decodeSymbol(dc);
+        if (s > 11) {
+            throw new JpegFormatException("bad dc difference size:" + s);
+        }
+        if (s != 0) {
+            mPred[scanIndex] += receiveExtend(s);
+        }
+        if (mDcOnly) {
+            coef[off] = (short) mPred[scanIndex];
+            skipAc(ac);
+            return;
+        }
+        for (int i = 1; i < 64; i++) {
+            coef[off + i] = 0;
+        }
+        coef[off] = (short) mPred[scanIndex];
+        for (int k = 1; k < 64; k++) {
+            int rs = decodeSymbol(ac);
+            int r = rs >> 4;
+            s = rs & 15;
+            if (s == 0) {
+                if (r != 15) {
+                    break;
+                }
+                k += 15;
+                continue;
+            }
+            k += r;
+            if (k > 63) {
+                throw new JpegFormatException("coefficient index out of block");
+            }
+            coef[off + JpegFrame.ZIGZAG[k]] = (short) receiveExtend(s);
+        }
+    }
+
+    private void skipAc(HuffmanTable ac) throws JpegFormatException {
+        for (int k = 1; k < 64; k++) {
+            int rs = decodeSymbol(ac);
+            int s = rs & 15;
+            if (s == 0) {
+                if (rs >> 4 != 15) {
+                    break;
+                }
+                k += 15;
+                continue;
+            }
+            k += rs >> 4;
+            if (mBitCount < s) {
+                fill();
+            }
+            mBitCount -= s;
+        }
+    }
+
+    private void checkRestart() throws JpegFormatException {
+        if (mFrame.restartInterval == 0) {
+            return;
+        }
+        if (mRestartLeft == 0) {
+            // drop padding bits, they belong to the previous interval
+            resetBits();
+            mPos = JpegFrame.nextMarker(mData, mPos);
+            short marker = mData.getShort(mPos);
+            if (marker != (short) (JpegHeader.RST0 + mNextRst)) {
+                throw new JpegFormatException("expected RST" + mNextRst + " but got "
+                        + Integer.toHexString(marker & 0xffff));
+            }
+            mPos += 2;
+            mNextRst = (mNextRst + 1) & 7;
+            mRestartLeft = mFrame.restartInterval;
+            for (int i = 0; i < mPred.length; i++) {
+                mPred[i] = 0;
+            }
+        }
+        mRestartLeft--;
+    }
+
+    private void resetBits() {
+        mBitBuf = 0;
+        mBitCount = 0;
+    }
+
+    private void fill() {
+        while (mBitCount <= 56) {
+            int b = 0;
+            if (mPos < mData.limit()) {
+                b = mData.get(mPos) & 0xff;
+                if (b == 0xff) {
+                    int next = mPos + 1 < mData.limit() ? mData.get(mPos + 1) & 0xff : 0xd9;
+                    if (next == 0) {
+                        mPos += 2;
+                    } else {
+                        // marker reached, feed zeros and leave the marker for later
+                        b = 0;
+                    }
+                } else {
+                    mPos++;
+                }
+            }
+            mBitBuf = (mBitBuf << 8) | b;
+            mBitCount += 8;
+        }
+    }
+
+    private int decodeSymbol(HuffmanTable table) throws JpegFormatException {
+        if (mBitCount < 16) {
+            fill();
+        }
+        int peek = (int) (mBitBuf >>> (mBitCount - HuffmanTable.LOOKAHEAD))
+                & ((1 << HuffmanTable.LOOKAHEAD) - 1);
+        int entry = table.lookup(peek);
+        if (entry != 0) {
+            mBitCount -= entry >> 8;
+            return entry & 0xff;
+        }
+        int length = HuffmanTable.LOOKAHEAD;
+        int code = peek;
+        mBitCount -= length;
+        while (code > table.maxCode(length)) {
+            code = (code << 1) | (int) ((mBitBuf >>> --mBitCount) & 1);
+            length++;
+        }
+        int value = length > 16 ? -1 : table.value(code, length);
+        if (value < 0) {
+            throw new JpegFormatException("bad huffman code");
+        }
+        return value;
+    }
+
+    private int receiveExtend(int s) {
+        if (mBitCount < s) {
+            fill();
+        }
+        mBitCount -= s;
+        int v = (int) (mBitBuf >>> mBitCount) & ((1 << s) - 1);
+        return v < (1 << (s - 1)) ? v - (1 << s) + 1 : v;
+    }
+}
@@ -0,0 +1,366 @@
+package com.smewise.camera2.jpeg;
+
+import com.smewise.camera2.exif.JpegHeader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Baseline jpeg encoder for YUV_420_888 planes, the samples are used as Y, Cb and Cr of a
+ * 4:2:0 frame without color conversion, so no bitmap is created.
+ * <p>
+ * Each MCU row is a restart interval. The rows do not depend on each other, they are
+ * encoded in parallel on a fork-join pool into separate stripes, which are written in
+ * order with RSTn markers in between.
+ */
+public class YuvJpegEncoder {
+    // ITU T.81 Annex K.1, natural order
+    private static final int[] STD_LUMINANCE_QUANT = {
+            16, 11, 10, 16, 24, 40, 51, 61,
+            12, 12, 14, 19, 26, 58, 60, 55,
+            14, 13, 16, 24, 40, 57, 69, 56,
+            14, 17, 22, 29, 51, 87, 80, 62,
+            18, 22, 37, 56, 68, 109, 103, 77,
+            24, 35, 55, 64, 81, 104, 113, 92,
+            49, 64, 78, 87, 103, 121, 120, 101,
+            72, 92, 95, 98, 112, 100, 103, 99
+    };
+    private static final int[] STD_CHROMINANCE_QUANT = {
+            17, 18, 24, 47, 99, 99, 99, 99,
+            18, 21, 26, 66, 99, 99, 99, 99,
+            24, 26, 56, 99, 99, 99, 99, 99,
+            47, 66, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99
+    };
+    // output scale of the AAN forward DCT, cos(k * PI / 16) * sqrt(2) for k > 0
+    private static final double[] AAN_SCALE = {
+            1.0, 1.387039845, 1.306562965, 1.175875602,
+            1.0, 0.785694958, 0.541196100, 0.275899379
+    };
+    // MCU rows encoded by one task without splitting
+    private static final int ROWS_PER_TASK = 2;
+    private static final int STRIPE_BUFFER_SIZE = 16 * 1024;
+
+    private static ForkJoinPool sPool;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mMcusPerLine;
+    private final int mMcuRows;
+    private final int[] mLumaTable;
+    private final int[] mChromaTable;
+    // 1 / (quantizer * DCT scale), natural order
+    private final float[] mLumaDivisors;
+    private final float[] mChromaDivisors;
+    private final JpegComponent[] mComponents;
+
+    /**
+     * @param quality 1 to 100 as in libjpeg, the standard tables are used at 50
+     */
+    public YuvJpegEncoder(int width, int height, int quality) {
+        if (width <= 0 || height <= 0 || width > 0xffff || height > 0xffff) {
+            throw new IllegalArgumentException("invalid size:" + width + "x" + height);
+        }
+        mWidth = width;
+        mHeight = height;
+        mMcusPerLine = JpegFrame.ceilDiv(width, 16);
+        mMcuRows = JpegFrame.ceilDiv(height, 16);
+        mLumaTable = scaleTable(STD_LUMINANCE_QUANT, quality);
+        mChromaTable = scaleTable(STD_CHROMINANCE_QUANT, quality);
+        mLumaDivisors = divisors(mLumaTable);
+        mChromaDivisors = divisors(mChromaTable);
+        mComponents = new JpegComponent[] {
+                new JpegComponent(1, 2, 2, 0),
+                new JpegComponent(2, 1, 1, 1),
+                new JpegComponent(3, 1, 1, 1)
+        };
+        for (int i = 0; i < mComponents.length; i++) {
+            mComponents[i].dcTable = i == 0 ? 0 : 1;
+            mComponents[i].acTable = i == 0 ? 0 : 1;
+        }
+    }
+
+    /**
+     * Encode the planes and write the jpeg to out, out is not closed. The planes are read
+     * from their position and are not changed, the Y pixel stride must be 1 as in
+     * YUV_420_888.
+     *
+     * @param exif APP1 segment including its marker written after SOI, may be null
+     */
+    public void encode(ByteBuffer y, int yRowStride, ByteBuffer u, ByteBuffer v,
+            int uvRowStride, int uvPixelStride, ByteBuffer exif, WritableByteChannel out)
+            throws IOException {
+        int chromaWidth = (mWidth + 1) / 2;
+        int chromaHeight = (mHeight + 1) / 2;
+        Plane yPlane = new Plane(y, yRowStride, 1, mWidth, mHeight);
+        Plane uPlane = new Plane(u, uvRowStride, uvPixelStride, chromaWidth, chromaHeight);
+        Plane vPlane = new Plane(v, uvRowStride, uvPixelStride, chromaWidth, chromaHeight);
+
+        byte[][] stripes = new byte[mMcuRows][];
+        StripeTask task = new StripeTask(yPlane, uPlane, vPlane, stripes, 0, mMcuRows);
+        getPool().invoke(task);
+        if (task.mError != null) {
+            throw task.mError;
+        }
+
+        ChannelSink sink = new ChannelSink(out);
+        sink.writeShort(JpegHeader.SOI);
+        if (exif != null) {
+            sink.write(exif);
+        }
+        JpegHeaderWriter.writeDqt(sink, 0, mLumaTable);
+        JpegHeaderWriter.writeDqt(sink, 1, mChromaTable);
+        JpegHeaderWriter.writeSof0(sink, mWidth, mHeight, mComponents);
+        JpegHeaderWriter.writeDht(sink, HuffmanTable.CLASS_DC, 0, HuffmanTable.STD_DC_LUMINANCE);
+        JpegHeaderWriter.writeDht(sink, HuffmanTable.CLASS_AC, 0, HuffmanTable.STD_AC_LUMINANCE);
+        JpegHeaderWriter.writeDht(sink, HuffmanTable.CLASS_DC, 1,
+                HuffmanTable.STD_DC_CHROMINANCE);
+        JpegHeaderWriter.writeDht(sink, HuffmanTable.CLASS_AC, 1,
+                HuffmanTable.STD_AC_CHROMINANCE);
+        JpegHeaderWriter.writeDri(sink, mMcusPerLine);
+        JpegHeaderWriter.writeSos(sink, mComponents);
+        for (int row = 0; row < mMcuRows; row++) {
+            if (row > 0) {
+                sink.writeShort(JpegHeader.RST0 + ((row - 1) & 7));
+            }
+            sink.write(stripes[row], 0, stripes[row].length);
+            stripes[row] = null;
+        }
+        sink.writeShort(JpegHeader.EOI);
+        sink.flush();
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (sPool == null) {
+            sPool = new ForkJoinPool();
+        }
+        return sPool;
+    }
+
+    /**
+     * Scale a table by quality like libjpeg, the values fit in 8 bits.
+     */
+    static int[] scaleTable(int[] table, int quality) {
+        quality = Math.max(1, Math.min(100, quality));
+        int scale = quality < 50 ? 5000 / quality : 200 - quality * 2;
+        int[] scaled = new int[64];
+        for (int i = 0; i < 64; i++) {
+            scaled[i] = Math.max(1, Math.min(255, (table[i] * scale + 50) / 100));
+        }
+        return scaled;
+    }
+
+    private static float[] divisors(int[] table) {
+        float[] divisors = new float[64];
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                divisors[(row << 3) + col] = (float) (1.0
+                        / (table[(row << 3) + col] * AAN_SCALE[row] * AAN_SCALE[col] * 8.0));
+            }
+        }
+        return divisors;
+    }
+
+    /**
+     * One YUV plane, samples outside of it repeat the edge.
+     */
+    private static final class Plane {
+        final ByteBuffer data;
+        final int rowStride;
+        final int pixelStride;
+        final int width;
+        final int height;
+
+        Plane(ByteBuffer data, int rowStride, int pixelStride, int width, int height) {
+            if (rowStride < (width - 1) * pixelStride + 1 || pixelStride < 1) {
+                throw new IllegalArgumentException("invalid stride, row:" + rowStride
+                        + " pixel:" + pixelStride + " width:" + width);
+            }
+            if (data.remaining() < (long) rowStride * (height - 1)
+                    + (width - 1) * pixelStride + 1) {
+                throw new IllegalArgumentException("plane too small:" + data.remaining());
+            }
+            this.data = data.slice();
+            this.rowStride = rowStride;
+            this.pixelStride = pixelStride;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * Load the 8x8 block at x, y minus 128.
+         */
+        void load(int x, int y, float[] dst) {
+            if (x + 8 <= width && y + 8 <= height) {
+                int base = y * rowStride + x * pixelStride;
+                for (int r = 0; r < 8; r++, base += rowStride) {
+                    int index = base;
+                    for (int c = 0; c < 8; c++, index += pixelStride) {
+                        dst[(r << 3) + c] = (data.get(index) & 0xff) - 128;
+                    }
+                }
+                return;
+            }
+            for (int r = 0; r < 8; r++) {
+                int base = Math.min(y + r, height - 1) * rowStride;
+                for (int c = 0; c < 8; c++) {
+                    int index = base + Math.min(x + c, width - 1) * pixelStride;
+                    dst[(r << 3) + c] = (data.get(index) & 0xff) - 128;
+                }
+            }
+        }
+    }
+
+    private final class StripeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Plane mY;
+        private final Plane mU;
+        private final Plane mV;
+        private final byte[][] mStripes;
+        private final int mFrom;
+        private final int mTo;
+        // set by the task that failed, read after invoke
+        volatile IOException mError;
+
+        StripeTask(Plane y, Plane u, Plane v, byte[][] stripes, int from, int to) {
+            mY = y;
+            mU = u;
+            mV = v;
+            mStripes = stripes;
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom > ROWS_PER_TASK) {
+                int mid = (mFrom + mTo) >>> 1;
+                StripeTask left = new StripeTask(mY, mU, mV, mStripes, mFrom, mid);
+                StripeTask right = new StripeTask(mY, mU, mV, mStripes, mid, mTo);
+                invokeAll(left, right);
+                mError = left.mError != null ? left.mError : right.mError;
+                return;
+            }
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ChannelSink sink = new ChannelSink(Channels.newChannel(bytes),
+                        STRIPE_BUFFER_SIZE);
+                float[] samples = new float[64];
+                short[] block = new short[64];
+                for (int row = mFrom; row < mTo; row++) {
+                    // a restart interval starts with zero predictors
+                    HuffmanEncoder encoder = new HuffmanEncoder(sink);
+                    encodeRow(encoder, row, samples, block);
+                    encoder.finish();
+                    sink.flush();
+                    mStripes[row] = bytes.toByteArray();
+                    bytes.reset();
+                }
+            } catch (IOException e) {
+                mError = e;
+            }
+        }
+
+        private void encodeRow(HuffmanEncoder encoder, int row, float[] samples,
+                short[] block) throws IOException {
+            int predY = 0;
+            int predU = 0;
+            int predV = 0;
+            int y = row * 16;
+            for (int mx = 0; mx < mMcusPerLine; mx++) {
+                int x = mx * 16;
+                for (int i = 0; i < 4; i++) {
+                    mY.load(x + (i & 1) * 8, y + (i >> 1) * 8, samples);
+                    forwardDct(samples, mLumaDivisors, block);
+                    predY = encoder.encodeBlock(block, 0, predY, HuffmanTable.STD_DC_LUMINANCE,
+                            HuffmanTable.STD_AC_LUMINANCE);
+                }
+                mU.load(x / 2, y / 2, samples);
+                forwardDct(samples, mChromaDivisors, block);
+                predU = encoder.encodeBlock(block, 0, predU, HuffmanTable.STD_DC_CHROMINANCE,
+                        HuffmanTable.STD_AC_CHROMINANCE);
+                mV.load(x / 2, y / 2, samples);
+                forwardDct(samples, mChromaDivisors, block);
+                predV = encoder.encodeBlock(block, 0, predV, HuffmanTable.STD_DC_CHROMINANCE,
+                        HuffmanTable.STD_AC_CHROMINANCE);
+            }
+        }
+    }
+
+    /**
+     * AAN float forward DCT as jfdctflt.c of libjpeg, the output scale is removed by the
+     * divisors together with quantization.
+     */
+    static void forwardDct(float[] data, float[] divisors, short[] out) {
+        for (int pass = 0; pass < 2; pass++) {
+            // rows first, then columns
+            int step = pass == 0 ? 1 : 8;
+            int next = pass == 0 ? 8 : 1;
+            for (int line = 0, base = 0; line < 8; line++, base += next) {
+                float d0 = data[base];
+                float d1 = data[base + step];
+                float d2 = data[base + 2 * step];
+                float d3 = data[base + 3 * step];
+                float d4 = data[base + 4 * step];
+                float d5 = data[base + 5 * step];
+                float d6 = data[base + 6 * step];
+                float d7 = data[base + 7 * step];
+
+                float tmp0 = d0 + d7;
+                float tmp7 = d0 - d7;
+                float tmp1 = d1 + d6;
+                float tmp6 = d1 - d6;
+                float tmp2 = d2 + d5;
+                float tmp5 = d2 - d5;
+                float tmp3 = d3 + d4;
+                float tmp4 = d3 - d4;
+
+                // even part
+                float tmp10 = tmp0 + tmp3;
+                float tmp13 = tmp0 - tmp3;
+                float tmp11 = tmp1 + tmp2;
+                float tmp12 = tmp1 - tmp2;
+                data[base] = tmp10 + tmp11;
+                data[base + 4 * step] = tmp10 - tmp11;
+                float z1 = (tmp12 + tmp13) * 0.707106781f;
+                data[base + 2 * step] = tmp13 + z1;
+                data[base + 6 * step] = tmp13 - z1;
+
+                // odd part
+                tmp10 = tmp4 + tmp5;
+                tmp11 = tmp5 + tmp6;
+                tmp12 = tmp6 + tmp7;
+                float z5 = (tmp10 - tmp12) * 0.382683433f;
+                float z2 = 0.541196100f * tmp10 + z5;
+                float z4 = 1.306562965f * tmp12 + z5;
+                float z3 = tmp11 * 0.707106781f;
+                float z11 = tmp7 + z3;
+                float z13 = tmp7 - z3;
+                data[base + 5 * step] = z13 + z2;
+                data[base + 3 * step] = z13 - z2;
+                data[base + step] = z11 + z4;
+                data[base + 7 * step] = z11 - z4;
+            }
+        }
+        for (int i = 0; i < 64; i++) {
+            out[i] = (short) Math.round(data[i] * divisors[i]);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.smewise.camera2.manager;
+
+/**
+ * Images of the still capture in flight, a single shot is a burst of one. Every image
+ * gets the next sequence number of the session in the order it comes back, so pictures
+ * of several bursts can be told apart and ordered after they are saved. An image lost
+ * by a failed capture does not take a number, it only ends the burst one image sooner.
+ * <p>
+ * Not thread safe, call from the camera thread.
+ */
+public class BurstTracker {
+    private int mNextSequence;
+    private int mPendingImages;
+    private int mImages;
+    private int mLastSequence = -1;
+    private long mFirstImageTime;
+    private long mLastImageTime;
+
+    /**
+     * Start a burst of count images, late images of the previous burst count in it.
+     */
+    public void start(int count) {
+        mPendingImages = count;
+        mImages = 0;
+    }
+
+    /**
+     * @param timeNs when the image came back
+     * @return true if it is the last image of the burst
+     */
+    public boolean onImage(long timeNs) {
+        mLastImageTime = timeNs;
+        if (mImages == 0) {
+            mFirstImageTime = timeNs;
+        }
+        mImages++;
+        mLastSequence = nextSequence();
+        return mPendingImages > 0 && --mPendingImages == 0;
+    }
+
+    /**
+     * The capture of an image failed and no image comes for it.
+     * @return true if the burst is complete without it
+     */
+    public boolean onImageLost() {
+        return mPendingImages > 0 && --mPendingImages == 0;
+    }
+
+    /**
+     * Sequence number for an image outside a burst, e.g. a zero shutter lag frame.
+     */
+    public int nextSequence() {
+        return mNextSequence++;
+    }
+
+    /**
+     * @return sequence number of the last image, -1 before the first one
+     */
+    public int getLastSequence() {
+        return mLastSequence;
+    }
+
+    public int getImageCount() {
+        return mImages;
+    }
+
+    /**
+     * @return images per second from the first to the last image, 0 for one image
+     */
+    public float getFps() {
+        long duration = mLastImageTime - mFirstImageTime;
+        return mImages > 1 && duration > 0 ? (mImages - 1) * 1000000000f / duration : 0;
+    }
+}
@@ -1,6 +1,7 @@
 package com.smewise.camera2.manager;
 
 import android.content.Context;
+import android.graphics.ImageFormat;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
@@ -12,8 +13,9 @@ import android.hardware.camera2.CaptureResult;
 import android.hardware.camera2.TotalCaptureResult;
 import android.hardware.camera2.params.MeteringRectangle;
 import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
 import android.media.ImageReader;
-import android.os.Handler;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
@@ -23,21 +25,19 @@ import android.view.Surface;
 import com.smewise.camera2.Config;
 import com.smewise.camera2.callback.RequestCallback;
 import com.smewise.camera2.utils.CameraUtil;
+import com.smewise.camera2.utils.CaptureBuffer;
+import com.smewise.camera2.utils.CaptureBufferPool;
+import com.smewise.camera2.utils.CaptureTimeline;
+import com.smewise.camera2.utils.CaptureTracer;
+import com.smewise.camera2.utils.ZslRingBuffer;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public class CameraSession extends Session {
     private final String TAG = Config.getTag(CameraSession.class);
 
-    private static final int STATE_PREVIEW = 0;
-    private static final int STATE_WAITING_LOCK = 1;
-    private static final int STATE_WAITING_PRE_CAPTURE = 2;
-    private static final int STATE_WAITING_NON_PRE_CAPTURE = 3;
-    private static final int STATE_PICTURE_TAKEN = 4;
-    private int mState = STATE_PREVIEW;
-
-    private Handler mMainHandler;
     private RequestManager mRequestMgr;
     private RequestCallback mCallback;  // cqd.note 此处的　mCallback　其实是 mRequestCallback;
     private SurfaceTexture mTexture;
@@ -48,16 +48,48 @@ public class CameraSession extends Session {
     private int mLatestAfState = -1;
     private CaptureRequest mOriginPreviewRequest;
     private int mDeviceRotation;
+    // state of the burst in flight, a single shot is a burst of one
+    private final BurstTracker mBurst = new BurstTracker();
+    private int mPendingCaptures;
+    // recent preview frames of the still reader, null when zsl is off
+    private ZslRingBuffer<Image, TotalCaptureResult> mZslRing;
+    // stages of the capture in flight, null if it is not traced
+    private CaptureTimeline mTimeline;
+    // af lock and ae precapture before the still request
+    private StillCaptureStateMachine mCaptureMachine = new StillCaptureStateMachine(
+            new StillCaptureStateMachine.Callback() {
+        @Override
+        public void onTriggerAf() {
+            triggerAFCaptureSequence();
+        }
 
-    public CameraSession(Context context, Handler mainHandler, CameraSettings settings) {
+        @Override
+        public void onTriggerPrecapture() {
+            triggerAECaptureSequence();
+        }
+
+        @Override
+        public void onCapture(int reason) {
+            Log.d(TAG, "capture reason:" + reason
+                    + " 3a latency ms:" + mCaptureMachine.getLatency() / 1000000);
+            sendStillPictureRequest();
+        }
+    });
+
+    public CameraSession(Context context, CameraSettings settings, CaptureBufferPool pool,
+            CaptureTracer captureTracer) {
         super(context, settings);
-        mMainHandler = mainHandler;
+        bufferPool = pool;
+        tracer = captureTracer;
         mRequestMgr = new RequestManager();
     }
 
 
     @Override
     public void applyRequest(int msg, Object value1, Object value2) {
+        if (postRequest(msg, value1, value2)) {
+            return;
+        }
         switch (msg) {
             case RQ_SET_DEVICE: {
                 setCameraDevice((CameraDevice) value1);
@@ -89,7 +121,12 @@ public class CameraSession extends Session {
             }
             case RQ_TAKE_PICTURE: {
                 mDeviceRotation = (Integer) value1;
-                runCaptureStep();
+                mTimeline = (CaptureTimeline) value2;
+                if (mZslRing != null) {
+                    takeZslPicture();
+                } else {
+                    runCaptureStep();
+                }
                 break;
             }
             default: {
@@ -101,6 +138,9 @@ public class CameraSession extends Session {
 
     @Override
     public void setRequest(int msg, @Nullable Object value1, @Nullable Object value2) {
+        if (postSetRequest(msg, value1, value2)) {
+            return;
+        }
         switch (msg) {
             case RQ_SET_DEVICE: {
                 break;
@@ -136,21 +176,54 @@ public class CameraSession extends Session {
 
     @Override
     public void release() {
+        if (postToCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                release();
+            }
+        })) {
+            return;
+        }
         if (cameraSession != null) {
             Log.d(TAG, "cqd, release, call cameraSession.close()");
             cameraSession.close();
             cameraSession = null;
         }
-        if (mImageReader != null) {
-            mImageReader.close();
-            mImageReader = null;
+        closeImageReader();
+    }
+
+    /**
+     * The listener of the reader may be copying an image on the image thread, so the
+     * reader and the zsl ring are closed there, after the listener returns.
+     */
+    private void closeImageReader() {
+        final ImageReader reader = mImageReader;
+        final ZslRingBuffer<Image, TotalCaptureResult> ring = mZslRing;
+        mImageReader = null;
+        mZslRing = null;
+        if (reader == null) {
+            return;
+        }
+        reader.setOnImageAvailableListener(null, null);
+        Runnable close = new Runnable() {
+            @Override
+            public void run() {
+                if (ring != null) {
+                    ring.clear();
+                }
+                reader.close();
+            }
+        };
+        // the image thread is gone when the device is closed, nothing runs on it
+        if (imageHandler == null || !imageHandler.post(close)) {
+            close.run();
         }
     }
 
     private void sendFlashRequest(String value) {
         Log.d(TAG, "flash value:" + value);
         CaptureRequest request = mRequestMgr.getFlashRequest(getPreviewBuilder(), value);
-        sendRepeatingRequest(request, mPreviewCallback, mMainHandler);
+        sendRepeatingRequest(request, mPreviewCallback, cameraHandler);
     }
 
     private void setCameraDevice(CameraDevice device) {
@@ -158,6 +231,8 @@ public class CameraSession extends Session {
         // device changed, get new Characteristics
         initCharacteristics();
         mRequestMgr.setCharacteristics(characteristics);
+        mCaptureMachine.setAvailable(mRequestMgr.canTriggerAf(),
+                mRequestMgr.canTriggerAePrecapture());
         // camera device may change, reset builder
         mPreviewBuilder = null;
         mCaptureBuilder = null;
@@ -172,7 +247,7 @@ public class CameraSession extends Session {
         try {
             Log.d(TAG, "cqd, createPreviewSession, cameraDevice.createCaptureSession begin");
             cameraDevice.createCaptureSession(setOutputSize(cameraDevice.getId(), mTexture),
-                    sessionStateCb, mMainHandler);
+                    sessionStateCb, cameraHandler);
             Log.d(TAG, "cqd, createPreviewSession, cameraDevice.createCaptureSession finish");
         } catch (CameraAccessException | IllegalStateException e) {
             e.printStackTrace();
@@ -185,24 +260,24 @@ public class CameraSession extends Session {
             mOriginPreviewRequest = request;
         }
         Log.d(TAG, "cqd, sendPreviewRequest, call sendRepeatingRequest mPreviewCallback");
-        sendRepeatingRequest(request, mPreviewCallback, mMainHandler);
+        sendRepeatingRequest(request, mPreviewCallback, cameraHandler);
     }
 
     private void sendControlAfAeRequest(MeteringRectangle focusRect,    // cqd.note 该函数是创建
                                         MeteringRectangle meteringRect) {
         CaptureRequest.Builder builder = getPreviewBuilder();
         CaptureRequest request = mRequestMgr.getTouch2FocusRequest(builder, focusRect, meteringRect);   // cqd.focus 设置对焦区域，并清除已有的对焦请求;
-        sendRepeatingRequest(request, mPreviewCallback, mMainHandler);
+        sendRepeatingRequest(request, mPreviewCallback, cameraHandler);
         // trigger af
         builder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_START);
         Log.d(TAG, "cqd.focus, sendControlAfAeRequest, CONTROL_AF_TRIGGER_START");
-        sendCaptureRequest(builder.build(), null, mMainHandler);        // cqd.queston.1 此处是什么作用？
+        sendCaptureRequest(builder.build(), null, cameraHandler);        // cqd.queston.1 此处是什么作用？
     }
 
     private void sendControlFocusModeRequest(int focusMode) {
         Log.d(TAG, "cqd.focus, sendControlFocusModeRequest, focusMode = " + focusMode);
         CaptureRequest request = mRequestMgr.getFocusModeRequest(getPreviewBuilder(), focusMode);
-        sendRepeatingRequest(request, mPreviewCallback, mMainHandler);
+        sendRepeatingRequest(request, mPreviewCallback, cameraHandler);
     }
 
     private void sendStillPictureRequest() {
@@ -218,7 +293,91 @@ public class CameraSession extends Session {
                 getCaptureBuilder(false, mImageReader.getSurface()), jpegRotation);
 
         Log.d(TAG, "cqd.flash, sendStillPictureRequest, afMode = " + afMode);
-        sendCaptureRequestWithStop(request, mCaptureCallback, mMainHandler);
+        markStage(CaptureTimeline.STILL_REQUEST);
+        int count = cameraSettings.getBurstCount();
+        mBurst.start(count);
+        mPendingCaptures = count;
+        if (count > 1) {
+            sendBurstRequestWithStop(Collections.nCopies(count, request), mCaptureCallback,
+                    cameraHandler);
+        } else {
+            sendCaptureRequestWithStop(request, mCaptureCallback, cameraHandler);
+        }
+    }
+
+    /**
+     * Images are copied on the image thread, the burst state is kept on the camera thread.
+     */
+    private void postImageBack(final CaptureBuffer data, final int width, final int height) {
+        boolean posted = postToCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                onImageBack(data, width, height); // cqd.note 此处的　mCallback　其实是 mRequestCallback;
+            }
+        });
+        if (!posted) {
+            onImageBack(data, width, height);
+        }
+    }
+
+    private void onImageBack(CaptureBuffer data, int width, int height) {
+        boolean last = mBurst.onImage(SystemClock.elapsedRealtimeNanos());
+        mCallback.onDataBack(data, width, height, mBurst.getLastSequence(),
+                newImageTimeline());
+        if (last) {
+            finishBurst();
+        }
+    }
+
+    private void finishBurst() {
+        int count = mBurst.getImageCount();
+        float fps = mBurst.getFps();
+        Log.i(TAG, "burst of " + count + " images, " + fps + " fps");
+        mCallback.onBurstComplete(count, fps);
+    }
+
+    /**
+     * Save the best recent frame of the repeating request, there is no 3A sequence and
+     * the preview keeps running.
+     */
+    private void takeZslPicture() {
+        ZslRingBuffer.Frame<Image, TotalCaptureResult> frame = mZslRing.take();
+        if (frame == null) {
+            Log.w(TAG, "no zsl frame yet");
+            mCallback.onBurstComplete(0, 0);
+            return;
+        }
+        Image image = frame.getImage();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        CaptureBuffer data;
+        try {
+            data = getBufferFromImage(image);
+        } finally {
+            image.close();
+        }
+        Log.d(TAG, "zsl frame focused:" + frame.isFocused() + " exposed:" + frame.isExposed());
+        mCallback.onDataBack(data, width, height, mBurst.nextSequence(), newImageTimeline());
+        mCallback.onBurstComplete(1, 0);
+    }
+
+    private void markStage(int stage) {
+        if (mTimeline != null) {
+            mTimeline.mark(stage);
+        }
+    }
+
+    /**
+     * Each image of a burst gets its own copy, the save thread marks the later stages.
+     * @return timeline of the image just received, null if the capture is not traced
+     */
+    private CaptureTimeline newImageTimeline() {
+        if (mTimeline == null) {
+            return null;
+        }
+        CaptureTimeline timeline = mTimeline.copy();
+        timeline.mark(CaptureTimeline.IMAGE_AVAILABLE);
+        return timeline;
     }
 
     private void sendRestartPreviewRequest() {
@@ -230,7 +389,7 @@ public class CameraSession extends Session {
 
     private void sendControlFocusDistanceRequest(float value) {
         CaptureRequest request = mRequestMgr.getFocusDistanceRequest(getPreviewBuilder(), value);
-        sendRepeatingRequest(request, mPreviewCallback, mMainHandler);
+        sendRepeatingRequest(request, mPreviewCallback, cameraHandler);
     }
 
     private void updateRequestFromSetting() {
@@ -240,19 +399,25 @@ public class CameraSession extends Session {
     }
 
     private void resetTriggerState() {
-        mState = STATE_PREVIEW;
+        mCaptureMachine.reset();
         CaptureRequest.Builder builder = getPreviewBuilder();
         builder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_IDLE);
         builder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER,
                 CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_IDLE);
 
         Log.d(TAG, "cqd.focus, resetTriggerState, builder set CONTROL_AF_TRIGGER, CONTROL_AE_PRECAPTURE_TRIGGER");  // 清除对焦请求,否则将将连续不断对焦
-        sendRepeatingRequest(builder.build(), mPreviewCallback, mMainHandler);
-        sendCaptureRequest(builder.build(), mPreviewCallback, mMainHandler);
+        sendRepeatingRequest(builder.build(), mPreviewCallback, cameraHandler);
+        sendCaptureRequest(builder.build(), mPreviewCallback, cameraHandler);
     }
 
     private CaptureRequest.Builder getPreviewBuilder() {
-        if (mPreviewBuilder == null) {
+        if (mPreviewBuilder == null && mZslRing != null) {
+            // every preview frame also goes to the zsl ring
+            mPreviewBuilder = createBuilder(CameraDevice.TEMPLATE_ZERO_SHUTTER_LAG, mSurface);
+            if (mPreviewBuilder != null) {
+                mPreviewBuilder.addTarget(mImageReader.getSurface());
+            }
+        } else if (mPreviewBuilder == null) {
             mPreviewBuilder = createBuilder(CameraDevice.TEMPLATE_PREVIEW, mSurface); // 有创建　TEMPLATE_PREVIEW 对应 CaptureRequest.Builder，同时添加 surface;
             Log.d(TAG, "cqd, getPreviewBuilder, createCaptureRequest TEMPLATE_PREVIEW");
         }
@@ -290,26 +455,63 @@ public class CameraSession extends Session {
                 ", height = " + pictureSize.getWidth() + " x " + pictureSize.getHeight());
         // config surface
         Surface surface = new Surface(texture);
-        if (mImageReader != null) {
-            mImageReader.close();
-            mImageReader = null;
-        }
+        closeImageReader();
+        // builders target the surfaces of the last session
+        mPreviewBuilder = null;
+        mCaptureBuilder = null;
 
         Log.d(TAG, "cqd, setOutputSize, create ImageReader");
-        mImageReader = ImageReader.newInstance(pictureSize.getWidth(),
-                pictureSize.getHeight(), format, 1);
+        if (cameraSettings.needZsl() && format == ImageFormat.YUV_420_888) {
+            createZslReader(pictureSize, format);
+        } else {
+            createStillReader(pictureSize, format);
+        }
+        Size uiSize = CameraUtil.getPreviewUiSize(appContext, previewSize);
+        mCallback.onViewChange(uiSize.getHeight(), uiSize.getWidth());
+        return Arrays.asList(surface, mImageReader.getSurface());   // cqd.note 此处不设置时会怎么样？
+    }
+
+    private void createZslReader(Size size, int format) {
+        // one more image than the ring keeps, so the next one can be acquired
+        mImageReader = ImageReader.newInstance(size.getWidth(), size.getHeight(), format,
+                Config.ZSL_RING_SIZE + 1);
+        // the ring is shared with the camera thread, it is synchronized
+        final ZslRingBuffer<Image, TotalCaptureResult> ring = new ZslRingBuffer<>(
+                Config.ZSL_RING_SIZE, new ZslRingBuffer.Recycler<Image>() {
+                    @Override
+                    public void recycle(Image image) {
+                        image.close();
+                    }
+                });
+        mZslRing = ring;
+        mImageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
+            @Override
+            public void onImageAvailable(ImageReader reader) {
+                Image image;
+                while ((image = reader.acquireNextImage()) != null) {
+                    ring.addImage(image.getTimestamp(), image);
+                }
+            }
+        }, imageHandler);
+    }
+
+    private void createStillReader(Size size, int format) {
+        mImageReader = ImageReader.newInstance(size.getWidth(), size.getHeight(), format,
+                cameraSettings.getStillReaderDepth());
         mImageReader.setOnImageAvailableListener(new ImageReader.OnImageAvailableListener() {
             @Override
             public void onImageAvailable(ImageReader reader) {
                 Log.d(TAG, "cqd.flash capture, OnImageAvailableListener, onImageAvailable begin.");
-                mCallback.onDataBack(getByteFromReader(reader), // cqd.note 此处的　mCallback　其实是 mRequestCallback;
-                        reader.getWidth(), reader.getHeight());
+                final int width = reader.getWidth();
+                final int height = reader.getHeight();
+                // several images may be queued during a burst, free the reader for the next
+                CaptureBuffer data;
+                while ((data = getBufferFromReader(reader)) != null) {
+                    postImageBack(data, width, height);
+                }
                 Log.d(TAG, "cqd capture, OnImageAvailableListener, onImageAvailable end.");
             }
-        }, null);
-        Size uiSize = CameraUtil.getPreviewUiSize(appContext, previewSize);
-        mCallback.onViewChange(uiSize.getHeight(), uiSize.getWidth());
-        return Arrays.asList(surface, mImageReader.getSurface());   // cqd.note 此处不设置时会怎么样？
+        }, imageHandler);
     }
 
     //session callback
@@ -339,7 +541,6 @@ public class CameraSession extends Session {
             Log.d(TAG, "cqd, onCaptureProgressed begin.");
             super.onCaptureProgressed(session, request, partialResult);
             updateAfState(partialResult);
-            processPreCapture(partialResult);
             Log.d(TAG, "cqd, onCaptureProgressed end.");
         }
 
@@ -348,8 +549,12 @@ public class CameraSession extends Session {
                 CaptureRequest request, @NonNull TotalCaptureResult result) {
 //            Log.d(TAG, "cqd, onCaptureCompleted begin.");
             super.onCaptureCompleted(session, request, result);
+            recordResultLatency(result);
             updateAfState(result);
             processPreCapture(result);
+            if (mZslRing != null) {
+                addZslResult(result);
+            }
             mCallback.onRequestComplete();
 //            Log.d(TAG, "cqd, onCaptureCompleted end.");
         }
@@ -376,84 +581,116 @@ public class CameraSession extends Session {
                 CaptureRequest request, @NonNull TotalCaptureResult result) {
             super.onCaptureCompleted(session, request, result);
             Log.i(TAG, "cqd mCaptureCallback, mCaptureCallback, onCaptureCompleted");
-            resetTriggerState();
+            markStage(CaptureTimeline.CAPTURE_COMPLETED);
+            onCaptureDone();
         }
-    };
 
-    private void processPreCapture(CaptureResult result) {
-        switch (mState) {
-            case STATE_PREVIEW: {
-                // We have nothing to do when the camera preview is working normally.
-                break;
-            }
-            case STATE_WAITING_LOCK: {
-                Integer afState = result.get(CaptureResult.CONTROL_AF_STATE);
-                if (afState == null) {
-                    sendStillPictureRequest();
-                } else if (CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED == afState ||  // cqd.note 对焦完成
-                        CaptureResult.CONTROL_AF_STATE_NOT_FOCUSED_LOCKED == afState) {
-                    // CONTROL_AE_STATE can be null on some devices
-                    Integer aeState = result.get(CaptureResult.CONTROL_AE_STATE);
-                    if (aeState == null ||
-                            aeState == CaptureResult.CONTROL_AE_STATE_CONVERGED) {
-                        mState = STATE_PICTURE_TAKEN;
-                        sendStillPictureRequest();
-                    } else {
-                        triggerAECaptureSequence();
-                    }
-                }
-                break;
-            }
-            case STATE_WAITING_PRE_CAPTURE: {
-                // CONTROL_AE_STATE can be null on some devices
-                Integer aeState = result.get(CaptureResult.CONTROL_AE_STATE);
-                if (aeState == null ||
-                        aeState == CaptureResult.CONTROL_AE_STATE_PRECAPTURE ||
-                        aeState == CaptureRequest.CONTROL_AE_STATE_FLASH_REQUIRED) {
-                    mState = STATE_WAITING_NON_PRE_CAPTURE;
-                }
-                break;
-            }
-            case STATE_WAITING_NON_PRE_CAPTURE: {
-                // CONTROL_AE_STATE can be null on some devices
-                Integer aeState = result.get(CaptureResult.CONTROL_AE_STATE);
-                if (aeState == null || aeState != CaptureResult.CONTROL_AE_STATE_PRECAPTURE) {
-                    mState = STATE_PICTURE_TAKEN;
-                    sendStillPictureRequest();
-                }
-                break;
+        @Override
+        public void onCaptureFailed(@NonNull CameraCaptureSession session, @NonNull
+                CaptureRequest request, @NonNull CaptureFailure failure) {
+            super.onCaptureFailed(session, request, failure);
+            Log.w(TAG, "still capture failed reason:" + failure.getReason());
+            // no image comes for this request, do not wait for it
+            if (!failure.wasImageCaptured() && mBurst.onImageLost()) {
+                finishBurst();
             }
+            onCaptureDone();
+        }
+    };
+
+    private void onCaptureDone() {
+        // back to preview after the last request of a burst
+        if (mPendingCaptures > 0 && --mPendingCaptures == 0) {
+            resetTriggerState();
+        }
+    }
+
+    private void addZslResult(TotalCaptureResult result) {
+        Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+        if (timestamp == null) {
+            return;
+        }
+        Integer afState = result.get(CaptureResult.CONTROL_AF_STATE);
+        Integer aeState = result.get(CaptureResult.CONTROL_AE_STATE);
+        // states can be null on some devices, fixed focus or no auto exposure
+        boolean focused = afState == null
+                || afState == CaptureResult.CONTROL_AF_STATE_FOCUSED_LOCKED
+                || afState == CaptureResult.CONTROL_AF_STATE_PASSIVE_FOCUSED;
+        boolean exposed = aeState == null
+                || aeState == CaptureResult.CONTROL_AE_STATE_CONVERGED
+                || aeState == CaptureResult.CONTROL_AE_STATE_LOCKED;
+        mZslRing.addResult(timestamp, result, focused, exposed);
+    }
+
+    /**
+     * Results of a trigger request go to the preview callback, its frame number tells the
+     * capture machine which results show the triggered states.
+     */
+    private class TriggerCallback extends CameraCaptureSession.CaptureCallback {
+        private final int mState;
+
+        TriggerCallback(int state) {
+            mState = state;
+        }
+
+        @Override
+        public void onCaptureStarted(@NonNull CameraCaptureSession session, @NonNull
+                CaptureRequest request, long timestamp, long frameNumber) {
+            super.onCaptureStarted(session, request, timestamp, frameNumber);
+            mCaptureMachine.onTriggerStarted(mState, frameNumber);
+        }
+
+        @Override
+        public void onCaptureProgressed(@NonNull CameraCaptureSession session, @NonNull
+                CaptureRequest request, @NonNull CaptureResult partialResult) {
+            mPreviewCallback.onCaptureProgressed(session, request, partialResult);
+        }
+
+        @Override
+        public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull
+                CaptureRequest request, @NonNull TotalCaptureResult result) {
+            mPreviewCallback.onCaptureCompleted(session, request, result);
         }
     }
 
+    private TriggerCallback mAfTriggerCallback =
+            new TriggerCallback(StillCaptureStateMachine.STATE_WAITING_LOCK);
+    private TriggerCallback mAeTriggerCallback =
+            new TriggerCallback(StillCaptureStateMachine.STATE_WAITING_PRE_CAPTURE);
+
+    private void processPreCapture(CaptureResult result) {
+        mCaptureMachine.onResult(result.get(CaptureResult.CONTROL_AF_STATE),
+                result.get(CaptureResult.CONTROL_AE_STATE), result.getFrameNumber(),
+                SystemClock.elapsedRealtimeNanos());
+    }
+
     private void triggerAECaptureSequence() {
         CaptureRequest.Builder builder = getPreviewBuilder();
         builder.set(CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER, CaptureRequest.CONTROL_AE_PRECAPTURE_TRIGGER_START);
 
         Log.d(TAG, "cqd.flash, triggerAECaptureSequence, set CONTROL_AE_PRECAPTURE_TRIGGER = CONTROL_AE_PRECAPTURE_TRIGGER_START");
-        mState = STATE_WAITING_PRE_CAPTURE;
-        sendCaptureRequest(builder.build(), mPreviewCallback, mMainHandler);
+        markStage(CaptureTimeline.AE_PRECAPTURE);
+        sendCaptureRequest(builder.build(), mAeTriggerCallback, cameraHandler);
     }
 
     private void triggerAFCaptureSequence() {
         CaptureRequest.Builder builder = getPreviewBuilder();
         builder.set(CaptureRequest.CONTROL_AF_TRIGGER,
                 CaptureRequest.CONTROL_AF_TRIGGER_START);
-        mState = STATE_WAITING_LOCK;
 
         Log.d(TAG, "cqd.flash, triggerAFCaptureSequence, build set and send CONTROL_AF_TRIGGER_START");
-        sendCaptureRequest(builder.build(), mPreviewCallback, mMainHandler);
+        markStage(CaptureTimeline.AF_TRIGGER);
+        sendCaptureRequest(builder.build(), mAfTriggerCallback, cameraHandler);
     }
 
     private void runCaptureStep() {
         String flashValue = cameraSettings.getGlobalPref(CameraSettings.KEY_FLASH_MODE);
         boolean isFlashOn = !CameraSettings.FLASH_VALUE_OFF.equals(flashValue)
                 && !CameraSettings.FLASH_VALUE_TORCH.equals(flashValue);
-        if (mRequestMgr.canTriggerAf() && isFlashOn) {
-            triggerAFCaptureSequence();
-        } else {
-            sendStillPictureRequest();
-        }
+        int flashMode = CameraSettings.FLASH_VALUE_ON.equals(flashValue)
+                ? StillCaptureStateMachine.FLASH_ON : StillCaptureStateMachine.FLASH_AUTO;
+        mCaptureMachine.start(mRequestMgr.canTriggerAf() && isFlashOn, flashMode,
+                SystemClock.elapsedRealtimeNanos());
     }
 
     private void updateAfState(CaptureResult result) {
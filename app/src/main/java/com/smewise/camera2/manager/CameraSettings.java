@@ -33,6 +33,12 @@ public class CameraSettings {
     public static final String KEY_AUX_CAMERA_ID = "pref_aux_camera_id";
     public static final String KEY_PICTURE_FORMAT = "pref_picture_format";
     public static final String KEY_RESTART_PREVIEW = "pref_restart_preview";
+    public static final String KEY_ROTATE_JPEG_PIXELS = "pref_rotate_jpeg_pixels";
+    public static final String KEY_ENCODE_YUV_JPEG = "pref_encode_yuv_jpeg";
+    public static final String KEY_OPTIMIZE_JPEG = "pref_optimize_jpeg";
+    public static final String KEY_PROGRESSIVE_JPEG = "pref_progressive_jpeg";
+    public static final String KEY_ZSL = "pref_zsl";
+    public static final String KEY_BURST_COUNT = "pref_burst_count";
     public static final String KEY_SWITCH_CAMERA = "pref_switch_camera";
     public static final String KEY_FLASH_MODE = "pref_flash_mode";
     public static final String KEY_ENABLE_DUAL_CAMERA = "pref_enable_dual_camera";
@@ -145,6 +151,42 @@ public class CameraSettings {
         return mSharedPreference.getBoolean(KEY_RESTART_PREVIEW, true);
     }
 
+    public boolean needRotateJpegPixels() {
+        return mSharedPreference.getBoolean(KEY_ROTATE_JPEG_PIXELS, false);
+    }
+
+    public boolean needEncodeYuvJpeg() {
+        return mSharedPreference.getBoolean(KEY_ENCODE_YUV_JPEG, true);
+    }
+
+    public boolean needOptimizeJpeg() {
+        return mSharedPreference.getBoolean(KEY_OPTIMIZE_JPEG, false);
+    }
+
+    public boolean needProgressiveJpeg() {
+        return mSharedPreference.getBoolean(KEY_PROGRESSIVE_JPEG, false);
+    }
+
+    public boolean needZsl() {
+        return mSharedPreference.getBoolean(KEY_ZSL, false);
+    }
+
+    /**
+     * @return pictures taken by one press of the shutter
+     */
+    public int getBurstCount() {
+        String value = mSharedPreference.getString(KEY_BURST_COUNT,
+                mContext.getResources().getString(R.string.default_burst_count));
+        return Math.max(1, Integer.parseInt(value));
+    }
+
+    /**
+     * @return maxImages of the still ImageReader, a burst keeps a few frames in flight
+     */
+    public int getStillReaderDepth() {
+        return Math.min(getBurstCount(), Config.MAX_STILL_IMAGES);
+    }
+
     public boolean isDualCameraEnable() {
         return mSharedPreference.getBoolean(KEY_ENABLE_DUAL_CAMERA, true);
     }
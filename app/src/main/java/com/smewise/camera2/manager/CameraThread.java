@@ -0,0 +1,59 @@
+package com.smewise.camera2.manager;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import com.smewise.camera2.Config;
+
+/**
+ * Threads of one opened camera device. Device, session and capture callbacks run on the
+ * camera looper and ImageReader listeners on the image looper, so results of every frame
+ * and image copies do not wait for layout, animation or touch on the main looper, nor for
+ * each other. Receivers post events that update the ui to the main handler themselves.
+ */
+public class CameraThread {
+    private HandlerThread mCameraThread;
+    private HandlerThread mImageThread;
+    private Handler mCameraHandler;
+    private Handler mImageHandler;
+
+    public CameraThread(String cameraId) {
+        if (!Config.USE_CAMERA_THREAD) {
+            mCameraHandler = new Handler(Looper.getMainLooper());
+            mImageHandler = mCameraHandler;
+            return;
+        }
+        // results drive the focus ui and the 3A sequence of a shot
+        mCameraThread = new HandlerThread("Camera-" + cameraId,
+                Process.THREAD_PRIORITY_DISPLAY);
+        mCameraThread.start();
+        mCameraHandler = new Handler(mCameraThread.getLooper());
+        mImageThread = new HandlerThread("CameraImage-" + cameraId);
+        mImageThread.start();
+        mImageHandler = new Handler(mImageThread.getLooper());
+    }
+
+    public Handler getCameraHandler() {
+        return mCameraHandler;
+    }
+
+    public Handler getImageHandler() {
+        return mImageHandler;
+    }
+
+    /**
+     * Stop after the posted callbacks, call when the device is closed.
+     */
+    public void quit() {
+        if (mCameraThread != null) {
+            mCameraThread.quitSafely();
+            mCameraThread = null;
+        }
+        if (mImageThread != null) {
+            mImageThread.quitSafely();
+            mImageThread = null;
+        }
+    }
+}
@@ -4,16 +4,28 @@ import android.content.Context;
 import android.hardware.SensorManager;
 import android.os.Handler;
 import android.os.Looper;
+import android.util.Log;
 import android.view.OrientationEventListener;
+import android.view.WindowManager;
 
+import com.smewise.camera2.Config;
+import com.smewise.camera2.utils.CaptureBufferPool;
+import com.smewise.camera2.utils.CaptureTracer;
 import com.smewise.camera2.utils.FileSaver;
+import com.smewise.camera2.utils.JankMonitor;
 import com.smewise.camera2.utils.JobExecutor;
+import com.smewise.camera2.utils.Storage;
+
+import java.io.File;
 
 /**
  * Created by wenzhe on 9/12/17.
  */
 
 public class CameraToolKit {
+    private static final String TAG = Config.getTag(CameraToolKit.class);
+    private static final String TRACE_FILE = "capture_trace.json";
+    private static final String FRAMES_FILE = "ui_frames.json";
 
     private Context mContext;
     private Handler mMainHandler;
@@ -21,11 +33,18 @@ public class CameraToolKit {
     private FileSaver mFileSaver;
     private int mRotation = 0;
     private JobExecutor mJobExecutor;
+    private CaptureBufferPool mBufferPool;
+    private CaptureTracer mTracer;
+    private JankMonitor mJankMonitor;
 
     public CameraToolKit(Context context) {
         mContext = context;
         mMainHandler = new Handler(Looper.getMainLooper());
-        mFileSaver = new FileSaver(mContext, mMainHandler);
+        mBufferPool = new CaptureBufferPool(Config.CAPTURE_POOL_BYTES);
+        mTracer = new CaptureTracer();
+        mFileSaver = new FileSaver(mContext, mMainHandler, mBufferPool, mTracer);
+        WindowManager wm = (WindowManager) mContext.getSystemService(Context.WINDOW_SERVICE);
+        mJankMonitor = new JankMonitor(wm.getDefaultDisplay().getRefreshRate());
         setOrientationListener();
         mJobExecutor = new JobExecutor();
     }
@@ -35,7 +54,26 @@ public class CameraToolKit {
             mFileSaver.release();
         }
         mOrientationListener.disable();
+        mJankMonitor.stop();
         mJobExecutor.destroy();
+        mBufferPool.clear();
+        exportTrace();
+    }
+
+    /**
+     * Write capture stage latencies and ui frame stats of this run to the app files dir,
+     * so builds can be compared with adb pull.
+     */
+    private void exportTrace() {
+        String json = mTracer.toJson();
+        String frames = mJankMonitor.toJson();
+        Log.i(TAG, "capture trace:" + json);
+        Log.i(TAG, "ui frames:" + frames);
+        File dir = mContext.getExternalFilesDir(null);
+        if (dir != null) {
+            Storage.writeFile(new File(dir, TRACE_FILE), json.getBytes());
+            Storage.writeFile(new File(dir, FRAMES_FILE), frames.getBytes());
+        }
     }
 
     public FileSaver getFileSaver() {
@@ -54,6 +92,18 @@ public class CameraToolKit {
         return mJobExecutor;
     }
 
+    public CaptureBufferPool getBufferPool() {
+        return mBufferPool;
+    }
+
+    public CaptureTracer getTracer() {
+        return mTracer;
+    }
+
+    public JankMonitor getJankMonitor() {
+        return mJankMonitor;
+    }
+
     private class MyOrientationListener extends OrientationEventListener {
 
         MyOrientationListener(Context context, int rate) {
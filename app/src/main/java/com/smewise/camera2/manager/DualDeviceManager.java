@@ -22,6 +22,10 @@ public class DualDeviceManager extends  DeviceManager{
     private String mCameraId = Config.MAIN_ID;
     private String mAuxCameraId = Config.AUX_ID;
     private CameraEvent mCameraEvent;
+    // one thread per device, so results of both cameras are handled in parallel
+    private CameraThread mCameraThread;
+    private CameraThread mAuxCameraThread;
+    private Handler mMainHandler;
 
     public DualDeviceManager(Context context, JobExecutor executor, CameraEvent event) {
         super(context);
@@ -50,6 +54,17 @@ public class DualDeviceManager extends  DeviceManager{
         }
     }
 
+    /**
+     * @return threads of the opened device, null if it is not opened
+     */
+    public CameraThread getCameraThread(boolean isMain) {
+        if (isMain) {
+            return mCameraThread;
+        } else {
+            return mAuxCameraThread;
+        }
+    }
+
     public CameraCharacteristics getCharacteristics(boolean isMain) {
         String cameraId = isMain ? mCameraId : mAuxCameraId;
         try {
@@ -71,22 +86,42 @@ public class DualDeviceManager extends  DeviceManager{
         return null;
     }
 
+    /**
+     * Device callbacks run on a camera thread of each device, camera events are posted to
+     * mainHandler.
+     */
     public void openCamera(final Handler mainHandler) {
+        mMainHandler = mainHandler;
+        if (mCameraThread == null) {
+            mCameraThread = new CameraThread(mCameraId);
+            mAuxCameraThread = new CameraThread(mAuxCameraId);
+        }
+        final Handler cameraHandler = mCameraThread.getCameraHandler();
+        final Handler auxCameraHandler = mAuxCameraThread.getCameraHandler();
         mExecutor.execute(new JobExecutor.Task<Void>() {
             @Override
             public Void run() {
-                openDevice(mCameraId, mainHandler);
-                openDevice(mAuxCameraId, mainHandler);
+                openDevice(mCameraId, cameraHandler);
+                openDevice(mAuxCameraId, auxCameraHandler);
                 return super.run();
             }
         });
     }
 
     public void releaseCamera() {
+        // new threads are started if the camera is opened before this job runs
+        final CameraThread thread = mCameraThread;
+        final CameraThread auxThread = mAuxCameraThread;
+        mCameraThread = null;
+        mAuxCameraThread = null;
         mExecutor.execute(new JobExecutor.Task<Void>() {
             @Override
             public Void run() {
                 closeDevice();
+                if (thread != null) {
+                    thread.quit();
+                    auxThread.quit();
+                }
                 return super.run();
             }
         });
@@ -113,13 +148,28 @@ public class DualDeviceManager extends  DeviceManager{
             mAuxDevice.close();
             mAuxDevice = null;
         }
-        mCameraEvent.onDeviceClosed();
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mCameraEvent.onDeviceClosed();
+            }
+        });
     }
 
     private CameraDevice.StateCallback stateCallback = new CameraDevice.StateCallback() {
         @Override
-        public void onOpened(@NonNull CameraDevice camera) {
+        public void onOpened(@NonNull final CameraDevice camera) {
             Log.d(TAG, "device opened :" + camera.getId());
+            // devices open on different threads, pair them on the main thread
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onDeviceOpened(camera);
+                }
+            });
+        }
+
+        private void onDeviceOpened(CameraDevice camera) {
             if (camera.getId().equals(mCameraId)) {
                 mDevice = camera;
             } else if (camera.getId().equals(mAuxCameraId)) {
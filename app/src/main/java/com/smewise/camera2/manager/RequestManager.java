@@ -233,4 +233,17 @@ public class RequestManager {
         return  allAFMode != null && allAFMode.length > 1;
     }
 
+    boolean canTriggerAePrecapture() {
+        int[] allAEMode = mCharacteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_MODES);
+        if (allAEMode == null) {
+            return false;
+        }
+        for (int mode : allAEMode) {
+            if (mode != CameraCharacteristics.CONTROL_AE_MODE_OFF) {
+                return true;
+            }
+        }
+        return false;
+    }
+
 }
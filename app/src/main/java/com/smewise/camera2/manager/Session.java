@@ -1,23 +1,33 @@
 package com.smewise.camera2.manager;
 
 import android.content.Context;
+import android.graphics.ImageFormat;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
 import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.CaptureResult;
 import android.media.Image;
 import android.media.ImageReader;
+import android.os.Build;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
 import android.util.Log;
 import android.util.SizeF;
 import android.view.Surface;
 
 import com.smewise.camera2.Config;
+import com.smewise.camera2.utils.CaptureBuffer;
+import com.smewise.camera2.utils.CaptureBufferPool;
+import com.smewise.camera2.utils.CaptureTracer;
+import com.smewise.camera2.utils.YuvPacker;
 
 import java.nio.ByteBuffer;
+import java.util.List;
 
 public abstract class Session {
 
@@ -41,6 +51,14 @@ public abstract class Session {
     CameraDevice cameraDevice;
     CameraCaptureSession cameraSession;
     CameraSettings cameraSettings;
+    CaptureBufferPool bufferPool;
+    CaptureTracer tracer;
+    // threads of the device, set with RQ_SET_DEVICE
+    Handler cameraHandler;
+    Handler imageHandler;
+    private YuvPacker mYuvPacker = new YuvPacker();
+    // sensor timestamps are elapsedRealtimeNanos, so result delivery can be timed
+    private boolean mRealtimeTimestamp;
 
     Session(Context context, CameraSettings settings) {
         cameraSettings = settings;
@@ -70,6 +88,63 @@ public abstract class Session {
 
     public abstract void release();
 
+    /**
+     * Requests come from the ui thread, they run on the camera thread like the callbacks
+     * of the session, so the state of a session is only touched by one thread.
+     * @return true if the request is posted and the caller should return
+     */
+    boolean postRequest(final int msg, final Object value1, final Object value2) {
+        if (msg == RQ_SET_DEVICE && value2 != null) {
+            CameraThread thread = (CameraThread) value2;
+            cameraHandler = thread.getCameraHandler();
+            imageHandler = thread.getImageHandler();
+        }
+        return postToCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                applyRequest(msg, value1, value2);
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #postRequest} for {@link #setRequest(int, Object, Object)}, the
+     * preview builder it changes is also used by the camera thread.
+     * @return true if the request is posted and the caller should return
+     */
+    boolean postSetRequest(final int msg, final Object value1, final Object value2) {
+        return postToCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                setRequest(msg, value1, value2);
+            }
+        });
+    }
+
+    /**
+     * @return true if runnable is posted, false if the caller is on the camera thread or
+     * the thread is gone and should run it now
+     */
+    boolean postToCameraThread(Runnable runnable) {
+        if (cameraHandler == null || cameraHandler.getLooper() == Looper.myLooper()) {
+            return false;
+        }
+        return cameraHandler.post(runnable);
+    }
+
+    /**
+     * Time from the start of exposure to the delivery of a result on the callback thread.
+     * It includes exposure and pipeline time, compare builds rather than absolute values.
+     */
+    void recordResultLatency(CaptureResult result) {
+        Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+        if (tracer == null || !mRealtimeTimestamp || timestamp == null) {
+            return;
+        }
+        long latencyNs = SystemClock.elapsedRealtimeNanos() - timestamp;
+        tracer.recordResultLatency(cameraDevice.getId(), latencyNs / 1000);
+    }
+
 
     public void calculateSensorAngle(CameraCharacteristics cc, String cameraID) {
         // 获取摄像头广角角度
@@ -96,6 +171,11 @@ public abstract class Session {
             assert manager != null;
             characteristics = manager.getCameraCharacteristics(cameraDevice.getId());
             calculateSensorAngle(characteristics, cameraDevice.getId());
+            Integer source = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M
+                    ? characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE)
+                    : null;
+            mRealtimeTimestamp = source != null
+                    && source == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
 
 
             Log.d(TAG, "cqd, initCharacteristics, get getCameraCharacteristics");
@@ -104,18 +184,53 @@ public abstract class Session {
         }
     }
 
-    byte[] getByteFromReader(ImageReader reader) {
-        Image image = reader.acquireLatestImage();
+    /**
+     * Copy image data to a pooled buffer, YUV_420_888 planes are packed to NV21 without
+     * row padding. The receiver of the data releases the buffer.
+     * @return data of the next image in the reader, null if no image is queued
+     */
+    CaptureBuffer getBufferFromReader(ImageReader reader) {
+        Image image = reader.acquireNextImage();
+        if (image == null) {
+            return null;
+        }
+        try {
+            return getBufferFromImage(image);
+        } finally {
+            image.close();
+        }
+    }
+
+    /**
+     * Copy image data to a pooled buffer, the image is not closed.
+     */
+    CaptureBuffer getBufferFromImage(Image image) {
+        if (image.getFormat() == ImageFormat.YUV_420_888) {
+            return packYuv(image);
+        }
         int totalSize = 0;
         for (Image.Plane plane : image.getPlanes()) {
             totalSize += plane.getBuffer().remaining();
         }
-        ByteBuffer totalBuffer = ByteBuffer.allocate(totalSize);
+        CaptureBuffer data = bufferPool.obtain(totalSize, false);
+        ByteBuffer out = data.asByteBuffer();
         for (Image.Plane plane : image.getPlanes()) {
-            totalBuffer.put(plane.getBuffer());
+            out.put(plane.getBuffer());
         }
-        image.close();
-        return totalBuffer.array();
+        return data;
+    }
+
+    private CaptureBuffer packYuv(Image image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Image.Plane[] planes = image.getPlanes();
+        // raw yuv only goes to the file channel, encoded yuv is read by the encoder
+        boolean direct = !cameraSettings.needEncodeYuvJpeg();
+        CaptureBuffer data = bufferPool.obtain(YuvPacker.getPackedSize(width, height), direct);
+        mYuvPacker.pack(width, height, planes[0].getBuffer(), planes[0].getRowStride(),
+                planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(),
+                planes[1].getPixelStride(), YuvPacker.NV21, data.asByteBuffer());
+        return data;
     }
 
 
@@ -163,4 +278,15 @@ public abstract class Session {
         }
     }
 
+    void sendBurstRequestWithStop(List<CaptureRequest> requests,
+                            CameraCaptureSession.CaptureCallback callback, Handler handler) {
+        try {
+            cameraSession.stopRepeating();
+            cameraSession.abortCaptures();
+            cameraSession.captureBurst(requests, callback, handler);
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.e(TAG, "send burst request error:" + e.getMessage());
+        }
+    }
+
 }
@@ -20,6 +20,8 @@ public class SingleDeviceManager  extends  DeviceManager{
     private JobExecutor mJobExecutor;
     private String mCameraId = Config.MAIN_ID;
     private CameraEvent mCameraEvent;
+    private CameraThread mCameraThread;
+    private Handler mMainHandler;
 
     public SingleDeviceManager(Context context, JobExecutor executor, CameraEvent event) {
         super(context);
@@ -49,6 +51,13 @@ public class SingleDeviceManager  extends  DeviceManager{
         return null;
     }
 
+    /**
+     * @return threads of the opened device, null if it is not opened
+     */
+    public CameraThread getCameraThread() {
+        return mCameraThread;
+    }
+
     public StreamConfigurationMap getConfigMap() {
         try {
             CameraCharacteristics c = cameraManager.getCameraCharacteristics(mCameraId);
@@ -59,21 +68,36 @@ public class SingleDeviceManager  extends  DeviceManager{
         return null;
     }
 
+    /**
+     * Device callbacks run on a camera thread of the device, camera events are posted to
+     * mainHandler.
+     */
     public void openCamera(final Handler mainHandler) {
+        mMainHandler = mainHandler;
+        if (mCameraThread == null) {
+            mCameraThread = new CameraThread(mCameraId);
+        }
+        final Handler cameraHandler = mCameraThread.getCameraHandler();
         mJobExecutor.execute(new JobExecutor.Task<Void>() {
             @Override
             public Void run() {
-                openDevice(mainHandler);
+                openDevice(cameraHandler);
                 return super.run();
             }
         });
     }
 
     public void releaseCamera() {
+        // a new thread is started if the camera is opened before this job runs
+        final CameraThread thread = mCameraThread;
+        mCameraThread = null;
         mJobExecutor.execute(new JobExecutor.Task<Void>() {
             @Override
             public Void run() {
                 closeDevice();
+                if (thread != null) {
+                    thread.quit();
+                }
                 return super.run();
             }
         });
@@ -95,15 +119,25 @@ public class SingleDeviceManager  extends  DeviceManager{
             mDevice.close();
             mDevice = null;
         }
-        mCameraEvent.onDeviceClosed();
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mCameraEvent.onDeviceClosed();
+            }
+        });
     }
 
     private CameraDevice.StateCallback stateCallback = new CameraDevice.StateCallback() {   // cqd.note 监听 cameraManager.openCamera 摄像头状态
         @Override
-        public void onOpened(@NonNull CameraDevice camera) {
+        public void onOpened(@NonNull final CameraDevice camera) {
             mDevice = camera;
             Log.d(TAG, "cqd, openCamera, StateCallback.onOpened, cameraID :" + camera.getId() + ", setCameraDevice");
-            mCameraEvent.onDeviceOpened(camera);
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    mCameraEvent.onDeviceOpened(camera);
+                }
+            });
         }
 
         @Override
@@ -0,0 +1,267 @@
+package com.smewise.camera2.manager;
+
+/**
+ * The af lock and ae precapture sequence run before a still capture, driven by the 3A
+ * states of the total preview results. It has no camera2 dependency, states are the int
+ * values of CaptureResult.CONTROL_AF_STATE and CONTROL_AE_STATE, so recorded result
+ * sequences can be replayed in unit tests. A device without af or ae is told once with
+ * {@link #setAvailable}, a state missing from a result is unknown and waited for. Results
+ * of requests queued before a trigger still show the old states, only results from the
+ * frame number the trigger request started with count, see {@link #onTriggerStarted}.
+ * <p>
+ * Every waiting state has a deadline in time and in frames, the sequence moves on when
+ * either one passes, so a lens that never locks or an ae that never leaves precapture
+ * can not stall the shot. Fast paths skip the af trigger when af is already locked and
+ * the precapture when ae is converged and flash is not forced on.
+ * <p>
+ * Not thread safe, call from the thread of the capture callbacks.
+ */
+public class StillCaptureStateMachine {
+    // CaptureResult.CONTROL_AF_STATE values
+    public static final int AF_STATE_FOCUSED_LOCKED = 4;
+    public static final int AF_STATE_NOT_FOCUSED_LOCKED = 5;
+    // CaptureResult.CONTROL_AE_STATE values
+    public static final int AE_STATE_CONVERGED = 2;
+    public static final int AE_STATE_LOCKED = 3;
+    public static final int AE_STATE_FLASH_REQUIRED = 4;
+    public static final int AE_STATE_PRECAPTURE = 5;
+
+    public static final int FLASH_AUTO = 0;
+    public static final int FLASH_ON = 1;
+
+    public static final int STATE_PREVIEW = 0;
+    public static final int STATE_WAITING_LOCK = 1;
+    public static final int STATE_WAITING_PRE_CAPTURE = 2;
+    public static final int STATE_WAITING_NON_PRE_CAPTURE = 3;
+    public static final int STATE_PICTURE_TAKEN = 4;
+
+    /** 3A is done */
+    public static final int CAPTURE_READY = 0;
+    /** nothing to wait for */
+    public static final int CAPTURE_FAST = 1;
+    /** a deadline passed, the picture may be out of focus or badly exposed */
+    public static final int CAPTURE_TIMEOUT = 2;
+
+    private static final long MS = 1000000L;
+    private static final long UNKNOWN_FRAME = Long.MAX_VALUE;
+    public static final long DEFAULT_LOCK_TIMEOUT_NS = 1000 * MS;
+    public static final long DEFAULT_PRE_CAPTURE_START_TIMEOUT_NS = 300 * MS;
+    public static final long DEFAULT_PRE_CAPTURE_TIMEOUT_NS = 1500 * MS;
+    public static final int DEFAULT_LOCK_FRAMES = 30;
+    public static final int DEFAULT_PRE_CAPTURE_START_FRAMES = 10;
+    public static final int DEFAULT_PRE_CAPTURE_FRAMES = 45;
+
+    public interface Callback {
+        /** send CONTROL_AF_TRIGGER_START */
+        void onTriggerAf();
+
+        /** send CONTROL_AE_PRECAPTURE_TRIGGER_START */
+        void onTriggerPrecapture();
+
+        /**
+         * Send the still request.
+         * @param reason {@link #CAPTURE_READY}, {@link #CAPTURE_FAST} or
+         *               {@link #CAPTURE_TIMEOUT}
+         */
+        void onCapture(int reason);
+    }
+
+    private final Callback mCallback;
+    private final long[] mTimeouts = {0, DEFAULT_LOCK_TIMEOUT_NS,
+            DEFAULT_PRE_CAPTURE_START_TIMEOUT_NS, DEFAULT_PRE_CAPTURE_TIMEOUT_NS};
+    private final int[] mFrameLimits = {0, DEFAULT_LOCK_FRAMES,
+            DEFAULT_PRE_CAPTURE_START_FRAMES, DEFAULT_PRE_CAPTURE_FRAMES};
+    private int mState = STATE_PREVIEW;
+    private boolean mAfAvailable = true;
+    private boolean mAeAvailable = true;
+    private int mFlashMode;
+    private Integer mLastAfState;
+    private Integer mLastAeState;
+    private long mLastFrame = -1;
+    // results of frames before the trigger show old states
+    private long mTriggerFrame = UNKNOWN_FRAME;
+    private long mStageFrame;
+    private long mStageTime;
+    private long mStartTime;
+    private long mLatency = -1;
+
+    public StillCaptureStateMachine(Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * @param state {@link #STATE_WAITING_LOCK}, {@link #STATE_WAITING_PRE_CAPTURE} or
+     *              {@link #STATE_WAITING_NON_PRE_CAPTURE}
+     * @param timeoutNs time the state may last
+     * @param frames results the state may last
+     */
+    public void setDeadline(int state, long timeoutNs, int frames) {
+        if (state < STATE_WAITING_LOCK || state > STATE_WAITING_NON_PRE_CAPTURE) {
+            throw new IllegalArgumentException("no deadline for state:" + state);
+        }
+        mTimeouts[state] = timeoutNs;
+        mFrameLimits[state] = frames;
+    }
+
+    /**
+     * @param af false for fixed focus, no af state is waited for
+     * @param ae false without auto exposure, no precapture is run
+     */
+    public void setAvailable(boolean af, boolean ae) {
+        mAfAvailable = af;
+        mAeAvailable = ae;
+    }
+
+    /**
+     * Start the sequence for a shutter press.
+     * @param triggerAf false to capture at once, e.g. flash is off
+     * @param flashMode {@link #FLASH_AUTO} or {@link #FLASH_ON}
+     * @param timestamp monotonic time in ns, same clock as {@link #onResult}
+     */
+    public void start(boolean triggerAf, int flashMode, long timestamp) {
+        mFlashMode = flashMode;
+        mStartTime = timestamp;
+        mLatency = -1;
+        if (!triggerAf) {
+            capture(CAPTURE_FAST, timestamp);
+        } else if (isLocked(mLastAfState)) {
+            // touch focus locked af already
+            runPrecaptureStep(mLastAeState, CAPTURE_FAST, timestamp);
+        } else {
+            enter(STATE_WAITING_LOCK, timestamp);
+            mCallback.onTriggerAf();
+        }
+    }
+
+    /**
+     * Feed a total result of the repeating request or of a trigger request, partial
+     * results usually lack the 3A states.
+     */
+    public void onResult(Integer afState, Integer aeState, long frameNumber, long timestamp) {
+        if (frameNumber < mLastFrame) {
+            return;
+        }
+        mLastFrame = frameNumber;
+        if (afState != null) {
+            mLastAfState = afState;
+        }
+        if (aeState != null) {
+            mLastAeState = aeState;
+        }
+        boolean triggered = frameNumber >= mTriggerFrame;
+        switch (mState) {
+            case STATE_WAITING_LOCK: {
+                if (triggered && (!mAfAvailable || isLocked(afState))) {
+                    runPrecaptureStep(mLastAeState, CAPTURE_READY, timestamp);
+                } else if (isExpired(frameNumber, timestamp)) {
+                    runPrecaptureStep(mLastAeState, CAPTURE_TIMEOUT, timestamp);
+                }
+                break;
+            }
+            case STATE_WAITING_PRE_CAPTURE: {
+                if (triggered && (!mAeAvailable || isPrecapture(aeState))) {
+                    enter(STATE_WAITING_NON_PRE_CAPTURE, timestamp);
+                } else if (isExpired(frameNumber, timestamp)) {
+                    // precapture finished before a result showed it, or never started
+                    enter(STATE_WAITING_NON_PRE_CAPTURE, timestamp);
+                }
+                break;
+            }
+            case STATE_WAITING_NON_PRE_CAPTURE: {
+                if (triggered && (!mAeAvailable
+                        || aeState != null && aeState != AE_STATE_PRECAPTURE)) {
+                    capture(CAPTURE_READY, timestamp);
+                } else if (isExpired(frameNumber, timestamp)) {
+                    capture(CAPTURE_TIMEOUT, timestamp);
+                }
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    /**
+     * The trigger request sent for state started, results of earlier frames are still in
+     * flight and show the states before the trigger.
+     * @param state {@link #STATE_WAITING_LOCK} for the af trigger,
+     *              {@link #STATE_WAITING_PRE_CAPTURE} for the precapture trigger
+     * @param frameNumber frame number of the trigger request
+     */
+    public void onTriggerStarted(int state, long frameNumber) {
+        boolean current = mState == state || (state == STATE_WAITING_PRE_CAPTURE
+                && mState == STATE_WAITING_NON_PRE_CAPTURE);
+        if (current && mTriggerFrame == UNKNOWN_FRAME) {
+            mTriggerFrame = frameNumber;
+        }
+    }
+
+    /**
+     * Back to preview, the capture is done or canceled.
+     */
+    public void reset() {
+        mState = STATE_PREVIEW;
+    }
+
+    public int getState() {
+        return mState;
+    }
+
+    /**
+     * @return ns from start to the capture callback of the last sequence, -1 if running
+     */
+    public long getLatency() {
+        return mLatency;
+    }
+
+    private void runPrecaptureStep(Integer aeState, int reason, long timestamp) {
+        if (needPrecapture(aeState)) {
+            enter(STATE_WAITING_PRE_CAPTURE, timestamp);
+            mCallback.onTriggerPrecapture();
+        } else {
+            capture(reason, timestamp);
+        }
+    }
+
+    private boolean needPrecapture(Integer aeState) {
+        if (!mAeAvailable) {
+            return false;
+        }
+        if (mFlashMode == FLASH_ON || aeState == null) {
+            // the flash is metered in precapture, an unknown state may need the flash
+            return true;
+        }
+        return aeState != AE_STATE_CONVERGED && aeState != AE_STATE_LOCKED;
+    }
+
+    private void enter(int state, long timestamp) {
+        mState = state;
+        mStageTime = timestamp;
+        mStageFrame = mLastFrame;
+        if (state != STATE_WAITING_NON_PRE_CAPTURE) {
+            // known when the trigger request starts
+            mTriggerFrame = UNKNOWN_FRAME;
+        }
+    }
+
+    private boolean isExpired(long frameNumber, long timestamp) {
+        return timestamp - mStageTime >= mTimeouts[mState]
+                || frameNumber - mStageFrame >= mFrameLimits[mState];
+    }
+
+    private void capture(int reason, long timestamp) {
+        mState = STATE_PICTURE_TAKEN;
+        mLatency = timestamp - mStartTime;
+        mCallback.onCapture(reason);
+    }
+
+    private static boolean isPrecapture(Integer aeState) {
+        return aeState != null && (aeState == AE_STATE_PRECAPTURE
+                || aeState == AE_STATE_FLASH_REQUIRED);
+    }
+
+    private static boolean isLocked(Integer afState) {
+        return afState != null && (afState == AF_STATE_FOCUSED_LOCKED
+                || afState == AF_STATE_NOT_FOCUSED_LOCKED);
+    }
+}
@@ -13,7 +13,6 @@ import android.hardware.camera2.TotalCaptureResult;
 import android.hardware.camera2.params.MeteringRectangle;
 import android.hardware.camera2.params.StreamConfigurationMap;
 import android.media.MediaRecorder;
-import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
@@ -23,6 +22,7 @@ import android.view.Surface;
 import com.smewise.camera2.Config;
 import com.smewise.camera2.callback.RequestCallback;
 import com.smewise.camera2.utils.CameraUtil;
+import com.smewise.camera2.utils.CaptureTracer;
 import com.smewise.camera2.utils.MediaFunc;
 
 import java.io.File;
@@ -34,7 +34,6 @@ import java.util.List;
 public class VideoSession extends Session {
     private final String TAG = Config.getTag(VideoSession.class);
 
-    private Handler mMainHandler;
     private RequestManager mRequestMgr;
     private RequestCallback mCallback;
     private SurfaceTexture mTexture;
@@ -47,15 +46,18 @@ public class VideoSession extends Session {
     private Size mPreviewSize;
     private File mCurrentRecordFile;
 
-    public VideoSession(Context context, Handler mainHandler, CameraSettings settings) {
+    public VideoSession(Context context, CameraSettings settings, CaptureTracer captureTracer) {
         super(context, settings);
-        mMainHandler = mainHandler;
+        tracer = captureTracer;
         mRequestMgr = new RequestManager();
     }
 
 
     @Override
     public void applyRequest(int msg, Object value1, Object value2) {
+        if (postRequest(msg, value1, value2)) {
+            return;
+        }
         switch (msg) {
             case RQ_SET_DEVICE: {
                 setCameraDevice((CameraDevice) value1);
@@ -113,6 +115,9 @@ public class VideoSession extends Session {
 
     @Override
     public void setRequest(int msg, @Nullable Object value1, @Nullable Object value2) {
+        if (postSetRequest(msg, value1, value2)) {
+            return;
+        }
         switch (msg) {
             case RQ_SET_DEVICE: {
                 break;
@@ -148,6 +153,14 @@ public class VideoSession extends Session {
 
     @Override
     public void release() {
+        if (postToCameraThread(new Runnable() {
+            @Override
+            public void run() {
+                release();
+            }
+        })) {
+            return;
+        }
         if (cameraSession != null) {
             cameraSession.close();
             cameraSession = null;
@@ -176,7 +189,7 @@ public class VideoSession extends Session {
     private void sendFlashRequest(String value) {
         Log.d(TAG, "flash value:" + value);
         CaptureRequest request = mRequestMgr.getFlashRequest(getPreviewBuilder(), value);
-        sendRepeatingRequest(request, mPreviewCallback, mMainHandler);
+        sendRepeatingRequest(request, mPreviewCallback, cameraHandler);
     }
 
     private void setCameraDevice(CameraDevice device) {
@@ -203,7 +216,7 @@ public class VideoSession extends Session {
         try {
             Log.d(TAG, "cqd, createPreviewSession, before cameraDevice.createCaptureSession");
             cameraDevice.createCaptureSession(setPreviewOutputSize(cameraDevice.getId(), mTexture),
-                    sessionStateCb, mMainHandler);
+                    sessionStateCb, cameraHandler);
         } catch (CameraAccessException | IllegalStateException e) {
             e.printStackTrace();
         }
@@ -219,7 +232,7 @@ public class VideoSession extends Session {
         try {
             Log.d(TAG, "cqd, createVideoSession, before cameraDevice.createCaptureSession");
             cameraDevice.createCaptureSession(setVideoOutputSize(
-                    mTexture, mMediaRecorder.getSurface()), videoSessionStateCb, mMainHandler);
+                    mTexture, mMediaRecorder.getSurface()), videoSessionStateCb, cameraHandler);
         } catch (CameraAccessException | IllegalStateException e) {
             e.printStackTrace();
         }
@@ -229,14 +242,14 @@ public class VideoSession extends Session {
         CaptureRequest.Builder builder = getPreviewBuilder();
         updateRequestFromSetting(builder);
         CaptureRequest request = mRequestMgr.getPreviewRequest(builder);
-        sendRepeatingRequest(request, mPreviewCallback, mMainHandler);
+        sendRepeatingRequest(request, mPreviewCallback, cameraHandler);
     }
 
     private void sendVideoPreviewRequest() {
         CaptureRequest.Builder builder = getVideoBuilder();
         updateRequestFromSetting(builder);
         CaptureRequest request = mRequestMgr.getPreviewRequest(builder);
-        sendRepeatingRequest(request, mPreviewCallback, mMainHandler);
+        sendRepeatingRequest(request, mPreviewCallback, cameraHandler);
     }
 
     private void sendControlAfAeRequest(MeteringRectangle focusRect,
@@ -244,17 +257,17 @@ public class VideoSession extends Session {
         CaptureRequest.Builder builder = getPreviewBuilder();
         CaptureRequest request = mRequestMgr
                 .getTouch2FocusRequest(builder, focusRect, meteringRect);
-        sendRepeatingRequest(request, mPreviewCallback, mMainHandler);
+        sendRepeatingRequest(request, mPreviewCallback, cameraHandler);
         // trigger af
         builder.set(CaptureRequest.CONTROL_AF_TRIGGER, CaptureRequest.CONTROL_AF_TRIGGER_START);
         Log.d(TAG, "cqd.focus, sendControlAfAeRequest, Builder set CONTROL_AF_TRIGGER_START");
-        sendCaptureRequest(builder.build(), null, mMainHandler);
+        sendCaptureRequest(builder.build(), null, cameraHandler);
     }
 
     private void sendControlFocusModeRequest(int focusMode) {
         Log.d(TAG, "cqd.focus, sendControlFocusModeRequest, focusMode = " + focusMode);
         CaptureRequest request = mRequestMgr.getFocusModeRequest(getPreviewBuilder(), focusMode);
-        sendRepeatingRequest(request, mPreviewCallback, mMainHandler);
+        sendRepeatingRequest(request, mPreviewCallback, cameraHandler);
     }
 
     private void sendRestartPreviewRequest() {
@@ -398,6 +411,7 @@ public class VideoSession extends Session {
         public void onCaptureCompleted(@NonNull CameraCaptureSession session, @NonNull
                 CaptureRequest request, @NonNull TotalCaptureResult result) {
             super.onCaptureCompleted(session, request, result);
+            recordResultLatency(result);
             updateAfState(result);
             mCallback.onRequestComplete();
         }
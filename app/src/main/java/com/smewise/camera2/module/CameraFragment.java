@@ -57,11 +57,13 @@ public class CameraFragment extends Fragment {
             cameraModule.init(mAppContext, mController);
         }
         mModuleManager.getCurrentModule().startModule();
+        mToolKit.getJankMonitor().start();
     }
 
     @Override
     public void onPause() {
         super.onPause();
+        mToolKit.getJankMonitor().stop();
         if (mModuleManager.getCurrentModule() != null) {
             mModuleManager.getCurrentModule().stopModule();
         }
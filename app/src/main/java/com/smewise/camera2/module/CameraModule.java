@@ -2,21 +2,33 @@ package com.smewise.camera2.module;
 
 import android.content.Context;
 import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CaptureResult;
+import android.net.Uri;
 import android.os.Handler;
+import android.util.Log;
 import android.view.View;
 import android.widget.RelativeLayout;
+import android.widget.Toast;
 
 import com.smewise.camera2.Config;
+import com.smewise.camera2.R;
+import com.smewise.camera2.callback.RequestCallback;
 import com.smewise.camera2.manager.CameraSettings;
 import com.smewise.camera2.manager.CameraToolKit;
 import com.smewise.camera2.manager.Controller;
+import com.smewise.camera2.manager.DeviceManager;
 import com.smewise.camera2.manager.FocusOverlayManager;
 import com.smewise.camera2.ui.AppBaseUI;
 import com.smewise.camera2.ui.CoverView;
+import com.smewise.camera2.utils.CameraUtil;
+import com.smewise.camera2.utils.CaptureBuffer;
+import com.smewise.camera2.utils.CaptureTimeline;
 import com.smewise.camera2.utils.FileSaver;
 import com.smewise.camera2.utils.JobExecutor;
 import com.smewise.camera2.utils.MediaFunc;
+import com.smewise.camera2.utils.SaveQueue;
+
 
 /**
  * Created by wenzhe on 16-3-9.
@@ -32,6 +44,9 @@ public abstract class CameraModule {
     RelativeLayout rootView;
 
     private Controller mController;
+    private DeviceManager mDeviceInfo;
+    // pictures waiting for the save thread, at most the bytes of the capture pool
+    private final SaveQueue<SaveJob> mSaveQueue = new SaveQueue<>(Config.CAPTURE_POOL_BYTES);
     Context appContext;
 
     public void init(Context context, Controller controller) {
@@ -39,6 +54,7 @@ public abstract class CameraModule {
         if (mController != null) { return; }
         appContext = context;
         mController = controller;
+        mDeviceInfo = new DeviceManager(context);
         mainHandler = getToolKit().getMainHandler();
         fileSaver = getToolKit().getFileSaver();
         rootView = controller.getBaseUI().getRootView();
@@ -93,17 +109,120 @@ public abstract class CameraModule {
         }
     }
 
-    void saveFile(final byte[] data, final int width, final int height, final String cameraId,
-                  final String formatKey, final String tag) {
-        getExecutor().execute(new JobExecutor.Task<Void>() {
+    /**
+     * @param sequence number of the picture from {@link RequestCallback#onDataBack}
+     */
+    void saveFile(CaptureBuffer data, int width, int height, int sequence, String cameraId,
+                  String formatKey, String tag, CaptureTimeline timeline) {
+        SaveJob job = new SaveJob();
+        job.data = data;
+        job.width = width;
+        job.height = height;
+        job.sequence = sequence;
+        job.cameraId = cameraId;
+        job.formatKey = formatKey;
+        job.tag = tag;
+        job.timeline = timeline;
+        // rotation when the picture is taken, not when it is saved
+        job.rotation = getPictureRotation(cameraId);
+        int result = mSaveQueue.offer(job, data.size());
+        if (result != SaveQueue.QUEUED) {
+            Log.w(TAG, "too many pictures waiting to be saved, drop " + tag + " " + sequence);
+            data.release();
+            if (result == SaveQueue.DROPPED_FIRST) {
+                onSaveDropped();
+            }
+            return;
+        }
+        // pictures of a burst are saved one by one while the next ones are captured
+        getExecutor().executeSerial(new JobExecutor.Task<Void>() {
             @Override
             public Void run() {
-                int format = getSettings().getPicFormat(cameraId, formatKey);
-                int saveType = MediaFunc.MEDIA_TYPE_IMAGE;
-                if (format != ImageFormat.JPEG) {
-                    saveType = MediaFunc.MEDIA_TYPE_YUV;
+                SaveQueue.Entry<SaveJob> entry = mSaveQueue.take();
+                if (entry == null) {
+                    return super.run();
+                }
+                try {
+                    save(entry.getItem());
+                } finally {
+                    mSaveQueue.finish(entry);
                 }
-                fileSaver.saveFile(width, height, getToolKit().getOrientation(), data, tag, saveType);
+                Log.d(TAG, getToolKit().getBufferPool().toString());
+                return super.run();
+            }
+        });
+    }
+
+    private void save(SaveJob job) {
+        Log.d(TAG, "save picture " + job.sequence);
+        int format = getSettings().getPicFormat(job.cameraId, job.formatKey);
+        int saveType = MediaFunc.MEDIA_TYPE_IMAGE;
+        if (format != ImageFormat.JPEG) {
+            saveType = MediaFunc.MEDIA_TYPE_YUV;
+        }
+        fileSaver.setRotateJpegPixels(getSettings().needRotateJpegPixels());
+        fileSaver.setEncodeYuvJpeg(getSettings().needEncodeYuvJpeg());
+        fileSaver.saveFile(job.width, job.height, job.rotation, job.data, job.tag, saveType,
+                job.timeline);
+    }
+
+    /**
+     * Tell once until the queued pictures are written, later pictures of the burst are
+     * captured and dropped meanwhile.
+     */
+    private void onSaveDropped() {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Toast.makeText(appContext, R.string.save_dropped, Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    private static class SaveJob {
+        CaptureBuffer data;
+        int width;
+        int height;
+        int rotation;
+        int sequence;
+        String cameraId;
+        String formatKey;
+        String tag;
+        CaptureTimeline timeline;
+    }
+
+    /**
+     * Clockwise rotation of the sensor pixels for display, as the hal rotates jpeg.
+     */
+    private int getPictureRotation(String cameraId) {
+        int deviceRotation = getToolKit().getOrientation();
+        CameraCharacteristics c = mDeviceInfo.getCharacteristics(cameraId);
+        return c == null ? deviceRotation : CameraUtil.getJpgRotation(c, deviceRotation);
+    }
+
+    /**
+     * Show the rate of a burst, nothing for a single shot.
+     */
+    void showBurstResult(int count, float fps) {
+        if (count > 1) {
+            Toast.makeText(appContext, appContext.getString(R.string.burst_result, count, fps),
+                    Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    /**
+     * Shrink a saved jpeg on the background thread when enabled in settings, the file
+     * stays usable while it is optimized.
+     */
+    void optimizeFile(final Uri uri, final String path) {
+        if (path == null || !path.endsWith(".jpg") || !getSettings().needOptimizeJpeg()) {
+            return;
+        }
+        final boolean progressive = getSettings().needProgressiveJpeg();
+        getExecutor().executeBackground(new JobExecutor.Task<Void>() {
+            @Override
+            public Void run() {
+                fileSaver.optimizeJpegFile(uri, path, progressive);
                 return super.run();
             }
         });
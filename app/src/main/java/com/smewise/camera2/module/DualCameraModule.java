@@ -24,6 +24,9 @@ import com.smewise.camera2.manager.DualDeviceManager;
 import com.smewise.camera2.manager.FocusOverlayManager;
 import com.smewise.camera2.manager.Session;
 import com.smewise.camera2.ui.DualCameraUI;
+import com.smewise.camera2.utils.CaptureBuffer;
+import com.smewise.camera2.utils.CaptureTimeline;
+import com.smewise.camera2.utils.CaptureTracer;
 import com.smewise.camera2.utils.FileSaver;
 import com.smewise.camera2.utils.MediaFunc;
 
@@ -51,8 +54,10 @@ public class DualCameraModule extends CameraModule implements FileSaver.FileList
         mFocusManager = new FocusOverlayManager(getBaseUI().getFocusView(), mainHandler.getLooper());
         mFocusManager.setListener(mCameraUiEvent);
         mDeviceMgr = new DualDeviceManager(appContext, getExecutor(), mCameraEvent);
-        mSession = new CameraSession(appContext, mainHandler, getSettings());
-        mAuxSession = new CameraSession(appContext, mainHandler, getSettings());
+        mSession = new CameraSession(appContext, getSettings(), getToolKit().getBufferPool(),
+                getToolKit().getTracer());
+        mAuxSession = new CameraSession(appContext, getSettings(), getToolKit().getBufferPool(),
+                getToolKit().getTracer());
     }
 
     @Override
@@ -75,7 +80,8 @@ public class DualCameraModule extends CameraModule implements FileSaver.FileList
         public void onDeviceOpened(CameraDevice device) {
             super.onDeviceOpened(device);
             Log.d(TAG, "camera opened");
-            mSession.applyRequest(Session.RQ_SET_DEVICE, device);
+            mSession.applyRequest(Session.RQ_SET_DEVICE, device,
+                    mDeviceMgr.getCameraThread(true));
             enableState(Controller.CAMERA_STATE_OPENED);
             if (stateEnabled(Controller.CAMERA_STATE_UI_READY)) {
                 mSession.applyRequest(Session.RQ_START_PREVIEW,mainSurfaceTexture, mRequestCallback);
@@ -87,7 +93,8 @@ public class DualCameraModule extends CameraModule implements FileSaver.FileList
         public void onAuxDeviceOpened(CameraDevice device) {
             super.onAuxDeviceOpened(device);
             // method will be called before onDeviceOpened(CameraDevice device)
-            mAuxSession.applyRequest(Session.RQ_SET_DEVICE, device, null);
+            mAuxSession.applyRequest(Session.RQ_SET_DEVICE, device,
+                    mDeviceMgr.getCameraThread(false));
         }
 
         @Override
@@ -103,39 +110,75 @@ public class DualCameraModule extends CameraModule implements FileSaver.FileList
 
     private RequestCallback mRequestCallback = new RequestCallback() {
         @Override
-        public void onDataBack(byte[] data, int width, int height) {
-            super.onDataBack(data, width, height);
-            saveFile(data, width, height, mDeviceMgr.getCameraId(true),
-                    CameraSettings.KEY_PICTURE_FORMAT, "MAIN");
-            enableUiAfterShot();
+        public void onDataBack(CaptureBuffer data, int width, int height, int sequence,
+                CaptureTimeline timeline) {
+            super.onDataBack(data, width, height, sequence, timeline);
+            saveFile(data, width, height, sequence, mDeviceMgr.getCameraId(true),
+                    CameraSettings.KEY_PICTURE_FORMAT, "MAIN", timeline);
         }
 
         @Override
-        public void onViewChange(int width, int height) {
+        public void onBurstComplete(int count, float fps) {
+            super.onBurstComplete(count, fps);
+            // the sessions call back on their own threads
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    enableUiAfterShot();
+                }
+            });
+        }
+
+        @Override
+        public void onViewChange(final int width, final int height) {
             super.onViewChange(width, height);
-            getBaseUI().updateUiSize(width, height);
-            mUI.updateUISize(width, height);
-            mFocusManager.onPreviewChanged(width, height, mDeviceMgr.getCharacteristics(true));
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    getBaseUI().updateUiSize(width, height);
+                    mUI.updateUISize(width, height);
+                    mFocusManager.onPreviewChanged(width, height,
+                            mDeviceMgr.getCharacteristics(true));
+                }
+            });
         }
 
         @Override
-        public void onAFStateChanged(int state) {
+        public void onAFStateChanged(final int state) {
             super.onAFStateChanged(state);
-            updateAFState(state, mFocusManager);
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    updateAFState(state, mFocusManager);
+                }
+            });
         }
     };
 
     private RequestCallback mAuxRequestCb = new RequestCallback() {
         @Override
-        public void onDataBack(byte[] data, int width, int height) {
-            super.onDataBack(data, width, height);
-            saveFile(data, width, height, mDeviceMgr.getCameraId(false),
-                    CameraSettings.KEY_PICTURE_FORMAT, "AUX");
-            enableUiAfterShot();
+        public void onDataBack(CaptureBuffer data, int width, int height, int sequence,
+                CaptureTimeline timeline) {
+            super.onDataBack(data, width, height, sequence, timeline);
+            saveFile(data, width, height, sequence, mDeviceMgr.getCameraId(false),
+                    CameraSettings.KEY_PICTURE_FORMAT, "AUX", timeline);
+        }
+
+        @Override
+        public void onBurstComplete(int count, float fps) {
+            super.onBurstComplete(count, fps);
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    enableUiAfterShot();
+                }
+            });
         }
     };
 
+    // both sessions finished their burst
     private void enableUiAfterShot() {
+        mPicCount++;
         if (mPicCount == 2) {
             mUI.setUIClickable(true);
             getBaseUI().setUIClickable(true);
@@ -166,9 +209,8 @@ public class DualCameraModule extends CameraModule implements FileSaver.FileList
     @Override
     public void onFileSaved(Uri uri, String path, Bitmap thumbnail) {
         MediaFunc.setCurrentUri(uri);
-        mUI.setUIClickable(true);
-        getBaseUI().setUIClickable(true);
         getBaseUI().setThumbnail(thumbnail);
+        optimizeFile(uri, path);
     }
 
     /**
@@ -185,8 +227,11 @@ public class DualCameraModule extends CameraModule implements FileSaver.FileList
     private void takePicture() {
         mUI.setUIClickable(false);
         getBaseUI().setUIClickable(false);
-        mSession.applyRequest(Session.RQ_TAKE_PICTURE, getToolKit().getOrientation());
-        mAuxSession.applyRequest(Session.RQ_TAKE_PICTURE, getToolKit().getOrientation());
+        CaptureTracer tracer = getToolKit().getTracer();
+        mSession.applyRequest(Session.RQ_TAKE_PICTURE, getToolKit().getOrientation(),
+                tracer.start(mDeviceMgr.getCameraId(true)));
+        mAuxSession.applyRequest(Session.RQ_TAKE_PICTURE, getToolKit().getOrientation(),
+                tracer.start(mDeviceMgr.getCameraId(false)));
     }
 
     private CameraUiEvent mCameraUiEvent = new CameraUiEvent() {
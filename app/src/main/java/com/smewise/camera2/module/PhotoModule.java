@@ -27,6 +27,8 @@ import com.smewise.camera2.manager.SingleDeviceManager;
 import com.smewise.camera2.ui.CameraBaseMenu;
 import com.smewise.camera2.ui.CameraMenu;
 import com.smewise.camera2.ui.PhotoUI;
+import com.smewise.camera2.utils.CaptureBuffer;
+import com.smewise.camera2.utils.CaptureTimeline;
 import com.smewise.camera2.utils.FileSaver;
 import com.smewise.camera2.utils.MediaFunc;
 
@@ -54,7 +56,8 @@ public class PhotoModule extends CameraModule implements FileSaver.FileListener,
         mFocusManager.setListener(mCameraUiEvent);
         mCameraMenu = new CameraMenu(appContext, R.xml.menu_preference, mMenuInfo);
         mCameraMenu.setOnMenuClickListener(this);
-        mSession = new CameraSession(appContext, mainHandler, getSettings());
+        mSession = new CameraSession(appContext, getSettings(), getToolKit().getBufferPool(),
+                getToolKit().getTracer());
     }
 
     @Override
@@ -77,7 +80,7 @@ public class PhotoModule extends CameraModule implements FileSaver.FileListener,
         public void onDeviceOpened(CameraDevice device) {
             super.onDeviceOpened(device);
             Log.d(TAG, "cqd, camera opened");
-            mSession.applyRequest(Session.RQ_SET_DEVICE, device);
+            mSession.applyRequest(Session.RQ_SET_DEVICE, device, mDeviceMgr.getCameraThread());
             enableState(Controller.CAMERA_STATE_OPENED);
             if (stateEnabled(Controller.CAMERA_STATE_UI_READY)) {
                 Log.d(TAG, "cqd, mRequestCallback = " + mRequestCallback);
@@ -98,25 +101,50 @@ public class PhotoModule extends CameraModule implements FileSaver.FileListener,
 
     private RequestCallback mRequestCallback = new RequestCallback() {
         @Override
-        public void onDataBack(byte[] data, int width, int height) {
+        public void onDataBack(CaptureBuffer data, int width, int height, int sequence,
+                CaptureTimeline timeline) {
             Log.d(TAG, "cqd, RequestCallback, onDataBack");
-            super.onDataBack(data, width, height);
-            saveFile(data, width, height, mDeviceMgr.getCameraId(),
-                    CameraSettings.KEY_PICTURE_FORMAT, "CAMERA");
+            super.onDataBack(data, width, height, sequence, timeline);
+            saveFile(data, width, height, sequence, mDeviceMgr.getCameraId(),
+                    CameraSettings.KEY_PICTURE_FORMAT, "CAMERA", timeline);
+        }
+
+        @Override
+        public void onBurstComplete(final int count, final float fps) {
+            super.onBurstComplete(count, fps);
+            // pictures are saved in order, next shot can start before they are written
             mSession.applyRequest(Session.RQ_RESTART_PREVIEW);
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    mUI.setUIClickable(true);
+                    getBaseUI().setUIClickable(true);
+                    showBurstResult(count, fps);
+                }
+            });
         }
 
         @Override
-        public void onViewChange(int width, int height) {
+        public void onViewChange(final int width, final int height) {
             super.onViewChange(width, height);
-            getBaseUI().updateUiSize(width, height);
-            mFocusManager.onPreviewChanged(width, height, mDeviceMgr.getCharacteristics());
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    getBaseUI().updateUiSize(width, height);
+                    mFocusManager.onPreviewChanged(width, height, mDeviceMgr.getCharacteristics());
+                }
+            });
         }
 
         @Override
-        public void onAFStateChanged(int state) {
+        public void onAFStateChanged(final int state) {
             super.onAFStateChanged(state);
-            updateAFState(state, mFocusManager);
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    updateAFState(state, mFocusManager);
+                }
+            });
         }
     };
 
@@ -137,7 +165,8 @@ public class PhotoModule extends CameraModule implements FileSaver.FileListener,
         Log.d(TAG, "cqd, takePicture begin");
         mUI.setUIClickable(false);
         getBaseUI().setUIClickable(false);
-        mSession.applyRequest(Session.RQ_TAKE_PICTURE, getToolKit().getOrientation());
+        CaptureTimeline timeline = getToolKit().getTracer().start(mDeviceMgr.getCameraId());
+        mSession.applyRequest(Session.RQ_TAKE_PICTURE, getToolKit().getOrientation(), timeline);
         Log.d(TAG, "cqd, takePicture end");
     }
 
@@ -150,10 +179,9 @@ public class PhotoModule extends CameraModule implements FileSaver.FileListener,
     @Override
     public void onFileSaved(Uri uri, String path, Bitmap thumbnail) {
         MediaFunc.setCurrentUri(uri);
-        mUI.setUIClickable(true);
-        getBaseUI().setUIClickable(true);
         getBaseUI().setThumbnail(thumbnail);
         Log.d(TAG, "uri:" + uri.toString());
+        optimizeFile(uri, path);
     }
 
     /**
@@ -23,6 +23,8 @@ import com.smewise.camera2.manager.FocusOverlayManager;
 import com.smewise.camera2.manager.Session;
 import com.smewise.camera2.manager.SingleDeviceManager;
 import com.smewise.camera2.ui.ProfessionalUI;
+import com.smewise.camera2.utils.CaptureBuffer;
+import com.smewise.camera2.utils.CaptureTimeline;
 import com.smewise.camera2.utils.FileSaver;
 import com.smewise.camera2.utils.MediaFunc;
 
@@ -46,7 +48,8 @@ public class ProfessionalModule extends CameraModule implements FileSaver.FileLi
         mFocusManager = new FocusOverlayManager(getBaseUI().getFocusView(), mainHandler.getLooper());
         mFocusManager.setListener(mCameraUiEvent);
         mDeviceMgr = new SingleDeviceManager(appContext, getExecutor(), mCameraEvent);
-        mSession = new CameraSession(appContext, mainHandler, getSettings());
+        mSession = new CameraSession(appContext, getSettings(), getToolKit().getBufferPool(),
+                getToolKit().getTracer());
     }
 
     @Override
@@ -67,7 +70,7 @@ public class ProfessionalModule extends CameraModule implements FileSaver.FileLi
         public void onDeviceOpened(CameraDevice device) {
             super.onDeviceOpened(device);
             Log.d(TAG, "camera opened");
-            mSession.applyRequest(Session.RQ_SET_DEVICE, device);
+            mSession.applyRequest(Session.RQ_SET_DEVICE, device, mDeviceMgr.getCameraThread());
             enableState(Controller.CAMERA_STATE_OPENED);
             if (stateEnabled(Controller.CAMERA_STATE_UI_READY)) {
                 mSession.applyRequest(Session.RQ_START_PREVIEW, mSurfaceTexture, mRequestCallback);
@@ -87,24 +90,49 @@ public class ProfessionalModule extends CameraModule implements FileSaver.FileLi
 
     private RequestCallback mRequestCallback = new RequestCallback() {
         @Override
-        public void onDataBack(byte[] data, int width, int height) {
-            super.onDataBack(data, width, height);
-            saveFile(data, width, height, mDeviceMgr.getCameraId(),
-                    CameraSettings.KEY_PICTURE_FORMAT, "CAMERA");
+        public void onDataBack(CaptureBuffer data, int width, int height, int sequence,
+                CaptureTimeline timeline) {
+            super.onDataBack(data, width, height, sequence, timeline);
+            saveFile(data, width, height, sequence, mDeviceMgr.getCameraId(),
+                    CameraSettings.KEY_PICTURE_FORMAT, "CAMERA", timeline);
+        }
+
+        @Override
+        public void onBurstComplete(final int count, final float fps) {
+            super.onBurstComplete(count, fps);
+            // pictures are saved in order, next shot can start before they are written
             mSession.applyRequest(Session.RQ_RESTART_PREVIEW);
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    mUI.setUIClickable(true);
+                    getBaseUI().setUIClickable(true);
+                    showBurstResult(count, fps);
+                }
+            });
         }
 
         @Override
-        public void onViewChange(int width, int height) {
+        public void onViewChange(final int width, final int height) {
             super.onViewChange(width, height);
-            getBaseUI().updateUiSize(width, height);
-            mFocusManager.onPreviewChanged(width, height, mDeviceMgr.getCharacteristics());
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    getBaseUI().updateUiSize(width, height);
+                    mFocusManager.onPreviewChanged(width, height, mDeviceMgr.getCharacteristics());
+                }
+            });
         }
 
         @Override
-        public void onAFStateChanged(int state) {
+        public void onAFStateChanged(final int state) {
             super.onAFStateChanged(state);
-            updateAFState(state, mFocusManager);
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    updateAFState(state, mFocusManager);
+                }
+            });
         }
     };
 
@@ -122,7 +150,8 @@ public class ProfessionalModule extends CameraModule implements FileSaver.FileLi
     private void takePicture() {
         mUI.setUIClickable(false);
         getBaseUI().setUIClickable(false);
-        mSession.applyRequest(Session.RQ_TAKE_PICTURE, getToolKit().getOrientation());
+        CaptureTimeline timeline = getToolKit().getTracer().start(mDeviceMgr.getCameraId());
+        mSession.applyRequest(Session.RQ_TAKE_PICTURE, getToolKit().getOrientation(), timeline);
     }
 
     /**
@@ -133,10 +162,9 @@ public class ProfessionalModule extends CameraModule implements FileSaver.FileLi
      */
     @Override
     public void onFileSaved(Uri uri, String path, Bitmap thumbnail) {
-        mUI.setUIClickable(true);
-        getBaseUI().setUIClickable(true);
         getBaseUI().setThumbnail(thumbnail);
         MediaFunc.setCurrentUri(uri);
+        optimizeFile(uri, path);
     }
 
     /**
@@ -138,6 +138,8 @@ public class SettingFragment extends PreferenceFragment {
         int picFormat = setPictureFormatPref(cameraId, CameraSettings.KEY_PICTURE_FORMAT);
         setPictureSizePref(cameraId, CameraSettings.KEY_PICTURE_SIZE, picFormat);
         setPreviewSizePref(cameraId, CameraSettings.KEY_PREVIEW_SIZE);
+        ListPreference burstPref = (ListPreference) findPreference(CameraSettings.KEY_BURST_COUNT);
+        burstPref.setSummary(burstPref.getEntry());
         // Video preference init
         String videoId = setCameraIdPref(CameraSettings.KEY_VIDEO_ID);
         setVideoSizePref(videoId, CameraSettings.KEY_VIDEO_SIZE);
@@ -208,6 +210,7 @@ public class SettingFragment extends PreferenceFragment {
                 }
                 case CameraSettings.KEY_MAIN_CAMERA_ID:
                 case CameraSettings.KEY_AUX_CAMERA_ID:
+                case CameraSettings.KEY_BURST_COUNT:
                     ListPreference pref = (ListPreference) preference;
                     pref.setSummary(pref.getEntry());
                     break;
@@ -221,6 +224,11 @@ public class SettingFragment extends PreferenceFragment {
                     break;
                 }
                 case CameraSettings.KEY_RESTART_PREVIEW:
+                case CameraSettings.KEY_ROTATE_JPEG_PIXELS:
+                case CameraSettings.KEY_ENCODE_YUV_JPEG:
+                case CameraSettings.KEY_OPTIMIZE_JPEG:
+                case CameraSettings.KEY_PROGRESSIVE_JPEG:
+                case CameraSettings.KEY_ZSL:
                     // no need to set summary
                     break;
                 case CameraSettings.KEY_ENABLE_DUAL_CAMERA:
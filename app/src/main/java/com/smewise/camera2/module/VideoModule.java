@@ -57,7 +57,7 @@ public class VideoModule extends CameraModule implements FileSaver.FileListener,
         mFocusManager.setListener(mCameraUiEvent);
         mCameraMenu = new CameraMenu(appContext, R.xml.menu_preference, mMenuInfo);
         mCameraMenu.setOnMenuClickListener(this);
-        mSession = new VideoSession(appContext, mainHandler, getSettings());
+        mSession = new VideoSession(appContext, getSettings(), getToolKit().getTracer());
     }
 
     @Override
@@ -80,7 +80,7 @@ public class VideoModule extends CameraModule implements FileSaver.FileListener,
         public void onDeviceOpened(CameraDevice device) {
             super.onDeviceOpened(device);
             Log.d(TAG, "camera opened");
-            mSession.applyRequest(Session.RQ_SET_DEVICE, device);
+            mSession.applyRequest(Session.RQ_SET_DEVICE, device, mDeviceMgr.getCameraThread());
             enableState(Controller.CAMERA_STATE_OPENED);
             if (stateEnabled(Controller.CAMERA_STATE_UI_READY)) {
                 mSession.applyRequest(Session.RQ_START_PREVIEW, mSurfaceTexture, mRequestCallback);
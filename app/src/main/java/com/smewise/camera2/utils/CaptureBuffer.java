@@ -0,0 +1,88 @@
+package com.smewise.camera2.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Data of one captured picture in a buffer of a {@link CaptureBufferPool}. The buffer is
+ * usually larger than the data, only the first size() bytes are valid. Release it once
+ * the data is written, it must not be used after that.
+ */
+public class CaptureBuffer {
+    private final CaptureBufferPool mPool;
+    private final ByteBuffer mBuffer;
+    private int mSize;
+    private boolean mReleased;
+
+    CaptureBuffer(CaptureBufferPool pool, ByteBuffer buffer, int size) {
+        mPool = pool;
+        mBuffer = buffer;
+        mSize = size;
+    }
+
+    /**
+     * Buffer of data that is not pooled, release does nothing.
+     */
+    public static CaptureBuffer wrap(byte[] data) {
+        return new CaptureBuffer(null, ByteBuffer.wrap(data), data.length);
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int capacity() {
+        return mBuffer.capacity();
+    }
+
+    void setSize(int size) {
+        if (size > mBuffer.capacity()) {
+            throw new IllegalArgumentException("size:" + size + " capacity:"
+                    + mBuffer.capacity());
+        }
+        mSize = size;
+    }
+
+    public boolean hasArray() {
+        return mBuffer.hasArray();
+    }
+
+    /**
+     * @return backing array of a heap buffer, data starts at index 0
+     */
+    public byte[] array() {
+        checkReleased();
+        return mBuffer.array();
+    }
+
+    /**
+     * @return new buffer of the data, position 0 and limit size()
+     */
+    public ByteBuffer asByteBuffer() {
+        checkReleased();
+        ByteBuffer buffer = mBuffer.duplicate();
+        buffer.clear();
+        buffer.limit(mSize);
+        return buffer;
+    }
+
+    /**
+     * Return the buffer to its pool, calls after the first one are ignored.
+     */
+    public void release() {
+        synchronized (this) {
+            if (mReleased) {
+                return;
+            }
+            mReleased = true;
+        }
+        if (mPool != null) {
+            mPool.recycle(mBuffer);
+        }
+    }
+
+    private void checkReleased() {
+        if (mReleased) {
+            throw new IllegalStateException("buffer is released");
+        }
+    }
+}
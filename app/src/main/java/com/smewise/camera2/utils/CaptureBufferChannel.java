@@ -0,0 +1,81 @@
+package com.smewise.camera2.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Collects written bytes in a buffer of a {@link CaptureBufferPool}, a larger pooled
+ * buffer replaces it when it is full. Replaces ByteArrayOutputStream for encoder output,
+ * there is no copy of the result.
+ */
+public class CaptureBufferChannel implements WritableByteChannel {
+    private final CaptureBufferPool mPool;
+    private CaptureBuffer mBuffer;
+    private int mSize;
+
+    CaptureBufferChannel(CaptureBufferPool pool, CaptureBuffer buffer) {
+        mPool = pool;
+        mBuffer = buffer;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (mBuffer == null) {
+            throw new ClosedChannelException();
+        }
+        int length = src.remaining();
+        if (mSize + length > mBuffer.capacity()) {
+            grow(mSize + length);
+        }
+        ByteBuffer dst = mBuffer.asByteBuffer();
+        dst.limit(mBuffer.capacity());
+        dst.position(mSize);
+        dst.put(src);
+        mSize += length;
+        return length;
+    }
+
+    private void grow(int size) {
+        long doubled = 2L * mBuffer.capacity();
+        int newSize = (int) Math.min(Integer.MAX_VALUE, Math.max(size, doubled));
+        CaptureBuffer buffer = mPool.obtain(newSize, !mBuffer.hasArray());
+        ByteBuffer src = mBuffer.asByteBuffer();
+        src.limit(mSize);
+        ByteBuffer dst = buffer.asByteBuffer();
+        dst.limit(buffer.capacity());
+        dst.put(src);
+        mBuffer.release();
+        mBuffer = buffer;
+    }
+
+    /**
+     * Close the channel and take the written data, the caller releases it.
+     */
+    public CaptureBuffer detach() throws ClosedChannelException {
+        if (mBuffer == null) {
+            throw new ClosedChannelException();
+        }
+        CaptureBuffer buffer = mBuffer;
+        buffer.setSize(mSize);
+        mBuffer = null;
+        return buffer;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return mBuffer != null;
+    }
+
+    /**
+     * Close and release the data if it was not detached.
+     */
+    @Override
+    public void close() {
+        if (mBuffer != null) {
+            mBuffer.release();
+            mBuffer = null;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.smewise.camera2.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reusable buffers for captured pictures, so back to back captures do not allocate a new
+ * array of several MB each. Sizes are rounded up to classes of a quarter of a power of
+ * two, jpegs of a similar size share a class and at most 25% of a buffer is unused.
+ * <p>
+ * Released buffers are kept until the pool holds maxPooledBytes, larger ones are left to
+ * the garbage collector. Heap buffers are for data that is parsed or decoded, direct
+ * buffers for data that only goes to a channel. All methods are thread safe.
+ */
+public class CaptureBufferPool {
+    private static final int MIN_SIZE_CLASS = 4096;
+
+    private final long mMaxPooledBytes;
+    private final Map<Integer, ArrayDeque<ByteBuffer>> mHeapBuffers = new HashMap<>();
+    private final Map<Integer, ArrayDeque<ByteBuffer>> mDirectBuffers = new HashMap<>();
+    private long mPooledBytes;
+    private long mOutstandingBytes;
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * @param maxPooledBytes bytes of released buffers kept for reuse
+     */
+    public CaptureBufferPool(long maxPooledBytes) {
+        mMaxPooledBytes = maxPooledBytes;
+    }
+
+    /**
+     * @return capacity of buffers obtained for size bytes
+     */
+    public static int getSizeClass(int size) {
+        if (size <= MIN_SIZE_CLASS) {
+            return MIN_SIZE_CLASS;
+        }
+        int power = Integer.highestOneBit(size);
+        int step = power / 4;
+        long sizeClass = (size + (long) step - 1) / step * step;
+        return sizeClass > Integer.MAX_VALUE ? size : (int) sizeClass;
+    }
+
+    /**
+     * Get a buffer of at least size bytes, release it when the data is no longer used.
+     * @param direct true for a direct buffer, it has no array
+     */
+    public synchronized CaptureBuffer obtain(int size, boolean direct) {
+        int sizeClass = getSizeClass(size);
+        ArrayDeque<ByteBuffer> free = (direct ? mDirectBuffers : mHeapBuffers).get(sizeClass);
+        ByteBuffer buffer = free != null ? free.poll() : null;
+        if (buffer != null) {
+            mHitCount++;
+            mPooledBytes -= sizeClass;
+        } else {
+            mMissCount++;
+            buffer = direct ? ByteBuffer.allocateDirect(sizeClass)
+                    : ByteBuffer.allocate(sizeClass);
+        }
+        mOutstandingBytes += sizeClass;
+        return new CaptureBuffer(this, buffer, size);
+    }
+
+    /**
+     * Channel writing to buffers of this pool, it grows to the written size.
+     * @param initialSize expected size of the data
+     */
+    public CaptureBufferChannel openChannel(int initialSize, boolean direct) {
+        return new CaptureBufferChannel(this, obtain(initialSize, direct));
+    }
+
+    synchronized void recycle(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        mOutstandingBytes -= capacity;
+        if (mPooledBytes + capacity > mMaxPooledBytes || getSizeClass(capacity) != capacity) {
+            return;
+        }
+        Map<Integer, ArrayDeque<ByteBuffer>> buffers = buffer.isDirect() ? mDirectBuffers
+                : mHeapBuffers;
+        ArrayDeque<ByteBuffer> free = buffers.get(capacity);
+        if (free == null) {
+            free = new ArrayDeque<>();
+            buffers.put(capacity, free);
+        }
+        buffer.clear();
+        free.push(buffer);
+        mPooledBytes += capacity;
+    }
+
+    /**
+     * Drop all released buffers, buffers in use return to the pool as usual.
+     */
+    public synchronized void clear() {
+        mHeapBuffers.clear();
+        mDirectBuffers.clear();
+        mPooledBytes = 0;
+    }
+
+    /**
+     * @return number of obtained buffers that were reused
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return number of obtained buffers that were allocated
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return capacity of obtained buffers that are not released yet
+     */
+    public synchronized long getOutstandingBytes() {
+        return mOutstandingBytes;
+    }
+
+    /**
+     * @return capacity of released buffers kept for reuse
+     */
+    public synchronized long getPooledBytes() {
+        return mPooledBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CaptureBufferPool hit:" + mHitCount + " miss:" + mMissCount
+                + " outstanding:" + mOutstandingBytes + " pooled:" + mPooledBytes;
+    }
+}
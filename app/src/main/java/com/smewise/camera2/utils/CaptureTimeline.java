@@ -0,0 +1,98 @@
+package com.smewise.camera2.utils;
+
+/**
+ * Monotonic time of each stage of one still capture, from shutter press to the saved
+ * file. Stages are marked as the capture moves from the ui to the camera and to the save
+ * thread, stages that do not happen, like af trigger without flash, stay unmarked.
+ */
+public class CaptureTimeline {
+    public static final int SHUTTER = 0;
+    public static final int AF_TRIGGER = 1;
+    public static final int AE_PRECAPTURE = 2;
+    public static final int STILL_REQUEST = 3;
+    public static final int CAPTURE_COMPLETED = 4;
+    public static final int IMAGE_AVAILABLE = 5;
+    public static final int EXIF_PARSE = 6;
+    public static final int ENCODE = 7;
+    public static final int WRITE_FILE = 8;
+    public static final int ADD_TO_DB = 9;
+    public static final int THUMBNAIL = 10;
+    public static final int FILE_SAVED = 11;
+    public static final int STAGE_COUNT = 12;
+
+    static final String[] STAGE_NAMES = {
+            "shutter", "af_trigger", "ae_precapture", "still_request", "capture_completed",
+            "image_available", "exif_parse", "encode", "write_file", "add_to_db",
+            "thumbnail", "file_saved"
+    };
+
+    private final String mCameraId;
+    private final long[] mTimes = new long[STAGE_COUNT];
+
+    public CaptureTimeline(String cameraId) {
+        mCameraId = cameraId;
+    }
+
+    public String getCameraId() {
+        return mCameraId;
+    }
+
+    /**
+     * Mark the end of stage now, a stage that is marked again keeps its first time.
+     */
+    public void mark(int stage) {
+        mark(stage, System.nanoTime());
+    }
+
+    void mark(int stage, long nanoTime) {
+        if (mTimes[stage] == 0) {
+            mTimes[stage] = nanoTime;
+        }
+    }
+
+    public boolean isMarked(int stage) {
+        return mTimes[stage] != 0;
+    }
+
+    /**
+     * @return time from the previous marked stage to stage in ns, -1 if not marked
+     */
+    public long getStageNanos(int stage) {
+        long time = mTimes[stage];
+        if (time == 0) {
+            return -1;
+        }
+        // stages are not always marked in the order of their numbers
+        long previous = 0;
+        for (long t : mTimes) {
+            if (t != 0 && t < time && t > previous) {
+                previous = t;
+            }
+        }
+        return previous == 0 ? 0 : time - previous;
+    }
+
+    /**
+     * @return time from the first to the last marked stage in ns
+     */
+    public long getTotalNanos() {
+        long first = Long.MAX_VALUE;
+        long last = 0;
+        for (long t : mTimes) {
+            if (t != 0) {
+                first = Math.min(first, t);
+                last = Math.max(last, t);
+            }
+        }
+        return last == 0 ? 0 : last - first;
+    }
+
+    /**
+     * Timeline of one picture of a burst, stages before the image are shared.
+     */
+    public CaptureTimeline copy() {
+        CaptureTimeline timeline = new CaptureTimeline(mCameraId);
+        System.arraycopy(mTimes, 0, timeline.mTimes, 0, STAGE_COUNT);
+        return timeline;
+    }
+}
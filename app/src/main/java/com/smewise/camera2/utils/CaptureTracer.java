@@ -0,0 +1,119 @@
+package com.smewise.camera2.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency histograms of the capture stages per camera id, fed by finished
+ * {@link CaptureTimeline}s. The latency of a stage is the time since the stage before
+ * it, "total" is shutter to saved file, "result_callback" is sensor timestamp to the
+ * delivery of preview results. Thread safe, recording takes no lock.
+ */
+public class CaptureTracer {
+    private static final int TOTAL = CaptureTimeline.STAGE_COUNT;
+    public static final int RESULT_CALLBACK = TOTAL + 1;
+
+    private final ConcurrentHashMap<String, LatencyHistogram[]> mHistograms =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Timeline of a new capture, its shutter stage is marked.
+     */
+    public CaptureTimeline start(String cameraId) {
+        CaptureTimeline timeline = new CaptureTimeline(cameraId);
+        timeline.mark(CaptureTimeline.SHUTTER);
+        return timeline;
+    }
+
+    /**
+     * Record the stages of a capture whose file is saved.
+     */
+    public void finish(CaptureTimeline timeline) {
+        LatencyHistogram[] histograms = getHistograms(timeline.getCameraId());
+        for (int stage = 0; stage < CaptureTimeline.STAGE_COUNT; stage++) {
+            if (stage != CaptureTimeline.SHUTTER && timeline.isMarked(stage)) {
+                histograms[stage].record(timeline.getStageNanos(stage) / 1000);
+            }
+        }
+        histograms[TOTAL].record(timeline.getTotalNanos() / 1000);
+    }
+
+    /**
+     * Record the delivery of a result of the repeating request.
+     */
+    public void recordResultLatency(String cameraId, long us) {
+        getHistograms(cameraId)[RESULT_CALLBACK].record(us);
+    }
+
+    /**
+     * @return histogram of stage, {@link CaptureTimeline#STAGE_COUNT} for the total,
+     * {@link #RESULT_CALLBACK} for result delivery
+     */
+    public LatencyHistogram getHistogram(String cameraId, int stage) {
+        return getHistograms(cameraId)[stage];
+    }
+
+    private LatencyHistogram[] getHistograms(String cameraId) {
+        LatencyHistogram[] histograms = mHistograms.get(cameraId);
+        if (histograms == null) {
+            histograms = new LatencyHistogram[RESULT_CALLBACK + 1];
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new LatencyHistogram();
+            }
+            LatencyHistogram[] old = mHistograms.putIfAbsent(cameraId, histograms);
+            if (old != null) {
+                histograms = old;
+            }
+        }
+        return histograms;
+    }
+
+    /**
+     * Export as {"camera id": {"stage": {"count", "mean_ms", "p50_ms", "p90_ms",
+     * "p99_ms", "max_ms"}}}, stages without records are left out.
+     */
+    public String toJson() {
+        List<String> ids = new ArrayList<>(mHistograms.keySet());
+        Collections.sort(ids);
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < ids.size(); i++) {
+            LatencyHistogram[] histograms = mHistograms.get(ids.get(i));
+            json.append(i == 0 ? "" : ",").append('"').append(ids.get(i)).append("\":{");
+            boolean first = true;
+            for (int stage = 0; stage <= RESULT_CALLBACK; stage++) {
+                LatencyHistogram histogram = histograms[stage];
+                if (histogram.getCount() == 0) {
+                    continue;
+                }
+                String name = getName(stage);
+                json.append(first ? "" : ",").append('"').append(name).append("\":{")
+                        .append("\"count\":").append(histogram.getCount())
+                        .append(",\"mean_ms\":").append(toMs(histogram.getMeanUs()))
+                        .append(",\"p50_ms\":").append(toMs(histogram.getPercentileUs(50)))
+                        .append(",\"p90_ms\":").append(toMs(histogram.getPercentileUs(90)))
+                        .append(",\"p99_ms\":").append(toMs(histogram.getPercentileUs(99)))
+                        .append(",\"max_ms\":").append(toMs(histogram.getMaxUs()))
+                        .append('}');
+                first = false;
+            }
+            json.append('}');
+        }
+        return json.append('}').toString();
+    }
+
+    private static String getName(int stage) {
+        if (stage == TOTAL) {
+            return "total";
+        } else if (stage == RESULT_CALLBACK) {
+            return "result_callback";
+        }
+        return CaptureTimeline.STAGE_NAMES[stage];
+    }
+
+    private static String toMs(long us) {
+        return String.format(Locale.US, "%.3f", us / 1000.0);
+    }
+}
@@ -14,9 +14,23 @@ import android.util.Log;
 import com.smewise.camera2.Config;
 import com.smewise.camera2.R;
 import com.smewise.camera2.exif.ExifInterface;
+import com.smewise.camera2.exif.ExifTemplate;
+import com.smewise.camera2.exif.ExifView;
+import com.smewise.camera2.exif.JpegSegmentIndex;
+import com.smewise.camera2.jpeg.JpegOptimizer;
+import com.smewise.camera2.jpeg.JpegTransform;
+import com.smewise.camera2.jpeg.YuvJpegEncoder;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.TimeZone;
 
 /**
  * Created by wenzhe on 9/6/17.
@@ -25,6 +39,9 @@ import java.io.IOException;
 public class FileSaver {
 
     private static final String TAG = Config.getTag(FileSaver.class);
+    // space kept in rewritten exif, so tags added later do not copy the file
+    private static final int EXIF_PADDING = 2048;
+    private static final int YUV_JPEG_QUALITY = 95;
 
     private final String JPEG = "image/jpeg";
     private final String VIDEO = "video/mpeg";
@@ -34,6 +51,19 @@ public class FileSaver {
     private Context mContext;
     private FileListener mListener;
     private Handler mHandler;
+    private CaptureBufferPool mBufferPool;
+    private CaptureTracer mTracer;
+    private ThumbnailProvider mThumbnailProvider = new ThumbnailProvider(Config.THUMB_SIZE);
+    // false: keep sensor jpeg bytes, only record orientation in exif
+    // true: decode, rotate and re-encode jpeg so that pixels are upright
+    private boolean mRotateJpegPixels = false;
+    // true: encode yuv captures to jpeg, false: save raw planes
+    private boolean mEncodeYuvJpeg = true;
+    // exif of encoded yuv pictures, serialized once for a picture size, a burst only
+    // patches orientation and time
+    private ExifTemplate mYuvExifTemplate;
+    private int mYuvExifWidth;
+    private int mYuvExifHeight;
 
     public interface FileListener {
         void onFileSaved(Uri uri, String path, @Nullable Bitmap thumbnail);
@@ -42,7 +72,7 @@ public class FileSaver {
     }
 
     private class ImageInfo {
-        byte[] imgData;
+        CaptureBuffer imgData;
         int imgWidth;
         int imgHeight;
         int imgOrientation;
@@ -51,10 +81,14 @@ public class FileSaver {
         String imgTitle;
         String imgPath;
         String imgMimeType;
+        CaptureTimeline timeline;
     }
 
-    public FileSaver(Context context, Handler handler) {
+    public FileSaver(Context context, Handler handler, CaptureBufferPool bufferPool,
+            CaptureTracer tracer) {
         mHandler = handler;
+        mBufferPool = bufferPool;
+        mTracer = tracer;
         mContext = context;
         mResolver = context.getContentResolver();
     }
@@ -63,12 +97,97 @@ public class FileSaver {
         mListener = listener;
     }
 
-    public void saveFile(int width, int height, int orientation, byte[] data, String tag,
-            int saveType) {
+    /**
+     * Choose how jpeg orientation is applied when saving
+     * @param rotatePixels true to rotate pixels by decode and re-encode (slow, lossy),
+     *                     false to keep jpeg data untouched and use exif orientation
+     */
+    public void setRotateJpegPixels(boolean rotatePixels) {
+        mRotateJpegPixels = rotatePixels;
+    }
+
+    /**
+     * Choose how yuv pictures are saved
+     * @param encode true to encode planes to jpeg, false to keep raw planes in a .yuv file
+     */
+    public void setEncodeYuvJpeg(boolean encode) {
+        mEncodeYuvJpeg = encode;
+    }
+
+    /**
+     * Entropy code a saved jpeg again with huffman tables built for the image, pixels do
+     * not change. The file is replaced only if the new one is smaller, then the size in
+     * MediaStore is updated. Slow for large pictures, run it after the file is saved.
+     * @param progressive true to write progressive jpeg, false for baseline
+     * @return bytes saved, 0 if the file is not changed
+     */
+    public long optimizeJpegFile(Uri uri, String path, boolean progressive) {
+        File file = new File(path);
+        File tmp = new File(path + ".tmp");
+        long length = file.length();
+        long newLength;
+        boolean renamed = false;
+        FileInputStream in = null;
+        FileOutputStream out = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            JpegOptimizer optimizer = new JpegOptimizer(
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            out = new FileOutputStream(tmp);
+            optimizer.write(out.getChannel(), progressive);
+            out.close();
+            out = null;
+            newLength = tmp.length();
+            if (newLength >= length) {
+                return 0;
+            }
+            renamed = tmp.renameTo(file);
+            if (!renamed) {
+                return 0;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "optimize jpeg failed msg:" + e.getMessage());
+            return 0;
+        } finally {
+            closeQuietly(in);
+            closeQuietly(out);
+            if (!renamed) {
+                // also on errors not caught here, no .tmp is left next to the picture
+                tmp.delete();
+            }
+        }
+        if (uri != null) {
+            Storage.updateImageSize(mResolver, uri, newLength);
+        }
+        Log.d(TAG, "optimized jpeg " + length + " -> " + newLength);
+        return length - newLength;
+    }
+
+    /**
+     * Save captured data, data is released when it is written.
+     * @param orientation clockwise rotation of the stored pixels for display, used for yuv
+     *                    data, jpeg data from the hal has it in exif
+     * @param timeline stages of the capture, save stages are added and it is recorded
+     *                 when the file is saved, null if the capture is not traced
+     */
+    public void saveFile(int width, int height, int orientation, CaptureBuffer data,
+            String tag, int saveType, CaptureTimeline timeline) {
+        boolean encodeYuv = false;
+        if (saveType == MediaFunc.MEDIA_TYPE_YUV && mEncodeYuvJpeg) {
+            // the session packs yuv to NV21
+            encodeYuv = data.size() == YuvPacker.getPackedSize(width, height);
+            if (encodeYuv) {
+                saveType = MediaFunc.MEDIA_TYPE_IMAGE;
+            } else {
+                Log.e(TAG, "unknown yuv layout, size:" + data.size() + " " + width + "x" + height);
+            }
+        }
         File file = MediaFunc.getOutputMediaFile(saveType, tag);
         Log.d(TAG, "cqd, getOutputMediaFile, path = " + file.getAbsolutePath());
 
         if (file == null) {
+            data.release();
             mHandler.post(new Runnable() {
                 @Override
                 public void run() {
@@ -86,10 +205,17 @@ public class FileSaver {
         info.imgPath = file.getPath();
         info.imgTitle = file.getName();
         info.imgMimeType = getMimeType(saveType);
-        if (saveType == MediaFunc.MEDIA_TYPE_YUV) {
-            saveYuvFile(info);
-        } else {
-            saveJpegFile(info);
+        info.timeline = timeline;
+        try {
+            if (encodeYuv) {
+                saveNv21AsJpeg(info, orientation);
+            } else if (saveType == MediaFunc.MEDIA_TYPE_YUV) {
+                saveYuvFile(info);
+            } else {
+                saveJpegFile(info);
+            }
+        } finally {
+            info.imgData.release();
         }
     }
 
@@ -116,40 +242,168 @@ public class FileSaver {
 
     private void saveJpegFile(final ImageInfo info) {
         try {
-            ExifInterface exif = new ExifInterface();
-            exif.readExif(info.imgData);
-            final Bitmap thumbnail = rotateAndWriteJpegData(exif, info);
-            final Uri uri = Storage.addImageToDB(mResolver, info.imgTitle, info.imgDate,
-                    info.imgLocation, info.imgOrientation, info.imgData.length, info.imgPath,
-                    info.imgWidth, info.imgHeight, info.imgMimeType);
+            final Bitmap thumbnail = writeJpegFile(info);
+            final Uri uri = addImageToDB(info);
+            postFileSaved(info, uri, thumbnail);
+        } catch (IOException e) {
+            Log.e(TAG, " error get exif msg:" + e.getMessage());
+        }
+    }
+
+    /**
+     * Write jpeg data to path the way a captured picture is saved, it is not added to
+     * MediaStore and data is not released. Used by tests.
+     * @return clockwise rotation recorded for the file
+     */
+    int writeJpegFile(CaptureBuffer data, int width, int height, String path)
+            throws IOException {
+        ImageInfo info = new ImageInfo();
+        info.imgData = data;
+        info.imgWidth = width;
+        info.imgHeight = height;
+        info.imgPath = path;
+        info.imgMimeType = JPEG;
+        Bitmap thumbnail = writeJpegFile(info);
+        if (thumbnail != null) {
+            thumbnail.recycle();
+        }
+        return info.imgOrientation;
+    }
+
+    /**
+     * Write the file of a jpeg picture, size and orientation of info are updated to
+     * the ones of the file.
+     * @return thumbnail of the picture
+     */
+    private Bitmap writeJpegFile(ImageInfo info) throws IOException {
+        // one scan of the segments for the frame size and the exif header,
+        // ExifInterface is only built when tags need to be written
+        ByteBuffer buffer = info.imgData.asByteBuffer();
+        JpegSegmentIndex index = JpegSegmentIndex.from(buffer);
+        if (index.hasFrame() && index.getHeight() > 0) {
+            info.imgWidth = index.getWidth();
+            info.imgHeight = index.getHeight();
+        }
+        ExifView view = ExifView.wrap(buffer, index);
+        markStage(info, CaptureTimeline.EXIF_PARSE);
+        if (mRotateJpegPixels) {
+            return rotateAndWriteJpegData(view, info);
+        }
+        return writeJpegWithOrientation(view, info);
+    }
+
+    private void saveYuvFile(final ImageInfo info) {
+        writeFile(info);
+        final Uri uri = addImageToDB(info);
+        final Bitmap thumbnail = BitmapFactory.decodeResource(
+                mContext.getResources(), R.mipmap.yuv_file);
+        postFileSaved(info, uri, thumbnail);
+    }
+
+    /**
+     * Encode the planes in parallel and write exif without a bitmap, the thumbnail is
+     * decoded from the new jpeg.
+     */
+    private void saveNv21AsJpeg(final ImageInfo info, int rotation) {
+        int width = info.imgWidth;
+        int height = info.imgHeight;
+        int ySize = width * height;
+        int uvRowStride = 2 * ((width + 1) / 2);
+        ByteBuffer data = info.imgData.asByteBuffer();
+        data.limit(ySize);
+        ByteBuffer y = data.slice();
+        data.limit(info.imgData.size()).position(ySize);
+        ByteBuffer v = data.slice();
+        data.position(ySize + 1);
+        ByteBuffer u = data.slice();
+        short orientation = ExifInterface.getOrientationValueForRotation(rotation);
+        CaptureBufferChannel out = mBufferPool.openChannel(ySize / 4, false);
+        try {
+            ExifTemplate template = getYuvExifTemplate(width, height);
+            byte[] exifBlock = template.newExifBlock();
+            template.setTagIntValue(exifBlock, ExifInterface.TAG_ORIENTATION, 0, orientation);
+            template.setDateTimeStampValue(exifBlock, ExifInterface.TAG_DATE_TIME, info.imgDate,
+                    TimeZone.getDefault());
+            YuvJpegEncoder encoder = new YuvJpegEncoder(width, height, YUV_JPEG_QUALITY);
+            encoder.encode(y, width, u, v, uvRowStride, 2, ByteBuffer.wrap(exifBlock), out);
+            markStage(info, CaptureTimeline.ENCODE);
+            // the yuv data is done, the caller releases the jpeg
+            info.imgData.release();
+            info.imgData = out.detach();
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "encode yuv failed msg:" + e.getMessage());
             if (mListener != null) {
                 mHandler.post(new Runnable() {
                     @Override
                     public void run() {
-                        mListener.onFileSaved(uri, info.imgPath, thumbnail);
+                        mListener.onFileSaveError("encode yuv failed");
                     }
                 });
             }
-        } catch (IOException e) {
-            Log.e(TAG, " error get exif msg:" + e.getMessage());
+            return;
+        } finally {
+            out.close();
         }
+        writeFile(info);
+        info.imgOrientation = ExifInterface.getRotationForOrientationValue(orientation);
+        final Uri uri = addImageToDB(info);
+        final Bitmap thumbnail = getThumbnail(null, info, width, height, orientation);
+        postFileSaved(info, uri, thumbnail);
     }
 
-    private void saveYuvFile(final ImageInfo info) {
-        Storage.writeFile(info.imgPath, info.imgData);
-        final Uri uri = Storage.addImageToDB(mResolver, info.imgTitle, info.imgDate,
-                info.imgLocation, info.imgOrientation, info.imgData.length, info.imgPath,
-                info.imgWidth, info.imgHeight, info.imgMimeType);
-        final Bitmap thumbnail = BitmapFactory.decodeResource(
-                mContext.getResources(), R.mipmap.yuv_file);
-        if (mListener != null) {
-            mHandler.post(new Runnable() {
-                @Override
-                public void run() {
+    private ExifTemplate getYuvExifTemplate(int width, int height) throws IOException {
+        if (mYuvExifTemplate == null || mYuvExifWidth != width || mYuvExifHeight != height) {
+            ExifInterface exif = new ExifInterface();
+            exif.setTag(exif.buildTag(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.Orientation.TOP_LEFT));
+            exif.setTag(exif.buildTag(ExifInterface.TAG_IMAGE_WIDTH, width));
+            exif.setTag(exif.buildTag(ExifInterface.TAG_IMAGE_LENGTH, height));
+            exif.addDateTimeStampTag(ExifInterface.TAG_DATE_TIME, 0, TimeZone.getDefault());
+            exif.setExifPadding(EXIF_PADDING);
+            mYuvExifTemplate = new ExifTemplate(exif, ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.TAG_DATE_TIME);
+            mYuvExifWidth = width;
+            mYuvExifHeight = height;
+        }
+        return mYuvExifTemplate;
+    }
+
+    private void markStage(ImageInfo info, int stage) {
+        if (info.timeline != null) {
+            info.timeline.mark(stage);
+        }
+    }
+
+    private void writeFile(ImageInfo info) {
+        Storage.writeFile(info.imgPath, info.imgData.asByteBuffer());
+        markStage(info, CaptureTimeline.WRITE_FILE);
+    }
+
+    private Uri addImageToDB(ImageInfo info) {
+        // size of the written file, exif padding and transforms change it
+        Uri uri = Storage.addImageToDB(mResolver, info.imgTitle, info.imgDate,
+                info.imgLocation, info.imgOrientation, new File(info.imgPath).length(),
+                info.imgPath, info.imgWidth, info.imgHeight, info.imgMimeType);
+        markStage(info, CaptureTimeline.ADD_TO_DB);
+        return uri;
+    }
+
+    /**
+     * Notify the listener on the main thread, the timeline of the capture ends there.
+     */
+    private void postFileSaved(final ImageInfo info, final Uri uri, final Bitmap thumbnail) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (info.timeline != null) {
+                    info.timeline.mark(CaptureTimeline.FILE_SAVED);
+                    mTracer.finish(info.timeline);
+                }
+                if (mListener != null) {
                     mListener.onFileSaved(uri, info.imgPath, thumbnail);
                 }
-            });
-        }
+            }
+        });
     }
 
     private String getMimeType(int type) {
@@ -162,34 +416,163 @@ public class FileSaver {
         }
     }
 
-    private Bitmap rotateAndWriteJpegData(ExifInterface exif, ImageInfo info) {
+    private Bitmap rotateAndWriteJpegData(ExifView view, ImageInfo info) throws IOException {
         int orientation = ExifInterface.Orientation.TOP_LEFT;
         int oriW = info.imgWidth;
         int oriH = info.imgHeight;
-        try {
-            orientation = exif.getTagIntValue(ExifInterface.TAG_ORIENTATION);
-            oriW = exif.getTagIntValue(ExifInterface.TAG_IMAGE_WIDTH);
-            oriH = exif.getTagIntValue(ExifInterface.TAG_IMAGE_LENGTH);
-        } catch (Exception e) {
-            // getTagIntValue() may cause NullPointerException
-            e.printStackTrace();
+        if (view != null) {
+            orientation = view.getTagIntValue(ExifInterface.TAG_ORIENTATION, orientation);
+            oriW = view.getTagIntValue(ExifInterface.TAG_IMAGE_WIDTH, oriW);
+            oriH = view.getTagIntValue(ExifInterface.TAG_IMAGE_LENGTH, oriH);
         }
         // no need rotate, just save and return
         if (orientation == ExifInterface.Orientation.TOP_LEFT) {
             // use exif width & height
             info.imgWidth = oriW;
             info.imgHeight = oriH;
-            Storage.writeFile(info.imgPath, info.imgData);
-            return getThumbnail(info);
+            writeFile(info);
+            return getThumbnail(view, info, oriW, oriH, orientation);
         }
         if (orientation <= 0) {
             Log.e(TAG, "invalid orientation value:" + orientation);
         }
+        if (transformAndWriteJpegData(info, orientation)) {
+            markStage(info, CaptureTimeline.ENCODE);
+            // thumbnail of the source data, rotated the same way as the file
+            return getThumbnail(view, info, oriW, oriH, orientation);
+        }
+        // the file may be partly written, save the source data with its orientation
+        return writeJpegWithOrientation(view, info);
+    }
+
+    /**
+     * Save jpeg data without touching compressed pixels, orientation is kept in exif
+     * and MediaStore, only a missing orientation or dimension tag causes exif rewrite.
+     */
+    private Bitmap writeJpegWithOrientation(ExifView view, ImageInfo info) throws IOException {
+        int orientation = -1;
+        int oriW = -1;
+        int oriH = -1;
+        if (view != null) {
+            orientation = view.getTagIntValue(ExifInterface.TAG_ORIENTATION, -1);
+            oriW = view.getTagIntValue(ExifInterface.TAG_IMAGE_WIDTH, -1);
+            oriH = view.getTagIntValue(ExifInterface.TAG_IMAGE_LENGTH, -1);
+        }
+        if (orientation > 0 && oriW > 0 && oriH > 0) {
+            writeFile(info);
+        } else {
+            ExifInterface exif = readExif(info.imgData);
+            if (orientation <= 0) {
+                orientation = ExifInterface.Orientation.TOP_LEFT;
+                exif.setTag(exif.buildTag(ExifInterface.TAG_ORIENTATION,
+                        ExifInterface.Orientation.TOP_LEFT));
+            }
+            if (oriW <= 0 || oriH <= 0) {
+                // image reader size is the size of stored (not rotated) pixels
+                oriW = info.imgWidth;
+                oriH = info.imgHeight;
+                exif.setTag(exif.buildTag(ExifInterface.TAG_IMAGE_WIDTH, oriW));
+                exif.setTag(exif.buildTag(ExifInterface.TAG_IMAGE_LENGTH, oriH));
+            }
+            try {
+                // only APP1 is rewritten, compressed data is copied as it is
+                exif.writeExif(info.imgData.asByteBuffer(), info.imgPath);
+                markStage(info, CaptureTimeline.WRITE_FILE);
+            } catch (IOException e) {
+                Log.e(TAG, "write exif failed msg:" + e.getMessage());
+                writeFile(info);
+            }
+        }
+        info.imgWidth = oriW;
+        info.imgHeight = oriH;
+        info.imgOrientation = ExifInterface.getRotationForOrientationValue((short) orientation);
+        return getThumbnail(view, info, oriW, oriH, orientation);
+    }
+
+    /**
+     * Rotate jpeg losslessly in DCT domain, no bitmap is decoded. The exif header is
+     * written with the transformed image, orientation is reset and the IFD1 thumbnail
+     * is transformed the same way.
+     * @return false if the jpeg can not be transformed, e.g. progressive or corrupt jpeg
+     */
+    private boolean transformAndWriteJpegData(ImageInfo info, int orientation) {
+        FileOutputStream out = null;
+        try {
+            JpegTransform transform = new JpegTransform(info.imgData.asByteBuffer());
+            // edge MCUs may be trimmed, use output size of the transform
+            int width = transform.getOutputWidth(orientation);
+            int height = transform.getOutputHeight(orientation);
+            ExifInterface exif = readExif(info.imgData);
+            exif.setTag(exif.buildTag(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.Orientation.TOP_LEFT));
+            exif.setTag(exif.buildTag(ExifInterface.TAG_IMAGE_WIDTH, width));
+            exif.setTag(exif.buildTag(ExifInterface.TAG_IMAGE_LENGTH, height));
+            transformThumbnail(exif, orientation);
+            ByteBuffer exifHeader = exif.getExifHeader();
+            out = new FileOutputStream(info.imgPath);
+            transform.transform(orientation, exifHeader, out.getChannel());
+            out.close();
+            out = null;
+            info.imgWidth = width;
+            info.imgHeight = height;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "lossless transform failed msg:" + e.getMessage());
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * The thumbnail in IFD1 has the orientation of the source, it is dropped if it
+     * can't be transformed.
+     */
+    private void transformThumbnail(ExifInterface exif, int orientation) {
+        byte[] thumb = exif.getThumbnail();
+        if (thumb == null) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(thumb.length);
+            new JpegTransform(ByteBuffer.wrap(thumb)).transform(orientation,
+                    Channels.newChannel(out));
+            exif.setCompressedThumbnail(out.toByteArray());
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "thumbnail transform failed msg:" + e.getMessage());
+            exif.removeCompressedThumbnail();
+        }
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private ExifInterface readExif(CaptureBuffer data) throws IOException {
+        ExifInterface exif = new ExifInterface();
+        exif.readExif(data.asByteBuffer(), null);
+        exif.setExifPadding(EXIF_PADDING);
+        return exif;
+    }
+
+    private Matrix getOrientationMatrix(int orientation) {
         Matrix matrix = new Matrix();
         switch (orientation) {
-            //case ExifInterface.Orientation.TOP_LEFT:
-                // do nothing, just save jpeg data
-            //    break;
+            case ExifInterface.Orientation.TOP_LEFT:
+                // do nothing
+                break;
             case ExifInterface.Orientation.TOP_RIGHT:
                 matrix.postScale(-1, 1);
                 break;
@@ -202,69 +585,55 @@ public class FileSaver {
             case ExifInterface.Orientation.LEFT_TOP:
                 matrix.postScale(1, -1);
                 matrix.postRotate(90);
-                // swap width and height
-                exif.setTagValue(ExifInterface.TAG_IMAGE_WIDTH, oriH);
-                exif.setTagValue(ExifInterface.TAG_IMAGE_LENGTH, oriW);
                 break;
             case ExifInterface.Orientation.RIGHT_TOP:
                 matrix.postRotate(90);
-                exif.setTagValue(ExifInterface.TAG_IMAGE_WIDTH, oriH);
-                exif.setTagValue(ExifInterface.TAG_IMAGE_LENGTH, oriW);
                 break;
             case ExifInterface.Orientation.LEFT_BOTTOM:
                 matrix.postScale(-1, 1);
                 matrix.postRotate(90);
-                exif.setTagValue(ExifInterface.TAG_IMAGE_WIDTH, oriH);
-                exif.setTagValue(ExifInterface.TAG_IMAGE_LENGTH, oriW);
                 break;
             case ExifInterface.Orientation.RIGHT_BOTTOM:
                 matrix.postRotate(270);
-                exif.setTagValue(ExifInterface.TAG_IMAGE_WIDTH, oriH);
-                exif.setTagValue(ExifInterface.TAG_IMAGE_LENGTH, oriW);
                 break;
             default:
                 Log.e(TAG, "exif orientation error value:" + orientation);
                 break;
         }
-        // jpeg rotated, set orientation to normal
-        exif.setTagValue(ExifInterface.TAG_ORIENTATION, ExifInterface.Orientation.TOP_LEFT);
-        try {
-            // use exif width & height
-            info.imgWidth = exif.getTagIntValue(ExifInterface.TAG_IMAGE_WIDTH);
-            info.imgHeight = exif.getTagIntValue(ExifInterface.TAG_IMAGE_LENGTH);;
-        } catch (Exception e) {
-            // getTagIntValue() may cause NullPointerException
-            e.printStackTrace();
-        }
-        Bitmap origin = BitmapFactory.decodeByteArray(info.imgData, 0, info.imgData.length);
-        Bitmap rotatedMap = Bitmap.createBitmap(origin,
-                0, 0, origin.getWidth(), origin.getHeight(), matrix, true);
-        Bitmap thumb = getThumbnail(rotatedMap);
-        try {
-            exif.writeExif(rotatedMap, info.imgPath, 90);
-        } catch (IOException e) {
-            Log.e(TAG, "write file failed msg:" + e.getMessage());
-        } finally {
-            origin.recycle();
-            rotatedMap.recycle();
-        }
+        return matrix;
+    }
+
+    /**
+     * Thumbnail of the source jpeg data, the embedded exif thumbnail is preferred.
+     * @param width width of stored pixels of the source data
+     * @param height height of stored pixels of the source data
+     * @param orientation exif orientation applied to the thumbnail so ui shows it upright
+     */
+    private Bitmap getThumbnail(ExifView view, ImageInfo info, int width, int height,
+            int orientation) {
+        Bitmap thumb = createThumbnail(view, info, width, height, orientation);
+        markStage(info, CaptureTimeline.THUMBNAIL);
         return thumb;
     }
 
-    private Bitmap getThumbnail(ImageInfo info) {
-        if (JPEG.equals(info.imgMimeType)) {
-            BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inSampleSize = info.imgWidth / Config.THUMB_SIZE;
-            return BitmapFactory.decodeByteArray(
-                    info.imgData, 0, info.imgData.length, options);
-        } else {
+    private Bitmap createThumbnail(ExifView view, ImageInfo info, int width, int height,
+            int orientation) {
+        if (!JPEG.equals(info.imgMimeType)) {
             return null;
         }
-    }
-
-    private Bitmap getThumbnail(Bitmap origin) {
-        int height = origin.getHeight() / (origin.getWidth() / Config.THUMB_SIZE);
-        return Bitmap.createScaledBitmap(origin, Config.THUMB_SIZE, height, true);
+        Bitmap thumb = mThumbnailProvider.getThumbnail(info.imgData.array(),
+                info.imgData.size(), view, width, height);
+        if (thumb == null || orientation <= ExifInterface.Orientation.TOP_LEFT
+                || orientation > ExifInterface.Orientation.RIGHT_BOTTOM) {
+            return thumb;
+        }
+        // rotate the small thumbnail only
+        Bitmap rotatedThumb = Bitmap.createBitmap(thumb, 0, 0, thumb.getWidth(),
+                thumb.getHeight(), getOrientationMatrix(orientation), true);
+        if (rotatedThumb != thumb) {
+            thumb.recycle();
+        }
+        return rotatedThumb;
     }
 
     public void release() {
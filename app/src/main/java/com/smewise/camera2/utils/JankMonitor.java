@@ -0,0 +1,84 @@
+package com.smewise.camera2.utils;
+
+import android.view.Choreographer;
+
+import java.util.Locale;
+
+/**
+ * Frame intervals of the main thread from Choreographer, a frame is janky when it takes
+ * more than 1.5 vsync periods, so some vsyncs were missed. Start and stop on the main
+ * thread.
+ */
+public class JankMonitor implements Choreographer.FrameCallback {
+    private final long mVsyncNanos;
+    private final LatencyHistogram mFrames = new LatencyHistogram();
+    private long mJankFrames;
+    private long mMissedVsyncs;
+    private long mLastFrameTime;
+    private boolean mRunning;
+
+    /**
+     * @param refreshRate frames per second of the display
+     */
+    public JankMonitor(float refreshRate) {
+        mVsyncNanos = (long) (1000000000L / refreshRate);
+    }
+
+    public void start() {
+        if (!mRunning) {
+            mRunning = true;
+            mLastFrameTime = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    public void stop() {
+        mRunning = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        recordFrame(frameTimeNanos);
+        if (mRunning) {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    void recordFrame(long frameTimeNanos) {
+        if (mLastFrameTime != 0) {
+            long interval = frameTimeNanos - mLastFrameTime;
+            mFrames.record(interval / 1000);
+            if (interval * 2 > mVsyncNanos * 3) {
+                mJankFrames++;
+                mMissedVsyncs += (interval + mVsyncNanos / 2) / mVsyncNanos - 1;
+            }
+        }
+        mLastFrameTime = frameTimeNanos;
+    }
+
+    public long getFrameCount() {
+        return mFrames.getCount();
+    }
+
+    public long getJankFrames() {
+        return mJankFrames;
+    }
+
+    public long getMissedVsyncs() {
+        return mMissedVsyncs;
+    }
+
+    /**
+     * Export as {"frames", "jank_frames", "missed_vsyncs", "p50_ms", "p90_ms", "p99_ms",
+     * "max_ms"} of the frame intervals.
+     */
+    public String toJson() {
+        return String.format(Locale.US, "{\"frames\":%d,\"jank_frames\":%d,"
+                        + "\"missed_vsyncs\":%d,\"p50_ms\":%.3f,\"p90_ms\":%.3f,"
+                        + "\"p99_ms\":%.3f,\"max_ms\":%.3f}",
+                mFrames.getCount(), mJankFrames, mMissedVsyncs,
+                mFrames.getPercentileUs(50) / 1000.0, mFrames.getPercentileUs(90) / 1000.0,
+                mFrames.getPercentileUs(99) / 1000.0, mFrames.getMaxUs() / 1000.0);
+    }
+}
@@ -2,17 +2,23 @@ package com.smewise.camera2.utils;
 
 import android.os.Handler;
 import android.os.Looper;
+import android.os.Process;
 import android.util.Log;
 
 import com.smewise.camera2.Config;
 
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 public class JobExecutor {
     private static final String TAG = Config.getTag(JobExecutor.class);
     private ThreadPoolExecutor mExecutor;
+    // one background priority thread for optional work, never delays capture jobs
+    private ThreadPoolExecutor mBackgroundExecutor;
+    // one thread for jobs that must all run in order, such as saving a burst
+    private ThreadPoolExecutor mSerialExecutor;
     private Handler mHandler;
 
     public JobExecutor() {
@@ -20,12 +26,50 @@ public class JobExecutor {
         mExecutor = new ThreadPoolExecutor(1, 4, 10,
                 TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(4),
                 new ThreadPoolExecutor.DiscardOldestPolicy());
+        mBackgroundExecutor = new ThreadPoolExecutor(1, 1, 10,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(16),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                r.run();
+                            }
+                        }, "JobExecutor-background");
+                    }
+                },
+                new ThreadPoolExecutor.DiscardOldestPolicy());
+        mBackgroundExecutor.allowCoreThreadTimeOut(true);
+        mSerialExecutor = new ThreadPoolExecutor(1, 1, 10,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        mSerialExecutor.allowCoreThreadTimeOut(true);
         mHandler = new Handler(Looper.getMainLooper());
     }
 
     public <T> void execute(final Task<T> task) {
-        if (mExecutor != null) {
-            mExecutor.execute(new Runnable() {
+        execute(mExecutor, task);
+    }
+
+    /**
+     * Run task on a background priority thread, tasks run one by one and the oldest
+     * waiting task is dropped when too many are queued.
+     */
+    public <T> void executeBackground(final Task<T> task) {
+        execute(mBackgroundExecutor, task);
+    }
+
+    /**
+     * Run task after all tasks submitted before it, tasks are never dropped.
+     */
+    public <T> void executeSerial(final Task<T> task) {
+        execute(mSerialExecutor, task);
+    }
+
+    private <T> void execute(ThreadPoolExecutor executor, final Task<T> task) {
+        if (executor != null) {
+            executor.execute(new Runnable() {
                 @Override
                 public void run() {
                     try {
@@ -45,6 +89,10 @@ public class JobExecutor {
     public void destroy() {
         mExecutor.shutdown();
         mExecutor = null;
+        mBackgroundExecutor.shutdown();
+        mBackgroundExecutor = null;
+        mSerialExecutor.shutdown();
+        mSerialExecutor = null;
     }
 
     private <T> void postOnMainThread(final Task<T> task, final T res) {
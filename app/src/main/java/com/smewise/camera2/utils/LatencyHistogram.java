@@ -0,0 +1,92 @@
+package com.smewise.camera2.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in microseconds, recording is lock free so it can be called from
+ * any thread. Each power of two is split in four buckets, percentiles are the upper bound
+ * of their bucket and at most 25% above the recorded value.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKET_COUNT = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSumUs = new AtomicLong();
+    private final AtomicLong mMaxUs = new AtomicLong();
+
+    static int getBucket(long us) {
+        if (us < SUB_BUCKETS) {
+            return (int) Math.max(0, us);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(us);
+        int sub = (int) (us >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return (exponent - 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return smallest value of the bucket after bucket
+     */
+    static long getBucketLimit(int bucket) {
+        int next = bucket + 1;
+        if (next < SUB_BUCKETS) {
+            return next;
+        }
+        int exponent = next / SUB_BUCKETS + 1;
+        long sub = SUB_BUCKETS + next % SUB_BUCKETS;
+        return exponent >= 64 ? Long.MAX_VALUE : sub << (exponent - 2);
+    }
+
+    public void record(long us) {
+        if (us < 0) {
+            us = 0;
+        }
+        mBuckets.incrementAndGet(getBucket(us));
+        mCount.incrementAndGet();
+        mSumUs.addAndGet(us);
+        long max = mMaxUs.get();
+        while (us > max && !mMaxUs.compareAndSet(max, us)) {
+            max = mMaxUs.get();
+        }
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getMaxUs() {
+        return mMaxUs.get();
+    }
+
+    public long getMeanUs() {
+        long count = mCount.get();
+        return count == 0 ? 0 : mSumUs.get() / count;
+    }
+
+    /**
+     * @param percentile 0 to 100
+     * @return latency that percentile of the records do not exceed, 0 if empty
+     */
+    public long getPercentileUs(double percentile) {
+        long count = 0;
+        long[] buckets = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = mBuckets.get(i);
+            count += buckets[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(getBucketLimit(i) - 1, mMaxUs.get());
+            }
+        }
+        return mMaxUs.get();
+    }
+}
@@ -30,6 +30,9 @@ public class MediaFunc {
     public static final int MEDIA_TYPE_VIDEO = 2;
     public static final int MEDIA_TYPE_YUV = 3;
     public static final String SAVE_PATH = "Camera2";
+    private static final String MEDIA_INDEX_FILE = "media_index";
+
+    private static MediaIndex sMediaIndex;
 
     private static Uri mCurrentUri = null;
 
@@ -44,19 +47,26 @@ public class MediaFunc {
         }
 
         String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-        File mediaFile;
+        String prefix;
+        String suffix;
         if (type == MEDIA_TYPE_IMAGE) {
-            mediaFile = new File(mediaStorageDir.getPath()
-                    + File.separator + "IMG_" + tag + "_" + timeStamp + ".jpg");
+            prefix = "IMG_";
+            suffix = ".jpg";
         } else if (type == MEDIA_TYPE_VIDEO) {
-            mediaFile = new File(mediaStorageDir.getPath()
-                    + File.separator + "VID_" + tag + "_" + timeStamp + ".mp4");
+            prefix = "VID_";
+            suffix = ".mp4";
         } else if (type == MEDIA_TYPE_YUV) {
-            mediaFile = new File(mediaStorageDir.getPath()
-                    + File.separator + "IMG_" + tag + "_" + timeStamp + ".yuv");
+            prefix = "IMG_";
+            suffix = ".yuv";
         }else {
             return null;
         }
+        String name = mediaStorageDir.getPath() + File.separator + prefix + tag + "_" + timeStamp;
+        File mediaFile = new File(name + suffix);
+        // several pictures of a burst are saved within one second
+        for (int i = 1; mediaFile.exists(); i++) {
+            mediaFile = new File(name + "_" + i + suffix);
+        }
         return mediaFile;
     }
 
@@ -65,7 +75,68 @@ public class MediaFunc {
                 Environment.DIRECTORY_DCIM), SAVE_PATH);
     }
 
+    /**
+     * Loads the metadata index of {@link #getStorageDir()} the first time and
+     * reads the files changed since it was last updated. Call it off the main
+     * thread, the returned index must be used while holding the MediaFunc lock.
+     */
+    private static MediaIndex getMediaIndex(Context context) {
+        if (sMediaIndex == null) {
+            sMediaIndex = new MediaIndex(getStorageDir(),
+                    new File(context.getFilesDir(), MEDIA_INDEX_FILE));
+            sMediaIndex.load();
+        }
+        sMediaIndex.update();
+        return sMediaIndex;
+    }
+
+    /**
+     * Thumbnail of the latest picture, found with the media index and looked
+     * up in MediaStore by its exact path. Falls back to the directory query
+     * if the picture is not indexed or not in MediaStore yet. Call it off the
+     * main thread.
+     */
     public static Bitmap getThumb(Context context) {
+        File latest = null;
+        synchronized (MediaFunc.class) {
+            MediaIndex index = getMediaIndex(context);
+            int i = index.getLatest();
+            if (i >= 0) {
+                latest = index.getFile(i);
+            }
+        }
+        if (latest != null) {
+            Bitmap bitmap = getImageThumb(context, latest);
+            if (bitmap != null) {
+                return bitmap;
+            }
+        }
+        return queryLatestThumb(context);
+    }
+
+    private static Bitmap getImageThumb(Context context, File file) {
+        ContentResolver cr = context.getContentResolver();
+        Cursor cursor = cr.query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                new String[] {MediaStore.Images.Media._ID},
+                MediaStore.Images.Media.DATA + " = ?", new String[] {file.getPath()}, null);
+        if (cursor == null) {
+            return null;
+        }
+        Bitmap bitmap = null;
+        if (cursor.moveToFirst()) {
+            long id = cursor.getLong(0);
+            bitmap = MediaStore.Images.Thumbnails.getThumbnail(cr, id,
+                    MediaStore.Images.Thumbnails.MICRO_KIND, null);
+            if (bitmap != null) {
+                mCurrentUri = ContentUris.withAppendedId(
+                        MediaStore.Images.Media.EXTERNAL_CONTENT_URI, id);
+            }
+        }
+        cursor.close();
+        return bitmap;
+    }
+
+    private static Bitmap queryLatestThumb(Context context) {
         String selection = MediaStore.Images.Media.DATA + " like ?";
         String path = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DCIM)
                 .getPath() + "/" + SAVE_PATH;
@@ -0,0 +1,445 @@
+package com.smewise.camera2.utils;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.smewise.camera2.Config;
+import com.smewise.camera2.exif.ExifInterface;
+import com.smewise.camera2.exif.ExifView;
+import com.smewise.camera2.exif.JpegSegmentIndex;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Capture metadata of the jpeg files in a directory, kept in a binary index
+ * file so it is not read from each file again. Each image has a fixed-width
+ * record, the records are sorted by file name. {@link #update()} only reads
+ * the files that are new or changed (by modified time and size), in parallel,
+ * and maps just the exif header of each file.
+ */
+public class MediaIndex {
+    private static final String TAG = Config.getTag(MediaIndex.class);
+    private static final int MAGIC = 0x4d494458; // "MIDX"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 12;
+    // files read by one fork join task
+    private static final int SCAN_THRESHOLD = 16;
+
+    // record layout
+    static final int RECORD_SIZE = 64;
+    private static final int LAST_MODIFIED = 0;
+    private static final int FILE_SIZE = 8;
+    private static final int DATE_TAKEN = 16;
+    private static final int WIDTH = 24;
+    private static final int HEIGHT = 28;
+    private static final int ORIENTATION = 32;
+    private static final int FLAGS = 34;
+    private static final int ISO = 36;
+    private static final int EXPOSURE_TIME = 40;
+    private static final int LATITUDE = 48;
+    private static final int LONGITUDE = 56;
+
+    private static final short FLAG_EXIF = 0x1;
+    private static final short FLAG_LOCATION = 0x2;
+
+    private final File mDir;
+    private final File mIndexFile;
+    private String[] mNames = new String[0];
+    private ByteBuffer mRecords = ByteBuffer.allocate(0);
+
+    /**
+     * @param dir the directory of the images.
+     * @param indexFile where the index is stored, it is read by {@link #load()}.
+     */
+    public MediaIndex(File dir, File indexFile) {
+        mDir = dir;
+        mIndexFile = indexFile;
+    }
+
+    /**
+     * Reads the index file, the index is empty if it does not exist or is
+     * invalid.
+     */
+    public void load() {
+        mNames = new String[0];
+        mRecords = ByteBuffer.allocate(0);
+        if (!mIndexFile.exists()) {
+            return;
+        }
+        try {
+            byte[] data = readFile(mIndexFile);
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            if (data.length < FILE_HEADER_SIZE || buf.getInt(0) != MAGIC
+                    || buf.getInt(4) != VERSION) {
+                Log.w(TAG, "invalid index file " + mIndexFile);
+                return;
+            }
+            int count = buf.getInt(8);
+            // compared before count * RECORD_SIZE is computed, a corrupt count overflows it
+            if (count < 0 || count > (data.length - FILE_HEADER_SIZE) / RECORD_SIZE) {
+                Log.w(TAG, "invalid index file " + mIndexFile);
+                return;
+            }
+            int namesStart = FILE_HEADER_SIZE + count * RECORD_SIZE;
+            String[] names = new String[count];
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                    data, namesStart, data.length - namesStart));
+            for (int i = 0; i < count; i++) {
+                names[i] = in.readUTF();
+            }
+            mNames = names;
+            mRecords = ByteBuffer.wrap(Arrays.copyOfRange(data, FILE_HEADER_SIZE, namesStart));
+        } catch (IOException e) {
+            Log.e(TAG, "read index error msg:" + e.getMessage());
+        }
+    }
+
+    /**
+     * Brings the index up to date with the directory and stores it if
+     * anything changed.
+     *
+     * @return the number of files that were read.
+     */
+    public int update() {
+        long start = SystemClock.elapsedRealtime();
+        File[] files = mDir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().toLowerCase().endsWith(".jpg");
+            }
+        });
+        if (files == null) {
+            files = new File[0];
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        String[] names = new String[files.length];
+        byte[] records = new byte[files.length * RECORD_SIZE];
+        int[] changed = new int[files.length];
+        int changedCount = 0;
+        for (int i = 0; i < files.length; i++) {
+            names[i] = files[i].getName();
+            int old = indexOf(names[i]);
+            if (old >= 0 && mRecords.getLong(old * RECORD_SIZE + LAST_MODIFIED)
+                    == files[i].lastModified()
+                    && mRecords.getLong(old * RECORD_SIZE + FILE_SIZE) == files[i].length()) {
+                System.arraycopy(mRecords.array(), old * RECORD_SIZE,
+                        records, i * RECORD_SIZE, RECORD_SIZE);
+            } else {
+                changed[changedCount++] = i;
+            }
+        }
+        boolean removed = files.length - changedCount < mNames.length;
+        if (changedCount > 0) {
+            ForkJoinPool pool = new ForkJoinPool();
+            try {
+                pool.invoke(new ScanTask(files, changed, 0, changedCount, records));
+            } finally {
+                pool.shutdown();
+            }
+        }
+        mNames = names;
+        mRecords = ByteBuffer.wrap(records);
+        if (changedCount > 0 || removed) {
+            save();
+        }
+        Log.d(TAG, "update " + files.length + " files, read " + changedCount + " cost:"
+                + (SystemClock.elapsedRealtime() - start));
+        return changedCount;
+    }
+
+    private void save() {
+        File tmp = new File(mIndexFile.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(mNames.length);
+                out.write(mRecords.array(), 0, mRecords.capacity());
+                for (String name : mNames) {
+                    out.writeUTF(name);
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(mIndexFile)) {
+                Log.e(TAG, "rename index file failed " + mIndexFile);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "write index error msg:" + e.getMessage());
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Reads the metadata of a jpeg into the record at pos. The record only
+     * has the file time and size if the file is not a jpeg.
+     */
+    static void readRecord(File file, ByteBuffer records, int pos) {
+        records.putLong(pos + LAST_MODIFIED, file.lastModified());
+        records.putLong(pos + FILE_SIZE, file.length());
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            JpegSegmentIndex index = JpegSegmentIndex.from(channel);
+            records.putInt(pos + WIDTH, index.getWidth());
+            records.putInt(pos + HEIGHT, index.getHeight());
+            int exif = index.getExifIndex();
+            if (exif < 0) {
+                return;
+            }
+            long tiffStart = index.getTiffStart();
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY,
+                    tiffStart, Math.min(index.getEnd(exif), channel.size()) - tiffStart);
+            ExifView view = ExifView.wrap(header);
+            if (view != null) {
+                readExif(view, records, pos);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "read " + file.getName() + " error msg:" + e.getMessage());
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "close error msg:" + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void readExif(ExifView view, ByteBuffer records, int pos) {
+        short flags = FLAG_EXIF;
+        records.putShort(pos + ORIENTATION, (short) ExifInterface.getRotationForOrientationValue(
+                (short) view.getTagIntValue(ExifInterface.TAG_ORIENTATION, 1)));
+        records.putLong(pos + DATE_TAKEN,
+                parseDateTime(view.getTagStringValue(ExifInterface.TAG_DATE_TIME_ORIGINAL)));
+        records.putInt(pos + ISO, view.getTagIntValue(ExifInterface.TAG_ISO_SPEED_RATINGS, 0));
+        records.putDouble(pos + EXPOSURE_TIME,
+                view.getTagRationalValue(ExifInterface.TAG_EXPOSURE_TIME, 0, 0));
+        double latitude = getCoordinate(view, ExifInterface.TAG_GPS_LATITUDE,
+                ExifInterface.TAG_GPS_LATITUDE_REF);
+        double longitude = getCoordinate(view, ExifInterface.TAG_GPS_LONGITUDE,
+                ExifInterface.TAG_GPS_LONGITUDE_REF);
+        if (!Double.isNaN(latitude) && !Double.isNaN(longitude)) {
+            flags |= FLAG_LOCATION;
+            records.putDouble(pos + LATITUDE, latitude);
+            records.putDouble(pos + LONGITUDE, longitude);
+        }
+        records.putShort(pos + FLAGS, flags);
+    }
+
+    private static double getCoordinate(ExifView view, int tagId, int refTagId) {
+        String ref = view.getTagStringValue(refTagId);
+        if (ref == null || view.getComponentCount(tagId) < 3) {
+            return Double.NaN;
+        }
+        double degrees = view.getTagRationalValue(tagId, 0, Double.NaN);
+        double minutes = view.getTagRationalValue(tagId, 1, Double.NaN);
+        double seconds = view.getTagRationalValue(tagId, 2, Double.NaN);
+        double result = degrees + minutes / 60.0 + seconds / 3600.0;
+        return ref.equals("S") || ref.equals("W") ? -result : result;
+    }
+
+    /**
+     * Parses an exif date "yyyy:MM:dd HH:mm:ss" in the default time zone.
+     *
+     * @return the time in milliseconds or 0 if it is not a valid date.
+     */
+    static long parseDateTime(String value) {
+        if (value == null || value.length() < 19) {
+            return 0;
+        }
+        try {
+            Calendar calendar = Calendar.getInstance();
+            calendar.clear();
+            calendar.set(Integer.parseInt(value.substring(0, 4)),
+                    Integer.parseInt(value.substring(5, 7)) - 1,
+                    Integer.parseInt(value.substring(8, 10)),
+                    Integer.parseInt(value.substring(11, 13)),
+                    Integer.parseInt(value.substring(14, 16)),
+                    Integer.parseInt(value.substring(17, 19)));
+            return calendar.getTimeInMillis();
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int n = 0;
+            while (n < data.length) {
+                int read = in.read(data, n, data.length - n);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                n += read;
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    public int getCount() {
+        return mNames.length;
+    }
+
+    /**
+     * Returns the index of the image with the file name, or -1.
+     */
+    public int indexOf(String name) {
+        int i = Arrays.binarySearch(mNames, name);
+        return i < 0 ? -1 : i;
+    }
+
+    /**
+     * Returns the index of the image taken last, by DateTimeOriginal or by the
+     * modified time if it is not set, or -1 if there is no image.
+     */
+    public int getLatest() {
+        int latest = -1;
+        long latestTime = Long.MIN_VALUE;
+        for (int i = 0; i < mNames.length; i++) {
+            long time = getDateTaken(i);
+            if (time == 0) {
+                time = getLastModified(i);
+            }
+            if (time >= latestTime) {
+                latest = i;
+                latestTime = time;
+            }
+        }
+        return latest;
+    }
+
+    public String getName(int index) {
+        return mNames[index];
+    }
+
+    public File getFile(int index) {
+        return new File(mDir, mNames[index]);
+    }
+
+    public long getLastModified(int index) {
+        return mRecords.getLong(index * RECORD_SIZE + LAST_MODIFIED);
+    }
+
+    public long getFileSize(int index) {
+        return mRecords.getLong(index * RECORD_SIZE + FILE_SIZE);
+    }
+
+    /**
+     * Returns DateTimeOriginal in milliseconds, or 0 if it is not set.
+     */
+    public long getDateTaken(int index) {
+        return mRecords.getLong(index * RECORD_SIZE + DATE_TAKEN);
+    }
+
+    public int getWidth(int index) {
+        return mRecords.getInt(index * RECORD_SIZE + WIDTH);
+    }
+
+    public int getHeight(int index) {
+        return mRecords.getInt(index * RECORD_SIZE + HEIGHT);
+    }
+
+    /**
+     * Returns the rotation in degrees of the exif orientation.
+     */
+    public int getOrientation(int index) {
+        return mRecords.getShort(index * RECORD_SIZE + ORIENTATION);
+    }
+
+    public boolean hasExif(int index) {
+        return (mRecords.getShort(index * RECORD_SIZE + FLAGS) & FLAG_EXIF) != 0;
+    }
+
+    public int getIsoSpeed(int index) {
+        return mRecords.getInt(index * RECORD_SIZE + ISO);
+    }
+
+    /**
+     * Returns the exposure time in seconds, or 0 if it is not set.
+     */
+    public double getExposureTime(int index) {
+        return mRecords.getDouble(index * RECORD_SIZE + EXPOSURE_TIME);
+    }
+
+    public boolean hasLocation(int index) {
+        return (mRecords.getShort(index * RECORD_SIZE + FLAGS) & FLAG_LOCATION) != 0;
+    }
+
+    public double getLatitude(int index) {
+        return mRecords.getDouble(index * RECORD_SIZE + LATITUDE);
+    }
+
+    public double getLongitude(int index) {
+        return mRecords.getDouble(index * RECORD_SIZE + LONGITUDE);
+    }
+
+    /**
+     * Reads the records of files[changed[from..to)], splitting the range
+     * until it is small enough.
+     */
+    private static class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final File[] mFiles;
+        private final int[] mChanged;
+        private final int mFrom;
+        private final int mTo;
+        private final byte[] mRecords;
+
+        ScanTask(File[] files, int[] changed, int from, int to, byte[] records) {
+            mFiles = files;
+            mChanged = changed;
+            mFrom = from;
+            mTo = to;
+            mRecords = records;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom <= SCAN_THRESHOLD) {
+                // each task writes distinct records through its own buffer
+                ByteBuffer records = ByteBuffer.wrap(mRecords);
+                for (int i = mFrom; i < mTo; i++) {
+                    int file = mChanged[i];
+                    Arrays.fill(mRecords, file * RECORD_SIZE, (file + 1) * RECORD_SIZE, (byte) 0);
+                    readRecord(mFiles[file], records, file * RECORD_SIZE);
+                }
+                return;
+            }
+            int mid = (mFrom + mTo) >>> 1;
+            invokeAll(new ScanTask(mFiles, mChanged, mFrom, mid, mRecords),
+                    new ScanTask(mFiles, mChanged, mid, mTo, mRecords));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.smewise.camera2.utils;
+
+import java.util.ArrayDeque;
+
+/**
+ * Pictures waiting for a serial saver. The bytes of the pictures queued or being saved are
+ * limited, a burst faster than the storage would otherwise keep full size copies until the
+ * heap runs out. A picture over the limit is dropped, one picture larger than the limit is
+ * still queued when nothing else is pending. Pictures are taken in the order they are
+ * offered.
+ * <p>
+ * All methods are thread safe, pictures are offered by the camera callbacks and taken by
+ * the save thread.
+ */
+public class SaveQueue<T> {
+    public static final int QUEUED = 0;
+    /** dropped, the first one since the queue was empty, tell the user once */
+    public static final int DROPPED_FIRST = 1;
+    public static final int DROPPED = 2;
+
+    private final long mBudget;
+    private final ArrayDeque<Entry<T>> mQueue = new ArrayDeque<>();
+    // queued and being saved
+    private long mPendingBytes;
+    private int mSaving;
+    private boolean mDropped;
+    private int mDropCount;
+
+    public static class Entry<T> {
+        private final T mItem;
+        private final int mSize;
+
+        Entry(T item, int size) {
+            mItem = item;
+            mSize = size;
+        }
+
+        public T getItem() {
+            return mItem;
+        }
+
+        public int getSize() {
+            return mSize;
+        }
+    }
+
+    /**
+     * @param budgetBytes bytes that may wait for the saver
+     */
+    public SaveQueue(long budgetBytes) {
+        mBudget = budgetBytes;
+    }
+
+    /**
+     * @param size bytes held by the picture until it is saved
+     * @return {@link #QUEUED}, or {@link #DROPPED_FIRST} or {@link #DROPPED} if the caller
+     * should release the picture now
+     */
+    public synchronized int offer(T item, int size) {
+        boolean empty = mQueue.isEmpty() && mSaving == 0;
+        if (!empty && mPendingBytes + size > mBudget) {
+            mDropCount++;
+            if (mDropped) {
+                return DROPPED;
+            }
+            mDropped = true;
+            return DROPPED_FIRST;
+        }
+        mQueue.addLast(new Entry<>(item, size));
+        mPendingBytes += size;
+        return QUEUED;
+    }
+
+    /**
+     * @return the oldest queued picture, null if there is none. Its bytes are counted until
+     * {@link #finish} is called with it.
+     */
+    public synchronized Entry<T> take() {
+        Entry<T> entry = mQueue.pollFirst();
+        if (entry != null) {
+            mSaving++;
+        }
+        return entry;
+    }
+
+    /**
+     * The picture is saved or failed to save, its bytes are free.
+     */
+    public synchronized void finish(Entry<T> entry) {
+        mSaving--;
+        mPendingBytes -= entry.getSize();
+        if (mQueue.isEmpty() && mSaving == 0) {
+            // the burst is written, tell about the next drop again
+            mDropped = false;
+        }
+    }
+
+    public synchronized int size() {
+        return mQueue.size();
+    }
+
+    public synchronized long getPendingBytes() {
+        return mPendingBytes;
+    }
+
+    public synchronized int getDropCount() {
+        return mDropCount;
+    }
+}
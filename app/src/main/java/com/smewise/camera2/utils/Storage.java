@@ -11,6 +11,8 @@ import android.util.Log;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * Created by wenzhe on 9/6/17.
@@ -51,6 +53,27 @@ public class Storage {
         }
     }
 
+    // Write data from its position to its limit, direct buffers are written without a copy.
+    public static void writeFile(String path, ByteBuffer data) {
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(path);
+            FileChannel channel = out.getChannel();
+            data = data.duplicate();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to write data", e);
+        } finally {
+            try {
+                out.close();
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to close file after write", e);
+            }
+        }
+    }
+
     // Add the image to media store.
     public static Uri addImageToDB(ContentResolver resolver, String title, long date,
             Location location, int orientation, long jpegLength,
@@ -78,6 +101,17 @@ public class Storage {
         return insert(resolver, values, MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
     }
 
+    // Update the size of a file changed after it was added to media store.
+    public static void updateImageSize(ContentResolver resolver, Uri uri, long length) {
+        ContentValues values = new ContentValues(1);
+        values.put(MediaStore.Images.ImageColumns.SIZE, length);
+        try {
+            resolver.update(uri, values, null, null);
+        } catch (Throwable th) {
+            Log.e(TAG, "Failed to update MediaStore:" + th);
+        }
+    }
+
     // Add the video to media store.
     public static Uri addVideoToDB(ContentResolver resolver, String title, long date,
                                    Location location, long length, String path,
@@ -0,0 +1,196 @@
+package com.smewise.camera2.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.smewise.camera2.Config;
+import com.smewise.camera2.exif.ExifView;
+import com.smewise.camera2.jpeg.ScaledJpegDecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Create ui thumbnail of a jpeg. The thumbnail embedded in exif IFD1 is used when its
+ * shorter side is not less than the thumbnail size and it has the aspect ratio of the
+ * image, otherwise the jpeg is decoded with
+ * a power of two sample size, so the decoder can scale while decoding. Baseline jpegs of
+ * a layout {@link ScaledJpegDecoder} is verified with are scaled in the DCT domain, others
+ * and any data it fails on by BitmapFactory.
+ */
+public class ThumbnailProvider {
+    private static final String TAG = Config.getTag(ThumbnailProvider.class);
+
+    public static final int SOURCE_NONE = 0;
+    public static final int SOURCE_EXIF = 1;
+    public static final int SOURCE_DECODE = 2;
+    public static final int SOURCE_SCALED_DECODE = 3;
+
+    private static final float ASPECT_TOLERANCE = 0.05f;
+
+    private final int mSize;
+    private int mLastSource = SOURCE_NONE;
+    private long mLastCostMs;
+
+    /**
+     * @param size the minimum shorter side of thumbnails
+     */
+    public ThumbnailProvider(int size) {
+        mSize = size;
+    }
+
+    /**
+     * Create thumbnail of jpeg data, the pixels are as stored, exif orientation is not
+     * applied.
+     * @param view exif of data, null if there is no exif
+     * @param width width of the stored image
+     * @param height height of the stored image
+     * @return thumbnail or null if data can not be decoded
+     */
+    public Bitmap getThumbnail(byte[] data, @Nullable ExifView view, int width, int height) {
+        return getThumbnail(data, data.length, view, width, height);
+    }
+
+    /**
+     * @param length bytes of the jpeg at the start of data
+     * @see #getThumbnail(byte[], ExifView, int, int)
+     */
+    public Bitmap getThumbnail(byte[] data, int length, @Nullable ExifView view, int width,
+            int height) {
+        long start = SystemClock.elapsedRealtime();
+        Bitmap thumb = decodeExifThumbnail(view, width, height);
+        if (thumb != null) {
+            mLastSource = SOURCE_EXIF;
+        } else {
+            thumb = decodeScaled(data, length);
+            mLastSource = SOURCE_SCALED_DECODE;
+        }
+        if (thumb == null) {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            if (width <= 0 || height <= 0) {
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeByteArray(data, 0, length, options);
+                width = options.outWidth;
+                height = options.outHeight;
+                options.inJustDecodeBounds = false;
+            }
+            options.inSampleSize = getSampleSize(width, height, mSize);
+            thumb = BitmapFactory.decodeByteArray(data, 0, length, options);
+            mLastSource = thumb != null ? SOURCE_DECODE : SOURCE_NONE;
+        }
+        mLastCostMs = SystemClock.elapsedRealtime() - start;
+        Log.d(TAG, "thumbnail source:" + mLastSource + " cost:" + mLastCostMs + "ms");
+        return thumb;
+    }
+
+    /**
+     * @return one of SOURCE_* of the last created thumbnail
+     */
+    public int getLastSource() {
+        return mLastSource;
+    }
+
+    /**
+     * @return time in milliseconds to create the last thumbnail
+     */
+    public long getLastCostMs() {
+        return mLastCostMs;
+    }
+
+    /**
+     * Largest power of two sample size that keeps the shorter side not less than size.
+     */
+    public static int getSampleSize(int width, int height, int size) {
+        int shortSide = Math.min(width, height);
+        int sample = 1;
+        while (size > 0 && shortSide / (sample * 2) >= size) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    /**
+     * The exif thumbnail is used by the same size rule as a decode, its shorter side is not
+     * less than size, and it must not be letterboxed.
+     * @param width width of the image, 0 if unknown
+     * @param height height of the image, 0 if unknown
+     */
+    public static boolean isExifThumbnailUsable(int thumbWidth, int thumbHeight, int width,
+            int height, int size) {
+        return Math.min(thumbWidth, thumbHeight) >= size
+                && isSameAspect(thumbWidth, thumbHeight, width, height);
+    }
+
+    /**
+     * @return decoder of the jpeg, null to decode it with BitmapFactory, e.g. progressive
+     *         jpeg or a layout the decoder is not verified with
+     */
+    static ScaledJpegDecoder openScaledDecoder(byte[] data, int length) {
+        try {
+            ScaledJpegDecoder decoder = new ScaledJpegDecoder(ByteBuffer.wrap(data, 0, length));
+            return decoder.isVerifiedLayout() ? decoder : null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private Bitmap decodeScaled(byte[] data, int length) {
+        ScaledJpegDecoder decoder = openScaledDecoder(data, length);
+        if (decoder == null) {
+            return null;
+        }
+        try {
+            int sample = getSampleSize(decoder.getWidth(), decoder.getHeight(), mSize);
+            int scale = Math.min(ScaledJpegDecoder.MAX_SCALE, sample);
+            int[] pixels = decoder.decode(scale);
+            Bitmap thumb = Bitmap.createBitmap(pixels, decoder.getScaledWidth(scale),
+                    decoder.getScaledHeight(scale), Bitmap.Config.ARGB_8888);
+            if (sample > scale) {
+                // the rest of the sample size, like BitmapFactory does after 1/8
+                Bitmap scaled = Bitmap.createScaledBitmap(thumb, thumb.getWidth() * scale
+                        / sample, thumb.getHeight() * scale / sample, true);
+                if (scaled != thumb) {
+                    thumb.recycle();
+                }
+                thumb = scaled;
+            }
+            return thumb;
+        } catch (IOException | RuntimeException e) {
+            // corrupt data, BitmapFactory decodes what it can
+            Log.w(TAG, "scaled decode failed msg:" + e.getMessage());
+            return null;
+        }
+    }
+
+    private Bitmap decodeExifThumbnail(ExifView view, int width, int height) {
+        ByteBuffer buffer = view != null ? view.getCompressedThumbnail() : null;
+        if (buffer == null) {
+            return null;
+        }
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        Bitmap thumb = BitmapFactory.decodeByteArray(data, 0, data.length);
+        if (thumb == null) {
+            return null;
+        }
+        if (!isExifThumbnailUsable(thumb.getWidth(), thumb.getHeight(), width, height,
+                mSize)) {
+            // too small or letterboxed, decode the image instead
+            thumb.recycle();
+            return null;
+        }
+        return thumb;
+    }
+
+    private static boolean isSameAspect(int thumbW, int thumbH, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return true;
+        }
+        float thumbRatio = (float) thumbW / thumbH;
+        float ratio = (float) width / height;
+        return Math.abs(thumbRatio - ratio) <= ratio * ASPECT_TOLERANCE;
+    }
+}
@@ -0,0 +1,144 @@
+package com.smewise.camera2.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pack the planes of a YUV_420_888 image into one of the canonical layouts. The planes
+ * of an Image may have row padding and interleaved chroma (pixel stride 2), packed data
+ * has neither, so saved files do not depend on the device.
+ * <p>
+ * Planes are copied with bulk puts of whole rows, a plane without row padding is copied
+ * with one put. Positions of the plane buffers are not changed.
+ */
+public class YuvPacker {
+    /** Y plane, then interleaved V and U */
+    public static final int NV21 = 0;
+    /** Y plane, then interleaved U and V */
+    public static final int NV12 = 1;
+    /** Y plane, U plane, V plane */
+    public static final int I420 = 2;
+
+    // rows of source chroma and of interleaved output
+    private byte[] mURow;
+    private byte[] mVRow;
+    private byte[] mOutRow;
+
+    /**
+     * @return bytes of a packed image, chroma of odd sizes is rounded up
+     */
+    public static int getPackedSize(int width, int height) {
+        return width * height + 2 * ((width + 1) / 2) * ((height + 1) / 2);
+    }
+
+    /**
+     * Pack planes to out at offset, out must have {@link #getPackedSize(int, int)} bytes
+     * from offset.
+     * @see #pack(int, int, ByteBuffer, int, ByteBuffer, ByteBuffer, int, int, int, ByteBuffer)
+     */
+    public void pack(int width, int height, ByteBuffer y, int yRowStride, ByteBuffer u,
+            ByteBuffer v, int uvRowStride, int uvPixelStride, int layout, byte[] out,
+            int offset) {
+        if (out.length - offset < getPackedSize(width, height)) {
+            throw new IllegalArgumentException("out too small:" + (out.length - offset));
+        }
+        pack(width, height, y, yRowStride, u, v, uvRowStride, uvPixelStride, layout,
+                ByteBuffer.wrap(out, offset, out.length - offset));
+    }
+
+    /**
+     * Pack planes to out from its position, the position is moved past the packed data.
+     * Out may be a direct buffer, rows are copied buffer to buffer.
+     * @param yRowStride row stride of the y plane, its pixel stride must be 1
+     * @param uvRowStride row stride of the u and v planes
+     * @param uvPixelStride pixel stride of the u and v planes
+     * @param layout {@link #NV21}, {@link #NV12} or {@link #I420}
+     */
+    public void pack(int width, int height, ByteBuffer y, int yRowStride, ByteBuffer u,
+            ByteBuffer v, int uvRowStride, int uvPixelStride, int layout, ByteBuffer out) {
+        int cw = (width + 1) / 2;
+        int ch = (height + 1) / 2;
+        if (yRowStride < width || uvPixelStride < 1 || uvRowStride < (cw - 1) * uvPixelStride
+                + 1) {
+            throw new IllegalArgumentException("invalid strides y:" + yRowStride + " uv:"
+                    + uvRowStride + "/" + uvPixelStride + " for " + width + "x" + height);
+        }
+        if (out.remaining() < getPackedSize(width, height)) {
+            throw new IllegalArgumentException("out too small:" + out.remaining());
+        }
+        copyPlane(y, yRowStride, width, height, out);
+        if (layout == I420) {
+            if (uvPixelStride == 1) {
+                copyPlane(u, uvRowStride, cw, ch, out);
+                copyPlane(v, uvRowStride, cw, ch, out);
+            } else {
+                interleave(u, null, uvRowStride, uvPixelStride, cw, ch, out);
+                interleave(v, null, uvRowStride, uvPixelStride, cw, ch, out);
+            }
+        } else if (layout == NV21) {
+            interleave(v, u, uvRowStride, uvPixelStride, cw, ch, out);
+        } else if (layout == NV12) {
+            interleave(u, v, uvRowStride, uvPixelStride, cw, ch, out);
+        } else {
+            throw new IllegalArgumentException("unknown layout:" + layout);
+        }
+    }
+
+    /**
+     * Copy rows of width bytes, the last row of a plane may end at its last sample.
+     */
+    private static void copyPlane(ByteBuffer plane, int rowStride, int width, int height,
+            ByteBuffer out) {
+        ByteBuffer src = plane.duplicate();
+        int base = plane.position();
+        if (rowStride == width) {
+            src.limit(base + width * height);
+            out.put(src);
+            return;
+        }
+        for (int row = 0; row < height; row++) {
+            int start = base + row * rowStride;
+            src.limit(start + width);
+            src.position(start);
+            out.put(src);
+        }
+    }
+
+    /**
+     * Write samples of first, and of second between them if it is not null, so that
+     * each output row has width or 2 * width bytes.
+     */
+    private void interleave(ByteBuffer first, ByteBuffer second, int rowStride,
+            int pixelStride, int width, int height, ByteBuffer out) {
+        int length = (width - 1) * pixelStride + 1;
+        int step = second == null ? 1 : 2;
+        if (mURow == null || mURow.length < length) {
+            mURow = new byte[length];
+            mVRow = new byte[length];
+        }
+        if (mOutRow == null || mOutRow.length < width * step) {
+            mOutRow = new byte[width * step];
+        }
+        byte[] a = mURow;
+        byte[] b = mVRow;
+        byte[] row = mOutRow;
+        ByteBuffer src = first.duplicate();
+        ByteBuffer src2 = second == null ? null : second.duplicate();
+        for (int r = 0; r < height; r++) {
+            src.position(first.position() + r * rowStride);
+            src.get(a, 0, length);
+            if (src2 == null) {
+                for (int i = 0, s = 0; i < width; i++, s += pixelStride) {
+                    row[i] = a[s];
+                }
+            } else {
+                src2.position(second.position() + r * rowStride);
+                src2.get(b, 0, length);
+                for (int i = 0, s = 0; i < width; i++, s += pixelStride) {
+                    row[2 * i] = a[s];
+                    row[2 * i + 1] = b[s];
+                }
+            }
+            out.put(row, 0, width * step);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.smewise.camera2.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recent full size frames of the repeating request for zero shutter lag capture. Images
+ * and capture results arrive separately and are matched by sensor timestamp, a frame can
+ * be taken once both are in. Only the newest capacity images are kept, older ones are
+ * given back to the recycler, for an ImageReader that is Image.close().
+ * <p>
+ * All methods are thread safe, images and results may come from different threads.
+ */
+public class ZslRingBuffer<I, R> {
+    private final int mCapacity;
+    private final Recycler<I> mRecycler;
+    // sorted by timestamp, oldest first
+    private final List<Frame<I, R>> mFrames = new ArrayList<>();
+    private int mImageCount;
+
+    public interface Recycler<I> {
+        void recycle(I image);
+    }
+
+    public static class Frame<I, R> {
+        private final long mTimestamp;
+        private I mImage;
+        private R mResult;
+        private boolean mFocused;
+        private boolean mExposed;
+
+        Frame(long timestamp) {
+            mTimestamp = timestamp;
+        }
+
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        public I getImage() {
+            return mImage;
+        }
+
+        public R getResult() {
+            return mResult;
+        }
+
+        public boolean isFocused() {
+            return mFocused;
+        }
+
+        public boolean isExposed() {
+            return mExposed;
+        }
+
+        boolean isComplete() {
+            return mImage != null && mResult != null;
+        }
+
+        // focus matters more than exposure for a sharp picture
+        int getScore() {
+            return (mFocused ? 2 : 0) + (mExposed ? 1 : 0);
+        }
+    }
+
+    /**
+     * @param capacity images kept, the image source must allow one more to be acquired
+     */
+    public ZslRingBuffer(int capacity, Recycler<I> recycler) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity:" + capacity);
+        }
+        mCapacity = capacity;
+        mRecycler = recycler;
+    }
+
+    public synchronized void addImage(long timestamp, I image) {
+        Frame<I, R> frame = getFrame(timestamp);
+        if (frame == null) {
+            // frame is older than all kept frames
+            mRecycler.recycle(image);
+            return;
+        }
+        if (frame.mImage != null) {
+            mRecycler.recycle(frame.mImage);
+            mImageCount--;
+        }
+        frame.mImage = image;
+        mImageCount++;
+        trim();
+    }
+
+    /**
+     * @param focused af is locked or passively focused in the frame
+     * @param exposed ae is converged or locked in the frame
+     */
+    public synchronized void addResult(long timestamp, R result, boolean focused,
+            boolean exposed) {
+        Frame<I, R> frame = getFrame(timestamp);
+        if (frame == null) {
+            return;
+        }
+        frame.mResult = result;
+        frame.mFocused = focused;
+        frame.mExposed = exposed;
+        trim();
+    }
+
+    /**
+     * Remove the best frame that has an image and a result, the newest one of the best
+     * 3A state. The caller owns its image.
+     * @return null if no frame is complete
+     */
+    public synchronized Frame<I, R> take() {
+        int best = -1;
+        for (int i = mFrames.size() - 1; i >= 0; i--) {
+            Frame<I, R> frame = mFrames.get(i);
+            if (frame.isComplete() && (best < 0
+                    || frame.getScore() > mFrames.get(best).getScore())) {
+                best = i;
+            }
+        }
+        if (best < 0) {
+            return null;
+        }
+        mImageCount--;
+        return mFrames.remove(best);
+    }
+
+    /**
+     * @return kept images
+     */
+    public synchronized int size() {
+        return mImageCount;
+    }
+
+    /**
+     * Recycle all images, call when the image source is closed.
+     */
+    public synchronized void clear() {
+        for (Frame<I, R> frame : mFrames) {
+            if (frame.mImage != null) {
+                mRecycler.recycle(frame.mImage);
+            }
+        }
+        mFrames.clear();
+        mImageCount = 0;
+    }
+
+    /**
+     * Find or insert the frame of timestamp, null if it would be older than all frames of
+     * a full buffer.
+     */
+    private Frame<I, R> getFrame(long timestamp) {
+        int i = mFrames.size() - 1;
+        while (i >= 0 && mFrames.get(i).mTimestamp > timestamp) {
+            i--;
+        }
+        if (i >= 0 && mFrames.get(i).mTimestamp == timestamp) {
+            return mFrames.get(i);
+        }
+        if (i < 0 && mFrames.size() >= 2 * mCapacity) {
+            return null;
+        }
+        Frame<I, R> frame = new Frame<>(timestamp);
+        mFrames.add(i + 1, frame);
+        return frame;
+    }
+
+    /**
+     * Drop oldest frames over capacity images, and results whose image never came.
+     */
+    private void trim() {
+        while (mImageCount > mCapacity || mFrames.size() > 2 * mCapacity) {
+            Frame<I, R> oldest = mFrames.remove(0);
+            if (oldest.mImage != null) {
+                mRecycler.recycle(oldest.mImage);
+                mImageCount--;
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.smewise.camera2.exif;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExifInputTest {
+    // larger than the window of the stream and channel inputs
+    private static final int SIZE = 50000;
+
+    @Test
+    public void buffer_readsValues() throws Exception {
+        byte[] data = data();
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE + 3);
+        buffer.position(3);
+        buffer.put(data);
+        buffer.position(3);
+        checkInput(ExifInput.from(buffer), data);
+        assertEquals(3, buffer.position());
+    }
+
+    @Test
+    public void stream_readsValues() throws Exception {
+        byte[] data = data();
+        checkInput(ExifInput.from(new ByteArrayInputStream(data)), data);
+    }
+
+    @Test
+    public void channel_readsValues() throws Exception {
+        byte[] data = data();
+        File file = File.createTempFile("exif", ".bin");
+        RandomAccessFile raf = null;
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(data);
+            out.close();
+            raf = new RandomAccessFile(file, "r");
+            ExifInput input = ExifInput.from(raf.getChannel());
+            checkInput(input, data);
+            // positional reads can go back
+            input.seek(2);
+            assertEquals(0x0203, input.readShort());
+        } finally {
+            if (raf != null) {
+                raf.close();
+            }
+            file.delete();
+        }
+    }
+
+    @Test
+    public void stream_cannotSeekBackward() throws Exception {
+        ExifInput input = ExifInput.from(new ByteArrayInputStream(data()));
+        input.seek(SIZE - 8);
+        input.readInt();
+        try {
+            input.seek(0);
+            input.readInt();
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void slice_sharesBufferAndMapsFile() throws Exception {
+        byte[] data = data();
+        ExifInput input = ExifInput.from(ByteBuffer.wrap(data));
+        input.seek(100);
+        ByteBuffer slice = input.readSlice(SIZE - 200);
+        assertEquals(SIZE - 100, input.position());
+        assertTrue(slice.isReadOnly());
+        assertEquals(SIZE - 200, slice.remaining());
+        assertEquals(data[100], slice.get(0));
+        assertEquals(data[SIZE - 101], slice.get(SIZE - 201));
+
+        File file = File.createTempFile("exif", ".bin");
+        RandomAccessFile raf = null;
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(data);
+            out.close();
+            raf = new RandomAccessFile(file, "r");
+            input = ExifInput.from(raf.getChannel());
+            input.seek(100);
+            slice = input.readSlice(SIZE - 200);
+            raf.close();
+            raf = null;
+            // a mapped slice outlives the channel
+            assertEquals(data[100], slice.get(0));
+            assertEquals(data[SIZE - 101], slice.get(SIZE - 201));
+        } finally {
+            if (raf != null) {
+                raf.close();
+            }
+            file.delete();
+        }
+
+        input = ExifInput.from(new ByteArrayInputStream(data));
+        assertNull(input.readSlice(10));
+        assertEquals(0, input.position());
+    }
+
+    @Test
+    public void readPastEnd_throwsEof() throws Exception {
+        ExifInput input = ExifInput.from(ByteBuffer.wrap(data()));
+        input.seek(SIZE - 2);
+        try {
+            input.readInt();
+            fail();
+        } catch (EOFException e) {
+            // expected
+        }
+        input.seek(SIZE - 2);
+        assertEquals(2, input.read(new byte[8], 0, 8));
+        assertEquals(-1, input.read(new byte[8], 0, 8));
+    }
+
+    private static void checkInput(ExifInput input, byte[] data) throws IOException {
+        ByteBuffer expected = ByteBuffer.wrap(data);
+        assertEquals(0x0001, input.readShort());
+        input.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+        expected.order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(expected.getInt(2), input.readInt());
+        assertEquals(6, input.position());
+
+        // bulk decoding crosses the window size
+        input.seek(100);
+        int[] shorts = new int[10000];
+        input.readUnsignedShorts(shorts);
+        for (int i = 0; i < shorts.length; i++) {
+            assertEquals(expected.getShort(100 + i * 2) & 0xffff, shorts[i]);
+        }
+        long[] ints = new long[3000];
+        input.readUnsignedInts(ints);
+        for (int i = 0; i < ints.length; i++) {
+            assertEquals(expected.getInt(20100 + i * 4) & 0xffffffffL, ints[i]);
+        }
+        input.setByteOrder(ByteOrder.BIG_ENDIAN);
+        expected.order(ByteOrder.BIG_ENDIAN);
+        int[] signed = new int[4];
+        input.readInts(signed);
+        assertEquals(expected.getInt(32100), signed[0]);
+
+        // seek forward over data that is never read
+        input.skip(500);
+        assertEquals(32616, input.position());
+        byte[] block = new byte[SIZE - 32616];
+        assertEquals(block.length, input.read(block, 0, block.length));
+        byte[] tail = new byte[block.length];
+        System.arraycopy(data, 32616, tail, 0, tail.length);
+        assertArrayEquals(tail, block);
+    }
+
+    private static byte[] data() {
+        byte[] data = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            data[i] = (byte) (i * 31 + (i >> 8));
+        }
+        data[0] = 0;
+        data[1] = 1;
+        data[2] = 2;
+        data[3] = 3;
+        return data;
+    }
+}
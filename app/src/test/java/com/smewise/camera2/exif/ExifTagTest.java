@@ -0,0 +1,101 @@
+package com.smewise.camera2.exif;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExifTagTest {
+
+    @Test
+    public void rationals_arePackedPairs() {
+        ExifTag tag = rationalTag(ExifTag.TYPE_UNSIGNED_RATIONAL, 3);
+        assertTrue(tag.setValue(new Rational[] {
+                new Rational(31, 1), new Rational(14, 1), new Rational(1525, 100)}));
+        assertArrayEquals(new long[] {31, 1, 14, 1, 1525, 100}, tag.getValueAsRationalPairs());
+        assertEquals(3, tag.getComponentCount());
+        assertEquals(1525, tag.getRationalNumerator(2));
+        assertEquals(100, tag.getRationalDenominator(2));
+
+        Rational[] r = tag.getValueAsRationals();
+        assertEquals(3, r.length);
+        assertEquals(new Rational(14, 1), r[1]);
+        assertEquals(new Rational(31, 1), tag.getValueAsRational(null));
+        assertEquals("[31/1, 14/1, 1525/100]", tag.forceGetValueAsString());
+        assertEquals(31, tag.forceGetValueAsLong(-1));
+        // rationals are not integers
+        assertNull(tag.getValueAsLongs());
+        assertNull(tag.getValueAsInts());
+    }
+
+    @Test
+    public void packedValues_matchRationalValues() {
+        ExifTag packed = rationalTag(ExifTag.TYPE_RATIONAL, 1);
+        assertTrue(packed.setRationalValues(new long[] {-1, 3}));
+        ExifTag objects = rationalTag(ExifTag.TYPE_RATIONAL, 1);
+        assertTrue(objects.setValue(new Rational(-1, 3)));
+        assertEquals(objects, packed);
+        assertEquals("-1/3", packed.forceGetValueAsString());
+        assertTrue(packed.getValue() instanceof Rational[]);
+    }
+
+    @Test
+    public void setRationalValues_rejectsInvalidValues() {
+        ExifTag unsigned = rationalTag(ExifTag.TYPE_UNSIGNED_RATIONAL, 1);
+        assertFalse(unsigned.setRationalValues(new long[] {-1, 3}));
+        assertFalse(unsigned.setRationalValues(new long[] {1L << 32, 3}));
+        assertFalse(unsigned.setRationalValues(new long[] {1, 3, 4}));
+        // the defined count is 1
+        assertFalse(unsigned.setRationalValues(new long[] {1, 3, 4, 5}));
+
+        ExifTag signed = rationalTag(ExifTag.TYPE_RATIONAL, 1);
+        assertFalse(signed.setRationalValues(new long[] {Integer.MAX_VALUE + 1L, 3}));
+        assertTrue(signed.setRationalValues(new long[] {Integer.MIN_VALUE, 3}));
+
+        ExifTag shortTag = new ExifTag((short) 0x0112, ExifTag.TYPE_UNSIGNED_SHORT, 1,
+                IfdId.TYPE_IFD_0, true);
+        assertFalse(shortTag.setRationalValues(new long[] {1, 3}));
+    }
+
+    @Test
+    public void lazyBytes_copiedOnlyWhenRead() {
+        byte[] source = {9, 1, 2, 3, 4, 9};
+        ExifTag tag = new ExifTag((short) 0x927C, ExifTag.TYPE_UNDEFINED, 0,
+                IfdId.TYPE_IFD_EXIF, false);
+        ByteBuffer buffer = ByteBuffer.wrap(source);
+        buffer.position(1);
+        buffer.limit(5);
+        assertTrue(tag.setValue(buffer));
+        assertTrue(tag.isValueLazy());
+        assertEquals(4, tag.getComponentCount());
+
+        ByteBuffer bytes = tag.getBytesBuffer();
+        assertEquals(4, bytes.remaining());
+        assertEquals(1, bytes.get(0));
+        byte[] partial = new byte[2];
+        tag.getBytes(partial);
+        assertArrayEquals(new byte[] {1, 2}, partial);
+        assertTrue(tag.isValueLazy());
+
+        ExifTag copy = new ExifTag((short) 0x927C, ExifTag.TYPE_UNDEFINED, 0,
+                IfdId.TYPE_IFD_EXIF, false);
+        assertTrue(copy.setValue(new byte[] {1, 2, 3, 4}));
+        assertEquals(copy, tag);
+        assertTrue(tag.isValueLazy());
+
+        assertArrayEquals(new byte[] {1, 2, 3, 4}, tag.getValueAsBytes());
+        assertFalse(tag.isValueLazy());
+        // the source is not shared any more
+        source[1] = 7;
+        assertEquals(1, tag.getValueAsBytes()[0]);
+    }
+
+    private static ExifTag rationalTag(short type, int count) {
+        return new ExifTag((short) 0x0002, type, count, IfdId.TYPE_IFD_GPS, true);
+    }
+}
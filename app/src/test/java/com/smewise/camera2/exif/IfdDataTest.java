@@ -0,0 +1,81 @@
+package com.smewise.camera2.exif;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Only plain {@link ExifTag} objects are used here, {@link ExifInterface} needs
+ * android classes and is covered by ExifSerializationTest on device.
+ */
+public class IfdDataTest {
+
+    @Test
+    public void getAllTags_sortedByUnsignedTagId() {
+        // 0x8769 and 0xa002 are negative as short
+        short[] ids = {(short) 0xa002, 0x0112, (short) 0x8769, 0x0100, 0x010f, 0x0001};
+        IfdData ifd = new IfdData(IfdId.TYPE_IFD_0);
+        for (short id : ids) {
+            ifd.setTag(tag(id));
+        }
+        ExifTag[] tags = ifd.getAllTags();
+        assertEquals(ids.length, tags.length);
+        for (int i = 1; i < tags.length; i++) {
+            assertTrue((tags[i - 1].getTagId() & 0xffff) < (tags[i].getTagId() & 0xffff));
+        }
+        assertEquals(0x0001, tags[0].getTagId());
+        assertEquals((short) 0xa002, tags[tags.length - 1].getTagId());
+    }
+
+    @Test
+    public void setTag_replacesExistingTag() {
+        IfdData ifd = new IfdData(IfdId.TYPE_IFD_EXIF);
+        ExifTag first = tag((short) 0x9003);
+        ExifTag second = tag((short) 0x9003);
+        assertNull(ifd.setTag(first));
+        assertSame(first, ifd.setTag(second));
+        assertEquals(1, ifd.getTagCount());
+        assertSame(second, ifd.getTag((short) 0x9003));
+        assertEquals(IfdId.TYPE_IFD_EXIF, second.getIfd());
+    }
+
+    @Test
+    public void removeTag_keepsOrder() {
+        IfdData ifd = new IfdData(IfdId.TYPE_IFD_0);
+        for (int id = 40; id > 0; id--) {
+            ifd.setTag(tag((short) id));
+        }
+        assertEquals(40, ifd.getTagCount());
+        for (int id = 2; id <= 40; id += 2) {
+            ifd.removeTag((short) id);
+        }
+        ifd.removeTag((short) 1000);
+        assertEquals(20, ifd.getTagCount());
+        ExifTag[] tags = ifd.getAllTags();
+        for (int i = 0; i < tags.length; i++) {
+            assertEquals(i * 2 + 1, tags[i].getTagId());
+        }
+        assertFalse(ifd.checkCollision((short) 2));
+        assertTrue(ifd.checkCollision((short) 39));
+        assertNull(ifd.getTag((short) 40));
+    }
+
+    @Test
+    public void getAllTags_returnsCopy() {
+        IfdData ifd = new IfdData(IfdId.TYPE_IFD_0);
+        ifd.setTag(tag((short) 0x0100));
+        ExifTag[] tags = ifd.getAllTags();
+        tags[0] = null;
+        assertEquals(0x0100, ifd.getAllTags()[0].getTagId());
+    }
+
+    private static ExifTag tag(short id) {
+        ExifTag tag = new ExifTag(id, ExifTag.TYPE_UNSIGNED_SHORT, 1, IfdId.TYPE_IFD_0, true);
+        tag.setValue(id & 0xffff);
+        return tag;
+    }
+}
@@ -0,0 +1,133 @@
+package com.smewise.camera2.exif;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JpegSegmentIndexTest {
+    // SOI, APP0, APP1 exif, fill byte, SOF0 (16x8, YCbCr 4:2:0), SOS, data, EOI
+    private static final byte[] JPEG = {(byte) 0xff, (byte) 0xd8,
+            (byte) 0xff, (byte) 0xe0, 0, 4, 'j', 'f',
+            (byte) 0xff, (byte) 0xe1, 0, 16, 'E', 'x', 'i', 'f', 0, 0,
+            'M', 'M', 0, 42, 0, 0, 0, 8,
+            (byte) 0xff,
+            (byte) 0xff, (byte) 0xc0, 0, 17, 8, 0, 8, 0, 16, 3,
+            1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1,
+            (byte) 0xff, (byte) 0xda, 0, 2, 5, 6, 7,
+            (byte) 0xff, (byte) 0xd9};
+
+    @Test
+    public void buffer_indexesSegments() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(JPEG.length + 3);
+        buffer.position(3);
+        buffer.put(JPEG);
+        buffer.position(3);
+        JpegSegmentIndex index = JpegSegmentIndex.from(buffer);
+        checkIndex(index);
+        assertEquals(3, buffer.position());
+
+        ByteBuffer payload = index.getPayload(0);
+        assertEquals(2, payload.remaining());
+        assertEquals('j', payload.get(0));
+        assertTrue(payload.isReadOnly());
+    }
+
+    @Test
+    public void channel_indexesSegments() throws Exception {
+        File file = File.createTempFile("jpeg", ".jpg");
+        RandomAccessFile raf = null;
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(JPEG);
+            out.close();
+            raf = new RandomAccessFile(file, "r");
+            JpegSegmentIndex index = JpegSegmentIndex.from(raf.getChannel());
+            checkIndex(index);
+            assertEquals(0, raf.getChannel().position());
+
+            ByteBuffer payload = index.getPayload(1);
+            assertEquals(14, payload.remaining());
+            assertEquals('E', payload.get(0));
+        } finally {
+            if (raf != null) {
+                raf.close();
+            }
+            file.delete();
+        }
+    }
+
+    @Test
+    public void headerOnly_stopsAtEoi() throws Exception {
+        byte[] jpeg = {(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xfe, 0, 3, 'a',
+                (byte) 0xff, (byte) 0xd9};
+        JpegSegmentIndex index = JpegSegmentIndex.from(ByteBuffer.wrap(jpeg));
+        assertEquals(2, index.getSegmentCount());
+        assertEquals(JpegHeader.EOI, index.getMarker(1));
+        assertEquals(0, index.getLength(1));
+        assertFalse(index.hasFrame());
+        assertEquals(-1, index.getExifIndex());
+        assertEquals(-1, index.getTiffStart());
+        assertEquals(-1, index.getScanDataStart());
+    }
+
+    @Test
+    public void truncatedSegment_keepsSegmentsBefore() throws Exception {
+        byte[] jpeg = new byte[30];
+        System.arraycopy(JPEG, 0, jpeg, 0, jpeg.length);
+        JpegSegmentIndex index = JpegSegmentIndex.from(ByteBuffer.wrap(jpeg));
+        // SOF0 is cut after its length field
+        assertEquals(2, index.getSegmentCount());
+        assertEquals(1, index.getExifIndex());
+        assertFalse(index.hasFrame());
+    }
+
+    @Test
+    public void noSoi_throws() throws Exception {
+        try {
+            JpegSegmentIndex.from(ByteBuffer.wrap(new byte[] {0, 1, 2, 3}));
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static void checkIndex(JpegSegmentIndex index) {
+        assertEquals(4, index.getSegmentCount());
+        assertEquals(JpegHeader.APP0, index.getMarker(0));
+        assertEquals(2, index.getOffset(0));
+        assertEquals(4, index.getLength(0));
+        assertEquals(8, index.getEnd(0));
+
+        assertEquals(1, index.getExifIndex());
+        assertEquals(18, index.getTiffStart());
+
+        // the fill byte is skipped
+        assertEquals(2, index.getFrameIndex());
+        assertEquals(27, index.getOffset(2));
+        assertEquals(2, index.indexOf(JpegHeader.SOF0, 0));
+        assertEquals(-1, index.indexOf(JpegHeader.SOF0, 3));
+        assertTrue(index.hasFrame());
+        assertEquals(16, index.getWidth());
+        assertEquals(8, index.getHeight());
+        assertEquals(8, index.getPrecision());
+        assertEquals(3, index.getComponentCount());
+        assertEquals(1, index.getComponentId(0));
+        assertEquals(2, index.getHorizontalSampling(0));
+        assertEquals(2, index.getVerticalSampling(0));
+        assertEquals(1, index.getHorizontalSampling(2));
+        assertEquals(1, index.getVerticalSampling(2));
+
+        assertEquals(3, index.getScanIndex());
+        assertEquals(JpegHeader.SOS, index.getMarker(3));
+        assertEquals(50, index.getScanDataStart());
+    }
+}
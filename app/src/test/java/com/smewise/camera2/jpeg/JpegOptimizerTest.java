@@ -0,0 +1,150 @@
+package com.smewise.camera2.jpeg;
+
+import com.smewise.camera2.exif.JpegHeader;
+import com.smewise.camera2.exif.JpegSegmentIndex;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs on the host JVM, javax.imageio creates the test images with the standard tables.
+ */
+public class JpegOptimizerTest {
+
+    @Test
+    public void baseline_keepsCoefficientsAndShrinks() throws Exception {
+        byte[] jpeg = createJpeg(96, 72);
+        byte[] out = optimize(jpeg, false);
+        assertTrue(out.length < jpeg.length);
+        short[][] expected = coefficients(jpeg);
+        short[][] result = coefficients(out);
+        assertEquals(expected.length, result.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i], result[i]);
+        }
+    }
+
+    @Test
+    public void restartIntervals_areDecoded() throws Exception {
+        byte[] jpeg = createYuvJpeg(48, 40);
+        byte[] out = optimize(jpeg, false);
+        assertEquals(-1, JpegSegmentIndex.from(ByteBuffer.wrap(out)).indexOf(JpegHeader.DRI, 0));
+        short[][] expected = coefficients(jpeg);
+        short[][] result = coefficients(out);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i], result[i]);
+        }
+    }
+
+    @Test
+    public void progressive_decodesToSamePixels() throws Exception {
+        byte[] jpeg = createJpeg(83, 61);
+        byte[] out = optimize(jpeg, true);
+        JpegSegmentIndex index = JpegSegmentIndex.from(ByteBuffer.wrap(out));
+        assertEquals(JpegHeader.SOF2, index.getMarker(index.getFrameIndex()));
+        assertArrayEquals(pixels(decode(jpeg)), pixels(decode(out)));
+    }
+
+    @Test
+    public void optimalTable_limitsCodeLength() {
+        // fibonacci counts make the longest unlimited code
+        int[] freq = new int[256];
+        int a = 1;
+        int b = 1;
+        for (int i = 0; i < 30; i++) {
+            freq[i] = a;
+            int next = a + b;
+            a = b;
+            b = next;
+        }
+        HuffmanTable table = HuffmanTable.optimal(freq);
+        assertEquals(30, table.getCodeCount());
+        for (int i = 0; i < 30; i++) {
+            assertTrue(table.hasCode(i));
+            assertTrue(table.sizes[i] <= 16);
+            // all ones is never a code
+            assertTrue(table.codes[i] != (1 << table.sizes[i]) - 1);
+        }
+        // the most frequent symbol gets the shortest code
+        assertTrue(table.sizes[29] <= table.sizes[0]);
+    }
+
+    private static byte[] optimize(byte[] jpeg, boolean progressive) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JpegOptimizer(ByteBuffer.wrap(jpeg)).write(Channels.newChannel(out), progressive);
+        return out.toByteArray();
+    }
+
+    private static short[][] coefficients(byte[] jpeg) throws IOException {
+        JpegFrame frame = JpegFrame.parse(ByteBuffer.wrap(jpeg));
+        CoefficientPlane[] planes = new CoefficientPlane[frame.components.length];
+        for (int i = 0; i < planes.length; i++) {
+            JpegComponent c = frame.components[i];
+            planes[i] = new CoefficientPlane(frame.mcusPerLine * c.h, frame.mcusPerColumn * c.v);
+        }
+        ScanDecoder decoder = new ScanDecoder(frame);
+        while (decoder.nextScan()) {
+            decoder.decodeScan(planes);
+        }
+        short[][] coef = new short[planes.length][];
+        for (int i = 0; i < planes.length; i++) {
+            coef[i] = planes[i].coef;
+        }
+        return coef;
+    }
+
+    private static byte[] createJpeg(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = x * 255 / width;
+                int g = y * 255 / height;
+                int b = ((x / 5 + y / 3) & 1) * 200;
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Jpeg with one restart interval per MCU row.
+     */
+    private static byte[] createYuvJpeg(int width, int height) throws IOException {
+        byte[] y = new byte[width * height];
+        byte[] uv = new byte[width * height / 4];
+        for (int i = 0; i < y.length; i++) {
+            y[i] = (byte) (i % width * 5 + i / width);
+        }
+        for (int i = 0; i < uv.length; i++) {
+            uv[i] = (byte) (100 + i % 30);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new YuvJpegEncoder(width, height, 90).encode(ByteBuffer.wrap(y), width,
+                ByteBuffer.wrap(uv), ByteBuffer.wrap(uv), width / 2, 1, null,
+                Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    private static BufferedImage decode(byte[] jpeg) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(jpeg));
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0,
+                image.getWidth());
+    }
+}
@@ -0,0 +1,264 @@
+package com.smewise.camera2.jpeg;
+
+import com.smewise.camera2.exif.ExifInterface;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs on the host JVM, javax.imageio is used to create and decode test images.
+ */
+public class JpegTransformTest {
+
+    @Test
+    public void identity_keepsCoefficients() throws Exception {
+        byte[] jpeg = createJpeg(64, 48);
+        byte[] out = transform(jpeg, ExifInterface.Orientation.TOP_LEFT);
+        assertArrayEquals(pixels(decode(jpeg)), pixels(decode(out)));
+    }
+
+    @Test
+    public void allOrientations_matchPixelTransform() throws Exception {
+        byte[] jpeg = createJpeg(64, 48);
+        BufferedImage origin = decode(jpeg);
+        for (int orientation = 1; orientation <= 8; orientation++) {
+            BufferedImage result = decode(transform(jpeg, orientation));
+            BufferedImage expected = upright(origin, orientation);
+            assertEquals(expected.getWidth(), result.getWidth());
+            assertEquals(expected.getHeight(), result.getHeight());
+            assertTrue("orientation " + orientation, meanDiff(expected, result) < 1.5);
+        }
+    }
+
+    @Test
+    public void rotateBackAndForth_isLossless() throws Exception {
+        byte[] jpeg = createJpeg(64, 48);
+        byte[] rotated = transform(jpeg, ExifInterface.Orientation.RIGHT_TOP);
+        byte[] back = transform(rotated, ExifInterface.Orientation.RIGHT_BOTTOM);
+        assertArrayEquals(pixels(decode(jpeg)), pixels(decode(back)));
+
+        byte[] flipped = transform(jpeg, ExifInterface.Orientation.LEFT_BOTTOM);
+        back = transform(flipped, ExifInterface.Orientation.LEFT_BOTTOM);
+        assertArrayEquals(pixels(decode(jpeg)), pixels(decode(back)));
+    }
+
+    @Test
+    public void partialMcu_isTrimmedOnMovedEdge() throws Exception {
+        byte[] jpeg = createJpeg(70, 45);
+        JpegTransform transform = new JpegTransform(ByteBuffer.wrap(jpeg));
+        assertEquals(64, transform.getOutputWidth(ExifInterface.Orientation.TOP_RIGHT));
+        assertEquals(45, transform.getOutputHeight(ExifInterface.Orientation.TOP_RIGHT));
+        // rotate 90 moves the bottom edge to the left
+        assertEquals(32, transform.getOutputWidth(ExifInterface.Orientation.RIGHT_TOP));
+        assertEquals(70, transform.getOutputHeight(ExifInterface.Orientation.RIGHT_TOP));
+        assertEquals(45, transform.getOutputWidth(ExifInterface.Orientation.LEFT_TOP));
+
+        BufferedImage result = decode(transform(jpeg, ExifInterface.Orientation.RIGHT_TOP));
+        assertEquals(32, result.getWidth());
+        assertEquals(70, result.getHeight());
+    }
+
+    @Test
+    public void exifHeader_replacesSourceExif() throws Exception {
+        byte[] jpeg = createJpeg(64, 48);
+        byte[] source = app1(jpeg, "Exif\0\0old");
+        byte[] header = app1(new byte[] {(byte) 0xff, (byte) 0xd8}, "Exif\0\0new header");
+        ByteBuffer exif = ByteBuffer.wrap(header, 2, header.length - 2);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JpegTransform(ByteBuffer.wrap(source)).transform(
+                ExifInterface.Orientation.RIGHT_TOP, exif, Channels.newChannel(out));
+        String result = new String(out.toByteArray(), "ISO-8859-1");
+        // right after SOI, the marker and the length of the segment
+        assertEquals(6, result.indexOf("Exif\0\0new header"));
+        assertEquals(-1, result.indexOf("old"));
+        // other app segments are kept
+        assertTrue(result.contains("JFIF"));
+        assertEquals(2, exif.position());
+        assertArrayEquals(pixels(decode(transform(jpeg, ExifInterface.Orientation.RIGHT_TOP))),
+                pixels(decode(out.toByteArray())));
+    }
+
+    @Test
+    public void oversubscribedHuffmanTable_isFormatError() throws Exception {
+        byte[] jpeg = createJpeg(64, 48);
+        int dht = find(jpeg, 0xc4);
+        // first table gets three codes of length 1, the code count stays the same
+        int bits = dht + 5;
+        int last = bits + 15;
+        while (jpeg[last] < 3) {
+            last--;
+        }
+        jpeg[last] -= 3;
+        jpeg[bits] += 3;
+        assertFormatError(jpeg);
+    }
+
+    @Test
+    public void corruptScanData_isFormatError() throws Exception {
+        byte[] jpeg = createJpeg(64, 48);
+        int sos = find(jpeg, 0xda);
+        int start = sos + 2 + (((jpeg[sos + 2] & 0xff) << 8) | (jpeg[sos + 3] & 0xff));
+        int end = jpeg.length - 2;
+
+        // all ones is not a code of any table
+        byte[] ones = jpeg.clone();
+        for (int i = start; i < end; i++) {
+            ones[i] = (byte) 0xfe;
+        }
+        assertFormatError(ones);
+
+        Random random = new Random(7);
+        for (int n = 0; n < 200; n++) {
+            byte[] bad = jpeg.clone();
+            for (int i = start; i < end; i++) {
+                bad[i] = (byte) random.nextInt(0xff);
+            }
+            try {
+                transform(bad, ExifInterface.Orientation.RIGHT_TOP);
+            } catch (JpegFormatException e) {
+                // expected for most inputs, the others decode to noise
+            }
+        }
+    }
+
+    @Test
+    public void truncatedJpeg_isFormatError() throws Exception {
+        byte[] jpeg = createJpeg(64, 48);
+        int sos = find(jpeg, 0xda);
+        for (int length = 2; length < sos + 20; length += 3) {
+            byte[] cut = new byte[length];
+            System.arraycopy(jpeg, 0, cut, 0, length);
+            try {
+                transform(cut, ExifInterface.Orientation.RIGHT_TOP);
+            } catch (JpegFormatException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Insert an APP1 segment with the payload after SOI.
+     */
+    private static byte[] app1(byte[] jpeg, String payload) throws IOException {
+        byte[] data = payload.getBytes("ISO-8859-1");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2);
+        out.write(0xff);
+        out.write(0xe1);
+        out.write((data.length + 2) >> 8);
+        out.write((data.length + 2) & 0xff);
+        out.write(data);
+        out.write(jpeg, 2, jpeg.length - 2);
+        return out.toByteArray();
+    }
+
+    private static void assertFormatError(byte[] jpeg) throws IOException {
+        try {
+            transform(jpeg, ExifInterface.Orientation.RIGHT_TOP);
+            fail("no JpegFormatException");
+        } catch (JpegFormatException e) {
+            // expected
+        }
+    }
+
+    private static int find(byte[] jpeg, int marker) {
+        for (int i = 2; i + 1 < jpeg.length; i++) {
+            if ((jpeg[i] & 0xff) == 0xff && (jpeg[i + 1] & 0xff) == marker) {
+                return i;
+            }
+        }
+        throw new AssertionError("no marker " + Integer.toHexString(marker));
+    }
+
+    private static byte[] transform(byte[] jpeg, int orientation) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JpegTransform(ByteBuffer.wrap(jpeg)).transform(orientation, Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    private static byte[] createJpeg(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = x * 255 / width;
+                int g = y * 255 / height;
+                int b = ((x / 5 + y / 3) & 1) * 200;
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage decode(byte[] jpeg) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(jpeg));
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0,
+                image.getWidth());
+    }
+
+    private static BufferedImage upright(BufferedImage src, int orientation) {
+        int w = src.getWidth();
+        int h = src.getHeight();
+        boolean transpose = orientation >= ExifInterface.Orientation.LEFT_TOP;
+        BufferedImage dst = new BufferedImage(transpose ? h : w, transpose ? w : h,
+                BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < dst.getHeight(); y++) {
+            for (int x = 0; x < dst.getWidth(); x++) {
+                int sx;
+                int sy;
+                switch (orientation) {
+                    case ExifInterface.Orientation.TOP_RIGHT:
+                        sx = w - 1 - x; sy = y; break;
+                    case ExifInterface.Orientation.BOTTOM_LEFT:
+                        sx = w - 1 - x; sy = h - 1 - y; break;
+                    case ExifInterface.Orientation.BOTTOM_RIGHT:
+                        sx = x; sy = h - 1 - y; break;
+                    case ExifInterface.Orientation.LEFT_TOP:
+                        sx = y; sy = x; break;
+                    case ExifInterface.Orientation.RIGHT_TOP:
+                        sx = y; sy = h - 1 - x; break;
+                    case ExifInterface.Orientation.LEFT_BOTTOM:
+                        sx = w - 1 - y; sy = h - 1 - x; break;
+                    case ExifInterface.Orientation.RIGHT_BOTTOM:
+                        sx = w - 1 - y; sy = x; break;
+                    default:
+                        sx = x; sy = y; break;
+                }
+                dst.setRGB(x, y, src.getRGB(sx, sy));
+            }
+        }
+        return dst;
+    }
+
+    private static double meanDiff(BufferedImage a, BufferedImage b) {
+        long sum = 0;
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                int p = a.getRGB(x, y);
+                int q = b.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    sum += Math.abs(((p >> shift) & 0xff) - ((q >> shift) & 0xff));
+                }
+            }
+        }
+        return sum / (3.0 * a.getWidth() * a.getHeight());
+    }
+}
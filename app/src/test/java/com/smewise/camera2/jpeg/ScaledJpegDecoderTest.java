@@ -0,0 +1,183 @@
+package com.smewise.camera2.jpeg;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs on the host JVM, output is compared with the javax.imageio decode of the same jpeg.
+ * Scaled chroma is repeated over 2 pixels, so scaled output is only compared in luma.
+ */
+public class ScaledJpegDecoderTest {
+
+    @Test
+    public void fullScale_matchesReferenceDecoder() throws Exception {
+        byte[] jpeg = createJpeg(createImage(80, 56, BufferedImage.TYPE_INT_RGB));
+        ScaledJpegDecoder decoder = new ScaledJpegDecoder(ByteBuffer.wrap(jpeg));
+        int[] pixels = decoder.decode(1);
+        assertTrue(meanDiff(decode(jpeg), pixels) < 2);
+    }
+
+    @Test
+    public void allScales_matchBoxFilteredDecode() throws Exception {
+        // partial MCUs on both edges
+        byte[] jpeg = createJpeg(createImage(83, 61, BufferedImage.TYPE_INT_RGB));
+        BufferedImage reference = decode(jpeg);
+        ScaledJpegDecoder decoder = new ScaledJpegDecoder(ByteBuffer.wrap(jpeg));
+        for (int scale = 2; scale <= ScaledJpegDecoder.MAX_SCALE; scale *= 2) {
+            int w = decoder.getScaledWidth(scale);
+            int h = decoder.getScaledHeight(scale);
+            assertEquals((83 + scale - 1) / scale, w);
+            assertEquals((61 + scale - 1) / scale, h);
+            int[] pixels = decoder.decode(scale);
+            assertEquals(w * h, pixels.length);
+            assertTrue("scale " + scale, lumaDiff(reference, scale, pixels, w, h) < 2);
+        }
+    }
+
+    @Test
+    public void gray_isDecoded() throws Exception {
+        byte[] jpeg = createJpeg(createImage(48, 40, BufferedImage.TYPE_BYTE_GRAY));
+        BufferedImage reference = decode(jpeg);
+        ScaledJpegDecoder decoder = new ScaledJpegDecoder(ByteBuffer.wrap(jpeg));
+        assertTrue(lumaDiff(reference, 4, decoder.decode(4), 12, 10) < 2);
+    }
+
+    @Test
+    public void restartIntervals_areDecoded() throws Exception {
+        BufferedImage source = createImage(64, 64, BufferedImage.TYPE_INT_RGB);
+        byte[] y = new byte[64 * 64];
+        byte[] uv = new byte[32 * 32];
+        for (int i = 0; i < y.length; i++) {
+            y[i] = (byte) (source.getRGB(i % 64, i / 64) >> 8);
+        }
+        Arrays.fill(uv, (byte) 128);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new YuvJpegEncoder(64, 64, 90).encode(ByteBuffer.wrap(y), 64, ByteBuffer.wrap(uv),
+                ByteBuffer.wrap(uv), 32, 1, null, Channels.newChannel(out));
+        byte[] jpeg = out.toByteArray();
+        ScaledJpegDecoder decoder = new ScaledJpegDecoder(ByteBuffer.wrap(jpeg));
+        assertTrue(lumaDiff(decode(jpeg), 8, decoder.decode(8), 8, 8) < 2);
+    }
+
+    @Test
+    public void verifiedLayout_isGrayOr420() throws Exception {
+        byte[] jpeg = createJpeg(createImage(16, 16, BufferedImage.TYPE_INT_RGB));
+        assertTrue(new ScaledJpegDecoder(ByteBuffer.wrap(jpeg)).isVerifiedLayout());
+        byte[] gray = createJpeg(createImage(16, 16, BufferedImage.TYPE_BYTE_GRAY));
+        assertTrue(new ScaledJpegDecoder(ByteBuffer.wrap(gray)).isVerifiedLayout());
+        // luma sampling of the SOF0 component list changed to 4:4:4
+        int sof = indexOf(jpeg, (byte) 0xc0);
+        assertEquals(0x22, jpeg[sof + 11] & 0xff);
+        jpeg[sof + 11] = 0x11;
+        assertFalse(new ScaledJpegDecoder(ByteBuffer.wrap(jpeg)).isVerifiedLayout());
+    }
+
+    @Test
+    public void invalidScale_throws() throws Exception {
+        byte[] jpeg = createJpeg(createImage(16, 16, BufferedImage.TYPE_INT_RGB));
+        try {
+            new ScaledJpegDecoder(ByteBuffer.wrap(jpeg)).decode(3);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static BufferedImage createImage(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = x * 255 / width;
+                int g = y * 255 / height;
+                int b = 128 + (int) (50 * Math.sin(x / 5.0) * Math.cos(y / 7.0));
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    private static byte[] createJpeg(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    private static int indexOf(byte[] jpeg, byte marker) {
+        for (int i = 2; i < jpeg.length - 1; i++) {
+            if (jpeg[i] == (byte) 0xff && jpeg[i + 1] == marker) {
+                return i;
+            }
+        }
+        throw new AssertionError("marker not found");
+    }
+
+    private static BufferedImage decode(byte[] jpeg) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(jpeg));
+    }
+
+    private static double meanDiff(BufferedImage reference, int[] pixels) {
+        int width = reference.getWidth();
+        long sum = 0;
+        for (int y = 0; y < reference.getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                int p = reference.getRGB(x, y);
+                int q = pixels[y * width + x];
+                for (int shift = 0; shift < 24; shift += 8) {
+                    sum += Math.abs(((p >> shift) & 0xff) - ((q >> shift) & 0xff));
+                }
+            }
+        }
+        return sum / (3.0 * pixels.length);
+    }
+
+    /**
+     * Mean luma difference of pixels and the scale x scale box average of reference.
+     */
+    private static double lumaDiff(BufferedImage reference, int scale, int[] pixels,
+            int width, int height) {
+        double sum = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double mean = 0;
+                int count = 0;
+                for (int j = y * scale; j < Math.min((y + 1) * scale, reference.getHeight());
+                        j++) {
+                    for (int i = x * scale; i < Math.min((x + 1) * scale,
+                            reference.getWidth()); i++) {
+                        mean += luma(reference, i, j);
+                        count++;
+                    }
+                }
+                int q = pixels[y * width + x];
+                sum += Math.abs(mean / count - luma(q));
+            }
+        }
+        return sum / (width * height);
+    }
+
+    private static double luma(BufferedImage image, int x, int y) {
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            // getRGB would convert the linear gray color space
+            return image.getRaster().getSample(x, y, 0);
+        }
+        return luma(image.getRGB(x, y));
+    }
+
+    private static double luma(int p) {
+        return 0.299 * ((p >> 16) & 0xff) + 0.587 * ((p >> 8) & 0xff) + 0.114 * (p & 0xff);
+    }
+}
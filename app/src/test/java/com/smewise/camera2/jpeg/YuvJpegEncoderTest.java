@@ -0,0 +1,179 @@
+package com.smewise.camera2.jpeg;
+
+import com.smewise.camera2.exif.JpegHeader;
+import com.smewise.camera2.exif.JpegSegmentIndex;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs on the host JVM, javax.imageio decodes the encoded images.
+ */
+public class YuvJpegEncoderTest {
+    // APP1 with exif header and an empty big endian IFD0
+    private static final byte[] EXIF = {
+            (byte) 0xff, (byte) 0xe1, 0, 22, 'E', 'x', 'i', 'f', 0, 0,
+            'M', 'M', 0, 42, 0, 0, 0, 8, 0, 0, 0, 0, 0, 0
+    };
+
+    @Test
+    public void planarYuv_decodesToSource() throws Exception {
+        BufferedImage source = createImage(64, 48);
+        byte[] jpeg = encode(source, 64, 1, null);
+        BufferedImage result = decode(jpeg);
+        assertEquals(64, result.getWidth());
+        assertEquals(48, result.getHeight());
+        assertTrue(meanDiff(source, result) < 4);
+    }
+
+    @Test
+    public void paddedInterleavedPlanes_oddSize() throws Exception {
+        // row padding, pixel stride 2 and partial MCUs on both edges
+        BufferedImage source = createImage(75, 37);
+        byte[] jpeg = encode(source, 96, 2, null);
+        BufferedImage result = decode(jpeg);
+        assertEquals(75, result.getWidth());
+        assertEquals(37, result.getHeight());
+        assertTrue(meanDiff(source, result) < 4);
+    }
+
+    @Test
+    public void mcuRows_areRestartIntervals() throws Exception {
+        byte[] jpeg = encode(createImage(40, 70), 40, 1, EXIF);
+        JpegSegmentIndex index = JpegSegmentIndex.from(ByteBuffer.wrap(jpeg));
+        // right after SOI
+        assertEquals(0, index.getExifIndex());
+        assertTrue(index.hasFrame());
+        assertEquals(40, index.getWidth());
+        assertEquals(70, index.getHeight());
+        assertEquals(2, index.getHorizontalSampling(0));
+        assertEquals(1, index.getHorizontalSampling(1));
+        int dri = index.indexOf(JpegHeader.DRI, 0);
+        assertTrue(dri >= 0);
+        // 3 MCUs per row
+        assertEquals(3, index.getPayload(dri).getShort(0));
+
+        // 5 MCU rows, RST0 to RST3 between them
+        int restarts = 0;
+        for (int i = (int) index.getScanDataStart(); i < jpeg.length - 1; i++) {
+            if (jpeg[i] == (byte) 0xff && (jpeg[i + 1] & 0xf8) == 0xd0) {
+                assertEquals(0xd0 + restarts, jpeg[i + 1] & 0xff);
+                restarts++;
+            }
+        }
+        assertEquals(4, restarts);
+        assertTrue(meanDiff(createImage(40, 70), decode(jpeg)) < 4);
+    }
+
+    @Test
+    public void lowQuality_isSmaller() throws Exception {
+        BufferedImage source = createImage(64, 64);
+        byte[] high = encode(source, 64, 1, null, 95);
+        byte[] low = encode(source, 64, 1, null, 30);
+        assertTrue(low.length < high.length);
+    }
+
+    private static byte[] encode(BufferedImage image, int rowStride, int pixelStride,
+            byte[] exif) throws IOException {
+        return encode(image, rowStride, pixelStride, exif, 90);
+    }
+
+    /**
+     * Convert to full range BT.601 YUV like the camera, chroma is averaged over 2x2.
+     */
+    private static byte[] encode(BufferedImage image, int rowStride, int pixelStride,
+            byte[] exif, int quality) throws IOException {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        int cw = (w + 1) / 2;
+        int ch = (h + 1) / 2;
+        int uvRowStride = pixelStride == 1 ? cw : rowStride;
+        byte[] y = new byte[rowStride * h];
+        byte[] u = new byte[uvRowStride * ch];
+        byte[] v = new byte[uvRowStride * ch];
+        for (int j = 0; j < h; j++) {
+            for (int i = 0; i < w; i++) {
+                int p = image.getRGB(i, j);
+                y[j * rowStride + i] = (byte) clamp(0.299 * red(p) + 0.587 * green(p)
+                        + 0.114 * blue(p));
+            }
+        }
+        for (int j = 0; j < ch; j++) {
+            for (int i = 0; i < cw; i++) {
+                double cb = 0;
+                double cr = 0;
+                for (int k = 0; k < 4; k++) {
+                    int p = image.getRGB(Math.min(2 * i + (k & 1), w - 1),
+                            Math.min(2 * j + (k >> 1), h - 1));
+                    cb += -0.168736 * red(p) - 0.331264 * green(p) + 0.5 * blue(p);
+                    cr += 0.5 * red(p) - 0.418688 * green(p) - 0.081312 * blue(p);
+                }
+                u[j * uvRowStride + i * pixelStride] = (byte) clamp(cb / 4 + 128);
+                v[j * uvRowStride + i * pixelStride] = (byte) clamp(cr / 4 + 128);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new YuvJpegEncoder(w, h, quality).encode(ByteBuffer.wrap(y), rowStride,
+                ByteBuffer.wrap(u), ByteBuffer.wrap(v), uvRowStride, pixelStride,
+                exif == null ? null : ByteBuffer.wrap(exif), Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    private static BufferedImage createImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = x * 255 / width;
+                int g = y * 255 / height;
+                int b = 128 + (int) (60 * Math.sin((x + y) / 6.0));
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage decode(byte[] jpeg) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(jpeg));
+    }
+
+    private static int red(int p) {
+        return (p >> 16) & 0xff;
+    }
+
+    private static int green(int p) {
+        return (p >> 8) & 0xff;
+    }
+
+    private static int blue(int p) {
+        return p & 0xff;
+    }
+
+    private static int clamp(double value) {
+        return (int) Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    private static double meanDiff(BufferedImage a, BufferedImage b) {
+        long sum = 0;
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                int p = a.getRGB(x, y);
+                int q = b.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    sum += Math.abs(((p >> shift) & 0xff) - ((q >> shift) & 0xff));
+                }
+            }
+        }
+        return sum / (3.0 * a.getWidth() * a.getHeight());
+    }
+}
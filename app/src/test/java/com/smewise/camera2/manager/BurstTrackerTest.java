@@ -0,0 +1,63 @@
+package com.smewise.camera2.manager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BurstTrackerTest {
+    private static final long FRAME_NS = 100000000;
+
+    private final BurstTracker mBurst = new BurstTracker();
+
+    @Test
+    public void imagesAreNumberedInOrderAcrossBursts() {
+        mBurst.start(3);
+        assertFalse(mBurst.onImage(0));
+        assertEquals(0, mBurst.getLastSequence());
+        assertFalse(mBurst.onImage(FRAME_NS));
+        assertEquals(1, mBurst.getLastSequence());
+        assertTrue(mBurst.onImage(2 * FRAME_NS));
+        assertEquals(2, mBurst.getLastSequence());
+        assertEquals(3, mBurst.getImageCount());
+        assertEquals(10, mBurst.getFps(), 0.001);
+
+        // a zero shutter lag frame takes the next number
+        assertEquals(3, mBurst.nextSequence());
+
+        mBurst.start(1);
+        assertTrue(mBurst.onImage(10 * FRAME_NS));
+        assertEquals(4, mBurst.getLastSequence());
+        assertEquals(1, mBurst.getImageCount());
+        assertEquals(0, mBurst.getFps(), 0);
+    }
+
+    @Test
+    public void lostImage_endsBurstWithoutNumber() {
+        mBurst.start(3);
+        assertFalse(mBurst.onImage(0));
+        assertFalse(mBurst.onImageLost());
+        assertTrue(mBurst.onImage(2 * FRAME_NS));
+        assertEquals(1, mBurst.getLastSequence());
+        assertEquals(2, mBurst.getImageCount());
+        assertEquals(5, mBurst.getFps(), 0.001);
+    }
+
+    @Test
+    public void lastImageLost_completesBurst() {
+        mBurst.start(2);
+        assertFalse(mBurst.onImage(0));
+        assertTrue(mBurst.onImageLost());
+        assertEquals(1, mBurst.getImageCount());
+    }
+
+    @Test
+    public void lateImage_doesNotCompleteAgain() {
+        mBurst.start(1);
+        assertTrue(mBurst.onImage(0));
+        assertFalse(mBurst.onImage(FRAME_NS));
+        assertFalse(mBurst.onImageLost());
+        assertEquals(1, mBurst.getLastSequence());
+    }
+}
@@ -0,0 +1,272 @@
+package com.smewise.camera2.manager;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays 3A states of preview results, one pair of {af, ae} per frame at 30 fps, -1 for
+ * a state the device does not report.
+ */
+public class StillCaptureStateMachineTest {
+    private static final long FRAME_NS = 33333333;
+    private static final int N = -1;
+    // CaptureResult states
+    private static final int AF_PASSIVE_FOCUSED = 2;
+    private static final int AF_ACTIVE_SCAN = 3;
+    private static final int AF_LOCKED = 4;
+    private static final int AF_NOT_LOCKED = 5;
+    private static final int AE_SEARCHING = 1;
+    private static final int AE_CONVERGED = 2;
+    private static final int AE_FLASH_REQUIRED = 4;
+    private static final int AE_PRECAPTURE = 5;
+
+    private static class Replay implements StillCaptureStateMachine.Callback {
+        final StillCaptureStateMachine machine = new StillCaptureStateMachine(this);
+        final List<String> events = new ArrayList<>();
+        long frame;
+        int reason = -1;
+        // requests queued ahead of a trigger, their results come after it is sent
+        int inFlight;
+        long afTriggerFrame = -1;
+        long aeTriggerFrame = -1;
+
+        @Override
+        public void onTriggerAf() {
+            events.add("af");
+            afTriggerFrame = frame + inFlight;
+        }
+
+        @Override
+        public void onTriggerPrecapture() {
+            events.add("precapture");
+            aeTriggerFrame = frame + inFlight;
+        }
+
+        @Override
+        public void onCapture(int reason) {
+            events.add("capture");
+            this.reason = reason;
+        }
+
+        void feed(int[]... states) {
+            for (int[] state : states) {
+                long current = frame++;
+                if (current == afTriggerFrame) {
+                    machine.onTriggerStarted(StillCaptureStateMachine.STATE_WAITING_LOCK,
+                            current);
+                }
+                if (current == aeTriggerFrame) {
+                    machine.onTriggerStarted(
+                            StillCaptureStateMachine.STATE_WAITING_PRE_CAPTURE, current);
+                }
+                machine.onResult(state[0] == N ? null : state[0],
+                        state[1] == N ? null : state[1], current, current * FRAME_NS);
+            }
+        }
+
+        void feedRepeated(int count, int af, int ae) {
+            for (int i = 0; i < count; i++) {
+                feed(new int[] {af, ae});
+            }
+        }
+
+        /**
+         * Preview frames, then the shutter press
+         */
+        void start(int flashMode, int[]... preview) {
+            feed(preview);
+            machine.start(true, flashMode, frame * FRAME_NS);
+        }
+
+        long latencyMs() {
+            return machine.getLatency() / 1000000;
+        }
+    }
+
+    private static int[] s(int af, int ae) {
+        return new int[] {af, ae};
+    }
+
+    @Test
+    public void noAfTrigger_capturesAtOnce() {
+        Replay replay = new Replay();
+        replay.machine.start(false, StillCaptureStateMachine.FLASH_AUTO, 0);
+        assertEquals("[capture]", replay.events.toString());
+        assertEquals(StillCaptureStateMachine.CAPTURE_FAST, replay.reason);
+        assertEquals(0, replay.machine.getLatency());
+    }
+
+    @Test
+    public void fixedFocus_noStates() {
+        Replay replay = new Replay();
+        replay.machine.setAvailable(false, false);
+        replay.start(StillCaptureStateMachine.FLASH_AUTO, s(N, N));
+        replay.feed(s(N, N));
+        assertEquals("[af, capture]", replay.events.toString());
+        assertEquals(StillCaptureStateMachine.CAPTURE_READY, replay.reason);
+    }
+
+    @Test
+    public void missingStates_areWaitedFor() {
+        Replay replay = new Replay();
+        replay.start(StillCaptureStateMachine.FLASH_AUTO, s(AF_PASSIVE_FOCUSED, AE_CONVERGED));
+        // a result without 3A states does not mean the device has no af
+        replay.feed(s(N, N), s(N, N));
+        assertEquals("[af]", replay.events.toString());
+        assertEquals(StillCaptureStateMachine.STATE_WAITING_LOCK, replay.machine.getState());
+        replay.feed(s(AF_LOCKED, N));
+        // the converged ae of the earlier result is kept
+        assertEquals("[af, capture]", replay.events.toString());
+        assertEquals(StillCaptureStateMachine.CAPTURE_READY, replay.reason);
+    }
+
+    @Test
+    public void autoFlash_convergedAe_skipsPrecapture() {
+        Replay replay = new Replay();
+        replay.start(StillCaptureStateMachine.FLASH_AUTO, s(AF_PASSIVE_FOCUSED, AE_CONVERGED));
+        replay.feed(s(AF_ACTIVE_SCAN, AE_CONVERGED), s(AF_ACTIVE_SCAN, AE_CONVERGED),
+                s(AF_LOCKED, AE_CONVERGED));
+        assertEquals("[af, capture]", replay.events.toString());
+        assertEquals(StillCaptureStateMachine.CAPTURE_READY, replay.reason);
+        assertEquals(66, replay.latencyMs());
+    }
+
+    @Test
+    public void autoFlash_darkScene_runsPrecapture() {
+        Replay replay = new Replay();
+        replay.start(StillCaptureStateMachine.FLASH_AUTO,
+                s(AF_PASSIVE_FOCUSED, AE_FLASH_REQUIRED));
+        replay.feed(s(AF_ACTIVE_SCAN, AE_FLASH_REQUIRED), s(AF_LOCKED, AE_FLASH_REQUIRED));
+        assertEquals(StillCaptureStateMachine.STATE_WAITING_PRE_CAPTURE,
+                replay.machine.getState());
+        replay.feed(s(AF_LOCKED, AE_PRECAPTURE));
+        assertEquals(StillCaptureStateMachine.STATE_WAITING_NON_PRE_CAPTURE,
+                replay.machine.getState());
+        replay.feedRepeated(5, AF_LOCKED, AE_PRECAPTURE);
+        replay.feed(s(AF_LOCKED, AE_FLASH_REQUIRED));
+        assertEquals("[af, precapture, capture]", replay.events.toString());
+        assertEquals(StillCaptureStateMachine.CAPTURE_READY, replay.reason);
+    }
+
+    @Test
+    public void preTriggerFrames_areNotTriggered() {
+        Replay replay = new Replay();
+        replay.inFlight = 3;
+        replay.start(StillCaptureStateMachine.FLASH_AUTO,
+                s(AF_PASSIVE_FOCUSED, AE_FLASH_REQUIRED));
+        replay.feedRepeated(3, AF_PASSIVE_FOCUSED, AE_FLASH_REQUIRED);
+        replay.feed(s(AF_LOCKED, AE_FLASH_REQUIRED));
+        assertEquals("[af, precapture]", replay.events.toString());
+        // flash required before the precapture trigger does not mean it ran
+        replay.feedRepeated(3, AF_LOCKED, AE_FLASH_REQUIRED);
+        assertEquals(StillCaptureStateMachine.STATE_WAITING_PRE_CAPTURE,
+                replay.machine.getState());
+        replay.feed(s(AF_LOCKED, AE_PRECAPTURE));
+        assertEquals(StillCaptureStateMachine.STATE_WAITING_NON_PRE_CAPTURE,
+                replay.machine.getState());
+        replay.feedRepeated(2, AF_LOCKED, AE_PRECAPTURE);
+        replay.feed(s(AF_LOCKED, AE_FLASH_REQUIRED));
+        assertEquals("[af, precapture, capture]", replay.events.toString());
+        assertEquals(StillCaptureStateMachine.CAPTURE_READY, replay.reason);
+    }
+
+    @Test
+    public void flashOn_alwaysRunsPrecapture() {
+        Replay replay = new Replay();
+        replay.start(StillCaptureStateMachine.FLASH_ON, s(AF_PASSIVE_FOCUSED, AE_CONVERGED));
+        replay.feed(s(AF_LOCKED, AE_CONVERGED));
+        assertEquals("[af, precapture]", replay.events.toString());
+    }
+
+    @Test
+    public void lockedAf_skipsTrigger() {
+        Replay replay = new Replay();
+        // touch focus locked af before the shutter press
+        replay.start(StillCaptureStateMachine.FLASH_AUTO, s(AF_LOCKED, AE_CONVERGED));
+        assertEquals("[capture]", replay.events.toString());
+        assertEquals(StillCaptureStateMachine.CAPTURE_FAST, replay.reason);
+        assertEquals(0, replay.machine.getLatency());
+    }
+
+    @Test
+    public void lensNeverLocks_timesOut() {
+        Replay replay = new Replay();
+        replay.start(StillCaptureStateMachine.FLASH_AUTO, s(AF_PASSIVE_FOCUSED, AE_CONVERGED));
+        replay.feedRepeated(100, AF_ACTIVE_SCAN, AE_CONVERGED);
+        assertEquals("[af, capture]", replay.events.toString());
+        assertEquals(StillCaptureStateMachine.CAPTURE_TIMEOUT, replay.reason);
+        assertTrue(replay.latencyMs() <= 1000);
+    }
+
+    @Test
+    public void notFocusedLock_stillCaptures() {
+        Replay replay = new Replay();
+        replay.start(StillCaptureStateMachine.FLASH_AUTO, s(AF_PASSIVE_FOCUSED, AE_CONVERGED));
+        replay.feed(s(AF_NOT_LOCKED, AE_CONVERGED));
+        assertEquals(StillCaptureStateMachine.CAPTURE_READY, replay.reason);
+    }
+
+    @Test
+    public void aeStuckInPrecapture_timesOut() {
+        Replay replay = new Replay();
+        replay.start(StillCaptureStateMachine.FLASH_AUTO, s(AF_PASSIVE_FOCUSED, AE_SEARCHING));
+        replay.feed(s(AF_LOCKED, AE_SEARCHING));
+        replay.feedRepeated(200, AF_LOCKED, AE_PRECAPTURE);
+        assertEquals("[af, precapture, capture]", replay.events.toString());
+        assertEquals(StillCaptureStateMachine.CAPTURE_TIMEOUT, replay.reason);
+        assertTrue(replay.latencyMs() <= 1600);
+    }
+
+    @Test
+    public void precaptureNeverReported_movesOn() {
+        Replay replay = new Replay();
+        replay.start(StillCaptureStateMachine.FLASH_ON, s(AF_PASSIVE_FOCUSED, AE_CONVERGED));
+        replay.feed(s(AF_LOCKED, AE_CONVERGED));
+        replay.feedRepeated(15, AF_LOCKED, AE_CONVERGED);
+        assertEquals("[af, precapture, capture]", replay.events.toString());
+        assertEquals(StillCaptureStateMachine.CAPTURE_READY, replay.reason);
+        assertTrue(replay.latencyMs() <= 400);
+    }
+
+    @Test
+    public void olderResults_areIgnored() {
+        Replay replay = new Replay();
+        replay.start(StillCaptureStateMachine.FLASH_AUTO, s(AF_PASSIVE_FOCUSED, AE_CONVERGED));
+        replay.feed(s(AF_ACTIVE_SCAN, AE_CONVERGED));
+        // partial result of an earlier frame
+        replay.machine.onResult(AF_LOCKED, AE_CONVERGED, 0, replay.frame * FRAME_NS);
+        assertEquals("[af]", replay.events.toString());
+    }
+
+    @Test
+    public void customDeadline_isUsed() {
+        Replay replay = new Replay();
+        replay.machine.setDeadline(StillCaptureStateMachine.STATE_WAITING_LOCK,
+                100 * 1000000L, 1000);
+        replay.start(StillCaptureStateMachine.FLASH_AUTO, s(AF_PASSIVE_FOCUSED, AE_CONVERGED));
+        replay.feedRepeated(10, AF_ACTIVE_SCAN, AE_CONVERGED);
+        assertEquals(StillCaptureStateMachine.CAPTURE_TIMEOUT, replay.reason);
+        assertTrue(replay.latencyMs() <= 133);
+    }
+
+    @Test
+    public void worstCaseLatency_isBoundedByDeadlines() {
+        // lens never locks, then ae never leaves precapture
+        Replay replay = new Replay();
+        replay.start(StillCaptureStateMachine.FLASH_ON, s(AF_PASSIVE_FOCUSED, AE_SEARCHING));
+        replay.feedRepeated(30, AF_ACTIVE_SCAN, AE_SEARCHING);
+        replay.feedRepeated(100, AF_ACTIVE_SCAN, AE_PRECAPTURE);
+        assertEquals("[af, precapture, capture]", replay.events.toString());
+        long bound = (StillCaptureStateMachine.DEFAULT_LOCK_TIMEOUT_NS
+                + StillCaptureStateMachine.DEFAULT_PRE_CAPTURE_START_TIMEOUT_NS
+                + StillCaptureStateMachine.DEFAULT_PRE_CAPTURE_TIMEOUT_NS) / 1000000;
+        assertEquals(StillCaptureStateMachine.CAPTURE_TIMEOUT, replay.reason);
+        assertTrue("latency ms:" + replay.latencyMs() + " bound:" + bound,
+                replay.latencyMs() <= bound);
+    }
+}
@@ -0,0 +1,124 @@
+package com.smewise.camera2.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CaptureBufferPoolTest {
+    private static final int MB = 1024 * 1024;
+
+    @Test
+    public void sizeClass_isQuarterOfPowerOfTwo() {
+        assertEquals(4096, CaptureBufferPool.getSizeClass(1));
+        assertEquals(4 * MB, CaptureBufferPool.getSizeClass(4 * MB));
+        assertEquals(5 * MB, CaptureBufferPool.getSizeClass(4 * MB + 1));
+        assertEquals(7 * MB, CaptureBufferPool.getSizeClass(6 * MB + 100));
+        assertEquals(8 * MB, CaptureBufferPool.getSizeClass(7 * MB + 1));
+        // 12MP NV21
+        assertEquals(20 * MB, CaptureBufferPool.getSizeClass(18 * MB));
+    }
+
+    @Test
+    public void steadyState_reusesBuffers() {
+        CaptureBufferPool pool = new CaptureBufferPool(64 * MB);
+        byte[] first = null;
+        for (int i = 0; i < 10; i++) {
+            // jpegs of a similar size
+            CaptureBuffer buffer = pool.obtain(3 * MB + (i + 1) * 1000, false);
+            assertEquals(3 * MB + (i + 1) * 1000, buffer.size());
+            if (first == null) {
+                first = buffer.array();
+            }
+            assertSame(first, buffer.array());
+            buffer.release();
+        }
+        assertEquals(1, pool.getMissCount());
+        assertEquals(9, pool.getHitCount());
+        assertEquals(0, pool.getOutstandingBytes());
+        assertEquals(7 * MB / 2, pool.getPooledBytes());
+    }
+
+    @Test
+    public void outstandingBytes_countsUnreleased() {
+        CaptureBufferPool pool = new CaptureBufferPool(64 * MB);
+        CaptureBuffer a = pool.obtain(MB, false);
+        CaptureBuffer b = pool.obtain(MB, true);
+        assertTrue(b.asByteBuffer().isDirect());
+        assertFalse(b.hasArray());
+        assertEquals(2 * MB, pool.getOutstandingBytes());
+        a.release();
+        a.release();
+        assertEquals(MB, pool.getOutstandingBytes());
+        b.release();
+        assertEquals(0, pool.getOutstandingBytes());
+        // heap and direct buffers are not mixed
+        pool.obtain(MB, false).release();
+        assertEquals(1, pool.getHitCount());
+    }
+
+    @Test
+    public void maxPooledBytes_dropsBuffers() {
+        CaptureBufferPool pool = new CaptureBufferPool(2 * MB);
+        CaptureBuffer a = pool.obtain(MB, false);
+        CaptureBuffer b = pool.obtain(MB, false);
+        CaptureBuffer c = pool.obtain(MB, false);
+        a.release();
+        b.release();
+        c.release();
+        assertEquals(2 * MB, pool.getPooledBytes());
+        pool.clear();
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void releasedBuffer_throws() {
+        CaptureBuffer buffer = new CaptureBufferPool(MB).obtain(100, false);
+        buffer.release();
+        try {
+            buffer.asByteBuffer();
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void channel_growsAndDetaches() throws Exception {
+        CaptureBufferPool pool = new CaptureBufferPool(64 * MB);
+        CaptureBufferChannel channel = pool.openChannel(10, false);
+        byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        for (int i = 0; i < data.length; i += 1000) {
+            channel.write(ByteBuffer.wrap(data, i, 1000));
+        }
+        CaptureBuffer buffer = channel.detach();
+        assertFalse(channel.isOpen());
+        assertEquals(data.length, buffer.size());
+        ByteBuffer result = buffer.asByteBuffer();
+        byte[] bytes = new byte[result.remaining()];
+        result.get(bytes);
+        assertArrayEquals(data, bytes);
+        // only the detached buffer is in use
+        assertEquals(buffer.capacity(), pool.getOutstandingBytes());
+        buffer.release();
+        assertEquals(0, pool.getOutstandingBytes());
+    }
+
+    @Test
+    public void closedChannel_releasesBuffer() throws Exception {
+        CaptureBufferPool pool = new CaptureBufferPool(64 * MB);
+        CaptureBufferChannel channel = pool.openChannel(100, true);
+        channel.write(ByteBuffer.wrap(new byte[50]));
+        channel.close();
+        assertEquals(0, pool.getOutstandingBytes());
+    }
+}
@@ -0,0 +1,110 @@
+package com.smewise.camera2.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CaptureTracerTest {
+    private static final long MS = 1000000;
+
+    @Test
+    public void histogramBuckets_areContinuous() {
+        for (int bucket = 0; bucket < 200; bucket++) {
+            long limit = LatencyHistogram.getBucketLimit(bucket);
+            assertEquals(bucket, LatencyHistogram.getBucket(limit - 1));
+            assertEquals(bucket + 1, LatencyHistogram.getBucket(limit));
+        }
+    }
+
+    @Test
+    public void percentiles_areWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 100);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(100000, histogram.getMaxUs());
+        assertEquals(50050, histogram.getMeanUs());
+        assertInRange(50000, histogram.getPercentileUs(50));
+        assertInRange(99000, histogram.getPercentileUs(99));
+        assertEquals(100000, histogram.getPercentileUs(100));
+        assertEquals(0, new LatencyHistogram().getPercentileUs(50));
+    }
+
+    @Test
+    public void stages_measureFromPreviousMarkedStage() {
+        CaptureTimeline timeline = new CaptureTimeline("0");
+        timeline.mark(CaptureTimeline.SHUTTER, 100 * MS);
+        timeline.mark(CaptureTimeline.STILL_REQUEST, 102 * MS);
+        timeline.mark(CaptureTimeline.IMAGE_AVAILABLE, 150 * MS);
+        // written before the thumbnail and the database insert
+        timeline.mark(CaptureTimeline.WRITE_FILE, 170 * MS);
+        timeline.mark(CaptureTimeline.THUMBNAIL, 180 * MS);
+        timeline.mark(CaptureTimeline.ADD_TO_DB, 185 * MS);
+        timeline.mark(CaptureTimeline.FILE_SAVED, 186 * MS);
+        // first mark is kept
+        timeline.mark(CaptureTimeline.IMAGE_AVAILABLE, 160 * MS);
+        assertEquals(2 * MS, timeline.getStageNanos(CaptureTimeline.STILL_REQUEST));
+        assertEquals(48 * MS, timeline.getStageNanos(CaptureTimeline.IMAGE_AVAILABLE));
+        assertEquals(10 * MS, timeline.getStageNanos(CaptureTimeline.THUMBNAIL));
+        assertEquals(5 * MS, timeline.getStageNanos(CaptureTimeline.ADD_TO_DB));
+        assertEquals(-1, timeline.getStageNanos(CaptureTimeline.AF_TRIGGER));
+        assertEquals(86 * MS, timeline.getTotalNanos());
+    }
+
+    @Test
+    public void burstCopies_shareEarlyStages() {
+        CaptureTimeline burst = new CaptureTimeline("1");
+        burst.mark(CaptureTimeline.SHUTTER, 100 * MS);
+        CaptureTimeline second = burst.copy();
+        second.mark(CaptureTimeline.IMAGE_AVAILABLE, 200 * MS);
+        assertTrue(second.isMarked(CaptureTimeline.SHUTTER));
+        assertFalse(burst.isMarked(CaptureTimeline.IMAGE_AVAILABLE));
+        assertEquals("1", second.getCameraId());
+    }
+
+    @Test
+    public void tracer_groupsByCameraAndExportsJson() {
+        CaptureTracer tracer = new CaptureTracer();
+        for (String id : new String[] {"1", "0", "0"}) {
+            CaptureTimeline timeline = new CaptureTimeline(id);
+            timeline.mark(CaptureTimeline.SHUTTER, 100 * MS);
+            timeline.mark(CaptureTimeline.STILL_REQUEST, 110 * MS);
+            timeline.mark(CaptureTimeline.FILE_SAVED, 300 * MS);
+            tracer.finish(timeline);
+        }
+        assertEquals(2, tracer.getHistogram("0", CaptureTimeline.STILL_REQUEST).getCount());
+        assertEquals(1, tracer.getHistogram("1", CaptureTimeline.STAGE_COUNT).getCount());
+        assertEquals(0, tracer.getHistogram("0", CaptureTimeline.SHUTTER).getCount());
+        String json = tracer.toJson();
+        assertTrue(json, json.startsWith("{\"0\":{\"still_request\":{\"count\":2,"));
+        assertTrue(json, json.contains("\"1\":{"));
+        assertTrue(json, json.contains("\"total\":{\"count\":1,\"mean_ms\":200.000,"));
+        assertFalse(json, json.contains("af_trigger"));
+    }
+
+    @Test
+    public void resultLatency_isExportedPerCamera() {
+        CaptureTracer tracer = new CaptureTracer();
+        tracer.recordResultLatency("0", 40000);
+        tracer.recordResultLatency("0", 42000);
+        assertEquals(2, tracer.getHistogram("0", CaptureTracer.RESULT_CALLBACK).getCount());
+        assertEquals(0, tracer.getHistogram("0", CaptureTimeline.STAGE_COUNT).getCount());
+        String json = tracer.toJson();
+        assertTrue(json, json.startsWith("{\"0\":{\"result_callback\":{\"count\":2,"
+                + "\"mean_ms\":41.000,"));
+    }
+
+    @Test
+    public void start_marksShutter() {
+        CaptureTimeline timeline = new CaptureTracer().start("0");
+        assertTrue(timeline.isMarked(CaptureTimeline.SHUTTER));
+        assertEquals(0, timeline.getStageNanos(CaptureTimeline.SHUTTER));
+    }
+
+    private static void assertInRange(long expected, long actual) {
+        assertTrue(expected + " " + actual, actual >= expected && actual <= expected * 5 / 4);
+    }
+}
@@ -0,0 +1,49 @@
+package com.smewise.camera2.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JankMonitorTest {
+    private static final long VSYNC = 16666667;
+
+    @Test
+    public void smoothFrames_haveNoJank() {
+        JankMonitor monitor = new JankMonitor(60);
+        for (int i = 0; i < 61; i++) {
+            monitor.recordFrame(1000 + i * VSYNC);
+        }
+        assertEquals(60, monitor.getFrameCount());
+        assertEquals(0, monitor.getJankFrames());
+        assertEquals(0, monitor.getMissedVsyncs());
+    }
+
+    @Test
+    public void longFrames_countMissedVsyncs() {
+        JankMonitor monitor = new JankMonitor(60);
+        long time = 1000;
+        monitor.recordFrame(time);
+        // a frame with a little vsync jitter is not janky
+        time += VSYNC * 14 / 10;
+        monitor.recordFrame(time);
+        time += 2 * VSYNC;
+        monitor.recordFrame(time);
+        time += 5 * VSYNC;
+        monitor.recordFrame(time);
+        assertEquals(3, monitor.getFrameCount());
+        assertEquals(2, monitor.getJankFrames());
+        assertEquals(5, monitor.getMissedVsyncs());
+    }
+
+    @Test
+    public void toJson_reportsIntervals() {
+        JankMonitor monitor = new JankMonitor(60);
+        monitor.recordFrame(1000);
+        monitor.recordFrame(1000 + VSYNC);
+        monitor.recordFrame(1000 + 4 * VSYNC);
+        String json = monitor.toJson();
+        assertTrue(json, json.startsWith("{\"frames\":2,\"jank_frames\":1,\"missed_vsyncs\":2,"));
+        assertTrue(json, json.contains("\"max_ms\":50.000}"));
+    }
+}
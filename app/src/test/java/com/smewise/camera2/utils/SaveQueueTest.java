@@ -0,0 +1,96 @@
+package com.smewise.camera2.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SaveQueueTest {
+    private final SaveQueue<Integer> mQueue = new SaveQueue<>(100);
+
+    @Test
+    public void takesInOfferOrder() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(SaveQueue.QUEUED, mQueue.offer(i, 30));
+        }
+        assertEquals(90, mQueue.getPendingBytes());
+        for (int i = 0; i < 3; i++) {
+            SaveQueue.Entry<Integer> entry = mQueue.take();
+            assertEquals(i, (int) entry.getItem());
+            mQueue.finish(entry);
+        }
+        assertNull(mQueue.take());
+        assertEquals(0, mQueue.getPendingBytes());
+    }
+
+    @Test
+    public void picturesBeingSaved_countInBudget() {
+        mQueue.offer(0, 60);
+        SaveQueue.Entry<Integer> saving = mQueue.take();
+        assertEquals(0, mQueue.size());
+        // the first picture is still in memory while it is written
+        assertEquals(SaveQueue.DROPPED_FIRST, mQueue.offer(1, 60));
+        mQueue.finish(saving);
+        assertEquals(SaveQueue.QUEUED, mQueue.offer(2, 60));
+    }
+
+    @Test
+    public void largePicture_isQueuedWhenNothingPending() {
+        assertEquals(SaveQueue.QUEUED, mQueue.offer(0, 500));
+        assertEquals(SaveQueue.DROPPED_FIRST, mQueue.offer(1, 1));
+        mQueue.finish(mQueue.take());
+        assertEquals(SaveQueue.QUEUED, mQueue.offer(2, 1));
+    }
+
+    @Test
+    public void slowSaver_dropsLatePicturesAndKeepsOrder() {
+        // a burst of 20 pictures, the saver writes one while three are captured
+        List<Integer> saved = new ArrayList<>();
+        List<Integer> results = new ArrayList<>();
+        SaveQueue.Entry<Integer> saving = null;
+        for (int i = 0; i < 20; i++) {
+            results.add(mQueue.offer(i, 30));
+            assertTrue(mQueue.getPendingBytes() <= 100);
+            if (i % 3 == 2) {
+                if (saving != null) {
+                    saved.add(saving.getItem());
+                    mQueue.finish(saving);
+                }
+                saving = mQueue.take();
+            }
+        }
+        // the saver catches up after the burst
+        while (saving != null) {
+            saved.add(saving.getItem());
+            mQueue.finish(saving);
+            saving = mQueue.take();
+        }
+        assertEquals(SaveQueue.DROPPED_FIRST, (int) results.get(3));
+        int dropped = 0;
+        for (int i = 0; i < results.size(); i++) {
+            int result = results.get(i);
+            if (result == SaveQueue.DROPPED_FIRST) {
+                assertEquals(3, i);
+            }
+            if (result != SaveQueue.QUEUED) {
+                dropped++;
+            }
+        }
+        assertEquals(dropped, mQueue.getDropCount());
+        assertEquals(20, saved.size() + dropped);
+        // saved pictures are in capture order
+        for (int i = 1; i < saved.size(); i++) {
+            assertTrue(saved.get(i) > saved.get(i - 1));
+        }
+        assertEquals(0, mQueue.getPendingBytes());
+
+        // the queue drained, the next drop is told again
+        mQueue.offer(20, 60);
+        assertEquals(SaveQueue.QUEUED, mQueue.offer(21, 30));
+        assertEquals(SaveQueue.DROPPED_FIRST, mQueue.offer(22, 30));
+    }
+}
@@ -0,0 +1,107 @@
+package com.smewise.camera2.utils;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ThumbnailProviderTest {
+
+    @Test
+    public void sampleSize_isPowerOfTwo() {
+        // 4000 / 128 is 31, decoders round it down to 16
+        assertEquals(16, ThumbnailProvider.getSampleSize(4000, 3000, 128));
+        assertEquals(16, ThumbnailProvider.getSampleSize(3000, 4000, 128));
+        assertEquals(64, ThumbnailProvider.getSampleSize(8192, 8192, 128));
+    }
+
+    @Test
+    public void sampleSize_keepsShorterSide() {
+        assertEquals(1, ThumbnailProvider.getSampleSize(200, 100, 128));
+        assertEquals(1, ThumbnailProvider.getSampleSize(256, 255, 128));
+        assertEquals(2, ThumbnailProvider.getSampleSize(256, 256, 128));
+        assertEquals(1, ThumbnailProvider.getSampleSize(4000, 3000, 0));
+    }
+
+    @Test
+    public void exifThumbnail_isAccepted() {
+        assertTrue(ThumbnailProvider.isExifThumbnailUsable(160, 120, 4000, 3000, 120));
+        assertTrue(ThumbnailProvider.isExifThumbnailUsable(120, 160, 3000, 4000, 120));
+        // image size unknown, only the size is checked
+        assertTrue(ThumbnailProvider.isExifThumbnailUsable(160, 120, 0, 0, 120));
+    }
+
+    @Test
+    public void exifThumbnail_tooSmall_isRejected() {
+        // the long side is large enough, but a decode would keep the short side at 128
+        assertFalse(ThumbnailProvider.isExifThumbnailUsable(160, 120, 4000, 3000, 128));
+        assertFalse(ThumbnailProvider.isExifThumbnailUsable(120, 160, 3000, 4000, 128));
+    }
+
+    @Test
+    public void exifThumbnail_aspectMismatch_isRejected() {
+        // 4:3 thumbnail of a 16:9 picture is letterboxed
+        assertFalse(ThumbnailProvider.isExifThumbnailUsable(320, 240, 4000, 2250, 128));
+        assertFalse(ThumbnailProvider.isExifThumbnailUsable(240, 320, 4000, 3000, 128));
+    }
+
+    @Test
+    public void scaledDecoder_isUsedForBaseline() throws IOException {
+        byte[] jpeg = createJpeg(false);
+        assertNotNull(ThumbnailProvider.openScaledDecoder(jpeg, jpeg.length));
+    }
+
+    @Test
+    public void scaledDecoder_fallsBackToBitmapFactory() throws IOException {
+        byte[] progressive = createJpeg(true);
+        assertNull(ThumbnailProvider.openScaledDecoder(progressive, progressive.length));
+        // SOF cut off, the parser reads past the end of the data
+        byte[] jpeg = createJpeg(false);
+        byte[] truncated = Arrays.copyOf(jpeg, indexOfSof(jpeg) + 8);
+        assertNull(ThumbnailProvider.openScaledDecoder(truncated, truncated.length));
+    }
+
+    private static byte[] createJpeg(boolean progressive) throws IOException {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, (x * 4 << 16) | (y * 5 << 8) | 128);
+            }
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (progressive) {
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageOutputStream stream = ImageIO.createImageOutputStream(out);
+        writer.setOutput(stream);
+        writer.write(null, new IIOImage(image, null, null), param);
+        stream.close();
+        writer.dispose();
+        return out.toByteArray();
+    }
+
+    private static int indexOfSof(byte[] jpeg) {
+        for (int i = 2; i < jpeg.length - 1; i++) {
+            if (jpeg[i] == (byte) 0xff && jpeg[i + 1] == (byte) 0xc0) {
+                return i;
+            }
+        }
+        throw new AssertionError("no SOF0");
+    }
+}
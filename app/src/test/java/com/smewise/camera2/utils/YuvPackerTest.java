@@ -0,0 +1,202 @@
+package com.smewise.camera2.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class YuvPackerTest {
+    private static final int WIDTH = 6;
+    private static final int HEIGHT = 4;
+
+    @Test
+    public void planarWithPadding_toAllLayouts() {
+        Planes p = Planes.planar(WIDTH, HEIGHT, 8, 5);
+        assertArrayEquals(expected(YuvPacker.I420), pack(p, YuvPacker.I420));
+        assertArrayEquals(expected(YuvPacker.NV21), pack(p, YuvPacker.NV21));
+        assertArrayEquals(expected(YuvPacker.NV12), pack(p, YuvPacker.NV12));
+    }
+
+    @Test
+    public void interleavedWithPadding_toAllLayouts() {
+        Planes p = Planes.interleaved(WIDTH, HEIGHT, 10, 8);
+        assertArrayEquals(expected(YuvPacker.I420), pack(p, YuvPacker.I420));
+        assertArrayEquals(expected(YuvPacker.NV21), pack(p, YuvPacker.NV21));
+        assertArrayEquals(expected(YuvPacker.NV12), pack(p, YuvPacker.NV12));
+    }
+
+    @Test
+    public void contiguousPlanes_areCopied() {
+        Planes p = Planes.planar(WIDTH, HEIGHT, WIDTH, WIDTH / 2);
+        assertArrayEquals(expected(YuvPacker.I420), pack(p, YuvPacker.I420));
+    }
+
+    @Test
+    public void oddSize_roundsChromaUp() {
+        Planes p = Planes.interleaved(5, 3, 8, 8);
+        assertEquals(5 * 3 + 2 * 3 * 2, YuvPacker.getPackedSize(5, 3));
+        byte[] out = new byte[YuvPacker.getPackedSize(5, 3)];
+        new YuvPacker().pack(5, 3, p.y, p.yRowStride, p.u, p.v, p.uvRowStride,
+                p.uvPixelStride, YuvPacker.NV12, out, 0);
+        for (int row = 0; row < 3; row++) {
+            for (int x = 0; x < 5; x++) {
+                assertEquals(luma(x, row), out[row * 5 + x]);
+            }
+        }
+        for (int row = 0; row < 2; row++) {
+            for (int x = 0; x < 3; x++) {
+                assertEquals(cb(x, row), out[15 + row * 6 + 2 * x]);
+                assertEquals(cr(x, row), out[15 + row * 6 + 2 * x + 1]);
+            }
+        }
+    }
+
+    @Test
+    public void positionsAndOffset_areKept() {
+        Planes p = Planes.planar(WIDTH, HEIGHT, 8, 5);
+        byte[] out = new byte[3 + YuvPacker.getPackedSize(WIDTH, HEIGHT)];
+        new YuvPacker().pack(WIDTH, HEIGHT, p.y, p.yRowStride, p.u, p.v, p.uvRowStride,
+                p.uvPixelStride, YuvPacker.NV21, out, 3);
+        assertEquals(0, p.y.position());
+        assertEquals(0, p.u.position());
+        byte[] packed = new byte[out.length - 3];
+        System.arraycopy(out, 3, packed, 0, packed.length);
+        assertArrayEquals(expected(YuvPacker.NV21), packed);
+    }
+
+    @Test
+    public void smallOutput_throws() {
+        Planes p = Planes.planar(WIDTH, HEIGHT, 8, 5);
+        try {
+            new YuvPacker().pack(WIDTH, HEIGHT, p.y, p.yRowStride, p.u, p.v, p.uvRowStride,
+                    p.uvPixelStride, YuvPacker.NV21, new byte[WIDTH * HEIGHT], 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static byte[] pack(Planes p, int layout) {
+        byte[] out = new byte[YuvPacker.getPackedSize(WIDTH, HEIGHT)];
+        new YuvPacker().pack(WIDTH, HEIGHT, p.y, p.yRowStride, p.u, p.v, p.uvRowStride,
+                p.uvPixelStride, layout, out, 0);
+        return out;
+    }
+
+    private static byte[] expected(int layout) {
+        int cw = WIDTH / 2;
+        int ch = HEIGHT / 2;
+        byte[] out = new byte[WIDTH * HEIGHT + 2 * cw * ch];
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int x = 0; x < WIDTH; x++) {
+                out[row * WIDTH + x] = luma(x, row);
+            }
+        }
+        int chroma = WIDTH * HEIGHT;
+        for (int row = 0; row < ch; row++) {
+            for (int x = 0; x < cw; x++) {
+                int i = row * cw + x;
+                if (layout == YuvPacker.I420) {
+                    out[chroma + i] = cb(x, row);
+                    out[chroma + cw * ch + i] = cr(x, row);
+                } else if (layout == YuvPacker.NV21) {
+                    out[chroma + 2 * i] = cr(x, row);
+                    out[chroma + 2 * i + 1] = cb(x, row);
+                } else {
+                    out[chroma + 2 * i] = cb(x, row);
+                    out[chroma + 2 * i + 1] = cr(x, row);
+                }
+            }
+        }
+        return out;
+    }
+
+    private static byte luma(int x, int y) {
+        return (byte) (y * 16 + x);
+    }
+
+    private static byte cb(int x, int y) {
+        return (byte) (100 + y * 8 + x);
+    }
+
+    private static byte cr(int x, int y) {
+        return (byte) (200 + y * 8 + x);
+    }
+
+    /**
+     * Planes like Image.getPlanes(), padding bytes are 0xff and the last row of a plane
+     * ends at its last sample.
+     */
+    private static class Planes {
+        ByteBuffer y;
+        ByteBuffer u;
+        ByteBuffer v;
+        int yRowStride;
+        int uvRowStride;
+        int uvPixelStride;
+
+        static Planes planar(int width, int height, int yRowStride, int uvRowStride) {
+            Planes p = new Planes();
+            p.y = lumaPlane(width, height, yRowStride);
+            int cw = (width + 1) / 2;
+            int ch = (height + 1) / 2;
+            byte[] u = filled((ch - 1) * uvRowStride + cw);
+            byte[] v = filled(u.length);
+            for (int row = 0; row < ch; row++) {
+                for (int x = 0; x < cw; x++) {
+                    u[row * uvRowStride + x] = cb(x, row);
+                    v[row * uvRowStride + x] = cr(x, row);
+                }
+            }
+            p.u = ByteBuffer.wrap(u);
+            p.v = ByteBuffer.wrap(v);
+            p.yRowStride = yRowStride;
+            p.uvRowStride = uvRowStride;
+            p.uvPixelStride = 1;
+            return p;
+        }
+
+        /**
+         * NV21 memory like most devices, u and v share one buffer.
+         */
+        static Planes interleaved(int width, int height, int yRowStride, int uvRowStride) {
+            Planes p = new Planes();
+            p.y = lumaPlane(width, height, yRowStride);
+            int cw = (width + 1) / 2;
+            int ch = (height + 1) / 2;
+            byte[] vu = filled((ch - 1) * uvRowStride + 2 * cw);
+            for (int row = 0; row < ch; row++) {
+                for (int x = 0; x < cw; x++) {
+                    vu[row * uvRowStride + 2 * x] = cr(x, row);
+                    vu[row * uvRowStride + 2 * x + 1] = cb(x, row);
+                }
+            }
+            p.v = ByteBuffer.wrap(vu, 0, vu.length - 1).slice();
+            p.u = ByteBuffer.wrap(vu, 1, vu.length - 1).slice();
+            p.yRowStride = yRowStride;
+            p.uvRowStride = uvRowStride;
+            p.uvPixelStride = 2;
+            return p;
+        }
+
+        private static ByteBuffer lumaPlane(int width, int height, int rowStride) {
+            byte[] y = filled((height - 1) * rowStride + width);
+            for (int row = 0; row < height; row++) {
+                for (int x = 0; x < width; x++) {
+                    y[row * rowStride + x] = luma(x, row);
+                }
+            }
+            return ByteBuffer.wrap(y);
+        }
+
+        private static byte[] filled(int size) {
+            byte[] data = new byte[size];
+            Arrays.fill(data, (byte) 0xff);
+            return data;
+        }
+    }
+}
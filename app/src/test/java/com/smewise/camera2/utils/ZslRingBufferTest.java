@@ -0,0 +1,106 @@
+package com.smewise.camera2.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ZslRingBufferTest {
+    private final List<String> mRecycled = new ArrayList<>();
+    private final ZslRingBuffer<String, String> mRing = new ZslRingBuffer<>(3,
+            new ZslRingBuffer.Recycler<String>() {
+                @Override
+                public void recycle(String image) {
+                    mRecycled.add(image);
+                }
+            });
+
+    @Test
+    public void keepsNewestImages() {
+        for (int i = 1; i <= 5; i++) {
+            mRing.addImage(i * 100, "image" + i);
+        }
+        assertEquals(3, mRing.size());
+        assertEquals(2, mRecycled.size());
+        assertEquals("image1", mRecycled.get(0));
+        assertEquals("image2", mRecycled.get(1));
+    }
+
+    @Test
+    public void matchesImageAndResultByTimestamp() {
+        mRing.addImage(100, "image1");
+        mRing.addResult(200, "result2", true, true);
+        // no frame has both yet
+        assertNull(mRing.take());
+        mRing.addImage(200, "image2");
+        ZslRingBuffer.Frame<String, String> frame = mRing.take();
+        assertEquals(200, frame.getTimestamp());
+        assertEquals("image2", frame.getImage());
+        assertEquals("result2", frame.getResult());
+        assertEquals(1, mRing.size());
+    }
+
+    @Test
+    public void takesNewestFocusedFrame() {
+        mRing.addImage(100, "image1");
+        mRing.addResult(100, "result1", true, true);
+        mRing.addImage(200, "image2");
+        mRing.addResult(200, "result2", true, false);
+        mRing.addImage(300, "image3");
+        mRing.addResult(300, "result3", false, true);
+        assertEquals("image1", mRing.take().getImage());
+        assertEquals("image2", mRing.take().getImage());
+        assertEquals("image3", mRing.take().getImage());
+        assertNull(mRing.take());
+        assertEquals(0, mRing.size());
+    }
+
+    @Test
+    public void equalFramesPreferNewest() {
+        for (int i = 1; i <= 3; i++) {
+            mRing.addImage(i * 100, "image" + i);
+            mRing.addResult(i * 100, "result" + i, true, true);
+        }
+        assertEquals("image3", mRing.take().getImage());
+    }
+
+    @Test
+    public void resultsBeforeImages_areMatched() {
+        // results usually come first
+        for (int i = 1; i <= 4; i++) {
+            mRing.addResult(i * 100, "result" + i, true, true);
+        }
+        for (int i = 1; i <= 4; i++) {
+            mRing.addImage(i * 100, "image" + i);
+        }
+        ZslRingBuffer.Frame<String, String> frame = mRing.take();
+        assertEquals("image4", frame.getImage());
+        assertEquals("result4", frame.getResult());
+        assertTrue(mRecycled.contains("image1"));
+    }
+
+    @Test
+    public void resultsWithoutImages_areDropped() {
+        for (int i = 1; i <= 20; i++) {
+            mRing.addResult(i * 100, "result" + i, true, true);
+        }
+        // an image older than all kept frames is recycled at once
+        mRing.addImage(100, "late");
+        assertEquals(0, mRing.size());
+        assertEquals("late", mRecycled.get(0));
+    }
+
+    @Test
+    public void clear_recyclesImages() {
+        mRing.addImage(100, "image1");
+        mRing.addImage(200, "image2");
+        mRing.clear();
+        assertEquals(0, mRing.size());
+        assertEquals(2, mRecycled.size());
+        assertNull(mRing.take());
+    }
+}